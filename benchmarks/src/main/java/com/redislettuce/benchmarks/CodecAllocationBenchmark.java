@@ -0,0 +1,122 @@
+package com.redislettuce.benchmarks;
+
+import com.redislettuce.codec.BufferValue;
+import com.redislettuce.codec.BufferValueCodec;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap allocation of reading and writing large values through {@link StringCodec} versus {@link BufferValueCodec}.
+ *
+ * The caller wants bytes (to write them to a file or socket), so the String variants include the
+ * {@code getBytes} a real caller would do. Compare {@code gc.alloc.rate.norm} (bytes allocated per operation):
+ *
+ * run: java -jar benchmarks/target/benchmarks.jar CodecAllocationBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CodecAllocationBenchmark {
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    public int valueSize;
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> stringConnection;
+
+    private StatefulRedisConnection<String, BufferValue> bufferConnection;
+
+    private RedisCommands<String, String> strings;
+
+    private RedisCommands<String, BufferValue> buffers;
+
+    private String stringValue;
+
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        stringConnection = client.connect(StringCodec.UTF8);
+        bufferConnection = client.connect(BufferValueCodec.INSTANCE);
+        strings = stringConnection.sync();
+        buffers = bufferConnection.sync();
+
+        bytes = new byte[valueSize];
+        Arrays.fill(bytes, (byte) 'v');
+        stringValue = new String(bytes, StandardCharsets.UTF_8);
+        strings.set("bench:blob", stringValue);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stringConnection.close();
+        bufferConnection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public void getString(Blackhole bh) {
+        bh.consume(ByteBuffer.wrap(strings.get("bench:blob").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public void getBuffer(Blackhole bh) {
+        try (BufferValue value = buffers.get("bench:blob")) {
+            bh.consume(value.buffer());
+        }
+    }
+
+    @Benchmark
+    public void getrangeString(Blackhole bh) {
+        bh.consume(strings.getrange("bench:blob", 0, valueSize / 2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void getrangeBuffer(Blackhole bh) {
+        try (BufferValue value = buffers.getrange("bench:blob", 0, valueSize / 2)) {
+            bh.consume(value.buffer());
+        }
+    }
+
+    @Benchmark
+    public void setString(Blackhole bh) {
+        // a caller holding bytes has to build the String first.
+        bh.consume(strings.set("bench:write", new String(bytes, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public void setBuffer(Blackhole bh) {
+        bh.consume(buffers.set("bench:write", BufferValue.wrap(bytes)));
+    }
+}
@@ -0,0 +1,208 @@
+package com.redislettuce.benchmarks;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.reactive.RedisReactiveCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Throughput and latency percentiles (SampleTime reports p50/p99/p99.9) of the commands used by the *Test classes,
+ * through the sync, async and reactive API of the same connection, against an in-process {@link LocalRedisServer}.
+ *
+ * One invocation issues every command of the benchmark {@code pipelineDepth} times before waiting for the replies,
+ * e.g. {@code getSet} with depth 16 sends 16 SET and 16 GET. The sync API cannot pipeline, so there the depth
+ * just repeats the commands back to back.
+ *
+ * run: java -jar benchmarks/target/benchmarks.jar CommandPathBenchmark (add "-bm thrpt -tu s" for ops/s)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CommandPathBenchmark {
+
+    private static final String[] MULTI_KEYS = {"bench:m0", "bench:m1", "bench:m2", "bench:m3", "bench:m4",
+            "bench:m5", "bench:m6", "bench:m7", "bench:m8", "bench:m9"};
+
+    @Param({"sync", "async", "reactive"})
+    public String api;
+
+    @Param({"16", "1024", "16384"})
+    public int valueSize;
+
+    @Param({"1", "16"})
+    public int pipelineDepth;
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> sync;
+
+    private RedisAsyncCommands<String, String> async;
+
+    private RedisReactiveCommands<String, String> reactive;
+
+    private String value;
+
+    private Map<String, String> multi;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        connection = client.connect();
+        sync = connection.sync();
+        async = connection.async();
+        reactive = connection.reactive();
+
+        char[] chars = new char[valueSize];
+        Arrays.fill(chars, 'v');
+        value = new String(chars);
+        multi = new HashMap<>();
+        for (String key : MULTI_KEYS) {
+            multi.put(key, value);
+        }
+
+        sync.set("bench:string", value);
+        sync.mset(multi);
+        sync.hset("bench:hash", "field", value);
+        for (int i = 0; i < 10; i++) {
+            sync.rpush("bench:list", value);
+        }
+        for (int i = 0; i < 100; i++) {
+            sync.sadd("bench:set:a", "member" + i);
+            if (i % 2 == 0) {
+                sync.sadd("bench:set:b", "member" + i);
+            }
+            sync.zadd("bench:zset", i, "member" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public void getSet(Blackhole bh) {
+        run(bh, s -> s.set("bench:string", value), a -> a.set("bench:string", value),
+                r -> r.set("bench:string", value));
+        run(bh, s -> s.get("bench:string"), a -> a.get("bench:string"), r -> r.get("bench:string"));
+    }
+
+    @Benchmark
+    public void mgetMset(Blackhole bh) {
+        run(bh, s -> s.mset(multi), a -> a.mset(multi), r -> r.mset(multi));
+        run(bh, s -> s.mget(MULTI_KEYS), a -> a.mget(MULTI_KEYS), r -> r.mget(MULTI_KEYS).collectList());
+    }
+
+    @Benchmark
+    public void incrIncrByFloat(Blackhole bh) {
+        run(bh, s -> s.incr("bench:counter"), a -> a.incr("bench:counter"), r -> r.incr("bench:counter"));
+        run(bh, s -> s.incrbyfloat("bench:float", 1.1), a -> a.incrbyfloat("bench:float", 1.1),
+                r -> r.incrbyfloat("bench:float", 1.1));
+    }
+
+    @Benchmark
+    public void hsetHget(Blackhole bh) {
+        run(bh, s -> s.hset("bench:hash", "field", value), a -> a.hset("bench:hash", "field", value),
+                r -> r.hset("bench:hash", "field", value));
+        run(bh, s -> s.hget("bench:hash", "field"), a -> a.hget("bench:hash", "field"),
+                r -> r.hget("bench:hash", "field"));
+    }
+
+    @Benchmark
+    public void lpushLrangeLpop(Blackhole bh) {
+        run(bh, s -> s.lpush("bench:list", value), a -> a.lpush("bench:list", value),
+                r -> r.lpush("bench:list", value));
+        run(bh, s -> s.lrange("bench:list", 0, 9), a -> a.lrange("bench:list", 0, 9),
+                r -> r.lrange("bench:list", 0, 9).collectList());
+        run(bh, s -> s.lpop("bench:list"), a -> a.lpop("bench:list"), r -> r.lpop("bench:list"));
+    }
+
+    @Benchmark
+    public void saddSinterSdiff(Blackhole bh) {
+        run(bh, s -> s.sadd("bench:set:a", "member1"), a -> a.sadd("bench:set:a", "member1"),
+                r -> r.sadd("bench:set:a", "member1"));
+        run(bh, s -> s.sinter("bench:set:a", "bench:set:b"), a -> a.sinter("bench:set:a", "bench:set:b"),
+                r -> r.sinter("bench:set:a", "bench:set:b").collectList());
+        run(bh, s -> s.sdiff("bench:set:a", "bench:set:b"), a -> a.sdiff("bench:set:a", "bench:set:b"),
+                r -> r.sdiff("bench:set:a", "bench:set:b").collectList());
+    }
+
+    @Benchmark
+    public void zaddZrangeZscore(Blackhole bh) {
+        run(bh, s -> s.zadd("bench:zset", 42, "member42"), a -> a.zadd("bench:zset", 42, "member42"),
+                r -> r.zadd("bench:zset", 42, "member42"));
+        run(bh, s -> s.zrange("bench:zset", 0, 9), a -> a.zrange("bench:zset", 0, 9),
+                r -> r.zrange("bench:zset", 0, 9).collectList());
+        run(bh, s -> s.zscore("bench:zset", "member42"), a -> a.zscore("bench:zset", "member42"),
+                r -> r.zscore("bench:zset", "member42"));
+    }
+
+    private void run(Blackhole bh, Function<RedisCommands<String, String>, ?> syncCall,
+                     Function<RedisAsyncCommands<String, String>, RedisFuture<?>> asyncCall,
+                     Function<RedisReactiveCommands<String, String>, Publisher<?>> reactiveCall) {
+        switch (api) {
+            case "sync":
+                for (int i = 0; i < pipelineDepth; i++) {
+                    bh.consume(syncCall.apply(sync));
+                }
+                break;
+            case "async":
+                RedisFuture<?>[] futures = new RedisFuture[pipelineDepth];
+                for (int i = 0; i < pipelineDepth; i++) {
+                    futures[i] = asyncCall.apply(async);
+                }
+                LettuceFutures.awaitAll(connection.getTimeout(), futures);
+                for (RedisFuture<?> future : futures) {
+                    bh.consume(future.toCompletableFuture().getNow(null));
+                }
+                break;
+            case "reactive":
+                List<Publisher<?>> publishers = new ArrayList<>(pipelineDepth);
+                for (int i = 0; i < pipelineDepth; i++) {
+                    publishers.add(reactiveCall.apply(reactive));
+                }
+                bh.consume(Flux.merge(Flux.fromIterable(publishers), pipelineDepth).blockLast());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown api " + api);
+        }
+    }
+}
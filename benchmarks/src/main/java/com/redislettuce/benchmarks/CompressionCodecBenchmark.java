@@ -0,0 +1,101 @@
+package com.redislettuce.benchmarks;
+
+import com.redislettuce.codec.CompressionCodec;
+import com.redislettuce.codec.CompressionDictionary;
+import io.lettuce.core.codec.StringCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of {@link CompressionCodec} on JSON values of different sizes, with and without a trained dictionary,
+ * to choose the threshold: below it a value costs nothing but is stored at full size. The compression ratio of each
+ * combination is printed at the end of its trial; together with the time per operation it tells whether the
+ * bandwidth and memory saved is worth the CPU.
+ *
+ * run: java -jar benchmarks/target/benchmarks.jar CompressionCodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionCodecBenchmark {
+
+    @Param({"1", "4", "16", "128"})
+    public int orders;
+
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    private CompressionCodec<String, String> codec;
+
+    private String value;
+
+    private ByteBuffer encoded;
+
+    private ByteBuf target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(json(i, 1 + i % 4).getBytes(StandardCharsets.UTF_8));
+        }
+        CompressionCodec.Builder<String, String> builder = CompressionCodec.builder(StringCodec.UTF8).threshold(1);
+        if (dictionary) {
+            builder.dictionary(CompressionDictionary.train(samples, 8192));
+        }
+        codec = builder.build();
+        value = json(100_000, orders);
+        encoded = codec.encodeValue(value);
+        target = Unpooled.buffer(value.length() * 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%d bytes, dictionary %s: %d bytes stored, ratio %.2f%n", value.length(), dictionary,
+                encoded.remaining(), (double) value.length() / encoded.remaining());
+    }
+
+    @Benchmark
+    public ByteBuf encode() {
+        target.clear();
+        codec.encodeValue(value, target);
+        return target;
+    }
+
+    @Benchmark
+    public String decode() {
+        return codec.decodeValue(encoded.duplicate());
+    }
+
+    private static String json(int id, int orders) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(id).append(",\"name\":\"user").append(id)
+                .append("\",\"email\":\"user").append(id).append("@example.com\",\"status\":\"active\",\"orders\":[");
+        for (int i = 0; i < orders; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"orderId\":").append(id * 100 + i)
+                    .append(",\"currency\":\"EUR\",\"shipping\":\"standard\",\"state\":\"delivered\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
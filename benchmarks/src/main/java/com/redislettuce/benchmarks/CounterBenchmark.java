@@ -0,0 +1,90 @@
+package com.redislettuce.benchmarks;
+
+import com.redislettuce.counter.StripedCounters;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter increments per second: one INCR per event (sync, and async with the reply ignored) against
+ * {@link StripedCounters}. Run with several thread counts to see how each scales, the direct variants are bound by
+ * the connection, the striped one by the cores.
+ *
+ * run: java -jar benchmarks/target/benchmarks.jar CounterBenchmark -t 1 (then -t 4, -t 8)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class CounterBenchmark {
+
+    private static final String KEY = "bench:counter";
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> direct;
+
+    private StatefulRedisConnection<String, String> counterConnection;
+
+    private RedisCommands<String, String> sync;
+
+    private RedisAsyncCommands<String, String> async;
+
+    private StripedCounters counters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        direct = client.connect();
+        sync = direct.sync();
+        async = direct.async();
+        counterConnection = client.connect();
+        counters = StripedCounters.builder(counterConnection).flushInterval(Duration.ofMillis(100)).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        counters.close();
+        counterConnection.close();
+        direct.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public Long incrSync() {
+        return sync.incr(KEY);
+    }
+
+    @Benchmark
+    public Object incrAsync() {
+        return async.incr(KEY);
+    }
+
+    @Benchmark
+    public void incrStriped() {
+        counters.increment(KEY);
+    }
+}
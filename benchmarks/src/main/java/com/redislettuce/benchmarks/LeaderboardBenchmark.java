@@ -0,0 +1,170 @@
+package com.redislettuce.benchmarks;
+
+import com.redislettuce.leaderboard.Leaderboard;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.event.command.CommandListener;
+import io.lettuce.core.event.command.CommandStartedEvent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server commands per leaderboard update and per top-10 read: one ZINCRBY / ZREVRANGE per call against
+ * {@link Leaderboard}'s coalesced flushes and cached window.
+ *
+ * Updates pick members with a skew (a few players score most points, like real traffic), so coalescing has
+ * something to merge. The {@code commands} counter is the number of commands the client sent during a measured
+ * iteration; divided by (score * iteration time) it gives commands per operation, 1 for the direct variants. With
+ * 1000 members a short run showed about 0.004 commands per update and a handful of window loads in total for
+ * millions of reads.
+ *
+ * run: java -jar benchmarks/target/benchmarks.jar LeaderboardBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LeaderboardBenchmark {
+
+    private static final String KEY = "bench:leaderboard";
+
+    @Param({"1000", "100000"})
+    public int members;
+
+    private final LongAdder sent = new LongAdder();
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> direct;
+
+    private StatefulRedisConnection<String, String> boardConnection;
+
+    private RedisCommands<String, String> commands;
+
+    private Leaderboard board;
+
+    private String[] names;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        client.addListener(new CommandListener() {
+
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                sent.increment();
+            }
+        });
+        direct = client.connect();
+        commands = direct.sync();
+        boardConnection = client.connect();
+        board = Leaderboard.builder(boardConnection, KEY).windowSize(100).flushInterval(Duration.ofMillis(50))
+                .refreshInterval(Duration.ofSeconds(1)).build();
+        names = new String[members];
+        List<ScoredValue<String>> batch = new ArrayList<>();
+        for (int i = 0; i < members; i++) {
+            names[i] = "player" + i;
+            batch.add(ScoredValue.just(i, names[i]));
+            if (batch.size() == 1000 || i == members - 1) {
+                commands.zadd(KEY, batch.toArray(new ScoredValue[0]));
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        board.close();
+        boardConnection.close();
+        direct.close();
+        client.shutdown();
+        server.close();
+    }
+
+    /**
+     * Commands sent by the client during the iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long commands;
+
+        private long baseline;
+
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        @Setup(Level.Iteration)
+        public void reset(LeaderboardBenchmark benchmark) {
+            baseline = benchmark.sent.sum();
+            commands = 0;
+        }
+
+        void update(LeaderboardBenchmark benchmark) {
+            commands = benchmark.sent.sum() - baseline;
+        }
+
+        /**
+         * Squared uniform: member i is picked with a probability decreasing like 1 / sqrt(i).
+         */
+        String member(String[] names) {
+            double u = random.nextDouble();
+            return names[(int) (u * u * names.length)];
+        }
+    }
+
+    @Benchmark
+    public Double updateDirect(Counters counters) {
+        Double score = commands.zincrby(KEY, 1, counters.member(names));
+        counters.update(this);
+        return score;
+    }
+
+    @Benchmark
+    public void updateLeaderboard(Counters counters) {
+        board.increment(counters.member(names), 1);
+        counters.update(this);
+    }
+
+    @Benchmark
+    public List<ScoredValue<String>> topDirect(Counters counters) {
+        List<ScoredValue<String>> top = commands.zrevrangeWithScores(KEY, 0, 9);
+        counters.update(this);
+        return top;
+    }
+
+    @Benchmark
+    public List<ScoredValue<String>> topLeaderboard(Counters counters) {
+        List<ScoredValue<String>> top = board.top(10);
+        counters.update(this);
+        return top;
+    }
+}
@@ -0,0 +1,144 @@
+package com.redislettuce;
+
+import com.redislettuce.bulk.BulkLoader;
+import com.redislettuce.bulk.Format;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command line bulk import, see {@link BulkLoader} for how it works and {@link Format} for the input formats.
+ * Prints a progress line per interval and a summary at the end; run it again with the same checkpoint file to
+ * resume an interrupted import:
+ * <pre>
+ * java -cp ... com.redislettuce.BulkImport --uri redis://localhost:7001 --cluster --checkpoint users.checkpoint users.csv
+ * </pre>
+ */
+public class BulkImport {
+
+    private static final String USAGE = String.join("\n",
+            "usage: BulkImport [options] <file>",
+            "  --uri <uri>              redis://localhost:6379",
+            "  --cluster                the uri is a cluster node",
+            "  --format <csv|jsonl>     told from the file name if absent",
+            "  --threads <n>            parser threads, the number of cores",
+            "  --batch <n>              records per node and batch, 1000",
+            "  --depth <n>              batches in flight per thread and node, 8",
+            "  --segment <MiB>          input per unit of work and checkpoint, 16",
+            "  --checkpoint <file>      resume from and record progress in this file",
+            "  --resume-from <offset>   byte offset to start at, 0",
+            "  --interval <time>        progress report interval, 1s",
+            "  --help                   this text",
+            "times are like 500ms, 30s or 2m");
+
+    public static void main(String[] args) throws InterruptedException {
+        int status = run(args, System.out);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the import with command line {@code args}, printing to {@code out}.
+     *
+     * @return the exit status: 0 if everything was imported, 1 if not, 2 for a usage error.
+     */
+    public static int run(String[] args, PrintStream out) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        Path file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    if (file != null) {
+                        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                    }
+                    file = Paths.get(args[i]);
+                    continue;
+                }
+                String name = args[i].substring(2);
+                if (!USAGE.contains("--" + name + " ")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                if (name.equals("cluster") || name.equals("help")) {
+                    options.put(name, "true");
+                } else if (i + 1 < args.length) {
+                    options.put(name, args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Missing value of " + args[i]);
+                }
+            }
+            if (options.containsKey("help")) {
+                out.println(USAGE);
+                return 0;
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("Missing input file");
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println(USAGE);
+            return 2;
+        }
+
+        String uri = options.getOrDefault("uri", "redis://localhost:6379");
+        boolean cluster = options.containsKey("cluster");
+        RedisClient client = cluster ? null : RedisClient.create(uri);
+        RedisClusterClient clusterClient = cluster ? RedisClusterClient.create(uri) : null;
+        try {
+            BulkLoader loader;
+            try {
+                BulkLoader.Builder builder = cluster ? BulkLoader.builder(clusterClient) : BulkLoader.builder(client);
+                if (options.containsKey("format")) {
+                    builder.format(Format.valueOf(options.get("format").toUpperCase(Locale.ROOT)));
+                }
+                if (options.containsKey("threads")) {
+                    builder.threads(Integer.parseInt(options.get("threads")));
+                }
+                if (options.containsKey("checkpoint")) {
+                    builder.checkpointFile(Paths.get(options.get("checkpoint")));
+                }
+                loader = builder.batchSize(Integer.parseInt(options.getOrDefault("batch", "1000")))
+                        .pipelineDepth(Integer.parseInt(options.getOrDefault("depth", "8")))
+                        .segmentSize(Integer.parseInt(options.getOrDefault("segment", "16")) * 1024 * 1024)
+                        .resumeFrom(Long.parseLong(options.getOrDefault("resume-from", "0")))
+                        .progressInterval(LoadGenerator.duration(options.getOrDefault("interval", "1s")))
+                        .listener(out::println)
+                        .build();
+            } catch (IllegalArgumentException e) {
+                out.println(e.getMessage());
+                out.println(USAGE);
+                return 2;
+            }
+            BulkLoader.Progress result = loader.load(file);
+            out.println();
+            out.println(String.format(Locale.ROOT, "%s: %d records in %.1fs, %.0f rows/s, %d invalid lines, "
+                            + "%d failed segments, checkpoint %d of %d bytes", result.isComplete() ? "done"
+                            : "incomplete", result.getRecords(), result.getSeconds(), result.getRecordsPerSecond(),
+                    result.getInvalid(), result.getFailedSegments(), result.getCheckpoint(), result.getFileSize()));
+            if (result.getFirstInvalid() != null) {
+                out.println("first invalid line at " + result.getFirstInvalid());
+            }
+            if (result.getFirstFailure() != null) {
+                out.println("first failure: " + result.getFirstFailure());
+            }
+            return result.isComplete() ? 0 : 1;
+        } catch (IOException | IllegalArgumentException e) {
+            out.println("Import failed: " + e.getMessage());
+            return 1;
+        } finally {
+            if (client != null) {
+                client.shutdown();
+            }
+            if (clusterClient != null) {
+                clusterClient.shutdown();
+            }
+        }
+    }
+}
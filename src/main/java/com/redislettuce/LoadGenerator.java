@@ -0,0 +1,184 @@
+package com.redislettuce;
+
+import com.redislettuce.loadgen.KeyDistribution;
+import com.redislettuce.loadgen.LoadReport;
+import com.redislettuce.loadgen.LoadRun;
+import com.redislettuce.loadgen.Workload;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line load generator, see {@link LoadRun} for the load models and {@link LoadReport} for what is
+ * measured. Prints a line per interval while running and the latency table at the end:
+ * <pre>
+ * java -cp ... com.redislettuce.LoadGenerator --uri redis://localhost:6379 --connections 8 \
+ *     --mix get=70,set=10,hget=10,zincrby=10 --distribution zipfian --rate 50000 --open --json report.json
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final String USAGE = String.join("\n",
+            "usage: LoadGenerator [options]",
+            "  --uri <uri>              redis://localhost:6379",
+            "  --cluster                the uri is a cluster node",
+            "  --connections <n>        4",
+            "  --concurrency <n>        operations in flight per connection in the closed loop, 1",
+            "  --rate <ops/s>           fixed rate over all connections, as fast as possible if absent",
+            "  --open                   open loop at --rate instead of waiting for replies",
+            "  --max-in-flight <n>      outstanding operations of the open loop, 100000",
+            "  --duration <time>        measured period, 30s",
+            "  --warmup <time>          5s",
+            "  --interval <time>        throughput report interval, 1s",
+            "  --mix <op=weight,...>    get=80,set=20; get set incr hget hset hgetall lpush rpop lrange sadd srem",
+            "                           sismember zadd zincrby zscore zrange",
+            "  --keys <n>               keys per data type, 100000",
+            "  --distribution <name>    uniform, zipfian or zipfian:<theta>, uniform",
+            "  --value-size <n|min-max> bytes, 100",
+            "  --members <n>            hash fields and set members per key, 100",
+            "  --range <n>              elements read by lrange and zrange, 10",
+            "  --prefix <prefix>        loadgen:",
+            "  --json <file|->          also write the report as json",
+            "  --help                   this text",
+            "times are like 500ms, 30s or 2m");
+
+    public static void main(String[] args) throws InterruptedException {
+        int status = run(args, System.out);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs the load generator with command line {@code args}, printing to {@code out}.
+     *
+     * @return the exit status.
+     */
+    public static int run(String[] args, PrintStream out) throws InterruptedException {
+        Map<String, String> options;
+        Workload workload;
+        try {
+            options = parse(args);
+            if (options.containsKey("help")) {
+                out.println(USAGE);
+                return 0;
+            }
+            Workload.Builder builder = Workload.builder()
+                    .keys(KeyDistribution.parse(options.getOrDefault("distribution", "uniform"),
+                            Long.parseLong(options.getOrDefault("keys", "100000"))))
+                    .members(Integer.parseInt(options.getOrDefault("members", "100")))
+                    .rangeSize(Integer.parseInt(options.getOrDefault("range", "10")))
+                    .prefix(options.getOrDefault("prefix", "loadgen:"));
+            if (options.containsKey("mix")) {
+                builder.mix(Workload.parseMix(options.get("mix")));
+            }
+            String size = options.getOrDefault("value-size", "100");
+            int dash = size.indexOf('-');
+            if (dash > 0) {
+                builder.valueSize(Integer.parseInt(size.substring(0, dash)), Integer.parseInt(size.substring(dash + 1)));
+            } else {
+                builder.valueSize(Integer.parseInt(size));
+            }
+            workload = builder.build();
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println(USAGE);
+            return 2;
+        }
+
+        String uri = options.getOrDefault("uri", "redis://localhost:6379");
+        boolean cluster = options.containsKey("cluster");
+        RedisClient client = cluster ? null : RedisClient.create(uri);
+        RedisClusterClient clusterClient = cluster ? RedisClusterClient.create(uri) : null;
+        try {
+            LoadRun.Builder run = cluster ? LoadRun.builder(clusterClient) : LoadRun.builder(client);
+            LoadRun load;
+            try {
+                load = run.workload(workload)
+                        .connections(Integer.parseInt(options.getOrDefault("connections", "4")))
+                        .concurrency(Integer.parseInt(options.getOrDefault("concurrency", "1")))
+                        .rate(Double.parseDouble(options.getOrDefault("rate", "0")))
+                        .openLoop(options.containsKey("open"))
+                        .maxInFlight(Integer.parseInt(options.getOrDefault("max-in-flight", "100000")))
+                        .duration(duration(options.getOrDefault("duration", "30s")))
+                        .warmup(duration(options.getOrDefault("warmup", "5s")))
+                        .reportInterval(duration(options.getOrDefault("interval", "1s")))
+                        .listener(out::println)
+                        .build();
+            } catch (IllegalArgumentException e) {
+                out.println(e.getMessage());
+                out.println(USAGE);
+                return 2;
+            }
+            out.println("workload mix=" + workload.getMix() + " keys=" + workload.getKeys().getKeys() + " "
+                    + workload.getKeys() + " value=" + workload.getMinValueSize() + "-" + workload.getMaxValueSize()
+                    + " bytes");
+            LoadReport report = load.run();
+            out.println();
+            out.print(report.toText());
+            String json = options.get("json");
+            if ("-".equals(json)) {
+                out.print(report.toJson());
+            } else if (json != null) {
+                Files.write(Paths.get(json), report.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            return 0;
+        } catch (IOException e) {
+            out.println("Could not write the report: " + e);
+            return 1;
+        } finally {
+            if (client != null) {
+                client.shutdown();
+            }
+            if (clusterClient != null) {
+                clusterClient.shutdown();
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (!USAGE.contains("--" + name + " ")) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            if (name.equals("cluster") || name.equals("open") || name.equals("help")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value of " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    static Duration duration(String text) {
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        long amount = Long.parseLong(text.substring(0, text.length() - 1));
+        switch (text.charAt(text.length() - 1)) {
+            case 's':
+                return Duration.ofSeconds(amount);
+            case 'm':
+                return Duration.ofMinutes(amount);
+            case 'h':
+                return Duration.ofHours(amount);
+            default:
+                throw new IllegalArgumentException("Expected a time like 500ms, 30s or 2m, got " + text);
+        }
+    }
+}
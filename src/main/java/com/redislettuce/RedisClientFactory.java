@@ -0,0 +1,351 @@
+package com.redislettuce;
+
+import com.redislettuce.metrics.CommandMetrics;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.lettuce.core.support.AsyncConnectionPoolSupport;
+import io.lettuce.core.support.BoundedAsyncPool;
+import io.lettuce.core.support.BoundedPoolConfig;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Long-lived entry point for talking to redis.
+ *
+ * One factory owns one {@link ClientResources} (event loops, timers, computation threads), one
+ * {@link RedisClient} and one bounded pool of connected {@link StatefulRedisConnection}s. Creating
+ * the factory opens {@code minIdle} connections and sends a PING over each of them, so the first
+ * real command does not pay for the TCP handshake or the netty bootstrap.
+ *
+ * Connections handed out by {@link #borrow()} go back to the pool when they are closed, so the usual
+ * way to use them is try-with-resources:
+ * <pre>
+ * try (StatefulRedisConnection&lt;String, String&gt; connection = factory.borrow()) {
+ *     connection.sync().get("hello");
+ * }
+ * </pre>
+ *
+ * Create one factory per redis deployment and share it for the lifetime of the application.
+ */
+public class RedisClientFactory implements AutoCloseable {
+
+    private final ClientResources resources;
+
+    private final boolean sharedResources;
+
+    private final RedisClient client;
+
+    private final BoundedAsyncPool<StatefulRedisConnection<String, String>> pool;
+
+    private final Duration borrowTimeout;
+
+    private final LongAdder borrowCount = new LongAdder();
+
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    private RedisClientFactory(Builder builder) {
+        this.sharedResources = builder.resources != null;
+        this.resources = sharedResources ? builder.resources : createResources(builder.metrics);
+        this.client = RedisClient.create(resources, builder.uri);
+        if (builder.metrics != null) {
+            builder.metrics.attach(client);
+        }
+        this.borrowTimeout = builder.borrowTimeout;
+
+        BoundedPoolConfig config = BoundedPoolConfig.builder()
+                .minIdle(builder.minIdle)
+                .maxIdle(builder.maxTotal)
+                .maxTotal(builder.maxTotal)
+                .testOnAcquire(builder.testOnAcquire)
+                .build();
+        try {
+            // the async variant completes only after minIdle connections are established (and pinged).
+            this.pool = AsyncConnectionPoolSupport.createBoundedObjectPoolAsync(
+                    () -> client.connectAsync(StringCodec.UTF8, builder.uri).thenCompose(RedisClientFactory::warmUp),
+                    config).toCompletableFuture().join();
+            awaitIdle(pool, builder.minIdle);
+        } catch (RuntimeException e) {
+            client.shutdown();
+            if (!sharedResources) {
+                resources.shutdown();
+            }
+            throw e;
+        }
+    }
+
+    private static ClientResources createResources(CommandMetrics metrics) {
+        if (metrics == null) {
+            return DefaultClientResources.create();
+        }
+        return metrics.configure(DefaultClientResources.builder()).build();
+    }
+
+    public static Builder builder(String uri) {
+        return new Builder(RedisURI.create(uri));
+    }
+
+    public static Builder builder(RedisURI uri) {
+        return new Builder(uri);
+    }
+
+    public static RedisClientFactory create(String uri) {
+        return builder(uri).build();
+    }
+
+    /**
+     * Borrows a connected connection from the pool, waiting at most the configured borrow timeout for a new
+     * connection to be opened. When all {@code maxTotal} connections are borrowed it fails at once (the pool does not
+     * queue callers) with a {@link CompletionException} caused by a {@link java.util.NoSuchElementException}.
+     * Closing the returned connection hands it back to the pool instead of closing the socket.
+     */
+    public StatefulRedisConnection<String, String> borrow() {
+        long start = System.nanoTime();
+        CompletableFuture<StatefulRedisConnection<String, String>> acquire = pool.acquire();
+        try {
+            return acquire.get(borrowTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            releaseWhenAcquired(acquire);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a pooled connection", e);
+        } catch (TimeoutException e) {
+            releaseWhenAcquired(acquire);
+            throw new IllegalStateException("Timed out after " + borrowTimeout + " waiting for a pooled connection", e);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #borrow()}. The caller must close (or {@link #release}) the connection.
+     */
+    public CompletableFuture<StatefulRedisConnection<String, String>> borrowAsync() {
+        long start = System.nanoTime();
+        return pool.acquire().whenComplete((connection, error) -> recordWait(System.nanoTime() - start));
+    }
+
+    public CompletableFuture<Void> release(StatefulRedisConnection<String, String> connection) {
+        return pool.release(connection);
+    }
+
+    /**
+     * Runs {@code action} with a pooled connection and returns the connection afterwards.
+     */
+    public <T> T execute(Function<StatefulRedisConnection<String, String>, T> action) {
+        try (StatefulRedisConnection<String, String> connection = borrow()) {
+            return action.apply(connection);
+        }
+    }
+
+    public RedisClient getClient() {
+        return client;
+    }
+
+    public ClientResources getResources() {
+        return resources;
+    }
+
+    public PoolStats stats() {
+        long borrows = borrowCount.sum();
+        long total = totalWaitNanos.sum();
+        return new PoolStats(pool.getObjectCount(), pool.getIdle(), pool.getMaxTotal(), borrows,
+                borrows == 0 ? 0 : total / borrows, maxWaitNanos.get());
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        client.shutdown();
+        if (!sharedResources) {
+            resources.shutdown();
+        }
+    }
+
+    /**
+     * Pings every new connection before the pool gets it. Borrowing the idle connections to ping them would make
+     * the pool open replacements, up to maxTotal, to keep minIdle connections idle.
+     */
+    private static CompletionStage<StatefulRedisConnection<String, String>> warmUp(
+            StatefulRedisConnection<String, String> connection) {
+        return connection.async().ping().handle((pong, error) -> {
+            if (error != null) {
+                connection.closeAsync();
+                throw error instanceof CompletionException ? (CompletionException) error
+                        : new CompletionException(error);
+            }
+            return connection;
+        });
+    }
+
+    /**
+     * The pool's creation future completes as soon as the minIdle connections are open, before the callbacks that
+     * add them to its idle set ran; a borrow right after would find none idle and open another connection, or fail
+     * with an exhausted pool.
+     */
+    private static void awaitIdle(BoundedAsyncPool<?> pool, int minIdle) {
+        while (pool.getIdle() < minIdle) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * The pool still completes an acquire the caller gave up on once a connection is free; that connection has to go
+     * back, or every timeout would shrink the pool by one for good.
+     */
+    private void releaseWhenAcquired(CompletableFuture<StatefulRedisConnection<String, String>> acquire) {
+        acquire.whenComplete((connection, error) -> {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        });
+    }
+
+    private void recordWait(long nanos) {
+        borrowCount.increment();
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulate(nanos);
+    }
+
+    /**
+     * Point-in-time view of the pool and of how long callers waited to borrow from it.
+     */
+    public static class PoolStats {
+
+        private final int connections;
+
+        private final int idle;
+
+        private final int maxTotal;
+
+        private final long borrowCount;
+
+        private final long meanWaitNanos;
+
+        private final long maxWaitNanos;
+
+        PoolStats(int connections, int idle, int maxTotal, long borrowCount, long meanWaitNanos, long maxWaitNanos) {
+            this.connections = connections;
+            this.idle = idle;
+            this.maxTotal = maxTotal;
+            this.borrowCount = borrowCount;
+            this.meanWaitNanos = meanWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public int getConnections() {
+            return connections;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public long getBorrowCount() {
+            return borrowCount;
+        }
+
+        public long getMeanWaitNanos() {
+            return meanWaitNanos;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "PoolStats{connections=" + connections + ", idle=" + idle + ", maxTotal=" + maxTotal
+                    + ", borrowCount=" + borrowCount + ", meanWait=" + TimeUnit.NANOSECONDS.toMicros(meanWaitNanos)
+                    + "us, maxWait=" + TimeUnit.NANOSECONDS.toMicros(maxWaitNanos) + "us}";
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisURI uri;
+
+        private ClientResources resources;
+
+        private int minIdle = 2;
+
+        private int maxTotal = 8;
+
+        private boolean testOnAcquire;
+
+        private Duration borrowTimeout = Duration.ofSeconds(5);
+
+        private CommandMetrics metrics;
+
+        private Builder(RedisURI uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * Share externally managed resources. They are not shut down when the factory is closed.
+         */
+        public Builder clientResources(ClientResources resources) {
+            this.resources = resources;
+            return this;
+        }
+
+        public Builder minIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        public Builder maxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * Ping every connection before it is handed out. Costs one round trip per borrow.
+         */
+        public Builder testOnAcquire(boolean testOnAcquire) {
+            this.testOnAcquire = testOnAcquire;
+            return this;
+        }
+
+        public Builder borrowTimeout(Duration borrowTimeout) {
+            this.borrowTimeout = borrowTimeout;
+            return this;
+        }
+
+        /**
+         * Record command metrics. Latencies and bytes are only recorded when the factory creates its own resources
+         * or the shared resources were built with {@link CommandMetrics#configure}.
+         */
+        public Builder metrics(CommandMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public RedisClientFactory build() {
+            if (minIdle < 0 || maxTotal < 1 || minIdle > maxTotal) {
+                throw new IllegalArgumentException("Require 0 <= minIdle <= maxTotal and maxTotal >= 1, got minIdle="
+                        + minIdle + ", maxTotal=" + maxTotal);
+            }
+            return new RedisClientFactory(this);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.redislettuce;
+
+import com.redislettuce.snapshot.Snapshot;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.cluster.RedisClusterClient;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line export and restore of a keyspace, see {@link Snapshot}:
+ * <pre>
+ * java -cp ... com.redislettuce.SnapshotTool export --uri redis://prod:7001 --cluster keys.snapshot
+ * java -cp ... com.redislettuce.SnapshotTool restore --uri redis://localhost:6379 --replace keys.snapshot
+ * </pre>
+ */
+public class SnapshotTool {
+
+    private static final String USAGE = String.join("\n",
+            "usage: SnapshotTool export|restore [options] <file>",
+            "  --uri <uri>              redis://localhost:6379",
+            "  --cluster                the uri is a cluster node",
+            "  --match <pattern>        export the keys matching this pattern only",
+            "  --threads <n>            restore workers, the number of cores",
+            "  --batch <n>              keys per SCAN page and pipelined batch, 1000",
+            "  --depth <n>              restore batches in flight per worker and node, 8",
+            "  --block <KiB>            uncompressed block size, 1024",
+            "  --level <0-9>            deflate level, 1",
+            "  --replace                restore over existing keys",
+            "  --help                   this text");
+
+    public static void main(String[] args) throws InterruptedException {
+        int status = run(args, System.out);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Runs an export or restore with command line {@code args}, printing to {@code out}.
+     *
+     * @return the exit status: 0 if every key was copied, 1 if not, 2 for a usage error.
+     */
+    public static int run(String[] args, PrintStream out) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        String command = null;
+        Path file = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    if (command == null) {
+                        command = args[i];
+                    } else if (file == null) {
+                        file = Paths.get(args[i]);
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                    }
+                    continue;
+                }
+                String name = args[i].substring(2);
+                if (!USAGE.contains("--" + name + " ")) {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+                if (name.equals("cluster") || name.equals("replace") || name.equals("help")) {
+                    options.put(name, "true");
+                } else if (i + 1 < args.length) {
+                    options.put(name, args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Missing value of " + args[i]);
+                }
+            }
+            if (options.containsKey("help")) {
+                out.println(USAGE);
+                return 0;
+            }
+            if (!"export".equals(command) && !"restore".equals(command)) {
+                throw new IllegalArgumentException("Missing command, export or restore");
+            }
+            if (file == null) {
+                throw new IllegalArgumentException("Missing snapshot file");
+            }
+        } catch (IllegalArgumentException e) {
+            out.println(e.getMessage());
+            out.println(USAGE);
+            return 2;
+        }
+
+        String uri = options.getOrDefault("uri", "redis://localhost:6379");
+        boolean cluster = options.containsKey("cluster");
+        RedisClient client = cluster ? null : RedisClient.create(uri);
+        RedisClusterClient clusterClient = cluster ? RedisClusterClient.create(uri) : null;
+        try {
+            Snapshot snapshot;
+            try {
+                Snapshot.Builder builder = cluster ? Snapshot.builder(clusterClient) : Snapshot.builder(client);
+                if (options.containsKey("threads")) {
+                    builder.threads(Integer.parseInt(options.get("threads")));
+                }
+                snapshot = builder.match(options.get("match"))
+                        .batchSize(Integer.parseInt(options.getOrDefault("batch", "1000")))
+                        .pipelineDepth(Integer.parseInt(options.getOrDefault("depth", "8")))
+                        .blockSize(Integer.parseInt(options.getOrDefault("block", "1024")) * 1024)
+                        .compressionLevel(Integer.parseInt(options.getOrDefault("level", "1")))
+                        .replace(options.containsKey("replace"))
+                        .build();
+            } catch (IllegalArgumentException e) {
+                out.println(e.getMessage());
+                out.println(USAGE);
+                return 2;
+            }
+            Snapshot.Result result = command.equals("export") ? snapshot.export(file) : snapshot.restore(file);
+            String done = command.equals("export") ? "exported" : "restored";
+            out.println((result.isComplete() ? done : command + " incomplete") + ": " + result);
+            if (result.getFirstFailure() != null) {
+                out.println("first failure: " + result.getFirstFailure());
+            }
+            return result.isComplete() ? 0 : 1;
+        } catch (IOException | IllegalArgumentException e) {
+            out.println(command + " failed: " + e.getMessage());
+            return 1;
+        } finally {
+            if (client != null) {
+                client.shutdown();
+            }
+            if (clusterClient != null) {
+                clusterClient.shutdown();
+            }
+        }
+    }
+}
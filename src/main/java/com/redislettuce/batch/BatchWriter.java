@@ -0,0 +1,370 @@
+package com.redislettuce.batch;
+
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers LPUSH/RPUSH/SADD/ZADD/HSET calls and writes them as few, large, pipelined commands.
+ *
+ * Consecutive calls of the same command on the same key are merged into one multi-value command,
+ * e.g. three {@code lpush("mylist", x)} calls become a single {@code LPUSH mylist x y z}. The buffer is
+ * written when it holds {@code maxBatchSize} values or when the oldest buffered value is {@code maxDelay}
+ * old, whichever comes first. All commands of one flush are written to the socket with a single
+ * {@link StatefulRedisConnection#flushCommands()}.
+ *
+ * Every call returns its own future:
+ * <ul>
+ * <li>LPUSH/RPUSH: the list length right after this call's values were pushed, exactly as if it had been sent alone.</li>
+ * <li>SADD/ZADD/HSET: the reply of the merged command, i.e. the number of new members/fields of the whole batch.</li>
+ * </ul>
+ *
+ * Errors only show on these per-call futures: a failed merged command fails the futures of all calls merged into
+ * it, while {@link #flush()} and {@link #close()} complete normally regardless.
+ *
+ * At most {@code maxPending} values may be buffered or in flight. Once that is reached callers block for up to
+ * {@code backpressureTimeout} and then get a failed future.
+ *
+ * The writer switches off auto-flush on its connection, so the connection must not be shared with other code.
+ */
+public class BatchWriter implements AutoCloseable {
+
+    private enum Op {
+        LPUSH, RPUSH, SADD, ZADD, HSET
+    }
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int maxBatchSize;
+
+    private final Duration maxDelay;
+
+    private final Duration backpressureTimeout;
+
+    private final Semaphore pending;
+
+    private final Object bufferLock = new Object();
+
+    private final Object flushLock = new Object();
+
+    // groups in the order they have been opened, and the currently open group of each key.
+    private List<Group> groups = new ArrayList<>();
+
+    private Map<String, Group> openGroups = new HashMap<>();
+
+    private int bufferedValues;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    private volatile boolean closed;
+
+    private BatchWriter(Builder builder) {
+        this.connection = builder.connection;
+        this.commands = connection.async();
+        this.scheduler = builder.scheduler != null ? builder.scheduler : connection.getResources().eventExecutorGroup();
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxDelay = builder.maxDelay;
+        this.backpressureTimeout = builder.backpressureTimeout;
+        this.pending = new Semaphore(builder.maxPending);
+        connection.setAutoFlushCommands(false);
+    }
+
+    public static Builder builder(StatefulRedisConnection<String, String> connection) {
+        return new Builder(connection);
+    }
+
+    public CompletableFuture<Long> lpush(String key, String... values) {
+        return add(Op.LPUSH, key, values, null);
+    }
+
+    public CompletableFuture<Long> rpush(String key, String... values) {
+        return add(Op.RPUSH, key, values, null);
+    }
+
+    public CompletableFuture<Long> sadd(String key, String... members) {
+        return add(Op.SADD, key, members, null);
+    }
+
+    public CompletableFuture<Long> zadd(String key, double score, String member) {
+        return add(Op.ZADD, key, new String[]{member}, new double[]{score});
+    }
+
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return add(Op.HSET, key, new String[]{field, value}, null);
+    }
+
+    /**
+     * Writes everything buffered so far. The returned future completes when the server has answered all of it, and
+     * never fails: the errors of the batch are reported on the futures of the calls only.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (flushLock) {
+            List<Group> drained;
+            synchronized (bufferLock) {
+                drained = groups;
+                groups = new ArrayList<>();
+                openGroups = new HashMap<>();
+                bufferedValues = 0;
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+            }
+            if (drained.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<CompletableFuture<?>> replies = new ArrayList<>(drained.size());
+            for (Group group : drained) {
+                replies.add(dispatch(group));
+            }
+            connection.flushCommands();
+            // the callers' futures carry the errors.
+            return CompletableFuture.allOf(replies.toArray(new CompletableFuture[0]))
+                    .handle((ignore, error) -> null);
+        }
+    }
+
+    /**
+     * Flushes the remaining buffer, waits for the replies and restores auto-flush on the connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush().join();
+        connection.setAutoFlushCommands(true);
+    }
+
+    private CompletableFuture<Long> add(Op op, String key, String[] values, double[] scores) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new RedisException("BatchWriter is closed"));
+            return result;
+        }
+        if (key == null || values == null || Arrays.asList(values).contains(null)) {
+            result.completeExceptionally(new IllegalArgumentException("Key and values must not be null"));
+            return result;
+        }
+        int weight = op == Op.HSET ? 1 : values.length;
+        if (weight == 0) {
+            result.completeExceptionally(new IllegalArgumentException("At least one value is required"));
+            return result;
+        }
+        if (!acquire(weight)) {
+            result.completeExceptionally(new RedisException("BatchWriter buffer full: " + weight
+                    + " values could not be buffered within " + backpressureTimeout));
+            return result;
+        }
+
+        boolean flushNow;
+        synchronized (bufferLock) {
+            Group group = openGroups.get(key);
+            if (group == null || group.op != op) {
+                group = new Group(op, key);
+                groups.add(group);
+                openGroups.put(key, group);
+            }
+            group.add(values, scores, result, weight);
+            bufferedValues += weight;
+            flushNow = bufferedValues >= maxBatchSize;
+            if (!flushNow && scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, maxDelay.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+        return result;
+    }
+
+    private boolean acquire(int permits) {
+        try {
+            return pending.tryAcquire(permits, backpressureTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private CompletableFuture<Long> dispatch(Group group) {
+        RedisFuture<Long> reply;
+        try {
+            reply = send(group);
+        } catch (RuntimeException e) {
+            // rejected before it was written, the other groups of the flush still go out.
+            pending.release(group.weight);
+            group.complete(null, e);
+            CompletableFuture<Long> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return reply.toCompletableFuture().whenComplete((value, error) -> {
+            pending.release(group.weight);
+            group.complete(value, error);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisFuture<Long> send(Group group) {
+        switch (group.op) {
+            case LPUSH:
+                return commands.lpush(group.key, group.values.toArray(new String[0]));
+            case RPUSH:
+                return commands.rpush(group.key, group.values.toArray(new String[0]));
+            case SADD:
+                return commands.sadd(group.key, group.values.toArray(new String[0]));
+            case ZADD:
+                List<ScoredValue<String>> scored = new ArrayList<>(group.values.size());
+                for (int i = 0; i < group.values.size(); i++) {
+                    scored.add(ScoredValue.just(group.scores.get(i), group.values.get(i)));
+                }
+                return commands.zadd(group.key, scored.toArray(new ScoredValue[0]));
+            case HSET:
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (int i = 0; i < group.values.size(); i += 2) {
+                    fields.put(group.values.get(i), group.values.get(i + 1));
+                }
+                return commands.hset(group.key, fields);
+            default:
+                throw new IllegalStateException("Unknown op " + group.op);
+        }
+    }
+
+    /**
+     * Consecutive calls of one command on one key, sent as a single command.
+     */
+    private static class Group {
+
+        private final Op op;
+
+        private final String key;
+
+        private final List<String> values = new ArrayList<>();
+
+        private final List<Double> scores;
+
+        private final List<CompletableFuture<Long>> callers = new ArrayList<>();
+
+        // number of values pushed by each caller, used to reconstruct per-call list lengths.
+        private final List<Integer> counts = new ArrayList<>();
+
+        private int weight;
+
+        Group(Op op, String key) {
+            this.op = op;
+            this.key = key;
+            this.scores = op == Op.ZADD ? new ArrayList<>() : Collections.emptyList();
+        }
+
+        void add(String[] newValues, double[] newScores, CompletableFuture<Long> caller, int callerWeight) {
+            Collections.addAll(values, newValues);
+            if (newScores != null) {
+                for (double score : newScores) {
+                    scores.add(score);
+                }
+            }
+            callers.add(caller);
+            counts.add(newValues.length);
+            weight += callerWeight;
+        }
+
+        void complete(Long reply, Throwable error) {
+            if (error != null) {
+                callers.forEach(caller -> caller.completeExceptionally(error));
+                return;
+            }
+            if (op != Op.LPUSH && op != Op.RPUSH) {
+                callers.forEach(caller -> caller.complete(reply));
+                return;
+            }
+            long after = 0;
+            for (int i = callers.size() - 1; i >= 0; i--) {
+                callers.get(i).complete(reply - after);
+                after += counts.get(i);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final StatefulRedisConnection<String, String> connection;
+
+        private ScheduledExecutorService scheduler;
+
+        private int maxBatchSize = 512;
+
+        private Duration maxDelay = Duration.ofMillis(2);
+
+        private int maxPending = 65536;
+
+        private Duration backpressureTimeout = Duration.ofSeconds(1);
+
+        private Builder(StatefulRedisConnection<String, String> connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Number of buffered values that triggers a flush.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Longest time a value stays in the buffer before it is flushed.
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Upper bound of values that are buffered or awaiting a reply.
+         */
+        public Builder maxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        public Builder backpressureTimeout(Duration backpressureTimeout) {
+            this.backpressureTimeout = backpressureTimeout;
+            return this;
+        }
+
+        /**
+         * Scheduler for the time based flush, defaults to the connection's event executor group.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public BatchWriter build() {
+            if (maxBatchSize < 1 || maxPending < maxBatchSize) {
+                throw new IllegalArgumentException("Require 1 <= maxBatchSize <= maxPending, got maxBatchSize="
+                        + maxBatchSize + ", maxPending=" + maxPending);
+            }
+            return new BatchWriter(this);
+        }
+    }
+}
@@ -0,0 +1,666 @@
+package com.redislettuce.blob;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+/**
+ * Large values stored as fixed-size chunks plus a manifest, read and written as streams.
+ *
+ * A single huge string is moved in one reply, which needs the whole value in memory on both sides and holds up
+ * every other command pipelined on the same connection behind it. Here a blob {@code name} is a hash
+ * {@code name} (the manifest: write id, size, chunk size, chunk count, optional CRC32) and the string keys
+ * {@code name:<id>:0 .. name:<id>:<chunks - 1>}:
+ * <ul>
+ * <li>{@link #openOutputStream(String)} sends a chunk as soon as it is full, with at most {@code writeWindow} of
+ * them in flight, and writes the manifest on {@link BlobOutputStream#commit()}. Each write uses a new id, so
+ * readers see either the old or the new blob; the chunks of the old one are unlinked once the manifest points to
+ * the new ones. A stream closed without commit, or after a failed write, unlinks its chunks and leaves the old
+ * blob as it was.</li>
+ * <li>{@link #openInputStream(String)} keeps the next {@code readAhead} chunks requested while the caller
+ * consumes the current one.</li>
+ * <li>{@link #read(Manifest, long, byte[], int, int)} reads any range with one GETRANGE per chunk it touches,
+ * all sent at once.</li>
+ * </ul>
+ * Memory is bounded by {@code chunkSize * max(writeWindow, readAhead)} per stream, whatever the size of the blob.
+ * On a cluster the chunks spread over all nodes, so reads and writes are served by several of them in parallel.
+ * <pre>
+ * try (BlobStore.BlobOutputStream out = blobs.openOutputStream("report:2024")) {
+ *     Files.copy(path, out);
+ *     out.commit();
+ * }
+ * try (InputStream in = blobs.openInputStream("report:2024")) {
+ *     ...
+ * }
+ * </pre>
+ * A blob should have one writer at a time. A reader that is still streaming the previous version when a writer
+ * replaces it fails with an {@link IOException} instead of mixing chunks of both.
+ */
+public class BlobStore implements AutoCloseable {
+
+    private static final RedisCodec<String, byte[]> CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+    private static final String ID = "id";
+
+    private static final String SIZE = "size";
+
+    private static final String CHUNK_SIZE = "chunk-size";
+
+    private static final String CHUNKS = "chunks";
+
+    private static final String CRC32 = "crc32";
+
+    private final StatefulConnection<String, byte[]> connection;
+
+    private final RedisClusterAsyncCommands<String, byte[]> commands;
+
+    private final int chunkSize;
+
+    private final int writeWindow;
+
+    private final int readAhead;
+
+    private final boolean checksum;
+
+    private BlobStore(Builder builder) {
+        if (builder.clusterClient != null) {
+            StatefulRedisClusterConnection<String, byte[]> cluster = builder.clusterClient.connect(CODEC);
+            this.connection = cluster;
+            this.commands = cluster.async();
+        } else {
+            StatefulRedisConnection<String, byte[]> standalone = builder.client.connect(CODEC);
+            this.connection = standalone;
+            this.commands = standalone.async();
+        }
+        this.chunkSize = builder.chunkSize;
+        this.writeWindow = builder.writeWindow;
+        this.readAhead = builder.readAhead;
+        this.checksum = builder.checksum;
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    /**
+     * Creates or replaces the blob {@code name}; it becomes visible when the stream is committed.
+     */
+    public BlobOutputStream openOutputStream(String name) {
+        return new BlobOutputStream(name);
+    }
+
+    /**
+     * Streams the blob {@code name}, verifying its checksum at the end if it has one and was read from the start.
+     *
+     * @throws IOException if there is no such blob.
+     */
+    public InputStream openInputStream(String name) throws IOException {
+        Manifest manifest = awaitIo(manifestAsync(name));
+        if (manifest == null) {
+            throw new IOException("No blob " + name);
+        }
+        return new BlobInputStream(manifest);
+    }
+
+    /**
+     * @return the manifest of the blob {@code name}, {@code null} if there is none.
+     */
+    public Manifest manifest(String name) {
+        return await(manifestAsync(name));
+    }
+
+    /**
+     * Reads up to {@code length} bytes from {@code position}, fetching all chunks in the range in parallel.
+     *
+     * @return the number of bytes read, -1 if {@code position} is at or past the end of the blob.
+     */
+    public int read(Manifest manifest, long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position < 0 || offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (position >= manifest.size) {
+            return -1;
+        }
+        int total = (int) Math.min(length, manifest.size - position);
+        List<RedisFuture<byte[]>> ranges = new ArrayList<>();
+        for (long at = position; at < position + total; ) {
+            int chunk = (int) (at / manifest.chunkSize);
+            long start = at - (long) chunk * manifest.chunkSize;
+            long end = Math.min(manifest.chunkSize, start + position + total - at) - 1;
+            ranges.add(commands.getrange(manifest.chunkKey(chunk), start, end));
+            at += end - start + 1;
+        }
+        int copied = 0;
+        for (RedisFuture<byte[]> range : ranges) {
+            byte[] bytes = awaitIo(range);
+            int expected = (int) Math.min(total - copied, manifest.chunkSize
+                    - (position + copied) % manifest.chunkSize);
+            if (bytes.length != expected) {
+                throw new IOException("Blob " + manifest.name + " was replaced or deleted while reading");
+            }
+            System.arraycopy(bytes, 0, buffer, offset + copied, bytes.length);
+            copied += bytes.length;
+        }
+        return copied;
+    }
+
+    /**
+     * @return whether the blob existed.
+     */
+    public boolean delete(String name) {
+        Manifest manifest = manifest(name);
+        if (manifest == null) {
+            return false;
+        }
+        await(commands.unlink(name));
+        unlinkChunks(manifest.name, manifest.id, manifest.chunks);
+        return true;
+    }
+
+    public StatefulConnection<String, byte[]> getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private CompletableFuture<Manifest> manifestAsync(String name) {
+        return commands.hgetall(name).toCompletableFuture()
+                .thenApply(fields -> fields == null || fields.isEmpty() ? null : new Manifest(name, fields));
+    }
+
+    private void unlinkChunks(String name, String id, int chunks) {
+        for (int from = 0; from < chunks; from += 1000) {
+            String[] keys = new String[Math.min(1000, chunks - from)];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = chunkKey(name, id, from + i);
+            }
+            await(commands.unlink(keys));
+        }
+    }
+
+    private <T> T await(CompletionStage<T> stage) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return stage.toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof RedisException ? (RedisException) cause : new RedisException(cause);
+        }
+    }
+
+    private <T> T awaitIo(CompletionStage<T> stage) throws IOException {
+        try {
+            return await(stage);
+        } catch (RedisException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static String chunkKey(String name, String id, int index) {
+        return name + ":" + id + ":" + index;
+    }
+
+    private static byte[] ascii(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Where the chunks of one version of a blob are and how large it is.
+     */
+    public static final class Manifest {
+
+        private final String name;
+
+        private final String id;
+
+        private final long size;
+
+        private final int chunkSize;
+
+        private final int chunks;
+
+        private final Long crc32;
+
+        private Manifest(String name, Map<String, byte[]> fields) {
+            this.name = name;
+            this.id = field(fields, ID);
+            this.size = Long.parseLong(field(fields, SIZE));
+            this.chunkSize = Integer.parseInt(field(fields, CHUNK_SIZE));
+            this.chunks = Integer.parseInt(field(fields, CHUNKS));
+            byte[] crc = fields.get(CRC32);
+            this.crc32 = crc == null || crc.length == 0 ? null : Long.parseLong(new String(crc, StandardCharsets.US_ASCII));
+        }
+
+        private static String field(Map<String, byte[]> fields, String field) {
+            byte[] value = fields.get(field);
+            if (value == null) {
+                throw new IllegalStateException("Blob manifest without " + field);
+            }
+            return new String(value, StandardCharsets.US_ASCII);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return the CRC32 of the whole blob, {@code null} if it was written without checksum.
+         */
+        public Long getCrc32() {
+            return crc32;
+        }
+
+        String chunkKey(int index) {
+            return BlobStore.chunkKey(name, id, index);
+        }
+
+        @Override
+        public String toString() {
+            return "Manifest{name=" + name + ", id=" + id + ", size=" + size + ", chunkSize=" + chunkSize
+                    + ", chunks=" + chunks + ", crc32=" + crc32 + "}";
+        }
+    }
+
+    /**
+     * Writes one new version of a blob. Nothing is visible before {@link #commit()}; closing the stream without it,
+     * for example because copying the content failed halfway, discards what was written.
+     */
+    public final class BlobOutputStream extends OutputStream {
+
+        private final String name;
+
+        private final String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        private final ArrayDeque<RedisFuture<String>> inFlight = new ArrayDeque<>();
+
+        private final CRC32 crc = checksum ? new CRC32() : null;
+
+        private byte[] buffer;
+
+        private int count;
+
+        private long size;
+
+        private int chunks;
+
+        private IOException failure;
+
+        private boolean closed;
+
+        private BlobOutputStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureWritable();
+            if (offset < 0 || length < 0 || offset + length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            while (length > 0) {
+                if (buffer == null) {
+                    // a sent chunk is encoded from its array when the command is written, so it cannot be reused.
+                    buffer = new byte[chunkSize];
+                }
+                int n = Math.min(length, chunkSize - count);
+                System.arraycopy(bytes, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                length -= n;
+                if (count == chunkSize) {
+                    sendChunk();
+                }
+            }
+        }
+
+        /**
+         * Sends the last chunk, waits for all of them and points the manifest to this version, then unlinks the
+         * chunks of the previous one. Closes the stream.
+         *
+         * @throws IOException if a chunk or the manifest could not be written, or a write failed before; the blob
+         *         is then left as it was.
+         */
+        public void commit() throws IOException {
+            ensureWritable();
+            closed = true;
+            try {
+                sendChunk();
+                while (!inFlight.isEmpty()) {
+                    awaitIo(inFlight.poll());
+                }
+                Manifest previous = awaitIo(manifestAsync(name));
+                Map<String, byte[]> manifest = new LinkedHashMap<>();
+                manifest.put(ID, ascii(id));
+                manifest.put(SIZE, ascii(size));
+                manifest.put(CHUNK_SIZE, ascii(chunkSize));
+                manifest.put(CHUNKS, ascii(chunks));
+                manifest.put(CRC32, crc == null ? new byte[0] : ascii(crc.getValue()));
+                awaitIo(commands.hset(name, manifest));
+                if (previous != null) {
+                    unlinkChunks(name, previous.id, previous.chunks);
+                }
+            } catch (IOException | RuntimeException e) {
+                discard(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Discards this version unless it was committed.
+         *
+         * @throws IOException the failure of an earlier write, if there was one.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (failure == null) {
+                discard(null);
+                return;
+            }
+            // a new exception: try-with-resources adds it to the one write threw, which must not be itself.
+            IOException e = failed();
+            discard(e);
+            throw e;
+        }
+
+        private IOException failed() {
+            return new IOException("Blob " + name + " not written, a chunk failed: " + failure.getMessage(), failure);
+        }
+
+        private void ensureWritable() throws IOException {
+            if (failure != null) {
+                throw failed();
+            }
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        private void discard(Exception cause) {
+            inFlight.clear();
+            buffer = null;
+            try {
+                // commands of one key go in order, so this runs after the SETs still in flight.
+                unlinkChunks(name, id, chunks);
+            } catch (RuntimeException cleanup) {
+                if (cause == null) {
+                    throw cleanup;
+                }
+                cause.addSuppressed(cleanup);
+            }
+        }
+
+        private void sendChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] chunk = count == chunkSize ? buffer : Arrays.copyOf(buffer, count);
+            if (crc != null) {
+                crc.update(chunk, 0, chunk.length);
+            }
+            inFlight.add(commands.set(chunkKey(name, id, chunks), chunk));
+            chunks++;
+            size += count;
+            buffer = null;
+            count = 0;
+            try {
+                while (inFlight.size() > writeWindow) {
+                    awaitIo(inFlight.poll());
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    private final class BlobInputStream extends InputStream {
+
+        private final Manifest manifest;
+
+        private final ArrayDeque<RedisFuture<byte[]>> prefetched = new ArrayDeque<>();
+
+        private CRC32 crc;
+
+        private byte[] chunk;
+
+        private int chunkPosition;
+
+        private int skipInChunk;
+
+        private int nextChunk;
+
+        private int nextFetch;
+
+        private long position;
+
+        private boolean closed;
+
+        BlobInputStream(Manifest manifest) {
+            this.manifest = manifest;
+            this.crc = manifest.crc32 != null ? new CRC32() : null;
+            fill();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (offset < 0 || length < 0 || offset + length > bytes.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (length == 0) {
+                return 0;
+            }
+            if ((chunk == null || chunkPosition == chunk.length) && !nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(length, chunk.length - chunkPosition);
+            System.arraycopy(chunk, chunkPosition, bytes, offset, n);
+            chunkPosition += n;
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            long skipped = Math.min(n, manifest.size - position);
+            position += skipped;
+            crc = null;
+            if (chunk != null && skipped <= chunk.length - chunkPosition) {
+                chunkPosition += skipped;
+                return skipped;
+            }
+            // jump: drop what was prefetched and continue inside the target chunk.
+            prefetched.clear();
+            chunk = null;
+            nextChunk = (int) (position / manifest.chunkSize);
+            nextFetch = nextChunk;
+            skipInChunk = (int) (position % manifest.chunkSize);
+            fill();
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return chunk == null ? 0 : chunk.length - chunkPosition;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            prefetched.clear();
+            chunk = null;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (nextChunk < manifest.chunks) {
+                byte[] next = awaitIo(prefetched.poll());
+                long expected = Math.min(manifest.chunkSize, manifest.size - (long) nextChunk * manifest.chunkSize);
+                if (next == null || next.length != expected) {
+                    throw new IOException("Blob " + manifest.name + " was replaced or deleted while reading");
+                }
+                if (crc != null) {
+                    crc.update(next, 0, next.length);
+                }
+                nextChunk++;
+                fill();
+                chunk = next;
+                chunkPosition = skipInChunk;
+                skipInChunk = 0;
+                if (chunkPosition < chunk.length) {
+                    return true;
+                }
+            }
+            if (crc != null && crc.getValue() != manifest.crc32) {
+                throw new IOException("Checksum mismatch for blob " + manifest.name);
+            }
+            return false;
+        }
+
+        private void fill() {
+            while (nextFetch < manifest.chunks && prefetched.size() < readAhead) {
+                prefetched.add(commands.get(manifest.chunkKey(nextFetch++)));
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private int chunkSize = 256 * 1024;
+
+        private int writeWindow = 4;
+
+        private int readAhead = 4;
+
+        private boolean checksum = true;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+        }
+
+        /**
+         * Bytes per chunk key, defaults to 256 KB. Existing blobs keep the chunk size they were written with.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Chunks an output stream may have sent but not yet acknowledged, defaults to 4.
+         */
+        public Builder writeWindow(int writeWindow) {
+            this.writeWindow = writeWindow;
+            return this;
+        }
+
+        /**
+         * Chunks an input stream requests ahead of the one being read, defaults to 4.
+         */
+        public Builder readAhead(int readAhead) {
+            this.readAhead = readAhead;
+            return this;
+        }
+
+        /**
+         * Store a CRC32 of new blobs and verify it when they are streamed, defaults to {@code true}.
+         */
+        public Builder checksum(boolean checksum) {
+            this.checksum = checksum;
+            return this;
+        }
+
+        public BlobStore build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A RedisClient or RedisClusterClient is required");
+            }
+            if (chunkSize < 1 || writeWindow < 1 || readAhead < 1) {
+                throw new IllegalArgumentException("chunkSize, writeWindow and readAhead must be positive");
+            }
+            return new BlobStore(this);
+        }
+    }
+}
@@ -0,0 +1,682 @@
+package com.redislettuce.bulk;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Imports a {@link Format#CSV} or {@link Format#JSONL} file of strings, hashes, sorted sets and sets, using every
+ * core and pipelining large multi-value commands instead of one command per record.
+ *
+ * The file is cut into segments of {@link Builder#segmentSize(int)} bytes at line boundaries. Worker threads take
+ * the next segment, memory-map it and parse its lines in place: keys and values stay views of the mapped file
+ * until they are written into the network buffer. Each worker batches its records per node, by the hash slot of
+ * the key on a cluster, and sends a batch of {@link Builder#batchSize(int)} records as one MSET per slot and one
+ * multi-field HSET, multi-member ZADD or SADD per run of records on the same key. Every worker has its own
+ * connections, with at most {@link Builder#pipelineDepth(int)} batches in flight per node.
+ *
+ * Progress is reported every {@link Builder#progressInterval(Duration)}. The checkpoint is the offset up to which
+ * every segment was acknowledged by redis; it is written to the {@link Builder#checkpointFile(Path)} if there is
+ * one, and a later run of the same file resumes from it. All commands are idempotent, so the segments after the
+ * checkpoint that were already written are simply written again. A line that does not parse is skipped and
+ * counted; a failed command (a MOVED while the cluster reshards, a timeout) leaves the checkpoint before its
+ * segment, and the run reports itself incomplete.
+ * <pre>
+ * BulkLoader.Progress result = BulkLoader.builder(clusterClient).checkpointFile(Paths.get("users.checkpoint"))
+ *         .listener(System.out::println).build().load(Paths.get("users.csv"));
+ * </pre>
+ */
+public class BulkLoader {
+
+    private static final int SCAN_CHUNK = 64 * 1024;
+
+    private final RedisClient client;
+
+    private final RedisClusterClient clusterClient;
+
+    private final Format format;
+
+    private final int threads;
+
+    private final int batchSize;
+
+    private final int pipelineDepth;
+
+    private final int segmentSize;
+
+    private final Path checkpointFile;
+
+    private final long resumeFrom;
+
+    private final Duration progressInterval;
+
+    private final Consumer<Progress> listener;
+
+    private BulkLoader(Builder builder) {
+        this.client = builder.client;
+        this.clusterClient = builder.clusterClient;
+        this.format = builder.format;
+        this.threads = builder.threads;
+        this.batchSize = builder.batchSize;
+        this.pipelineDepth = builder.pipelineDepth;
+        this.segmentSize = builder.segmentSize;
+        this.checkpointFile = builder.checkpointFile;
+        this.resumeFrom = builder.resumeFrom;
+        this.progressInterval = builder.progressInterval;
+        this.listener = builder.listener;
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    /**
+     * Imports {@code file} from the resume offset, or from the checkpoint file if it exists.
+     *
+     * @return the final progress, {@link Progress#isComplete() complete} if everything was written.
+     */
+    public Progress load(Path file) throws IOException, InterruptedException {
+        Format fileFormat = format != null ? format : Format.of(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = resumeFrom;
+            if (checkpointFile != null && Files.exists(checkpointFile)) {
+                start = readCheckpoint();
+            }
+            if (start < 0 || start > size) {
+                throw new IllegalArgumentException("Resume offset " + start + " is outside of " + file + " ("
+                        + size + " bytes)");
+            }
+            Run run = new Run(channel, fileFormat, start, size);
+            return run.execute();
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        String text = new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim();
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint in " + checkpointFile + ": " + text);
+        }
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        Files.write(temp, (offset + "\n").getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * One import of one file.
+     */
+    private final class Run {
+
+        private final FileChannel channel;
+
+        private final Format format;
+
+        private final long start;
+
+        private final long size;
+
+        private final int segments;
+
+        private final AtomicInteger nextSegment = new AtomicInteger();
+
+        private final LongAdder records = new LongAdder();
+
+        private final LongAdder invalid = new LongAdder();
+
+        private final LongAdder failedSegments = new LongAdder();
+
+        private final AtomicReference<String> firstInvalid = new AtomicReference<>();
+
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        // end offsets of acknowledged segments that are not yet part of the checkpoint.
+        private final TreeMap<Integer, Long> acknowledged = new TreeMap<>();
+
+        private int contiguous;
+
+        private volatile long checkpoint;
+
+        private long startedAt;
+
+        private long lastReportAt;
+
+        private long lastReportRecords;
+
+        private long lastWrittenCheckpoint = -1;
+
+        Run(FileChannel channel, Format format, long start, long size) {
+            this.channel = channel;
+            this.format = format;
+            this.start = start;
+            this.size = size;
+            this.segments = (int) Math.max(0, (size - start + segmentSize - 1) / segmentSize);
+            this.checkpoint = start;
+        }
+
+        Progress execute() throws IOException, InterruptedException {
+            startedAt = System.nanoTime();
+            lastReportAt = startedAt;
+            ExecutorService workers = Executors.newFixedThreadPool(threads, daemon("bulk-loader"));
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemon("bulk-loader-progress"));
+            try {
+                long interval = progressInterval.toNanos();
+                reporter.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.NANOSECONDS);
+                List<Future<Void>> running = new ArrayList<>(threads);
+                for (int i = 0; i < Math.min(threads, Math.max(1, segments)); i++) {
+                    running.add(workers.submit((Callable<Void>) this::work));
+                }
+                for (Future<Void> worker : running) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                                : new RedisException(e.getCause());
+                    }
+                }
+            } finally {
+                workers.shutdownNow();
+                reporter.shutdownNow();
+                reporter.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            return report();
+        }
+
+        private Void work() throws IOException {
+            Connections connections = new Connections();
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            try {
+                RecordParser parser = format.newParser();
+                Record record = new Record();
+                for (int index; (index = nextSegment.getAndIncrement()) < segments; ) {
+                    pending.add(segment(index, parser, record, connections));
+                }
+                awaitAll(pending, connections.timeout());
+            } finally {
+                connections.close();
+            }
+            return null;
+        }
+
+        /**
+         * Parses and sends one segment; the returned future completes once redis acknowledged all of it.
+         */
+        private CompletableFuture<Void> segment(int index, RecordParser parser, Record record, Connections connections)
+                throws IOException {
+            long from = index == 0 ? start : lineStart(start + (long) index * segmentSize);
+            long to = index == segments - 1 ? size : lineStart(start + (long) (index + 1) * segmentSize);
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            long count = 0;
+            if (to > from) {
+                if (to - from > Integer.MAX_VALUE) {
+                    throw new IOException("Line at offset " + from + " is longer than 2 GB");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                int limit = buffer.limit();
+                int line = 0;
+                while (line < limit) {
+                    int lineEnd = line;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    int end = lineEnd > line && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                    if (end > line && buffer.get(line) != '#') {
+                        try {
+                            parser.parse(buffer, line, end, record);
+                        } catch (IllegalArgumentException e) {
+                            invalid.increment();
+                            firstInvalid.compareAndSet(null, "offset " + (from + line) + ": " + e.getMessage());
+                            line = lineEnd + 1;
+                            continue;
+                        }
+                        NodeWriter writer = connections.writer(record.key);
+                        writer.add(record, NodeWriter.slot(record.key));
+                        count++;
+                        if (writer.records() >= batchSize) {
+                            batches.add(writer.flush());
+                        }
+                    }
+                    line = lineEnd + 1;
+                }
+            }
+            for (NodeWriter writer : connections.writers()) {
+                batches.add(writer.flush());
+            }
+            long segmentRecords = count;
+            long segmentEnd = to;
+            return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    failedSegments.increment();
+                    firstFailure.compareAndSet(null, error);
+                } else {
+                    records.add(segmentRecords);
+                    acknowledged(index, segmentEnd);
+                }
+            });
+        }
+
+        private synchronized void acknowledged(int index, long end) {
+            acknowledged.put(index, end);
+            while (acknowledged.containsKey(contiguous)) {
+                checkpoint = acknowledged.remove(contiguous++);
+            }
+        }
+
+        /**
+         * Offset of the first line starting at or after {@code offset}, or the end of the file.
+         */
+        private long lineStart(long offset) throws IOException {
+            ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK);
+            long position = offset - 1;
+            while (position < size) {
+                chunk.clear();
+                int read = channel.read(chunk, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (chunk.get(i) == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                position += read;
+            }
+            return size;
+        }
+
+        private void awaitAll(List<CompletableFuture<Void>> pending, Duration timeout) {
+            for (CompletableFuture<Void> segment : pending) {
+                try {
+                    segment.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // counted by the segment.
+                } catch (TimeoutException e) {
+                    failedSegments.increment();
+                    firstFailure.compareAndSet(null, e);
+                }
+            }
+        }
+
+        private synchronized Progress report() {
+            long now = System.nanoTime();
+            long done = records.sum();
+            double intervalSeconds = (now - lastReportAt) / 1e9;
+            double rate = intervalSeconds <= 0 ? 0 : (done - lastReportRecords) / intervalSeconds;
+            lastReportAt = now;
+            lastReportRecords = done;
+            Throwable failure = firstFailure.get();
+            Progress progress = new Progress(start, checkpoint, size, done, invalid.sum(), failedSegments.sum(),
+                    (now - startedAt) / 1e9, rate, firstInvalid.get(), failure == null ? null : failure.toString());
+            if (checkpointFile != null && progress.getCheckpoint() != lastWrittenCheckpoint) {
+                try {
+                    writeCheckpoint(progress.getCheckpoint());
+                    lastWrittenCheckpoint = progress.getCheckpoint();
+                } catch (IOException e) {
+                    firstFailure.compareAndSet(null, e);
+                }
+            }
+            if (listener != null) {
+                listener.accept(progress);
+            }
+            return progress;
+        }
+    }
+
+    /**
+     * The connections of one worker: one standalone connection, or a cluster connection and a writer per master.
+     */
+    private final class Connections {
+
+        private final StatefulRedisConnection<ByteBuffer, ByteBuffer> standalone;
+
+        private final StatefulRedisClusterConnection<ByteBuffer, ByteBuffer> cluster;
+
+        private final Map<String, NodeWriter> writers = new HashMap<>();
+
+        private final NodeWriter single;
+
+        Connections() {
+            if (client != null) {
+                standalone = client.connect(SliceCodec.INSTANCE);
+                standalone.setAutoFlushCommands(false);
+                cluster = null;
+                single = new NodeWriter(standalone, false, pipelineDepth);
+            } else {
+                standalone = null;
+                cluster = clusterClient.connect(SliceCodec.INSTANCE);
+                cluster.setAutoFlushCommands(false);
+                single = null;
+            }
+        }
+
+        NodeWriter writer(ByteBuffer key) {
+            if (single != null) {
+                return single;
+            }
+            int slot = NodeWriter.slot(key);
+            RedisClusterNode node = cluster.getPartitions().getPartitionBySlot(slot);
+            if (node == null) {
+                throw new RedisException("No cluster node serves slot " + slot);
+            }
+            NodeWriter writer = writers.get(node.getNodeId());
+            if (writer == null) {
+                StatefulRedisConnection<ByteBuffer, ByteBuffer> connection = cluster.getConnection(node.getNodeId());
+                connection.setAutoFlushCommands(false);
+                writer = new NodeWriter(connection, true, pipelineDepth);
+                writers.put(node.getNodeId(), writer);
+            }
+            return writer;
+        }
+
+        Iterable<NodeWriter> writers() {
+            if (single != null) {
+                return Collections.singletonList(single);
+            }
+            return writers.values();
+        }
+
+        Duration timeout() {
+            return standalone != null ? standalone.getTimeout() : cluster.getTimeout();
+        }
+
+        void close() {
+            if (standalone != null) {
+                standalone.close();
+            } else {
+                cluster.close();
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Point-in-time state of an import: {@code records} were acknowledged by redis, everything before the
+     * {@code checkpoint} offset was written.
+     */
+    public static class Progress {
+
+        private final long startOffset;
+
+        private final long checkpoint;
+
+        private final long fileSize;
+
+        private final long records;
+
+        private final long invalid;
+
+        private final long failedSegments;
+
+        private final double seconds;
+
+        private final double intervalRate;
+
+        private final String firstInvalid;
+
+        private final String firstFailure;
+
+        Progress(long startOffset, long checkpoint, long fileSize, long records, long invalid, long failedSegments,
+                double seconds, double intervalRate, String firstInvalid, String firstFailure) {
+            this.startOffset = startOffset;
+            this.checkpoint = checkpoint;
+            this.fileSize = fileSize;
+            this.records = records;
+            this.invalid = invalid;
+            this.failedSegments = failedSegments;
+            this.seconds = seconds;
+            this.intervalRate = intervalRate;
+            this.firstInvalid = firstInvalid;
+            this.firstFailure = firstFailure;
+        }
+
+        /**
+         * The offset this run started from.
+         */
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * Offset of the first line not known to be written, where a later run resumes.
+         */
+        public long getCheckpoint() {
+            return checkpoint;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Lines that were skipped because they did not parse.
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public long getFailedSegments() {
+            return failedSegments;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * Records per second over the whole run.
+         */
+        public double getRecordsPerSecond() {
+            return seconds == 0 ? 0 : records / seconds;
+        }
+
+        /**
+         * Records per second since the previous report.
+         */
+        public double getIntervalRecordsPerSecond() {
+            return intervalRate;
+        }
+
+        public double getPercentDone() {
+            return fileSize == startOffset ? 100 : 100.0 * (checkpoint - startOffset) / (fileSize - startOffset);
+        }
+
+        /**
+         * Where and why the first invalid line was skipped, null if none was.
+         */
+        public String getFirstInvalid() {
+            return firstInvalid;
+        }
+
+        public String getFirstFailure() {
+            return firstFailure;
+        }
+
+        public boolean isComplete() {
+            return checkpoint == fileSize && failedSegments == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%7.1fs %5.1f%% records=%d %.0f rows/s (%.0f rows/s overall) "
+                            + "invalid=%d failed=%d checkpoint=%d", seconds, getPercentDone(), records, intervalRate,
+                    getRecordsPerSecond(), invalid, failedSegments, checkpoint);
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private Format format;
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private int batchSize = 1000;
+
+        private int pipelineDepth = 8;
+
+        private int segmentSize = 16 * 1024 * 1024;
+
+        private Path checkpointFile;
+
+        private long resumeFrom;
+
+        private Duration progressInterval = Duration.ofSeconds(1);
+
+        private Consumer<Progress> listener;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+        }
+
+        /**
+         * Format of the input, by default told from the file name.
+         */
+        public Builder format(Format format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Parser threads, each with its own connections; defaults to the number of cores.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Records per node sent as one batch of pipelined commands, defaults to 1000.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Batches in flight per worker and node before the worker waits for replies, defaults to 8.
+         */
+        public Builder pipelineDepth(int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        /**
+         * Bytes of input per segment, the unit of work of a thread and of checkpointing; defaults to 16 MiB.
+         */
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * File holding the checkpoint offset: read to resume if it exists, written as the import progresses.
+         */
+        public Builder checkpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * Offset to start at, a checkpoint of an earlier run; ignored if the checkpoint file exists.
+         */
+        public Builder resumeFrom(long resumeFrom) {
+            this.resumeFrom = resumeFrom;
+            return this;
+        }
+
+        public Builder progressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        /**
+         * Called with the progress every interval and once at the end, from a single thread.
+         */
+        public Builder listener(Consumer<Progress> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public BulkLoader build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A client is required");
+            }
+            if (threads < 1 || batchSize < 1 || pipelineDepth < 1 || segmentSize < 1) {
+                throw new IllegalArgumentException("threads, batchSize, pipelineDepth and segmentSize must be "
+                        + "positive");
+            }
+            if (resumeFrom < 0) {
+                throw new IllegalArgumentException("resumeFrom must not be negative");
+            }
+            if (progressInterval == null || progressInterval.isNegative() || progressInterval.isZero()) {
+                throw new IllegalArgumentException("progressInterval must be positive");
+            }
+            return new BulkLoader(this);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.redislettuce.bulk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Format#CSV} lines. Fields are views of the input; only a quoted field containing {@code ""} is copied.
+ */
+final class CsvParser implements RecordParser {
+
+    private final List<ByteBuffer> fields = new ArrayList<>();
+
+    @Override
+    public void parse(ByteBuffer buffer, int start, int end, Record record) {
+        split(buffer, start, end);
+        if (fields.size() < 3) {
+            throw new IllegalArgumentException("Expected type,key,... but got " + fields.size() + " fields");
+        }
+        record.clear();
+        record.type = Record.type(fields.get(0));
+        if (record.type == null) {
+            throw new IllegalArgumentException("Unknown type, expected string, hash, zset or set");
+        }
+        record.key = fields.get(1);
+        int values = fields.size() - 2;
+        switch (record.type) {
+            case STRING:
+                if (values != 1) {
+                    throw new IllegalArgumentException("Expected string,key,value");
+                }
+                record.values.add(fields.get(2));
+                break;
+            case HASH:
+                if (values % 2 != 0) {
+                    throw new IllegalArgumentException("Expected hash,key,field,value[,field,value...]");
+                }
+                record.values.addAll(fields.subList(2, fields.size()));
+                break;
+            case ZSET:
+                if (values % 2 != 0) {
+                    throw new IllegalArgumentException("Expected zset,key,score,member[,score,member...]");
+                }
+                for (int i = 2; i < fields.size(); i += 2) {
+                    record.addMember(Record.parseScore(fields.get(i)), fields.get(i + 1));
+                }
+                break;
+            default:
+                record.values.addAll(fields.subList(2, fields.size()));
+        }
+    }
+
+    private void split(ByteBuffer buffer, int start, int end) {
+        fields.clear();
+        int position = start;
+        while (true) {
+            int next;
+            if (position < end && buffer.get(position) == '"') {
+                next = quoted(buffer, position, end);
+            } else {
+                next = position;
+                while (next < end && buffer.get(next) != ',') {
+                    next++;
+                }
+                fields.add(Record.slice(buffer, position, next));
+            }
+            if (next >= end) {
+                return;
+            }
+            if (buffer.get(next) != ',') {
+                throw new IllegalArgumentException("Expected a comma after a quoted field at " + (next - start));
+            }
+            position = next + 1;
+        }
+    }
+
+    /**
+     * Adds the quoted field starting at {@code quote} and returns the position after its closing quote.
+     */
+    private int quoted(ByteBuffer buffer, int quote, int end) {
+        int escapes = 0;
+        int position = quote + 1;
+        while (true) {
+            if (position >= end) {
+                throw new IllegalArgumentException("Unterminated quoted field");
+            }
+            if (buffer.get(position) == '"') {
+                if (position + 1 < end && buffer.get(position + 1) == '"') {
+                    escapes++;
+                    position += 2;
+                    continue;
+                }
+                break;
+            }
+            position++;
+        }
+        if (escapes == 0) {
+            fields.add(Record.slice(buffer, quote + 1, position));
+        } else {
+            byte[] unescaped = new byte[position - quote - 1 - escapes];
+            int length = 0;
+            for (int i = quote + 1; i < position; i++) {
+                byte b = buffer.get(i);
+                unescaped[length++] = b;
+                if (b == '"') {
+                    i++;
+                }
+            }
+            fields.add(ByteBuffer.wrap(unescaped));
+        }
+        return position + 1;
+    }
+}
@@ -0,0 +1,51 @@
+package com.redislettuce.bulk;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Input formats of the {@link BulkLoader}, one record per line. Blank lines and lines starting with {@code #} are
+ * skipped.
+ */
+public enum Format {
+
+    /**
+     * Comma separated {@code type,key,...}: {@code string,key,value}, {@code hash,key,field,value[,field,value...]},
+     * {@code zset,key,score,member[,score,member...]} or {@code set,key,member[,member...]}. Fields may be quoted
+     * with {@code "}, a quote inside is written {@code ""}; quoted fields cannot contain line breaks.
+     */
+    CSV {
+        @Override
+        RecordParser newParser() {
+            return new CsvParser();
+        }
+    },
+
+    /**
+     * A JSON object per line with {@code type}, {@code key} and {@code value}: a string for {@code string}, an
+     * object of fields for {@code hash}, an object of member to score for {@code zset} and an array of members for
+     * {@code set}, e.g. {@code {"type":"hash","key":"user:1","value":{"name":"Ann","age":"31"}}}.
+     */
+    JSONL {
+        @Override
+        RecordParser newParser() {
+            return new JsonLinesParser();
+        }
+    };
+
+    abstract RecordParser newParser();
+
+    /**
+     * The format of a {@code .csv}, {@code .jsonl}, {@code .ndjson} or {@code .json} file.
+     */
+    public static Format of(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSONL;
+        }
+        throw new IllegalArgumentException("Cannot tell the format of " + file + ", expected .csv or .jsonl");
+    }
+}
@@ -0,0 +1,271 @@
+package com.redislettuce.bulk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link Format#JSONL} lines. Strings without escape sequences are views of the input, only strings with escapes
+ * are decoded into a copy; numbers used as hash values are kept as their text.
+ */
+final class JsonLinesParser implements RecordParser {
+
+    private ByteBuffer buffer;
+
+    private int start;
+
+    private int position;
+
+    private int end;
+
+    @Override
+    public void parse(ByteBuffer buffer, int start, int end, Record record) {
+        this.buffer = buffer;
+        this.start = start;
+        this.position = start;
+        this.end = end;
+        record.clear();
+        int value = -1;
+        expect('{');
+        if (!consume('}')) {
+            do {
+                ByteBuffer name = string();
+                expect(':');
+                if (is(name, "type")) {
+                    record.type = Record.type(string());
+                    if (record.type == null) {
+                        throw new IllegalArgumentException("Unknown type, expected string, hash, zset or set");
+                    }
+                } else if (is(name, "key")) {
+                    record.key = string();
+                } else {
+                    if (is(name, "value")) {
+                        value = skipWhitespace();
+                    }
+                    skipValue();
+                }
+            } while (consume(','));
+            expect('}');
+        }
+        if (skipWhitespace() != end) {
+            throw error("Unexpected content after the object");
+        }
+        if (record.type == null || record.key == null || value < 0) {
+            throw new IllegalArgumentException("Expected type, key and value");
+        }
+        position = value;
+        value(record);
+    }
+
+    private void value(Record record) {
+        switch (record.type) {
+            case STRING:
+                record.values.add(scalar());
+                return;
+            case HASH:
+                expect('{');
+                if (!consume('}')) {
+                    do {
+                        record.values.add(string());
+                        expect(':');
+                        record.values.add(scalar());
+                    } while (consume(','));
+                    expect('}');
+                }
+                break;
+            case ZSET:
+                expect('{');
+                if (!consume('}')) {
+                    do {
+                        ByteBuffer member = string();
+                        expect(':');
+                        record.addMember(Record.parseScore(scalar()), member);
+                    } while (consume(','));
+                    expect('}');
+                }
+                break;
+            default:
+                expect('[');
+                if (!consume(']')) {
+                    do {
+                        record.values.add(scalar());
+                    } while (consume(','));
+                    expect(']');
+                }
+        }
+        if (record.values.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one " + (record.type == Record.Type.SET
+                    ? "member" : "entry"));
+        }
+    }
+
+    /**
+     * A string, or the text of a number.
+     */
+    private ByteBuffer scalar() {
+        if (skipWhitespace() < end && buffer.get(position) == '"') {
+            return string();
+        }
+        int from = position;
+        while (position < end && isNumberChar(buffer.get(position))) {
+            position++;
+        }
+        if (position == from) {
+            throw error("Expected a string or a number");
+        }
+        return Record.slice(buffer, from, position);
+    }
+
+    private ByteBuffer string() {
+        expect('"');
+        int from = position;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"') {
+                position++;
+                return Record.slice(buffer, from, position - 1);
+            }
+            if (b == '\\') {
+                position = from;
+                return escapedString();
+            }
+            position++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private ByteBuffer escapedString() {
+        StringBuilder text = new StringBuilder();
+        int run = position;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b == '"' || b == '\\') {
+                text.append(utf8(run, position));
+                if (b == '"') {
+                    position++;
+                    return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                text.append(unescape());
+                run = position;
+            } else {
+                position++;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    private char unescape() {
+        if (position + 1 >= end) {
+            throw error("Unterminated escape");
+        }
+        byte escaped = buffer.get(position + 1);
+        position += 2;
+        switch (escaped) {
+            case '"':
+                return '"';
+            case '\\':
+                return '\\';
+            case '/':
+                return '/';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (position + 4 > end) {
+                    throw error("Truncated unicode escape");
+                }
+                char c = (char) Integer.parseInt(utf8(position, position + 4), 16);
+                position += 4;
+                return c;
+            default:
+                throw error("Invalid escape \\" + (char) escaped);
+        }
+    }
+
+    private void skipValue() {
+        byte b = skipWhitespace() < end ? buffer.get(position) : 0;
+        if (b == '"') {
+            string();
+        } else if (b == '{' || b == '[') {
+            char close = b == '{' ? '}' : ']';
+            position++;
+            if (!consume(close)) {
+                do {
+                    if (b == '{') {
+                        string();
+                        expect(':');
+                    }
+                    skipValue();
+                } while (consume(','));
+                expect(close);
+            }
+        } else {
+            int from = position;
+            while (position < end && (isNumberChar(buffer.get(position)) || Character.isLetter(buffer.get(position)))) {
+                position++;
+            }
+            if (position == from) {
+                throw error("Expected a value");
+            }
+        }
+    }
+
+    private int skipWhitespace() {
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                break;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private boolean consume(char c) {
+        if (skipWhitespace() < end && buffer.get(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at column " + (position - start));
+    }
+
+    private String utf8(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isNumberChar(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+
+    private static boolean is(ByteBuffer name, String ascii) {
+        if (name.remaining() != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (name.get(name.position() + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
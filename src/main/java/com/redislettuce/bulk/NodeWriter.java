@@ -0,0 +1,167 @@
+package com.redislettuce.bulk;
+
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.SlotHash;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches the records of one worker for one node and pipelines them: strings as one MSET per hash slot, runs of
+ * records on the same key as one multi-field HSET, multi-member ZADD or SADD. At most {@code depth} batches are in
+ * flight, a further flush waits for the oldest one.
+ */
+final class NodeWriter {
+
+    private final StatefulRedisConnection<ByteBuffer, ByteBuffer> connection;
+
+    private final RedisAsyncCommands<ByteBuffer, ByteBuffer> commands;
+
+    private final boolean cluster;
+
+    private final Semaphore depth;
+
+    private final Duration timeout;
+
+    // MSET values by slot, all under slot 0 on a standalone server.
+    private final Map<Integer, Map<ByteBuffer, ByteBuffer>> strings = new HashMap<>();
+
+    private final List<Batch> collections = new ArrayList<>();
+
+    private Batch last;
+
+    private int records;
+
+    NodeWriter(StatefulRedisConnection<ByteBuffer, ByteBuffer> connection, boolean cluster, int depth) {
+        this.connection = connection;
+        this.commands = connection.async();
+        this.cluster = cluster;
+        this.depth = new Semaphore(depth);
+        this.timeout = connection.getTimeout();
+    }
+
+    void add(Record record, int slot) {
+        records++;
+        if (record.type == Record.Type.STRING) {
+            strings.computeIfAbsent(cluster ? slot : 0, ignored -> new LinkedHashMap<>())
+                    .put(record.key, record.values.get(0));
+            return;
+        }
+        if (last == null || last.type != record.type || !last.key.equals(record.key)) {
+            last = new Batch(record.type, record.key);
+            collections.add(last);
+        }
+        last.add(record);
+    }
+
+    /**
+     * Records added since the last flush.
+     */
+    int records() {
+        return records;
+    }
+
+    /**
+     * Sends everything added since the last flush. The future completes when all of it was answered, and fails if
+     * any command failed.
+     */
+    CompletableFuture<Void> flush() {
+        if (records == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            if (!depth.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new RedisCommandTimeoutException("No pipelined batch was answered within " + timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        }
+        List<CompletableFuture<?>> replies = new ArrayList<>(strings.size() + collections.size());
+        for (Map<ByteBuffer, ByteBuffer> values : strings.values()) {
+            replies.add(commands.mset(values).toCompletableFuture());
+        }
+        for (Batch batch : collections) {
+            replies.add(batch.send(commands).toCompletableFuture());
+        }
+        connection.flushCommands();
+        strings.clear();
+        collections.clear();
+        last = null;
+        records = 0;
+        CompletableFuture<Void> all = CompletableFuture.allOf(replies.toArray(new CompletableFuture[0]));
+        all.whenComplete((ignored, error) -> depth.release());
+        return all;
+    }
+
+    static int slot(ByteBuffer key) {
+        return SlotHash.getSlot(key.duplicate());
+    }
+
+    /**
+     * Consecutive hash, sorted set or set records of one key.
+     */
+    private static final class Batch {
+
+        final Record.Type type;
+
+        final ByteBuffer key;
+
+        final Map<ByteBuffer, ByteBuffer> fields;
+
+        final List<ScoredValue<ByteBuffer>> scored;
+
+        final List<ByteBuffer> members;
+
+        Batch(Record.Type type, ByteBuffer key) {
+            this.type = type;
+            this.key = key;
+            this.fields = type == Record.Type.HASH ? new LinkedHashMap<>() : null;
+            this.scored = type == Record.Type.ZSET ? new ArrayList<>() : null;
+            this.members = type == Record.Type.SET ? new ArrayList<>() : null;
+        }
+
+        void add(Record record) {
+            List<ByteBuffer> values = record.values;
+            switch (type) {
+                case HASH:
+                    for (int i = 0; i < values.size(); i += 2) {
+                        fields.put(values.get(i), values.get(i + 1));
+                    }
+                    break;
+                case ZSET:
+                    for (int i = 0; i < values.size(); i++) {
+                        scored.add(ScoredValue.just(record.score(i), values.get(i)));
+                    }
+                    break;
+                default:
+                    members.addAll(values);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        RedisFuture<?> send(RedisAsyncCommands<ByteBuffer, ByteBuffer> commands) {
+            switch (type) {
+                case HASH:
+                    return commands.hset(key, fields);
+                case ZSET:
+                    return commands.zadd(key, scored.toArray(new ScoredValue[0]));
+                default:
+                    return commands.sadd(key, members.toArray(new ByteBuffer[0]));
+            }
+        }
+    }
+}
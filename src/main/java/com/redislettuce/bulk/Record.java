@@ -0,0 +1,93 @@
+package com.redislettuce.bulk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One parsed input line, reused by a parser for every line. Key and values are views of the mapped input, or of
+ * a small copy where the input had to be unescaped.
+ */
+final class Record {
+
+    enum Type {
+        STRING, HASH, ZSET, SET
+    }
+
+    Type type;
+
+    ByteBuffer key;
+
+    // the value, field/value pairs, members with their scores, or members.
+    final List<ByteBuffer> values = new ArrayList<>();
+
+    private double[] scores = new double[16];
+
+    void clear() {
+        type = null;
+        key = null;
+        values.clear();
+    }
+
+    void addMember(double score, ByteBuffer member) {
+        if (values.size() == scores.length) {
+            scores = Arrays.copyOf(scores, scores.length * 2);
+        }
+        scores[values.size()] = score;
+        values.add(member);
+    }
+
+    double score(int index) {
+        return scores[index];
+    }
+
+    static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        return slice;
+    }
+
+    static Type type(ByteBuffer name) {
+        for (Type type : Type.values()) {
+            if (equalsIgnoreCase(name, type.name())) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    static double parseScore(ByteBuffer text) {
+        char[] chars = new char[text.remaining()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) text.get(text.position() + i);
+        }
+        String score = new String(chars);
+        switch (score) {
+            case "+inf":
+            case "inf":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                try {
+                    return Double.parseDouble(score);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid score " + score);
+                }
+        }
+    }
+
+    private static boolean equalsIgnoreCase(ByteBuffer bytes, String ascii) {
+        if (bytes.remaining() != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            if (Character.toUpperCase((char) bytes.get(bytes.position() + i)) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package com.redislettuce.bulk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses one line of input into a {@link Record}. Parsers keep state between calls and belong to one thread.
+ */
+interface RecordParser {
+
+    /**
+     * Parses the bytes {@code [start, end)} of {@code buffer}, a line without its line break.
+     *
+     * @throws IllegalArgumentException if the line is not a valid record.
+     */
+    void parse(ByteBuffer buffer, int start, int end, Record record);
+}
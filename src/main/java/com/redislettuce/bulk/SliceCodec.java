@@ -0,0 +1,59 @@
+package com.redislettuce.bulk;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keys and values that are views of the input: encoding writes the viewed bytes straight into the outgoing network
+ * buffer, which is the only copy a record's bytes go through. Decoding copies, the loader hardly reads replies.
+ */
+final class SliceCodec implements RedisCodec<ByteBuffer, ByteBuffer>, ToByteBufEncoder<ByteBuffer, ByteBuffer> {
+
+    static final SliceCodec INSTANCE = new SliceCodec();
+
+    @Override
+    public ByteBuffer decodeKey(ByteBuffer bytes) {
+        return copy(bytes);
+    }
+
+    @Override
+    public ByteBuffer decodeValue(ByteBuffer bytes) {
+        return copy(bytes);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(ByteBuffer key) {
+        return key.duplicate();
+    }
+
+    @Override
+    public ByteBuffer encodeValue(ByteBuffer value) {
+        return value == null ? ByteBuffer.allocate(0) : value.duplicate();
+    }
+
+    @Override
+    public void encodeKey(ByteBuffer key, ByteBuf target) {
+        target.writeBytes(key.duplicate());
+    }
+
+    @Override
+    public void encodeValue(ByteBuffer value, ByteBuf target) {
+        if (value != null) {
+            target.writeBytes(value.duplicate());
+        }
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        return keyOrValue instanceof ByteBuffer ? ((ByteBuffer) keyOrValue).remaining() : 0;
+    }
+
+    private static ByteBuffer copy(ByteBuffer bytes) {
+        ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+        copy.put(bytes.duplicate()).flip();
+        return copy;
+    }
+}
@@ -0,0 +1,573 @@
+package com.redislettuce.cache;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushListener;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.GenericMapOutput;
+import io.lettuce.core.protocol.CommandType;
+
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Client side cache in front of GET, HGET and ZSCORE, kept coherent by redis server-assisted client side caching
+ * ({@code CLIENT TRACKING}, RESP3 only).
+ *
+ * The cache owns a dedicated connection with tracking enabled. Redis remembers the keys read over it (or, in
+ * broadcast mode, watches the configured prefixes) and pushes an {@code invalidate} message whenever one of
+ * them changes, which drops every cached GET, HGET and ZSCORE result of that key. Missing keys, fields and
+ * members are cached as well unless {@link Builder#cacheNulls(boolean)} is turned off.
+ *
+ * The cache is bounded by entry count and by weight (approximate bytes of key, field and value) and evicts
+ * least recently used entries. Both limits are split evenly across {@link Builder#concurrencyLevel(int)}
+ * independently locked segments, so LRU order is per segment.
+ *
+ * While the connection is down nothing can be invalidated, so the cache is cleared on disconnect and reads go
+ * to redis until tracking is enabled again after the reconnect.
+ * <pre>
+ * try (NearCache cache = NearCache.builder(client).maximumSize(100_000).build()) {
+ *     String value = cache.get("hello");
+ *     System.out.println(cache.stats());
+ * }
+ * </pre>
+ */
+public class NearCache implements AutoCloseable {
+
+    private static final Object NIL = new Object();
+
+    private static final char GET = 'g';
+
+    private static final char HGET = 'h';
+
+    private static final char ZSCORE = 'z';
+
+    private final RedisClient client;
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final TrackingArgs trackingArgs;
+
+    private final boolean cacheNulls;
+
+    private final Segment[] segments;
+
+    private final PushListener pushListener = this::onPushMessage;
+
+    private final RedisConnectionStateListener stateListener = new StateListener();
+
+    // bumped whenever the whole cache is dropped, loads started before must not populate it.
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private volatile boolean tracking;
+
+    private volatile boolean closed;
+
+    private NearCache(Builder builder) {
+        this.client = builder.client;
+        this.cacheNulls = builder.cacheNulls;
+        this.trackingArgs = TrackingArgs.Builder.enabled();
+        if (builder.prefixes != null) {
+            trackingArgs.bcast();
+            if (builder.prefixes.length > 0) {
+                trackingArgs.prefixes(builder.prefixes);
+            }
+        }
+
+        this.segments = new Segment[builder.concurrencyLevel];
+        long segmentSize = Math.max(1, divideRoundingUp(builder.maximumSize, segments.length));
+        long segmentWeight = Math.max(1, divideRoundingUp(builder.maximumWeight, segments.length));
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentSize, segmentWeight);
+        }
+
+        this.connection = client.connect(StringCodec.UTF8);
+        try {
+            // HELLO without arguments reports the protocol the handshake settled on.
+            Object protocol = connection.sync().dispatch(CommandType.HELLO,
+                    new GenericMapOutput<>(StringCodec.UTF8)).get("proto");
+            if (!Long.valueOf(3).equals(protocol)) {
+                throw new IllegalStateException("Near cache needs RESP3 invalidation messages, but the connection "
+                        + "uses protocol " + protocol);
+            }
+            connection.addListener(pushListener);
+            client.addListener(stateListener);
+            connection.sync().clientTracking(trackingArgs);
+            tracking = true;
+        } catch (RuntimeException e) {
+            client.removeListener(stateListener);
+            connection.close();
+            throw e;
+        }
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client);
+    }
+
+    public String get(String key) {
+        return lookup(GET, key, null, commands -> commands.get(key));
+    }
+
+    public String hget(String key, String field) {
+        return lookup(HGET, key, field, commands -> commands.hget(key, field));
+    }
+
+    public Double zscore(String key, String member) {
+        return lookup(ZSCORE, key, member, commands -> commands.zscore(key, member));
+    }
+
+    /**
+     * The tracked connection. Writes issued over it invalidate the cache like writes from any other client.
+     */
+    public StatefulRedisConnection<String, String> getConnection() {
+        return connection;
+    }
+
+    /**
+     * Drops the cached results for {@code key} locally, redis is not involved.
+     */
+    public void invalidate(String key) {
+        segmentFor(key).invalidate(key);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Stats stats() {
+        long size = 0;
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+                weight += segment.weight;
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size, weight);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        tracking = false;
+        client.removeListener(stateListener);
+        connection.removeListener(pushListener);
+        connection.close();
+        invalidateAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T lookup(char type, String key, String field, Function<RedisCommands<String, String>, T> loader) {
+        Segment segment = segmentFor(key);
+        CacheKey cacheKey = new CacheKey(type, key, field);
+        Object cached = segment.get(cacheKey);
+        if (cached != null) {
+            hits.increment();
+            return cached == NIL ? null : (T) cached;
+        }
+        misses.increment();
+        if (!tracking) {
+            return loader.apply(connection.sync());
+        }
+
+        long loadGeneration = generation.get();
+        Load load = segment.beginLoad(key);
+        T value;
+        try {
+            value = loader.apply(connection.sync());
+        } catch (RuntimeException e) {
+            segment.endLoad(key, load);
+            throw e;
+        }
+        if (value != null || cacheNulls) {
+            int weight = weigh(key, field, value);
+            evictions.add(segment.complete(cacheKey, load, value == null ? NIL : value, weight, loadGeneration));
+        } else {
+            segment.endLoad(key, load);
+        }
+        return value;
+    }
+
+    private void onPushMessage(PushMessage message) {
+        if (!message.getType().equals("invalidate")) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys == null) {
+            // FLUSHALL/FLUSHDB or tracking table overflow on the server.
+            generation.incrementAndGet();
+            for (Segment segment : segments) {
+                invalidations.add(segment.clear());
+            }
+            return;
+        }
+        for (Object key : (List<?>) keys) {
+            String name = (String) key;
+            invalidations.add(segmentFor(name).invalidate(name));
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static int weigh(String key, String field, Object value) {
+        int chars = key.length() + (field == null ? 0 : field.length());
+        int valueBytes = value instanceof String ? 2 * ((String) value).length() : 8;
+        // two bytes per char plus object headers of the entry, key and value.
+        return 2 * chars + valueBytes + 64;
+    }
+
+    private static long divideRoundingUp(long value, int divisor) {
+        return value == Long.MAX_VALUE ? value : (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Keeps the cache coherent across reconnects: nothing can be invalidated while the connection is down.
+     */
+    private class StateListener implements RedisConnectionStateListener {
+
+        @Override
+        public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress remoteAddress) {
+            if (handler != connection || closed || tracking) {
+                return;
+            }
+            connection.async().clientTracking(trackingArgs).thenRun(() -> {
+                if (!closed) {
+                    tracking = true;
+                }
+            });
+        }
+
+        @Override
+        public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+            if (handler == connection) {
+                tracking = false;
+                invalidateAll();
+            }
+        }
+
+        @Override
+        public void onRedisExceptionCaught(RedisChannelHandler<?, ?> handler, Throwable cause) {
+        }
+    }
+
+    private static final class CacheKey {
+
+        final char type;
+
+        final String key;
+
+        final String field;
+
+        CacheKey(char type, String key, String field) {
+            this.type = type;
+            this.key = key;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return type == other.type && key.equals(other.key) && Objects.equals(field, other.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * type + key.hashCode()) + Objects.hashCode(field);
+        }
+    }
+
+    private static final class Entry {
+
+        final Object value;
+
+        final int weight;
+
+        Entry(Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * An in-flight read of one key. Invalidations arriving before the reply was stored mark it, so a value that
+     * is already outdated never makes it into the cache.
+     */
+    private static final class Load {
+
+        int readers;
+
+        boolean invalidated;
+    }
+
+    private final class Segment {
+
+        final long maximumSize;
+
+        final long maximumWeight;
+
+        final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        // redis key to the GET/HGET/ZSCORE entries cached for it.
+        final Map<String, Set<CacheKey>> byKey = new HashMap<>();
+
+        final Map<String, Load> loads = new HashMap<>();
+
+        long weight;
+
+        Segment(long maximumSize, long maximumWeight) {
+            this.maximumSize = maximumSize;
+            this.maximumWeight = maximumWeight;
+        }
+
+        synchronized Object get(CacheKey key) {
+            Entry entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+
+        synchronized Load beginLoad(String key) {
+            Load load = loads.computeIfAbsent(key, k -> new Load());
+            load.readers++;
+            return load;
+        }
+
+        synchronized void endLoad(String key, Load load) {
+            if (--load.readers == 0 && loads.get(key) == load) {
+                loads.remove(key);
+            }
+        }
+
+        /**
+         * Stores a loaded value unless it was invalidated in the meantime.
+         *
+         * @return the number of evicted entries.
+         */
+        synchronized int complete(CacheKey key, Load load, Object value, int entryWeight, long loadGeneration) {
+            endLoad(key.key, load);
+            if (load.invalidated || loadGeneration != generation.get()) {
+                return 0;
+            }
+            Entry previous = entries.put(key, new Entry(value, entryWeight));
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entryWeight;
+            byKey.computeIfAbsent(key.key, k -> new HashSet<>()).add(key);
+
+            int evicted = 0;
+            Iterator<Map.Entry<CacheKey, Entry>> eldest = entries.entrySet().iterator();
+            while ((entries.size() > maximumSize || weight > maximumWeight) && eldest.hasNext()) {
+                Map.Entry<CacheKey, Entry> victim = eldest.next();
+                eldest.remove();
+                weight -= victim.getValue().weight;
+                unindex(victim.getKey());
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int invalidate(String key) {
+            Load load = loads.remove(key);
+            if (load != null) {
+                load.invalidated = true;
+            }
+            Set<CacheKey> cached = byKey.remove(key);
+            if (cached == null) {
+                return 0;
+            }
+            for (CacheKey cacheKey : cached) {
+                weight -= entries.remove(cacheKey).weight;
+            }
+            return cached.size();
+        }
+
+        synchronized int clear() {
+            for (Load load : loads.values()) {
+                load.invalidated = true;
+            }
+            loads.clear();
+            int removed = entries.size();
+            entries.clear();
+            byKey.clear();
+            weight = 0;
+            return removed;
+        }
+
+        private void unindex(CacheKey key) {
+            Set<CacheKey> cached = byKey.get(key.key);
+            if (cached != null && cached.remove(key) && cached.isEmpty()) {
+                byKey.remove(key.key);
+            }
+        }
+    }
+
+    /**
+     * Point-in-time counters, meant for sizing the cache: a high eviction count relative to misses means the
+     * working set does not fit, a high invalidation count means the cached keys change too often to be worth it.
+     */
+    public static class Stats {
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        private final long invalidations;
+
+        private final long size;
+
+        private final long weight;
+
+        Stats(long hits, long misses, long evictions, long invalidations, long size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Entries dropped because redis reported their key as changed.
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return "NearCacheStats{hits=" + hits + ", misses=" + misses + ", hitRate="
+                    + String.format("%.3f", getHitRate()) + ", evictions=" + evictions + ", invalidations="
+                    + invalidations + ", size=" + size + ", weight=" + weight + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private long maximumSize = 10_000;
+
+        private long maximumWeight = Long.MAX_VALUE;
+
+        private int concurrencyLevel = 8;
+
+        private boolean cacheNulls = true;
+
+        private String[] prefixes;
+
+        private Builder(RedisClient client) {
+            this.client = client;
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Upper bound for the approximate memory use of the cached entries, in bytes. Unbounded by default.
+         */
+        public Builder maximumWeight(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Number of independently locked segments.
+         */
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        /**
+         * Whether missing keys, fields and members are cached too. On by default.
+         */
+        public Builder cacheNulls(boolean cacheNulls) {
+            this.cacheNulls = cacheNulls;
+            return this;
+        }
+
+        /**
+         * Use broadcast tracking: redis sends invalidations for every key starting with one of the prefixes (all
+         * keys without prefixes) instead of remembering which keys were read. Costs no server memory per key, but
+         * also invalidates keys that were never cached.
+         */
+        public Builder broadcast(String... prefixes) {
+            this.prefixes = prefixes.clone();
+            return this;
+        }
+
+        public NearCache build() {
+            if (maximumSize < 1 || maximumWeight < 1 || concurrencyLevel < 1) {
+                throw new IllegalArgumentException("Require maximumSize, maximumWeight and concurrencyLevel >= 1, got "
+                        + maximumSize + ", " + maximumWeight + ", " + concurrencyLevel);
+            }
+            return new NearCache(this);
+        }
+    }
+}
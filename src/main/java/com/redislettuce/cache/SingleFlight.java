@@ -0,0 +1,418 @@
+package com.redislettuce.cache;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.output.StreamingChannel;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: while a command is in flight, every caller issuing the same command with
+ * the same arguments gets its result instead of sending another one. Meant for hot keys, where an expiry makes
+ * hundreds of threads ask for the same value at once.
+ *
+ * {@link #wrap(RedisAsyncCommands)} returns async commands that coalesce the read commands named by
+ * {@link Builder#commands(String...)} and pass everything else through; {@link #execute(Object, Supplier)} does
+ * the same for any call under a key of the caller's choice. Arguments are compared with {@code equals} (arrays by
+ * content), so argument objects without it are never coalesced, and calls taking a streaming channel never are.
+ *
+ * By default a result is only shared while the command is in flight. {@link Builder#shareResultsFor(Duration)}
+ * keeps serving it for a while after it arrived, which also collapses a burst that is slightly spread out, at the
+ * price of results up to that old. Errors are never shared beyond the callers that were waiting. Every caller gets
+ * its own future, cancelling it does not affect the others; the result object itself is shared and must not be
+ * modified.
+ * <pre>
+ * SingleFlight flights = SingleFlight.builder().shareResultsFor(Duration.ofMillis(20)).build();
+ * RedisAsyncCommands&lt;String, String&gt; async = flights.wrap(connection.async());
+ * async.get("hot").thenAccept(value -&gt; ...);
+ * System.out.println(flights.stats());
+ * </pre>
+ */
+public class SingleFlight {
+
+    private static final Set<String> READ_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "get", "mget", "getrange", "strlen", "exists", "type", "ttl", "pttl",
+            "hget", "hmget", "hgetall", "hkeys", "hvals", "hlen", "hexists", "hstrlen",
+            "lrange", "lindex", "llen",
+            "smembers", "sismember", "smismember", "scard",
+            "zrange", "zrangeWithScores", "zrevrange", "zrevrangeWithScores", "zrangebyscore",
+            "zrangebyscoreWithScores", "zrevrangebyscore", "zrevrangebyscoreWithScores", "zscore", "zmscore",
+            "zrank", "zrevrank", "zcard", "zcount")));
+
+    private final Map<Object, Flight> flights = new ConcurrentHashMap<>();
+
+    private final long shareNanos;
+
+    private final Set<String> commands;
+
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder executed = new LongAdder();
+
+    private final LongAdder joined = new LongAdder();
+
+    private final LongAdder shared = new LongAdder();
+
+    private SingleFlight(Builder builder) {
+        this.shareNanos = builder.shareResultsFor.toNanos();
+        this.commands = builder.commands;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Async commands of a standalone connection whose reads are coalesced.
+     */
+    public <K, V> RedisAsyncCommands<K, V> wrap(RedisAsyncCommands<K, V> async) {
+        return proxy(async, RedisAsyncCommands.class);
+    }
+
+    /**
+     * Async commands of a cluster connection whose reads are coalesced.
+     */
+    public <K, V> RedisAdvancedClusterAsyncCommands<K, V> wrap(RedisAdvancedClusterAsyncCommands<K, V> async) {
+        return proxy(async, RedisAdvancedClusterAsyncCommands.class);
+    }
+
+    /**
+     * Runs {@code command} unless a call with an equal {@code key} is in flight (or its result still shared), in
+     * which case the result of that one is returned. The key must identify the command, its arguments and the
+     * connection it goes to.
+     */
+    public <T> RedisFuture<T> execute(Object key, Supplier<? extends CompletionStage<T>> command) {
+        requests.increment();
+        Flight flight = new Flight(key);
+        while (true) {
+            Flight current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                break;
+            }
+            if (!current.expired()) {
+                (current.result.isDone() ? shared : joined).increment();
+                return current.follow();
+            }
+            flights.remove(key, current);
+        }
+        executed.increment();
+        CompletionStage<T> stage;
+        try {
+            stage = command.get();
+        } catch (RuntimeException | Error e) {
+            // callers may have joined meanwhile, they get the same error.
+            flight.complete(null, e);
+            throw e;
+        }
+        stage.whenComplete(flight::complete);
+        return flight.follow();
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), executed.sum(), joined.sum(), shared.sum());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(T async, Class<?> type) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        interfaces.add(type);
+        for (Class<?> c = async.getClass(); c != null; c = c.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), interfaces.toArray(new Class<?>[0]),
+                new Coalescing(async));
+    }
+
+    private boolean coalesces(Method method) {
+        if (!commands.contains(method.getName()) || method.getReturnType() != RedisFuture.class) {
+            return false;
+        }
+        for (Class<?> parameter : method.getParameterTypes()) {
+            if (StreamingChannel.class.isAssignableFrom(parameter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the flights whose shared result expired, at most once per share period and on the thread completing
+     * a command, so keys that are not asked for again do not pile up.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        long last = lastSweep.get();
+        if (now - last < shareNanos || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        flights.values().removeIf(Flight::expired);
+    }
+
+    private final class Coalescing implements InvocationHandler {
+
+        private final Object target;
+
+        private final Map<Method, Boolean> coalesced = new ConcurrentHashMap<>();
+
+        Coalescing(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (args != null && coalesced.computeIfAbsent(method, SingleFlight.this::coalesces)) {
+                return execute(new CallKey(target, method, args), () -> call(method, args));
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private RedisFuture<Object> call(Method method, Object[] args) {
+            try {
+                @SuppressWarnings("unchecked")
+                RedisFuture<Object> future = (RedisFuture<Object>) method.invoke(target, args);
+                return future;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class CallKey {
+
+        private final Object target;
+
+        private final Method method;
+
+        private final Object[] args;
+
+        private final int hash;
+
+        CallKey(Object target, Method method, Object[] args) {
+            this.target = target;
+            this.method = method;
+            this.args = args;
+            this.hash = 31 * (31 * System.identityHashCode(target) + method.hashCode()) + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallKey)) {
+                return false;
+            }
+            CallKey other = (CallKey) o;
+            return target == other.target && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final class Flight {
+
+        private final Object key;
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private volatile long expiresAt;
+
+        Flight(Object key) {
+            this.key = key;
+        }
+
+        void complete(Object value, Throwable error) {
+            if (error != null || shareNanos == 0) {
+                // gone before anyone sees the result, callers arriving later send the command again.
+                flights.remove(key, this);
+            } else {
+                expiresAt = System.nanoTime() + shareNanos;
+            }
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else {
+                result.complete(value);
+            }
+            if (shareNanos > 0) {
+                sweep();
+            }
+        }
+
+        boolean expired() {
+            return result.isDone() && (shareNanos == 0 || System.nanoTime() - expiresAt >= 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> RedisFuture<T> follow() {
+            SharedFuture<T> future = new SharedFuture<>();
+            result.whenComplete((value, error) -> {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete((T) value);
+                }
+            });
+            return future;
+        }
+    }
+
+    /**
+     * The future handed to one caller.
+     */
+    private static final class SharedFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+        @Override
+        public String getError() {
+            if (!isCompletedExceptionally()) {
+                return null;
+            }
+            try {
+                join();
+                return null;
+            } catch (CompletionException e) {
+                return e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            } catch (CancellationException e) {
+                return e.getMessage();
+            }
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            try {
+                get(timeout, unit);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisCommandInterruptedException(e);
+            } catch (ExecutionException | CancellationException e) {
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Point-in-time counters: {@code executed} commands were sent, the other {@code coalesced} requests were
+     * served by one of them, while it was in flight ({@code joined}) or from its shared result ({@code shared}).
+     */
+    public static class Stats {
+
+        private final long requests;
+
+        private final long executed;
+
+        private final long joined;
+
+        private final long shared;
+
+        Stats(long requests, long executed, long joined, long shared) {
+            this.requests = requests;
+            this.executed = executed;
+            this.joined = joined;
+            this.shared = shared;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getExecuted() {
+            return executed;
+        }
+
+        public long getJoined() {
+            return joined;
+        }
+
+        public long getShared() {
+            return shared;
+        }
+
+        public long getCoalesced() {
+            return joined + shared;
+        }
+
+        public double getCoalescedRate() {
+            return requests == 0 ? 0 : (double) getCoalesced() / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "SingleFlightStats{requests=" + requests + ", executed=" + executed + ", joined=" + joined
+                    + ", shared=" + shared + ", coalescedRate=" + String.format("%.3f", getCoalescedRate()) + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private Duration shareResultsFor = Duration.ZERO;
+
+        private Set<String> commands = READ_COMMANDS;
+
+        private Builder() {
+        }
+
+        /**
+         * How long a result keeps being served after it arrived, defaults to zero: only while in flight.
+         */
+        public Builder shareResultsFor(Duration shareResultsFor) {
+            this.shareResultsFor = shareResultsFor;
+            return this;
+        }
+
+        /**
+         * Names of the async command methods coalesced by {@link SingleFlight#wrap(RedisAsyncCommands)}, replacing
+         * the default read commands (GET, HGET, HGETALL, LRANGE, SMEMBERS, ZRANGE, ZSCORE and the like). Only
+         * deterministic commands without side effects belong here; SRANDMEMBER, for one, would hand every caller
+         * the same member.
+         */
+        public Builder commands(String... commands) {
+            this.commands = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(commands)));
+            return this;
+        }
+
+        public SingleFlight build() {
+            if (shareResultsFor == null || shareResultsFor.isNegative()) {
+                throw new IllegalArgumentException("shareResultsFor must not be negative");
+            }
+            return new SingleFlight(this);
+        }
+    }
+}
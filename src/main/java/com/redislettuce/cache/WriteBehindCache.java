@@ -0,0 +1,662 @@
+package com.redislettuce.cache;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind buffer for SET, SET EX/SETEX and HSET: writes land in a local buffer keyed by redis key and are
+ * written to redis later, so a key overwritten many times between two flushes costs a single command.
+ *
+ * The buffer keeps only the latest value of a string key and the latest value of each pending field of a hash.
+ * A flush sends every key that changed since the previous one as one pipeline: {@code SET} with the TTL that is
+ * left of the last write, {@code DEL} if that TTL already ran out, or one {@code HSET} with all pending fields,
+ * preceded by a {@code DEL} when the hash replaces a string that expired in the buffer.
+ * TTLs run from the time of the write, not of the flush, measured with the monotonic clock. Flushes run every
+ * {@link Builder#lossWindow(Duration)} and as soon as {@link Builder#flushThreshold(int)} keys are dirty; the
+ * loss window is also how much a crash of this process can lose.
+ *
+ * Reads of a buffered key are answered from the buffer, including while its write is in flight, so callers
+ * always read their own writes; other keys are read from redis. Like redis, HSET on a buffered string key and GET
+ * on a buffered hash fail with WRONGTYPE. At most {@link Builder#maximumKeys(int)} keys are buffered or in flight,
+ * a write of a new key beyond that triggers a flush and waits for {@link Builder#backpressureTimeout(Duration)}.
+ *
+ * A write that fails with an error reply is dropped and counted as failed, one that fails for another reason
+ * (timeout, disconnect) is retried by the next flush. {@link #close()} flushes until the buffer is empty and waits
+ * for the replies. The cache must be the only writer of its keys, and it switches off auto-flush on its
+ * connection, so the connection must not be shared with other code.
+ * <pre>
+ * try (WriteBehindCache cache = WriteBehindCache.builder(connection).lossWindow(Duration.ofMillis(200)).build()) {
+ *     cache.set("session:42", state, Duration.ofSeconds(15));
+ *     cache.get("session:42").thenAccept(...);
+ * }
+ * </pre>
+ */
+public class WriteBehindCache implements AutoCloseable {
+
+    private static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final int flushThreshold;
+
+    private final Duration backpressureTimeout;
+
+    private final Semaphore capacity;
+
+    private final Object bufferLock = new Object();
+
+    private final Object flushLock = new Object();
+
+    // buffered keys, dirty or in flight, and the dirty ones in the order they became dirty.
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final ArrayDeque<Entry> dirty = new ArrayDeque<>();
+
+    private final ScheduledFuture<?> scheduledFlush;
+
+    private final Thread shutdownHook;
+
+    private final LongAdder writes = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder flushed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder localReads = new LongAdder();
+
+    // replies of the latest flush; the connection answers in order, so all earlier flushes are done with it.
+    private volatile CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+
+    private volatile boolean closed;
+
+    private WriteBehindCache(Builder builder) {
+        this.connection = builder.connection;
+        this.commands = connection.async();
+        this.scheduler = builder.scheduler != null ? builder.scheduler : connection.getResources().eventExecutorGroup();
+        this.flushThreshold = builder.flushThreshold;
+        this.backpressureTimeout = builder.backpressureTimeout;
+        this.capacity = new Semaphore(builder.maximumKeys);
+        connection.setAutoFlushCommands(false);
+        long interval = builder.lossWindow.toNanos();
+        this.scheduledFlush = scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+        if (builder.flushOnShutdown) {
+            this.shutdownHook = new Thread(this::close, "write-behind-cache-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            this.shutdownHook = null;
+        }
+    }
+
+    public static Builder builder(StatefulRedisConnection<String, String> connection) {
+        return new Builder(connection);
+    }
+
+    /**
+     * SET without expiry, which like in redis also drops the TTL of the previous value.
+     */
+    public void set(String key, String value) {
+        write(key, entry -> entry.string(value, 0));
+    }
+
+    /**
+     * SET with EX/PX: the key expires {@code ttl} after this call.
+     */
+    public void set(String key, String value, Duration ttl) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        long expiresAt = System.nanoTime() + ttl.toNanos();
+        write(key, entry -> entry.string(value, expiresAt == 0 ? 1 : expiresAt));
+    }
+
+    public void setex(String key, long seconds, String value) {
+        set(key, value, Duration.ofSeconds(seconds));
+    }
+
+    public void hset(String key, String field, String value) {
+        hset(key, Collections.singletonMap(field, value));
+    }
+
+    public void hset(String key, Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        write(key, entry -> entry.hash(fields));
+    }
+
+    /**
+     * The buffered value of {@code key} if there is one, otherwise GET from redis.
+     */
+    public CompletableFuture<String> get(String key) {
+        synchronized (bufferLock) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                localReads.increment();
+                if (entry.fields != null) {
+                    return wrongType();
+                }
+                return CompletableFuture.completedFuture(entry.expired(System.nanoTime()) ? null : entry.value);
+            }
+        }
+        return send(commands.get(key));
+    }
+
+    /**
+     * The buffered value of the field if there is one, otherwise HGET from redis.
+     */
+    public CompletableFuture<String> hget(String key, String field) {
+        synchronized (bufferLock) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.fields == null && !entry.expired(System.nanoTime())) {
+                localReads.increment();
+                return wrongType();
+            }
+            if (entry != null && entry.fields != null && (entry.replaces || entry.fields.containsKey(field))) {
+                localReads.increment();
+                return CompletableFuture.completedFuture(entry.fields.get(field));
+            }
+        }
+        return send(commands.hget(key, field));
+    }
+
+    /**
+     * HGETALL from redis with the buffered fields of the hash applied on top.
+     */
+    public CompletableFuture<Map<String, String>> hgetall(String key) {
+        Map<String, String> pending = null;
+        synchronized (bufferLock) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.fields == null && !entry.expired(System.nanoTime())) {
+                localReads.increment();
+                return wrongType();
+            }
+            if (entry != null && entry.fields != null) {
+                pending = new LinkedHashMap<>(entry.fields);
+                if (entry.replaces) {
+                    localReads.increment();
+                    return CompletableFuture.completedFuture(pending);
+                }
+            }
+        }
+        Map<String, String> overlay = pending;
+        return send(commands.hgetall(key)).thenApply(stored -> {
+            if (overlay == null) {
+                return stored;
+            }
+            Map<String, String> merged = new LinkedHashMap<>(stored);
+            merged.putAll(overlay);
+            return merged;
+        });
+    }
+
+    /**
+     * Writes every dirty key. The returned future completes when redis has answered all writes so far.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (flushLock) {
+            List<Write> batch;
+            long now = System.nanoTime();
+            synchronized (bufferLock) {
+                if (dirty.isEmpty()) {
+                    return lastFlush;
+                }
+                batch = new ArrayList<>(dirty.size());
+                for (Entry entry; (entry = dirty.poll()) != null; ) {
+                    entry.dirty = false;
+                    batch.add(new Write(entry, now));
+                }
+            }
+            List<CompletableFuture<?>> replies = new ArrayList<>(batch.size());
+            for (Write write : batch) {
+                replies.add(dispatch(write));
+            }
+            connection.flushCommands();
+            // failed writes are retried or counted, not reported to whoever waits for the flush.
+            lastFlush = CompletableFuture.allOf(replies.toArray(new CompletableFuture[0]))
+                    .handle((ignored, error) -> null);
+            return lastFlush;
+        }
+    }
+
+    /**
+     * Number of keys buffered, dirty or in flight.
+     */
+    public int getBufferedKeys() {
+        synchronized (bufferLock) {
+            return entries.size();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(writes.sum(), coalesced.sum(), flushed.sum(), failed.sum(), localReads.sum(),
+                getBufferedKeys());
+    }
+
+    /**
+     * Stops the periodic flush, writes everything buffered, waits for the replies and restores auto-flush on the
+     * connection. Writes after close throw {@link IllegalStateException}.
+     *
+     * @throws RedisException if the buffer could not be written; the unwritten keys are kept and close can be retried.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduledFlush.cancel(false);
+        int left = Integer.MAX_VALUE;
+        while (true) {
+            await(flush());
+            int buffered = getBufferedKeys();
+            if (buffered == 0) {
+                break;
+            }
+            if (buffered >= left) {
+                throw new RedisException(buffered + " buffered keys could not be written");
+            }
+            left = buffered;
+        }
+        connection.setAutoFlushCommands(true);
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down.
+            }
+        }
+    }
+
+    private void write(String key, Update update) {
+        if (closed) {
+            throw new IllegalStateException("WriteBehindCache is closed");
+        }
+        writes.increment();
+        boolean buffered = false;
+        synchronized (bufferLock) {
+            if (entries.containsKey(key) || capacity.tryAcquire()) {
+                apply(key, update);
+                buffered = true;
+            }
+        }
+        if (!buffered) {
+            scheduler.execute(this::flush);
+            if (!acquire()) {
+                throw new RedisException("WriteBehindCache buffer full: " + key + " could not be buffered within "
+                        + backpressureTimeout);
+            }
+            synchronized (bufferLock) {
+                if (entries.containsKey(key)) {
+                    capacity.release();
+                }
+                apply(key, update);
+            }
+        }
+        if (closed) {
+            // close may have drained before this write landed: write it ourselves, close does not drop it.
+            await(flush());
+        }
+    }
+
+    /**
+     * Applies the update under the buffer lock, to the key's entry or to a new one whose permit is held.
+     */
+    private void apply(String key, Update update) {
+        Entry entry = entries.get(key);
+        boolean created = entry == null;
+        if (created) {
+            entry = new Entry(key);
+        }
+        try {
+            update.apply(entry);
+        } catch (RuntimeException e) {
+            if (created) {
+                capacity.release();
+            }
+            throw e;
+        }
+        if (created) {
+            entries.put(key, entry);
+        }
+        entry.version++;
+        if (entry.dirty) {
+            coalesced.increment();
+        } else {
+            entry.dirty = true;
+            dirty.add(entry);
+            if (dirty.size() == flushThreshold) {
+                scheduler.execute(this::flush);
+            }
+        }
+    }
+
+    private boolean acquire() {
+        try {
+            return capacity.tryAcquire(backpressureTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private CompletableFuture<?> dispatch(Write write) {
+        RedisFuture<?> reply;
+        if (write.fields != null) {
+            if (write.replaces) {
+                // whatever the server holds, an older hash or the string not expired there yet, goes first.
+                commands.del(write.entry.key);
+            }
+            reply = commands.hset(write.entry.key, write.fields);
+        } else if (write.ttlMillis < 0) {
+            reply = commands.del(write.entry.key);
+        } else if (write.ttlMillis > 0) {
+            reply = commands.set(write.entry.key, write.value, SetArgs.Builder.px(write.ttlMillis));
+        } else {
+            reply = commands.set(write.entry.key, write.value);
+        }
+        return reply.toCompletableFuture().whenComplete((value, error) -> written(write, error));
+    }
+
+    private void written(Write write, Throwable error) {
+        Entry entry = write.entry;
+        synchronized (bufferLock) {
+            if (error != null && !(error instanceof RedisCommandExecutionException)) {
+                // not applied, or not known to be: send the current state again.
+                if (!entry.dirty) {
+                    entry.dirty = true;
+                    dirty.add(entry);
+                }
+                return;
+            }
+            (error == null ? flushed : failed).increment();
+            if (entry.version == write.version && !entry.dirty && entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                capacity.release();
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> send(RedisFuture<T> reply) {
+        connection.flushCommands();
+        return reply.toCompletableFuture();
+    }
+
+    private static <T> CompletableFuture<T> wrongType() {
+        CompletableFuture<T> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new RedisCommandExecutionException(WRONGTYPE));
+        return failure;
+    }
+
+    private <T> T await(CompletionStage<T> stage) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return stage.toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RedisException ? (RedisException) e.getCause()
+                    : new RedisException(e.getCause());
+        }
+    }
+
+    private interface Update {
+
+        void apply(Entry entry);
+    }
+
+    /**
+     * The pending state of one key, guarded by the buffer lock.
+     */
+    private static final class Entry {
+
+        final String key;
+
+        // a string value, or the pending fields of a hash.
+        String value;
+
+        Map<String, String> fields;
+
+        // the fields replace the whole key: the hash was started over an expired string.
+        boolean replaces;
+
+        // System.nanoTime() deadline of a string value, 0 for none.
+        long expiresAt;
+
+        boolean dirty;
+
+        long version;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        void string(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.fields = null;
+            this.replaces = false;
+        }
+
+        void hash(Map<String, String> update) {
+            if (fields == null) {
+                if (version > 0 && !expired(System.nanoTime())) {
+                    throw new RedisCommandExecutionException(WRONGTYPE);
+                }
+                // an expired string is gone, the hash starts empty. fields keeps every field set since, so each
+                // flush of the entry can send DEL and HSET again.
+                fields = new LinkedHashMap<>();
+                replaces = version > 0;
+                value = null;
+                expiresAt = 0;
+            }
+            fields.putAll(update);
+        }
+
+        boolean expired(long now) {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * What a flush sends for an entry, taken under the buffer lock.
+     */
+    private static final class Write {
+
+        final Entry entry;
+
+        final long version;
+
+        final String value;
+
+        final Map<String, String> fields;
+
+        final boolean replaces;
+
+        // left of the TTL, 0 for none and -1 if it already ran out.
+        final long ttlMillis;
+
+        Write(Entry entry, long now) {
+            this.entry = entry;
+            this.version = entry.version;
+            this.value = entry.value;
+            this.fields = entry.fields == null ? null : new LinkedHashMap<>(entry.fields);
+            this.replaces = entry.replaces;
+            if (entry.fields != null || entry.expiresAt == 0) {
+                this.ttlMillis = 0;
+            } else if (entry.expired(now)) {
+                this.ttlMillis = -1;
+            } else {
+                this.ttlMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(entry.expiresAt - now + 999_999));
+            }
+        }
+    }
+
+    /**
+     * Point-in-time counters: of the {@code writes} calls, {@code coalesced} overwrote a key that had not been
+     * flushed yet; {@code flushed} and {@code failed} count the commands sent for them.
+     */
+    public static class Stats {
+
+        private final long writes;
+
+        private final long coalesced;
+
+        private final long flushed;
+
+        private final long failed;
+
+        private final long localReads;
+
+        private final int bufferedKeys;
+
+        Stats(long writes, long coalesced, long flushed, long failed, long localReads, int bufferedKeys) {
+            this.writes = writes;
+            this.coalesced = coalesced;
+            this.flushed = flushed;
+            this.failed = failed;
+            this.localReads = localReads;
+            this.bufferedKeys = bufferedKeys;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getFlushed() {
+            return flushed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getLocalReads() {
+            return localReads;
+        }
+
+        public int getBufferedKeys() {
+            return bufferedKeys;
+        }
+
+        @Override
+        public String toString() {
+            return "WriteBehindStats{writes=" + writes + ", coalesced=" + coalesced + ", flushed=" + flushed
+                    + ", failed=" + failed + ", localReads=" + localReads + ", bufferedKeys=" + bufferedKeys + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private final StatefulRedisConnection<String, String> connection;
+
+        private ScheduledExecutorService scheduler;
+
+        private Duration lossWindow = Duration.ofMillis(100);
+
+        private int flushThreshold = 10_000;
+
+        private int maximumKeys = 100_000;
+
+        private Duration backpressureTimeout = Duration.ofSeconds(1);
+
+        private boolean flushOnShutdown;
+
+        private Builder(StatefulRedisConnection<String, String> connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Runs the flushes, defaults to the event executor group of the connection's client resources.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Interval of the periodic flush, which bounds how long a write stays only in this process and so what a
+         * crash can lose; defaults to 100 ms.
+         */
+        public Builder lossWindow(Duration lossWindow) {
+            this.lossWindow = lossWindow;
+            return this;
+        }
+
+        /**
+         * Number of dirty keys that triggers a flush before the interval is over, defaults to 10000.
+         */
+        public Builder flushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+            return this;
+        }
+
+        /**
+         * Upper bound of keys that are buffered or awaiting a reply, defaults to 100000.
+         */
+        public Builder maximumKeys(int maximumKeys) {
+            this.maximumKeys = maximumKeys;
+            return this;
+        }
+
+        public Builder backpressureTimeout(Duration backpressureTimeout) {
+            this.backpressureTimeout = backpressureTimeout;
+            return this;
+        }
+
+        /**
+         * Also {@link WriteBehindCache#close() close} from a JVM shutdown hook, defaults to off.
+         */
+        public Builder flushOnShutdown(boolean flushOnShutdown) {
+            this.flushOnShutdown = flushOnShutdown;
+            return this;
+        }
+
+        public WriteBehindCache build() {
+            if (connection == null) {
+                throw new IllegalArgumentException("A connection is required");
+            }
+            if (lossWindow.isNegative() || lossWindow.isZero() || flushThreshold < 1) {
+                throw new IllegalArgumentException("lossWindow and flushThreshold must be positive");
+            }
+            if (maximumKeys < flushThreshold) {
+                throw new IllegalArgumentException("Require flushThreshold <= maximumKeys, got flushThreshold="
+                        + flushThreshold + ", maximumKeys=" + maximumKeys);
+            }
+            return new WriteBehindCache(this);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.redislettuce.cluster;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.output.ValueListOutput;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.Command;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.protocol.RedisCommand;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * MGET and MSET for keys spread over a redis cluster.
+ *
+ * Redis only accepts multi-key commands whose keys share one hash slot, so the keys are grouped by slot and
+ * every group becomes one MGET/MSET sent straight to the master serving that slot. All groups are in flight at
+ * the same time, so a call costs about one round trip to the slowest node rather than one round trip per key or
+ * per slot. MGET results come back in the caller's order.
+ *
+ * A group answered with MOVED is resent to the node named in the redirect (and the topology is refreshed in the
+ * background), a group answered with ASK is resent there after ASKING. Other groups are not repeated.
+ * <pre>
+ * try (ClusterMultiKeyCommands commands = ClusterMultiKeyCommands.builder(clusterClient).build()) {
+ *     commands.mset(values);
+ *     List&lt;KeyValue&lt;String, String&gt;&gt; result = commands.mget("a", "b", "c");
+ * }
+ * </pre>
+ */
+public class ClusterMultiKeyCommands implements AutoCloseable {
+
+    private final RedisClusterClient client;
+
+    private final StatefulRedisClusterConnection<String, String> connection;
+
+    private final int maxRedirects;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private ClusterMultiKeyCommands(Builder builder) {
+        this.client = builder.client;
+        this.maxRedirects = builder.maxRedirects;
+        this.connection = client.connect(StringCodec.UTF8);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(client);
+    }
+
+    public List<KeyValue<String, String>> mget(String... keys) {
+        return await(mgetAsync(Arrays.asList(keys)));
+    }
+
+    public List<KeyValue<String, String>> mget(List<String> keys) {
+        return await(mgetAsync(keys));
+    }
+
+    public CompletableFuture<List<KeyValue<String, String>>> mgetAsync(List<String> keys) {
+        String[] values = new String[keys.size()];
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (SlotBatch batch : groupBySlot(keys)) {
+            batches.add(execute(batch.slot, () -> new Command<>(CommandType.MGET, new ValueListOutput<>(StringCodec.UTF8),
+                    new CommandArgs<>(StringCodec.UTF8).addKeys(batch.keys))).thenAccept(result -> {
+                for (int i = 0; i < result.size(); i++) {
+                    values[batch.indexes.get(i)] = result.get(i);
+                }
+            }));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<KeyValue<String, String>> result = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                result.add(KeyValue.fromNullable(keys.get(i), values[i]));
+            }
+            return result;
+        });
+    }
+
+    public String mset(Map<String, String> values) {
+        return await(msetAsync(values));
+    }
+
+    /**
+     * Sets all values, one MSET per slot. Not atomic across slots: if a group fails, the others may still have
+     * been written.
+     */
+    public CompletableFuture<String> msetAsync(Map<String, String> values) {
+        List<String> keys = new ArrayList<>(values.keySet());
+        List<CompletableFuture<String>> batches = new ArrayList<>();
+        for (SlotBatch batch : groupBySlot(keys)) {
+            Map<String, String> slotValues = new LinkedHashMap<>();
+            for (String key : batch.keys) {
+                slotValues.put(key, values.get(key));
+            }
+            batches.add(execute(batch.slot, () -> new Command<>(CommandType.MSET,
+                    new StatusOutput<>(StringCodec.UTF8), new CommandArgs<>(StringCodec.UTF8).add(slotValues))));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> "OK");
+    }
+
+    public StatefulRedisClusterConnection<String, String> getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private static List<SlotBatch> groupBySlot(List<String> keys) {
+        Map<Integer, SlotBatch> batches = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            int slot = SlotHash.getSlot(key);
+            SlotBatch batch = batches.computeIfAbsent(slot, SlotBatch::new);
+            batch.indexes.add(i);
+            batch.keys.add(key);
+        }
+        return new ArrayList<>(batches.values());
+    }
+
+    private <T> CompletableFuture<T> execute(int slot, Supplier<Command<String, String, T>> command) {
+        RedisClusterNode node = connection.getPartitions().getPartitionBySlot(slot);
+        if (node == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new RedisException("No cluster node serves slot " + slot));
+            return failed;
+        }
+        RedisURI uri = node.getUri();
+        return execute(slot, command, uri.getHost(), uri.getPort(), false, 0);
+    }
+
+    private <T> CompletableFuture<T> execute(int slot, Supplier<Command<String, String, T>> command, String host, int port,
+            boolean asking, int redirects) {
+        return connection.getConnectionAsync(host, port)
+                .thenCompose(nodeConnection -> dispatch(nodeConnection, command.get(), asking))
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Redirect redirect = Redirect.parse(unwrap(error));
+                    if (redirect == null || redirects >= maxRedirects) {
+                        CompletableFuture<T> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(unwrap(error));
+                        return failed;
+                    }
+                    if (!redirect.ask) {
+                        refreshTopology();
+                    }
+                    return execute(slot, command, redirect.host, redirect.port, redirect.ask, redirects + 1);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static <T> CompletableFuture<T> dispatch(StatefulRedisConnection<String, String> nodeConnection,
+            Command<String, String, T> command, boolean asking) {
+        AsyncCommand<String, String, T> future = new AsyncCommand<>(command);
+        if (asking) {
+            // ASKING only applies to the next command, so both go out back to back.
+            AsyncCommand<String, String, String> askingCommand = new AsyncCommand<>(
+                    new Command<>(CommandType.ASKING, new StatusOutput<>(StringCodec.UTF8)));
+            nodeConnection.dispatch(Arrays.<RedisCommand<String, String, ?>>asList(askingCommand, future));
+        } else {
+            nodeConnection.dispatch(future);
+        }
+        return future;
+    }
+
+    private void refreshTopology() {
+        if (refreshing.compareAndSet(false, true)) {
+            client.refreshPartitionsAsync().whenComplete((ignored, error) -> refreshing.set(false));
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RedisException ? (RedisException) cause : new RedisException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static final class SlotBatch {
+
+        final int slot;
+
+        final List<Integer> indexes = new ArrayList<>();
+
+        final List<String> keys = new ArrayList<>();
+
+        SlotBatch(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * A parsed {@code MOVED <slot> <host>:<port>} or {@code ASK <slot> <host>:<port>} error.
+     */
+    private static final class Redirect {
+
+        final boolean ask;
+
+        final String host;
+
+        final int port;
+
+        private Redirect(boolean ask, String host, int port) {
+            this.ask = ask;
+            this.host = host;
+            this.port = port;
+        }
+
+        static Redirect parse(Throwable error) {
+            if (!(error instanceof RedisCommandExecutionException) || error.getMessage() == null) {
+                return null;
+            }
+            String[] parts = error.getMessage().split(" ");
+            if (parts.length != 3 || !(parts[0].equals("MOVED") || parts[0].equals("ASK"))) {
+                return null;
+            }
+            int colon = parts[2].lastIndexOf(':');
+            if (colon < 0) {
+                return null;
+            }
+            return new Redirect(parts[0].equals("ASK"), parts[2].substring(0, colon),
+                    Integer.parseInt(parts[2].substring(colon + 1)));
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClusterClient client;
+
+        private int maxRedirects = 5;
+
+        private Builder(RedisClusterClient client) {
+            this.client = client;
+        }
+
+        /**
+         * How often one slot group may be redirected before the call fails.
+         */
+        public Builder maxRedirects(int maxRedirects) {
+            this.maxRedirects = maxRedirects;
+            return this;
+        }
+
+        public ClusterMultiKeyCommands build() {
+            if (maxRedirects < 0) {
+                throw new IllegalArgumentException("maxRedirects must not be negative, got " + maxRedirects);
+            }
+            return new ClusterMultiKeyCommands(this);
+        }
+    }
+}
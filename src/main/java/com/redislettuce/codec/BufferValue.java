@@ -0,0 +1,94 @@
+package com.redislettuce.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A redis value held as bytes instead of a decoded {@link String}, see {@link BufferValueCodec}.
+ *
+ * Values read through the codec live in pooled direct memory and must be {@link #release() released} (or closed)
+ * once the caller is done with them, otherwise the pool has to fall back to fresh allocations and netty's leak
+ * detector reports them. Values created with {@link #wrap} for writes reference the caller's array or buffer
+ * without copying it and need no release; releasing one frees only its unpooled wrapper, which makes the value
+ * unreadable but leaves the caller's array or buffer as it was.
+ *
+ * Not thread-safe with respect to {@link #release()}: a value must not be read after it was released.
+ */
+public final class BufferValue implements AutoCloseable {
+
+    private final ByteBuf buf;
+
+    BufferValue(ByteBuf buf) {
+        this.buf = buf;
+    }
+
+    public static BufferValue wrap(byte[] bytes) {
+        return new BufferValue(Unpooled.wrappedBuffer(bytes));
+    }
+
+    /**
+     * Wraps the remaining bytes of {@code buffer}. Later changes to its position or limit do not affect the value,
+     * changes to its content do.
+     */
+    public static BufferValue wrap(ByteBuffer buffer) {
+        return new BufferValue(Unpooled.wrappedBuffer(buffer.duplicate()));
+    }
+
+    /**
+     * Read-only view of the bytes, positioned at 0. Each call returns an independent view.
+     */
+    public ByteBuffer buffer() {
+        return buf.nioBuffer().asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return buf.readableBytes();
+    }
+
+    /**
+     * Copies up to {@code length} bytes starting at {@code index} into {@code target}, e.g. for streaming a large
+     * value in chunks.
+     */
+    public void getBytes(int index, byte[] target, int offset, int length) {
+        buf.getBytes(buf.readerIndex() + index, target, offset, length);
+    }
+
+    /**
+     * Copies the bytes to a new array.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    public String toString(Charset charset) {
+        return buf.toString(charset);
+    }
+
+    /**
+     * Hands pooled memory back. Safe to call more than once.
+     */
+    public void release() {
+        if (buf.refCnt() > 0) {
+            buf.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    ByteBuf byteBuf() {
+        return buf;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferValue{size=" + (buf.refCnt() > 0 ? buf.readableBytes() : "released") + "}";
+    }
+}
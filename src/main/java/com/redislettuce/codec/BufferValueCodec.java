@@ -0,0 +1,82 @@
+package com.redislettuce.codec;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec with UTF-8 {@link String} keys and {@link BufferValue} values, for large payloads that callers consume as
+ * bytes (files, sockets, parsers) rather than as text.
+ *
+ * Compared to {@link StringCodec} a GET of an n byte value costs one copy from the network buffer into pooled
+ * direct memory instead of a heap copy, a UTF-8 decode into a new String and whatever copy the caller makes to get
+ * bytes back. Writes go straight from the caller's {@code byte[]}/{@code ByteBuffer} into the outgoing network
+ * buffer without an intermediate encoded copy.
+ *
+ * The network buffer lettuce decodes from is reused once the reply was parsed, so a value cannot simply be a slice
+ * of it; the single copy into pooled memory is the least a decoded value can cost.
+ * <pre>
+ * StatefulRedisConnection&lt;String, BufferValue&gt; connection = client.connect(BufferValueCodec.INSTANCE);
+ * try (BufferValue value = connection.sync().get("blob")) {
+ *     channel.write(value.buffer());
+ * }
+ * </pre>
+ */
+public class BufferValueCodec implements RedisCodec<String, BufferValue>, ToByteBufEncoder<String, BufferValue> {
+
+    public static final BufferValueCodec INSTANCE = new BufferValueCodec(PooledByteBufAllocator.DEFAULT);
+
+    private final ByteBufAllocator allocator;
+
+    public BufferValueCodec(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public String decodeKey(ByteBuffer bytes) {
+        return StringCodec.UTF8.decodeKey(bytes);
+    }
+
+    @Override
+    public BufferValue decodeValue(ByteBuffer bytes) {
+        ByteBuf buf = allocator.directBuffer(bytes.remaining(), bytes.remaining());
+        buf.writeBytes(bytes);
+        return new BufferValue(buf);
+    }
+
+    @Override
+    public ByteBuffer encodeKey(String key) {
+        return StringCodec.UTF8.encodeKey(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(BufferValue value) {
+        return value == null ? ByteBuffer.allocate(0) : value.buffer();
+    }
+
+    @Override
+    public void encodeKey(String key, ByteBuf target) {
+        StringCodec.UTF8.encodeKey(key, target);
+    }
+
+    @Override
+    public void encodeValue(BufferValue value, ByteBuf target) {
+        if (value != null) {
+            ByteBuf source = value.byteBuf();
+            target.writeBytes(source, source.readerIndex(), source.readableBytes());
+        }
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        if (keyOrValue instanceof BufferValue) {
+            return ((BufferValue) keyOrValue).size();
+        }
+        return StringCodec.UTF8.estimateSize(keyOrValue);
+    }
+}
@@ -0,0 +1,481 @@
+package com.redislettuce.codec;
+
+import io.lettuce.core.RedisException;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decorates a codec so that values of at least {@link Builder#threshold(int)} bytes are stored deflated, for
+ * repetitive values such as JSON where network bandwidth and redis memory are scarcer than client CPU. Keys pass
+ * through unchanged.
+ * <pre>
+ * RedisCodec&lt;String, String&gt; codec = CompressionCodec.builder(StringCodec.UTF8).threshold(512).build();
+ * StatefulRedisConnection&lt;String, String&gt; connection = client.connect(codec);
+ * </pre>
+ * A compressed value starts with the magic bytes {@code FF 00 C0} and a type byte: {@code 01} for a deflate
+ * stream, {@code 02} for a deflate stream using the {@link CompressionDictionary} (followed by its 4 byte id), then
+ * the original length as a varint. Values below the threshold and values that do not get smaller are stored as they
+ * are, or behind {@code FF 00 C0 03} if they start with the magic bytes themselves. {@code FF} and {@code C0} never
+ * occur in UTF-8 text and the sequence is unlikely at the start of binary formats, so values written without this
+ * codec decode unchanged unless they start with {@code FF 00 C0 01}, {@code 02} or {@code 03}.
+ *
+ * On its own a small value barely compresses: deflate has not seen any of its content before. A dictionary
+ * trained from sample values (field names, common enum values) gives it that history, see
+ * {@link CompressionDictionary#train}. Every client reading the values needs the same dictionary, a value
+ * compressed with another one fails to decode with a {@link RedisException}.
+ *
+ * Deflater, inflater and buffers are kept per thread (lettuce encodes and decodes on its event loop threads), so
+ * compression allocates nothing per value. The delegate must not keep the buffer passed to its
+ * {@code decodeValue}, which no lettuce codec does. {@link #stats()} reports the compression ratio and CPU time
+ * to choose the threshold with.
+ */
+public class CompressionCodec<K, V> implements RedisCodec<K, V>, ToByteBufEncoder<K, V> {
+
+    private static final byte[] MAGIC = { (byte) 0xFF, 0x00, (byte) 0xC0 };
+
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+
+    private static final int DEFLATED = 1;
+
+    private static final int DICTIONARY = 2;
+
+    private static final int ESCAPED = 3;
+
+    // the largest redis string.
+    private static final int MAX_LENGTH = 512 * 1024 * 1024;
+
+    private final RedisCodec<K, V> delegate;
+
+    private final ToByteBufEncoder<K, V> byteBufDelegate;
+
+    private final int threshold;
+
+    private final int level;
+
+    private final CompressionDictionary dictionary;
+
+    private final ThreadLocal<State> state;
+
+    private final LongAdder values = new LongAdder();
+
+    private final LongAdder compressed = new LongAdder();
+
+    private final LongAdder belowThreshold = new LongAdder();
+
+    private final LongAdder originalBytes = new LongAdder();
+
+    private final LongAdder storedBytes = new LongAdder();
+
+    private final LongAdder attemptedBytes = new LongAdder();
+
+    private final LongAdder compressNanos = new LongAdder();
+
+    private final LongAdder decompressed = new LongAdder();
+
+    private final LongAdder decompressNanos = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    private CompressionCodec(Builder<K, V> builder) {
+        this.delegate = builder.delegate;
+        this.byteBufDelegate = delegate instanceof ToByteBufEncoder ? (ToByteBufEncoder<K, V>) delegate : null;
+        this.threshold = builder.threshold;
+        this.level = builder.level;
+        this.dictionary = builder.dictionary;
+        this.state = ThreadLocal.withInitial(State::new);
+    }
+
+    public static <K, V> Builder<K, V> builder(RedisCodec<K, V> delegate) {
+        return new Builder<>(delegate);
+    }
+
+    @Override
+    public K decodeKey(ByteBuffer bytes) {
+        return delegate.decodeKey(bytes);
+    }
+
+    @Override
+    public V decodeValue(ByteBuffer bytes) {
+        int position = bytes.position();
+        if (bytes.remaining() < HEADER_LENGTH || bytes.get(position) != MAGIC[0]
+                || bytes.get(position + 1) != MAGIC[1] || bytes.get(position + 2) != MAGIC[2]) {
+            return delegate.decodeValue(bytes);
+        }
+        int header = bytes.get(position + MAGIC.length);
+        if (header != DEFLATED && header != DICTIONARY && header != ESCAPED) {
+            return delegate.decodeValue(bytes);
+        }
+        bytes.position(position + HEADER_LENGTH);
+        if (header == ESCAPED) {
+            return delegate.decodeValue(bytes);
+        }
+        long start = System.nanoTime();
+        State state = this.state.get();
+        Inflater inflater = state.inflater;
+        inflater.reset();
+        if (header == DICTIONARY) {
+            int id = bytes.getInt();
+            if (dictionary == null || dictionary.id() != id) {
+                throw new RedisException("Value was compressed with dictionary " + Integer.toHexString(id)
+                        + ", this codec has " + (dictionary == null ? "none" : Integer.toHexString(dictionary.id())));
+            }
+            inflater.setDictionary(dictionary.array());
+        }
+        int length = readVarint(bytes);
+        byte[] input;
+        int offset;
+        int inputLength = bytes.remaining();
+        if (bytes.hasArray()) {
+            input = bytes.array();
+            offset = bytes.arrayOffset() + bytes.position();
+        } else {
+            input = state.input(inputLength);
+            offset = 0;
+            bytes.get(input, 0, inputLength);
+        }
+        inflater.setInput(input, offset, inputLength);
+        byte[] output = state.output(length);
+        try {
+            int inflated = 0;
+            while (inflated < length) {
+                int count = inflater.inflate(output, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    throw new RedisException("Compressed value is truncated");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new RedisException("Compressed value is corrupt", e);
+        }
+        decompressNanos.add(System.nanoTime() - start);
+        decompressed.increment();
+        return delegate.decodeValue(ByteBuffer.wrap(output, 0, length));
+    }
+
+    @Override
+    public ByteBuffer encodeKey(K key) {
+        return delegate.encodeKey(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(V value) {
+        ByteBuf target = Unpooled.buffer(estimateSize(value));
+        encodeValue(value, target);
+        return target.nioBuffer();
+    }
+
+    @Override
+    public void encodeKey(K key, ByteBuf target) {
+        if (byteBufDelegate != null) {
+            byteBufDelegate.encodeKey(key, target);
+        } else {
+            target.writeBytes(delegate.encodeKey(key));
+        }
+    }
+
+    @Override
+    public void encodeValue(V value, ByteBuf target) {
+        State state = this.state.get();
+        byte[] plain;
+        int offset;
+        int length;
+        if (byteBufDelegate != null) {
+            ByteBuf scratch = state.scratch;
+            scratch.clear();
+            byteBufDelegate.encodeValue(value, scratch);
+            plain = scratch.array();
+            offset = scratch.arrayOffset() + scratch.readerIndex();
+            length = scratch.readableBytes();
+        } else {
+            ByteBuffer encoded = delegate.encodeValue(value);
+            length = encoded.remaining();
+            if (encoded.hasArray()) {
+                plain = encoded.array();
+                offset = encoded.arrayOffset() + encoded.position();
+            } else {
+                plain = state.input(length);
+                offset = 0;
+                encoded.get(plain, 0, length);
+            }
+        }
+        values.increment();
+        originalBytes.add(length);
+        int stored = length >= threshold ? compress(plain, offset, length, state) : -1;
+        if (stored < 0) {
+            if (length < threshold) {
+                belowThreshold.increment();
+            }
+            if (length >= MAGIC.length && plain[offset] == MAGIC[0] && plain[offset + 1] == MAGIC[1]
+                    && plain[offset + 2] == MAGIC[2]) {
+                target.writeBytes(MAGIC);
+                target.writeByte(ESCAPED);
+                storedBytes.add(HEADER_LENGTH);
+            }
+            target.writeBytes(plain, offset, length);
+            storedBytes.add(length);
+        } else {
+            target.writeBytes(state.output, 0, stored);
+            storedBytes.add(stored);
+        }
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        // the target grows as needed, an estimate only saves copies.
+        return byteBufDelegate != null ? byteBufDelegate.estimateSize(keyOrValue) + HEADER_LENGTH : 64;
+    }
+
+    public Stats stats() {
+        return new Stats(values.sum(), compressed.sum(), belowThreshold.sum(), originalBytes.sum(),
+                storedBytes.sum(), attemptedBytes.sum(), compressNanos.sum(), decompressed.sum(),
+                decompressNanos.sum());
+    }
+
+    /**
+     * Deflates into {@code state.output}, behind the header.
+     *
+     * @return the length of the compressed value, or -1 if it would not be smaller than the original.
+     */
+    private int compress(byte[] plain, int offset, int length, State state) {
+        long start = System.nanoTime();
+        byte[] output = state.output(length);
+        int position = 0;
+        Deflater deflater = state.deflater;
+        deflater.reset();
+        System.arraycopy(MAGIC, 0, output, 0, MAGIC.length);
+        position += MAGIC.length;
+        if (dictionary != null) {
+            output[position++] = (byte) DICTIONARY;
+            int id = dictionary.id();
+            output[position++] = (byte) (id >>> 24);
+            output[position++] = (byte) (id >>> 16);
+            output[position++] = (byte) (id >>> 8);
+            output[position++] = (byte) id;
+            deflater.setDictionary(dictionary.array());
+        } else {
+            output[position++] = (byte) DEFLATED;
+        }
+        for (int value = length; ; value >>>= 7) {
+            if ((value & ~0x7F) == 0) {
+                output[position++] = (byte) value;
+                break;
+            }
+            output[position++] = (byte) ((value & 0x7F) | 0x80);
+        }
+        deflater.setInput(plain, offset, length);
+        deflater.finish();
+        while (!deflater.finished() && position < length) {
+            position += deflater.deflate(output, position, length - position);
+        }
+        boolean smaller = deflater.finished() && position < length;
+        compressNanos.add(System.nanoTime() - start);
+        attemptedBytes.add(length);
+        if (!smaller) {
+            return -1;
+        }
+        compressed.increment();
+        return position;
+    }
+
+    private static int readVarint(ByteBuffer bytes) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = bytes.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0 || value > MAX_LENGTH) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new RedisException("Compressed value is corrupt");
+    }
+
+    /**
+     * Per thread compression state, grown to the largest value seen.
+     */
+    private final class State {
+
+        final Deflater deflater = new Deflater(level, true);
+
+        final Inflater inflater = new Inflater(true);
+
+        final ByteBuf scratch = Unpooled.buffer(1024);
+
+        private byte[] input = new byte[1024];
+
+        private byte[] output = new byte[1024];
+
+        byte[] input(int length) {
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            return input;
+        }
+
+        byte[] output(int length) {
+            if (output.length < length) {
+                output = new byte[Math.max(length, output.length * 2)];
+            }
+            return output;
+        }
+    }
+
+    /**
+     * Point-in-time counters. Of the {@code values} encoded, {@code compressed} were stored compressed and
+     * {@code belowThreshold} were too small to try; the others did not get smaller. The ratio is over all values,
+     * the CPU time over every attempt, including those that did not pay off.
+     */
+    public static class Stats {
+
+        private final long values;
+
+        private final long compressed;
+
+        private final long belowThreshold;
+
+        private final long originalBytes;
+
+        private final long storedBytes;
+
+        private final long attemptedBytes;
+
+        private final long compressNanos;
+
+        private final long decompressed;
+
+        private final long decompressNanos;
+
+        Stats(long values, long compressed, long belowThreshold, long originalBytes, long storedBytes,
+                long attemptedBytes, long compressNanos, long decompressed, long decompressNanos) {
+            this.values = values;
+            this.compressed = compressed;
+            this.belowThreshold = belowThreshold;
+            this.originalBytes = originalBytes;
+            this.storedBytes = storedBytes;
+            this.attemptedBytes = attemptedBytes;
+            this.compressNanos = compressNanos;
+            this.decompressed = decompressed;
+            this.decompressNanos = decompressNanos;
+        }
+
+        public long getValues() {
+            return values;
+        }
+
+        public long getCompressed() {
+            return compressed;
+        }
+
+        public long getBelowThreshold() {
+            return belowThreshold;
+        }
+
+        /**
+         * Values that were tried but did not get smaller.
+         */
+        public long getIncompressible() {
+            return values - compressed - belowThreshold;
+        }
+
+        public long getOriginalBytes() {
+            return originalBytes;
+        }
+
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+
+        /**
+         * Original over stored bytes of all values, 1 if nothing was encoded yet.
+         */
+        public double getRatio() {
+            return storedBytes == 0 ? 1 : (double) originalBytes / storedBytes;
+        }
+
+        public long getCompressNanos() {
+            return compressNanos;
+        }
+
+        public long getDecompressed() {
+            return decompressed;
+        }
+
+        public long getDecompressNanos() {
+            return decompressNanos;
+        }
+
+        /**
+         * CPU time of compression per megabyte of the values that were tried.
+         */
+        public double getCompressNanosPerMegabyte() {
+            return attemptedBytes == 0 ? 0 : compressNanos * 1e6 / attemptedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "CompressionStats{values=" + values + ", compressed=" + compressed + ", belowThreshold="
+                    + belowThreshold + ", ratio=" + String.format(Locale.ROOT, "%.2f", getRatio()) + ", compressMillis="
+                    + compressNanos / 1_000_000 + ", decompressed=" + decompressed + ", decompressMillis="
+                    + decompressNanos / 1_000_000 + "}";
+        }
+    }
+
+    public static class Builder<K, V> {
+
+        private final RedisCodec<K, V> delegate;
+
+        private int threshold = 256;
+
+        private int level = Deflater.BEST_SPEED;
+
+        private CompressionDictionary dictionary;
+
+        private Builder(RedisCodec<K, V> delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Smallest encoded value that is compressed, 256 bytes by default.
+         */
+        public Builder<K, V> threshold(int threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Deflate level from 1 to 9, {@link Deflater#BEST_SPEED} by default.
+         */
+        public Builder<K, V> level(int level) {
+            this.level = level;
+            return this;
+        }
+
+        public Builder<K, V> dictionary(CompressionDictionary dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        public CompressionCodec<K, V> build() {
+            if (delegate == null) {
+                throw new IllegalArgumentException("A delegate codec is required");
+            }
+            if (threshold < 1) {
+                throw new IllegalArgumentException("threshold must be positive");
+            }
+            if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("level must be between 1 and 9");
+            }
+            return new CompressionCodec<>(this);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.redislettuce.counter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A delta that many threads add to and one flusher drains, either as a long or as the bits of a double.
+ *
+ * Like {@link java.util.concurrent.atomic.LongAdder} the cell starts with a single base value and spreads over one
+ * cache line per stripe the first time two threads collide on it. Unlike LongAdder it is drained with
+ * {@code getAndSet(0)} per stripe, so an add racing with a drain lands either in this drain or in the next one,
+ * never in neither, and double deltas are drained exactly rather than by subtracting a rounded sum.
+ */
+final class StripedCell {
+
+    /**
+     * Longs per cache line: stripes are this far apart in the array.
+     */
+    private static final int PAD = 8;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong base = new AtomicLong();
+
+    private volatile AtomicLongArray stripes;
+
+    void add(long delta) {
+        AtomicLongArray cells = stripes;
+        if (cells == null) {
+            long current = base.get();
+            if (base.compareAndSet(current, current + delta)) {
+                return;
+            }
+            cells = grow();
+        }
+        cells.getAndAdd(index(), delta);
+    }
+
+    void addDouble(double delta) {
+        AtomicLongArray cells = stripes;
+        if (cells == null) {
+            long current = base.get();
+            if (base.compareAndSet(current, plus(current, delta))) {
+                return;
+            }
+            cells = grow();
+        }
+        int index = index();
+        for (;;) {
+            long current = cells.get(index);
+            if (cells.compareAndSet(index, current, plus(current, delta))) {
+                return;
+            }
+        }
+    }
+
+    long drain() {
+        long sum = base.getAndSet(0);
+        AtomicLongArray cells = stripes;
+        if (cells != null) {
+            for (int i = PAD; i < cells.length(); i += PAD) {
+                sum += cells.getAndSet(i, 0);
+            }
+        }
+        return sum;
+    }
+
+    double drainDouble() {
+        double sum = Double.longBitsToDouble(base.getAndSet(0));
+        AtomicLongArray cells = stripes;
+        if (cells != null) {
+            for (int i = PAD; i < cells.length(); i += PAD) {
+                sum += Double.longBitsToDouble(cells.getAndSet(i, 0));
+            }
+        }
+        return sum;
+    }
+
+    private AtomicLongArray grow() {
+        synchronized (this) {
+            if (stripes == null) {
+                // one padding line before the first stripe keeps it off the array header's line.
+                stripes = new AtomicLongArray((STRIPES + 1) * PAD);
+            }
+            return stripes;
+        }
+    }
+
+    /**
+     * Thread ids are handed out in sequence, so the threads of a pool mostly get stripes of their own.
+     */
+    private static int index() {
+        return (((int) Thread.currentThread().getId() & (STRIPES - 1)) + 1) * PAD;
+    }
+
+    private static long plus(long bits, double delta) {
+        return Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + delta);
+    }
+
+    private static int stripes(int processors) {
+        int stripes = 1;
+        while (stripes < processors * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
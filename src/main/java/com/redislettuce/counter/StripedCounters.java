@@ -0,0 +1,389 @@
+package com.redislettuce.counter;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot counters incremented locally and written to redis as one INCRBY/INCRBYFLOAT/HINCRBY/HINCRBYFLOAT per counter
+ * and flush, instead of one command per event.
+ *
+ * Each counter accumulates its delta in a {@link StripedCell}: threads add to their own cache line, so increments
+ * do not contend with each other and scale with the number of threads. A flush drains every counter that changed
+ * since the previous one and sends all of them as one pipeline. Flushes run every {@code flushInterval}, which
+ * bounds how far the value in redis lags behind, and as soon as {@code flushThreshold} counters are dirty.
+ * {@link #flushAndGet(String)} writes one counter's pending delta and returns the exact value redis holds.
+ *
+ * No increment is lost to the client: a cell is drained atomically per stripe, and {@link #close()} writes
+ * everything that was counted before it returned. A command that fails for a transport reason (timeout,
+ * disconnect) puts its delta back for the next flush, so delivery is at-least-once: a timed out INCRBY that did reach
+ * redis is counted twice. A command redis rejects (WRONGTYPE, a value that is not a number) is not retried, its
+ * delta is dropped and counted in {@link #getFailedCount()}, and the flush that sent it fails with the error.
+ * Increments after close throw {@link IllegalStateException}. Counters stay registered for the lifetime of the
+ * service, so it is meant for a bounded set of hot keys, not for one-off keys.
+ *
+ * The service switches off auto-flush on its connection, so the connection must not be shared with other code.
+ * <pre>
+ * StripedCounters counters = StripedCounters.builder(connection).flushInterval(Duration.ofMillis(100)).build();
+ * counters.increment("page:views");
+ * counters.hincrementByFloat("revenue", country, amount);
+ * long exact = counters.flushAndGet("page:views");
+ * </pre>
+ */
+public class StripedCounters implements AutoCloseable {
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final int flushThreshold;
+
+    private final ConcurrentHashMap<Counter, Counter> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentLinkedQueue<Counter> dirty = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final Object flushLock = new Object();
+
+    // completes once the replies of all flushes so far are in, failed or not: close also waits for those of an
+    // earlier periodic flush.
+    private CompletableFuture<Void> outstanding = CompletableFuture.completedFuture(null);
+
+    private final ScheduledFuture<?> scheduledFlush;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean closed;
+
+    private StripedCounters(Builder builder) {
+        this.connection = builder.connection;
+        this.commands = connection.async();
+        this.flushThreshold = builder.flushThreshold;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : connection.getResources().eventExecutorGroup();
+        connection.setAutoFlushCommands(false);
+        long interval = builder.flushInterval.toNanos();
+        this.scheduledFlush = scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder(StatefulRedisConnection<String, String> connection) {
+        return new Builder(connection);
+    }
+
+    public void increment(String key) {
+        incrementBy(key, 1);
+    }
+
+    public void incrementBy(String key, long delta) {
+        add(key, null, false, delta);
+    }
+
+    public void incrementByFloat(String key, double delta) {
+        add(key, null, true, Double.doubleToRawLongBits(delta));
+    }
+
+    public void hincrementBy(String key, String field, long delta) {
+        add(key, field, false, delta);
+    }
+
+    public void hincrementByFloat(String key, String field, double delta) {
+        add(key, field, true, Double.doubleToRawLongBits(delta));
+    }
+
+    /**
+     * Writes the pending deltas of all dirty counters. The returned future completes when redis has answered all
+     * of them, and fails if one of the commands failed: deltas of transport failures are kept for the next flush,
+     * those of error replies are dropped.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (flushLock) {
+            List<CompletableFuture<?>> replies = new ArrayList<>();
+            for (Counter counter; (counter = dirty.poll()) != null; ) {
+                dirtyCount.decrementAndGet();
+                // cleared before draining: an increment racing with the drain marks the counter dirty again.
+                counter.dirty.set(false);
+                CompletableFuture<?> reply = send(counter);
+                if (reply != null) {
+                    replies.add(reply);
+                }
+            }
+            if (replies.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            connection.flushCommands();
+            CompletableFuture<Void> sent = CompletableFuture.allOf(replies.toArray(new CompletableFuture[0]));
+            CompletableFuture<Void> answered = sent.handle((ignore, error) -> null);
+            outstanding = outstanding.isDone() ? answered : CompletableFuture.allOf(outstanding, answered);
+            return sent;
+        }
+    }
+
+    /**
+     * Flushes the counter {@code key} now and returns its value in redis, 0 if it does not exist.
+     */
+    public long flushAndGet(String key) {
+        return flushAndGet(key, null, false).longValue();
+    }
+
+    public double flushAndGetFloat(String key) {
+        return flushAndGet(key, null, true).doubleValue();
+    }
+
+    public long flushAndGet(String key, String field) {
+        return flushAndGet(key, field, false).longValue();
+    }
+
+    public double flushAndGetFloat(String key, String field) {
+        return flushAndGet(key, field, true).doubleValue();
+    }
+
+    /**
+     * Number of counters with a pending delta.
+     */
+    public int getDirtyCount() {
+        return dirtyCount.get();
+    }
+
+    /**
+     * Number of deltas dropped because redis answered their command with an error.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Stops the periodic flush, writes everything counted so far and restores auto-flush on the connection.
+     *
+     * @throws RedisException if the last flush failed; deltas of transport failures are kept and close can be
+     * retried.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduledFlush.cancel(false);
+        CompletableFuture<Void> earlier;
+        CompletableFuture<Void> last;
+        synchronized (flushLock) {
+            earlier = outstanding;
+            last = flush();
+        }
+        await(earlier);
+        await(last);
+        connection.setAutoFlushCommands(true);
+    }
+
+    private void add(String key, String field, boolean floating, long value) {
+        if (closed) {
+            throw new IllegalStateException("StripedCounters is closed");
+        }
+        Counter lookup = new Counter(key, field, floating);
+        Counter counter = counters.get(lookup);
+        if (counter == null) {
+            Counter existing = counters.putIfAbsent(lookup, lookup);
+            counter = existing != null ? existing : lookup;
+        }
+        if (floating) {
+            counter.cell.addDouble(Double.longBitsToDouble(value));
+        } else {
+            counter.cell.add(value);
+        }
+        markDirty(counter);
+        if (closed) {
+            // close may have drained before this add landed: write it ourselves, close does not drop it.
+            await(flush());
+        }
+    }
+
+    private void markDirty(Counter counter) {
+        if (!counter.dirty.get() && counter.dirty.compareAndSet(false, true)) {
+            dirty.add(counter);
+            if (dirtyCount.incrementAndGet() >= flushThreshold) {
+                scheduler.execute(this::flush);
+            }
+        }
+    }
+
+    /**
+     * @return the reply, completed once a failed delta was put back (or dropped).
+     */
+    private CompletableFuture<?> send(Counter counter) {
+        if (counter.floating) {
+            double delta = counter.cell.drainDouble();
+            if (delta == 0) {
+                return null;
+            }
+            RedisFuture<?> reply = counter.field == null ? commands.incrbyfloat(counter.key, delta)
+                    : commands.hincrbyfloat(counter.key, counter.field, delta);
+            return reply.toCompletableFuture().whenComplete((value, error) -> {
+                if (retry(error)) {
+                    counter.cell.addDouble(delta);
+                    markDirty(counter);
+                }
+            });
+        }
+        long delta = counter.cell.drain();
+        if (delta == 0) {
+            return null;
+        }
+        RedisFuture<?> reply = counter.field == null ? commands.incrby(counter.key, delta)
+                : commands.hincrby(counter.key, counter.field, delta);
+        return reply.toCompletableFuture().whenComplete((value, error) -> {
+            if (retry(error)) {
+                counter.cell.add(delta);
+                markDirty(counter);
+            }
+        });
+    }
+
+    /**
+     * An error reply is final, sending the delta again would fail the same way on every flush. Any other failure
+     * may or may not have been applied, the delta is sent again.
+     */
+    private boolean retry(Throwable error) {
+        if (error instanceof RedisCommandExecutionException) {
+            failed.increment();
+            return false;
+        }
+        return error != null;
+    }
+
+    private Number flushAndGet(String key, String field, boolean floating) {
+        Counter counter = counters.get(new Counter(key, field, floating));
+        CompletionStage<?> reply = counter == null ? null : send(counter);
+        if (reply == null) {
+            reply = field == null ? commands.get(key) : commands.hget(key, field);
+        }
+        connection.flushCommands();
+        Object value = await(reply);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value == null) {
+            return 0;
+        }
+        return floating ? (Number) Double.parseDouble((String) value) : (Number) Long.parseLong((String) value);
+    }
+
+    private <T> T await(CompletionStage<T> stage) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return stage.toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RedisException ? (RedisException) e.getCause()
+                    : new RedisException(e.getCause());
+        }
+    }
+
+    /**
+     * A string key or a hash field, counted as integer or as float, with its cell.
+     */
+    private static final class Counter {
+
+        final String key;
+
+        final String field;
+
+        final boolean floating;
+
+        final StripedCell cell = new StripedCell();
+
+        final AtomicBoolean dirty = new AtomicBoolean();
+
+        Counter(String key, String field, boolean floating) {
+            this.key = Objects.requireNonNull(key, "key");
+            this.field = field;
+            this.floating = floating;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Counter)) {
+                return false;
+            }
+            Counter other = (Counter) o;
+            return floating == other.floating && key.equals(other.key) && Objects.equals(field, other.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return (key.hashCode() * 31 + Objects.hashCode(field)) * 31 + (floating ? 1 : 0);
+        }
+    }
+
+    public static class Builder {
+
+        private final StatefulRedisConnection<String, String> connection;
+
+        private ScheduledExecutorService scheduler;
+
+        private Duration flushInterval = Duration.ofMillis(100);
+
+        private int flushThreshold = 10_000;
+
+        private Builder(StatefulRedisConnection<String, String> connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Runs the flushes, defaults to the event executor group of the connection's client resources.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Longest time a delta stays local, and so how stale values in redis can get; defaults to 100 ms.
+         */
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Number of dirty counters that triggers a flush before the interval is over, defaults to 10000.
+         */
+        public Builder flushThreshold(int flushThreshold) {
+            this.flushThreshold = flushThreshold;
+            return this;
+        }
+
+        public StripedCounters build() {
+            if (connection == null) {
+                throw new IllegalArgumentException("A connection is required");
+            }
+            if (flushInterval.isNegative() || flushInterval.isZero() || flushThreshold < 1) {
+                throw new IllegalArgumentException("flushInterval and flushThreshold must be positive");
+            }
+            return new StripedCounters(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.redislettuce.lcs;
+
+import java.util.Arrays;
+
+/**
+ * Length of the longest common subsequence with the bit-parallel algorithm of Allison-Dix / Hyyro: one bit per
+ * byte of the first sequence {@code a}, updated 64 bytes at a time for every byte of the second sequence {@code b}.
+ *
+ * Memory is one bit vector plus one match mask per distinct byte value of {@code a}, independent of the length
+ * of {@code b}, which is fed one byte at a time through {@link #step(int, int)}. A long {@code a} is split into
+ * stripes, one instance per stripe: the add carry leaving the top of a stripe at row {@code j} of {@code b} is the
+ * carry entering the next stripe at the same row, so the stripes can be computed one after the other as long as
+ * the caller keeps that one bit per row (see {@link LcsEngine}).
+ */
+public final class BitParallelLcs {
+
+    private final long[][] masks = new long[256][];
+
+    private final long[] vector;
+
+    private final int length;
+
+    public BitParallelLcs(byte[] a) {
+        this(a, 0, a.length);
+    }
+
+    public BitParallelLcs(byte[] a, int offset, int length) {
+        this.length = length;
+        this.vector = new long[(length + 63) >>> 6];
+        // bits past the end stay set forever, so a carry crosses them to the top of the last word.
+        Arrays.fill(vector, -1L);
+        for (int i = 0; i < length; i++) {
+            int symbol = a[offset + i] & 0xff;
+            long[] mask = masks[symbol];
+            if (mask == null) {
+                mask = new long[vector.length];
+                masks[symbol] = mask;
+            }
+            mask[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * LCS length of two in-memory sequences.
+     */
+    public static int length(byte[] a, byte[] b) {
+        BitParallelLcs lcs = new BitParallelLcs(a);
+        for (byte symbol : b) {
+            lcs.step(symbol, 0);
+        }
+        return lcs.lcsLength();
+    }
+
+    /**
+     * Advances by one byte of {@code b}: {@code V = (V + (V & M)) | (V & ~M)}.
+     *
+     * @param carry the carry (0 or 1) entering the lowest bit, the carry this row left the previous stripe with.
+     * @return the carry leaving the highest bit.
+     */
+    public int step(int symbol, int carry) {
+        long[] mask = masks[symbol & 0xff];
+        long[] v = vector;
+        long c = carry;
+        if (mask == null) {
+            // V & M is empty: only the incoming carry changes V, and only until it stops rippling.
+            for (int k = 0; k < v.length && c != 0; k++) {
+                long x = v[k];
+                v[k] = (x + 1) | x;
+                c = x == -1L ? 1 : 0;
+            }
+            return (int) c;
+        }
+        for (int k = 0; k < v.length; k++) {
+            long x = v[k];
+            long m = mask[k];
+            long u = x & m;
+            long sum = x + u + c;
+            c = ((x & u) | ((x | u) & ~sum)) >>> 63;
+            v[k] = sum | (x & ~m);
+        }
+        return (int) c;
+    }
+
+    /**
+     * LCS length of this stripe of {@code a} and the bytes of {@code b} stepped so far: the number of cleared bits.
+     */
+    public int lcsLength() {
+        int set = 0;
+        for (long x : vector) {
+            set += Long.bitCount(x);
+        }
+        return (vector.length << 6) - set;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,294 @@
+package com.redislettuce.lcs;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.StrAlgoArgs;
+import io.lettuce.core.StringMatchResult;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.StringMatchResultOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Longest common subsequence of two string values, computed by redis when it can and by the client when it should
+ * not.
+ *
+ * On redis 7.0+ the LCS command does the work next to the data (lettuce 6.1 has no LCS command type yet, so it is
+ * dispatched by name). LCS fills a table of {@code (lenA + 1) * (lenB + 1)} integers and blocks the server while
+ * doing so, which is fine for short values but not for two multi-megabyte ones: above
+ * {@link Builder#serverTableLimit(long)}, and on servers older than 7.0, {@link #length(String, String)} falls back
+ * to {@link #clientSideLength(String, String)}. That streams both values in GETRANGE chunks through
+ * {@link BitParallelLcs}, holding one stripe of the shorter value, one chunk of the longer one and one carry bit per
+ * byte of the longer one, never both values and never an O(n*m) table.
+ * <pre>
+ * try (LcsEngine lcs = LcsEngine.builder(client).build()) {
+ *     double similarity = lcs.similarity("doc:1", "doc:2");
+ * }
+ * </pre>
+ * The client-side engine reads the values with several commands, so a value modified meanwhile gives a result
+ * for neither version.
+ */
+public class LcsEngine implements AutoCloseable {
+
+    private static final ProtocolKeyword LCS = new ProtocolKeyword() {
+
+        private final byte[] bytes = "LCS".getBytes(StandardCharsets.US_ASCII);
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String name() {
+            return "LCS";
+        }
+    };
+
+    private static final RedisCodec<String, byte[]> CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+    private final StatefulRedisConnection<String, byte[]> connection;
+
+    private final RedisAsyncCommands<String, byte[]> commands;
+
+    private final int serverMajorVersion;
+
+    private final long serverTableLimit;
+
+    private final int stripeSize;
+
+    private final int chunkSize;
+
+    private LcsEngine(Builder builder) {
+        this.connection = builder.client.connect(CODEC);
+        this.commands = connection.async();
+        this.serverTableLimit = builder.serverTableLimit;
+        this.stripeSize = builder.stripeSize;
+        this.chunkSize = builder.chunkSize;
+        try {
+            this.serverMajorVersion = majorVersion(connection.sync().info("server"));
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * LCS length of the values of two keys, a missing key counting as an empty value.
+     */
+    public long length(String keyA, String keyB) {
+        RedisFuture<Long> lengthA = commands.strlen(keyA);
+        RedisFuture<Long> lengthB = commands.strlen(keyB);
+        return length(keyA, await(lengthA), keyB, await(lengthB));
+    }
+
+    /**
+     * {@code 2 * lcs / (lenA + lenB)}: 1 for equal values, 0 for values without a byte in common.
+     */
+    public double similarity(String keyA, String keyB) {
+        RedisFuture<Long> lengthA = commands.strlen(keyA);
+        RedisFuture<Long> lengthB = commands.strlen(keyB);
+        long lenA = await(lengthA);
+        long lenB = await(lengthB);
+        return lenA + lenB == 0 ? 1.0 : 2.0 * length(keyA, lenA, keyB, lenB) / (lenA + lenB);
+    }
+
+    /**
+     * The common subsequence itself, by LCS on redis 7.0+ or STRALGO LCS on redis 6.x. The server builds the full
+     * table for this; there is no client-side fallback.
+     */
+    public String lcs(String keyA, String keyB) {
+        return serverMatch(keyA, keyB, false, 0).getMatchString();
+    }
+
+    /**
+     * Positions of the common ranges of at least {@code minMatchLen} bytes (LCS IDX MINMATCHLEN WITHMATCHLEN), from
+     * the last match to the first like redis returns them.
+     */
+    public StringMatchResult matches(String keyA, String keyB, int minMatchLen) {
+        return serverMatch(keyA, keyB, true, minMatchLen);
+    }
+
+    /**
+     * Bit-parallel LCS length computed on the client, whatever the server version.
+     */
+    public long clientSideLength(String keyA, String keyB) {
+        RedisFuture<Long> lengthA = commands.strlen(keyA);
+        RedisFuture<Long> lengthB = commands.strlen(keyB);
+        return clientSideLength(keyA, await(lengthA), keyB, await(lengthB));
+    }
+
+    public int getServerMajorVersion() {
+        return serverMajorVersion;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private long length(String keyA, long lenA, String keyB, long lenB) {
+        if (lenA == 0 || lenB == 0) {
+            return 0;
+        }
+        if (useServer(lenA, lenB)) {
+            CommandArgs<String, byte[]> args = new CommandArgs<>(CODEC).addKey(keyA).addKey(keyB).add("LEN");
+            return await(commands.dispatch(LCS, new StringMatchResultOutput<>(CODEC, false), args)).getLen();
+        }
+        return clientSideLength(keyA, lenA, keyB, lenB);
+    }
+
+    private boolean useServer(long lenA, long lenB) {
+        return serverMajorVersion >= 7 && (double) (lenA + 1) * (lenB + 1) * Integer.BYTES <= serverTableLimit;
+    }
+
+    private StringMatchResult serverMatch(String keyA, String keyB, boolean withIdx, int minMatchLen) {
+        if (serverMajorVersion >= 7) {
+            CommandArgs<String, byte[]> args = new CommandArgs<>(CODEC).addKey(keyA).addKey(keyB);
+            if (withIdx) {
+                args.add("IDX").add("MINMATCHLEN").add(minMatchLen).add("WITHMATCHLEN");
+            }
+            return await(commands.dispatch(LCS, new StringMatchResultOutput<>(CODEC, withIdx), args));
+        }
+        if (serverMajorVersion == 6) {
+            StrAlgoArgs args = StrAlgoArgs.Builder.keys(keyA, keyB);
+            if (withIdx) {
+                args.withIdx().minMatchLen(minMatchLen).withMatchLen();
+            }
+            return await(commands.stralgoLcs(args));
+        }
+        throw new UnsupportedOperationException("LCS needs redis 6.0 or newer, server is " + serverMajorVersion);
+    }
+
+    /**
+     * Stripes the shorter value, streams the longer one once per stripe and carries one bit per byte of it between
+     * stripes. The next chunk is requested before the current one is processed.
+     */
+    private long clientSideLength(String keyA, long lenA, String keyB, long lenB) {
+        if (lenA > lenB) {
+            return clientSideLength(keyB, lenB, keyA, lenA);
+        }
+        if (lenA == 0) {
+            return 0;
+        }
+        if (lenB > (long) Integer.MAX_VALUE << 6) {
+            throw new IllegalArgumentException("value of " + keyB + " is too long: " + lenB);
+        }
+        long[] carries = lenA > stripeSize ? new long[(int) ((lenB + 63) >>> 6)] : null;
+        long total = 0;
+        for (long start = 0; start < lenA; start += stripeSize) {
+            BitParallelLcs stripe = new BitParallelLcs(await(commands.getrange(keyA, start,
+                    Math.min(start + stripeSize, lenA) - 1)));
+            long row = 0;
+            RedisFuture<byte[]> next = commands.getrange(keyB, 0, Math.min(chunkSize, lenB) - 1);
+            for (long offset = 0; offset < lenB; offset += chunkSize) {
+                byte[] chunk = await(next);
+                long nextOffset = offset + chunkSize;
+                if (nextOffset < lenB) {
+                    next = commands.getrange(keyB, nextOffset, Math.min(nextOffset + chunkSize, lenB) - 1);
+                }
+                if (carries == null) {
+                    for (byte symbol : chunk) {
+                        stripe.step(symbol, 0);
+                    }
+                } else {
+                    for (byte symbol : chunk) {
+                        int word = (int) (row >>> 6);
+                        long bit = 1L << row;
+                        if (stripe.step(symbol, (carries[word] & bit) != 0 ? 1 : 0) != 0) {
+                            carries[word] |= bit;
+                        } else {
+                            carries[word] &= ~bit;
+                        }
+                        row++;
+                    }
+                }
+                if (chunk.length == 0) {
+                    break;
+                }
+            }
+            total += stripe.lcsLength();
+        }
+        return total;
+    }
+
+    private <T> T await(RedisFuture<T> future) {
+        Duration timeout = connection.getTimeout();
+        return LettuceFutures.awaitOrCancel(future, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static int majorVersion(String info) {
+        for (String line : info.split("\r\n")) {
+            if (line.startsWith("redis_version:")) {
+                String version = line.substring("redis_version:".length());
+                int dot = version.indexOf('.');
+                return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+            }
+        }
+        throw new IllegalStateException("INFO server without redis_version");
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private long serverTableLimit = 32L * 1024 * 1024;
+
+        private int stripeSize = 64 * 1024;
+
+        private int chunkSize = 64 * 1024;
+
+        private Builder(RedisClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Largest LCS table, in bytes, to let redis 7.0+ allocate; longer values are compared on the client.
+         * Defaults to 32 MB, about two 2900 byte values.
+         */
+        public Builder serverTableLimit(long serverTableLimit) {
+            this.serverTableLimit = serverTableLimit;
+            return this;
+        }
+
+        /**
+         * Bytes of the shorter value held at a time. Up to 32 times this for the match masks, defaults to 64 KB.
+         */
+        public Builder stripeSize(int stripeSize) {
+            this.stripeSize = stripeSize;
+            return this;
+        }
+
+        /**
+         * Bytes of the longer value read by one GETRANGE, defaults to 64 KB.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public LcsEngine build() {
+            if (client == null) {
+                throw new IllegalArgumentException("A RedisClient is required");
+            }
+            if (serverTableLimit < 0 || stripeSize < 1 || chunkSize < 1) {
+                throw new IllegalArgumentException("serverTableLimit must not be negative, stripeSize and "
+                        + "chunkSize must be positive");
+            }
+            return new LcsEngine(this);
+        }
+    }
+}
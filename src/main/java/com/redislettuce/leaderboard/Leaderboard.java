@@ -0,0 +1,650 @@
+package com.redislettuce.leaderboard;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sorted set used as a leaderboard: many score updates, many more top-N reads.
+ *
+ * Writes: {@link #increment} and {@link #setScore} only record the update locally, merged with the pending
+ * updates of the same member (ten increments of one player become one ZINCRBY). The pending updates are written
+ * every {@code flushInterval}, or as soon as {@code maxPendingMembers} members have one, as one pipeline of
+ * ZINCRBY commands and a single multi-member ZADD.
+ *
+ * Reads: {@link #top(int)} and {@link #range(long, long)} within the first {@code windowSize} ranks are served
+ * from a local copy of that window. The scores the flush gets back (ZINCRBY returns the new score) are applied to
+ * it, so it stays exact for this instance's own updates without being reloaded; it is reloaded when it gets older
+ * than {@code refreshInterval} (updates of other clients) or when members dropped out of it and it no longer holds
+ * the requested number of ranks. Ranges further down are cached for {@code refreshInterval} and dropped when a
+ * flushed update may have moved them. {@link #ranks(Collection)} looks up many members with one pipeline,
+ * answering members of the window locally.
+ *
+ * Reads see flushed updates only; call {@link #flush()} first to read your own writes. A failed flush fails the
+ * future {@link #flush()} returned. Updates the server rejected (an error reply such as WRONGTYPE) are dropped;
+ * updates whose command failed in transport are put back in front of the member's newer pending updates and sent
+ * by the next flush, so a timed out ZINCRBY that did reach the server is applied twice. Ties are ordered like
+ * ZREVRANGE orders them, by member in reverse lexicographical order.
+ *
+ * The leaderboard switches off auto-flush on its connection, so the connection must not be shared with other code.
+ * <pre>
+ * Leaderboard board = Leaderboard.builder(connection, "scores").windowSize(100).build();
+ * board.increment(player, points);
+ * List&lt;ScoredValue&lt;String&gt;&gt; podium = board.top(3);
+ * </pre>
+ */
+public class Leaderboard implements AutoCloseable {
+
+    private static final Comparator<ScoredValue<String>> RANK_ORDER = (a, b) -> {
+        int byScore = Double.compare(b.getScore(), a.getScore());
+        return byScore != 0 ? byScore : b.getValue().compareTo(a.getValue());
+    };
+
+    private static final int MAX_ZADD_MEMBERS = 1000;
+
+    private static final int MAX_CACHED_RANGES = 64;
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final RedisAsyncCommands<String, String> commands;
+
+    private final String key;
+
+    private final int windowSize;
+
+    private final long refreshIntervalNanos;
+
+    private final int maxPendingMembers;
+
+    private final ConcurrentHashMap<String, Update> pending = new ConcurrentHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    private final TopWindow window;
+
+    private final Map<String, RangeWindow> ranges = new LinkedHashMap<String, RangeWindow>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RangeWindow> eldest) {
+            return size() > MAX_CACHED_RANGES;
+        }
+    };
+
+    private final ScheduledFuture<?> scheduledFlush;
+
+    private final LongAdder updates = new LongAdder();
+
+    private final LongAdder writeCommands = new LongAdder();
+
+    private final LongAdder reads = new LongAdder();
+
+    private final LongAdder readCommands = new LongAdder();
+
+    private final LongAdder windowLoads = new LongAdder();
+
+    private Leaderboard(Builder builder) {
+        this.connection = builder.connection;
+        this.commands = connection.async();
+        this.key = builder.key;
+        this.windowSize = builder.windowSize;
+        this.refreshIntervalNanos = builder.refreshInterval.toNanos();
+        this.maxPendingMembers = builder.maxPendingMembers;
+        this.window = new TopWindow(windowSize);
+        connection.setAutoFlushCommands(false);
+        ScheduledExecutorService scheduler = builder.scheduler != null ? builder.scheduler
+                : connection.getResources().eventExecutorGroup();
+        long interval = builder.flushInterval.toNanos();
+        this.scheduledFlush = scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder(StatefulRedisConnection<String, String> connection, String key) {
+        return new Builder(connection, key);
+    }
+
+    /**
+     * Adds {@code delta} to the score of {@code member} (ZINCRBY), merged with its pending updates.
+     */
+    public void increment(String member, double delta) {
+        record(member, new Update(null, delta));
+    }
+
+    /**
+     * Sets the score of {@code member} (ZADD), replacing its pending updates.
+     */
+    public void setScore(String member, double score) {
+        record(member, new Update(score, 0));
+    }
+
+    /**
+     * Writes all pending updates and applies the resulting scores to the cached windows. The returned future
+     * completes when the server has answered all of it.
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            List<CompletableFuture<?>> replies = new ArrayList<>();
+            List<ScoredValue<String>> absolute = new ArrayList<>();
+            Map<String, Double> flushed = new ConcurrentHashMap<>();
+            Map<String, Double> increments = new HashMap<>();
+            for (Iterator<String> members = pending.keySet().iterator(); members.hasNext(); ) {
+                String member = members.next();
+                // remove() is atomic with merge(): an update racing with the flush lands in a new entry.
+                Update update = pending.remove(member);
+                if (update == null) {
+                    continue;
+                }
+                if (update.base != null) {
+                    double score = update.base + update.delta;
+                    absolute.add(ScoredValue.just(score, member));
+                    flushed.put(member, score);
+                } else {
+                    increments.put(member, update.delta);
+                    replies.add(commands.zincrby(key, update.delta, member).toCompletableFuture()
+                            .whenComplete((score, error) -> {
+                                if (error == null) {
+                                    flushed.put(member, score);
+                                } else {
+                                    putBack(Collections.singletonList(ScoredValue.just(update.delta, member)),
+                                            false, error);
+                                }
+                            }));
+                }
+            }
+            for (int from = 0; from < absolute.size(); from += MAX_ZADD_MEMBERS) {
+                List<ScoredValue<String>> batch = absolute.subList(from, Math.min(from + MAX_ZADD_MEMBERS,
+                        absolute.size()));
+                replies.add(zadd(batch).toCompletableFuture()
+                        .whenComplete((added, error) -> putBack(batch, true, error)));
+            }
+            writeCommands.add(replies.size());
+            connection.flushCommands();
+            // runs on the connection's event loop, ordered with the replies of window loads.
+            return CompletableFuture.allOf(replies.toArray(new CompletableFuture[0]))
+                    .whenComplete((ignore, error) -> applyFlushed(flushed, increments, error));
+        }
+    }
+
+    /**
+     * The first {@code k} members, best first.
+     */
+    public List<ScoredValue<String>> top(int k) {
+        return range(0, k - 1);
+    }
+
+    /**
+     * Members ranked {@code start} to {@code stop}, both inclusive and 0-based like ZREVRANGE WITHSCORES.
+     */
+    public List<ScoredValue<String>> range(long start, long stop) {
+        if (start < 0 || stop < start) {
+            throw new IllegalArgumentException("Invalid rank range " + start + ".." + stop);
+        }
+        reads.increment();
+        if (stop < windowSize) {
+            synchronized (window) {
+                if (!window.isStale(System.nanoTime()) && window.covers(stop)) {
+                    return window.range((int) start, (int) stop);
+                }
+            }
+            loadWindow();
+            synchronized (window) {
+                return window.range((int) start, (int) stop);
+            }
+        }
+        String rangeKey = start + ".." + stop;
+        synchronized (ranges) {
+            RangeWindow cached = ranges.get(rangeKey);
+            if (cached != null && System.nanoTime() - cached.loadedAt < refreshIntervalNanos) {
+                return cached.entries;
+            }
+        }
+        List<ScoredValue<String>> entries = Collections.unmodifiableList(
+                await(send(commands.zrevrangeWithScores(key, start, stop))));
+        synchronized (ranges) {
+            ranges.put(rangeKey, new RangeWindow(entries, System.nanoTime()));
+        }
+        return entries;
+    }
+
+    /**
+     * 0-based rank of each member, best first; members without a score are missing from the result. Members of
+     * the cached window are answered locally, the others by one pipeline of ZREVRANK.
+     */
+    public Map<String, Long> ranks(Collection<String> members) {
+        reads.increment();
+        Map<String, Long> ranks = new LinkedHashMap<>();
+        List<String> remote = new ArrayList<>();
+        synchronized (window) {
+            boolean usable = !window.isStale(System.nanoTime());
+            for (String member : members) {
+                int rank = usable ? window.rank(member) : -1;
+                if (rank >= 0) {
+                    ranks.put(member, (long) rank);
+                } else {
+                    remote.add(member);
+                }
+            }
+        }
+        if (remote.isEmpty()) {
+            return ranks;
+        }
+        List<RedisFuture<Long>> replies = new ArrayList<>(remote.size());
+        for (String member : remote) {
+            replies.add(commands.zrevrank(key, member));
+        }
+        readCommands.add(remote.size());
+        connection.flushCommands();
+        for (int i = 0; i < remote.size(); i++) {
+            Long rank = await(replies.get(i));
+            if (rank != null) {
+                ranks.put(remote.get(i), rank);
+            }
+        }
+        return ranks;
+    }
+
+    public Stats getStats() {
+        return new Stats(updates.sum(), writeCommands.sum(), reads.sum(), readCommands.sum(), windowLoads.sum(),
+                pending.size());
+    }
+
+    /**
+     * Flushes the pending updates, waits for the replies and restores auto-flush on the connection.
+     */
+    @Override
+    public void close() {
+        scheduledFlush.cancel(false);
+        flush().join();
+        connection.setAutoFlushCommands(true);
+    }
+
+    private void record(String member, Update update) {
+        updates.increment();
+        pending.merge(member, update, Update::then);
+        if (pending.size() >= maxPendingMembers) {
+            flush();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisFuture<Long> zadd(List<ScoredValue<String>> batch) {
+        return commands.zadd(key, batch.toArray(new ScoredValue[0]));
+    }
+
+    /**
+     * Loads the window in the reply callback, on the event loop that also applies flushed scores, so a flush is
+     * applied either to the old window (and contained in the new one) or to the new one.
+     */
+    private void loadWindow() {
+        windowLoads.increment();
+        await(send(commands.zrevrangeWithScores(key, 0, windowSize - 1)).thenAccept(fresh -> {
+            synchronized (window) {
+                window.load(fresh, System.nanoTime());
+            }
+        }));
+    }
+
+    /**
+     * Puts the updates of a command that failed in transport back in front of newer pending ones; an error reply
+     * is final and the updates are dropped.
+     */
+    private void putBack(List<ScoredValue<String>> updates, boolean absolute, Throwable error) {
+        if (error == null || error instanceof RedisCommandExecutionException) {
+            return;
+        }
+        for (ScoredValue<String> update : updates) {
+            Update failed = absolute ? new Update(update.getScore(), 0) : new Update(null, update.getScore());
+            pending.merge(update.getValue(), failed, (newer, ignore) -> failed.then(newer));
+        }
+    }
+
+    private void applyFlushed(Map<String, Double> flushed, Map<String, Double> increments, Throwable error) {
+        if (error != null) {
+            // some scores are unknown: start over from the server.
+            synchronized (window) {
+                window.invalidate();
+            }
+            synchronized (ranges) {
+                ranges.clear();
+            }
+            return;
+        }
+        double highest = Double.NEGATIVE_INFINITY;
+        synchronized (window) {
+            for (Map.Entry<String, Double> entry : flushed.entrySet()) {
+                window.apply(entry.getKey(), entry.getValue());
+                Double delta = increments.get(entry.getKey());
+                // a ZADD may have moved the member from anywhere, a ZINCRBY only from score - delta.
+                double from = delta == null ? Double.POSITIVE_INFINITY : entry.getValue() - delta;
+                highest = Math.max(highest, Math.max(from, entry.getValue()));
+            }
+        }
+        synchronized (ranges) {
+            for (Iterator<RangeWindow> cached = ranges.values().iterator(); cached.hasNext(); ) {
+                List<ScoredValue<String>> entries = cached.next().entries;
+                // updates entirely below a range do not change its ranks.
+                if (entries.isEmpty() || highest >= entries.get(entries.size() - 1).getScore()) {
+                    cached.remove();
+                }
+            }
+        }
+    }
+
+    private <T> RedisFuture<T> send(RedisFuture<T> command) {
+        readCommands.increment();
+        connection.flushCommands();
+        return command;
+    }
+
+    private <T> T await(CompletionStage<T> stage) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return stage.toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RedisException ? (RedisException) e.getCause()
+                    : new RedisException(e.getCause());
+        }
+    }
+
+    /**
+     * Pending change of one member: an absolute score if {@code base} is set, plus a delta.
+     */
+    private static final class Update {
+
+        final Double base;
+
+        final double delta;
+
+        Update(Double base, double delta) {
+            this.base = base;
+            this.delta = delta;
+        }
+
+        Update then(Update next) {
+            return next.base != null ? next : new Update(base, delta + next.delta);
+        }
+    }
+
+    /**
+     * Exact copy of the first ranks of the sorted set. Every member outside of it ranks after {@code floor}, so a
+     * member whose new score ranks before {@code floor} can be placed without asking the server, and one that
+     * drops behind it is removed, shortening the exact prefix.
+     */
+    private final class TopWindow {
+
+        private final int capacity;
+
+        private final TreeSet<ScoredValue<String>> entries = new TreeSet<>(RANK_ORDER);
+
+        private final Map<String, Double> scores = new HashMap<>();
+
+        private ScoredValue<String> floor;
+
+        // the window holds the whole sorted set, there is nothing outside of it.
+        private boolean whole;
+
+        private long loadedAt;
+
+        private boolean loaded;
+
+        private List<ScoredValue<String>> snapshot = Collections.emptyList();
+
+        TopWindow(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void load(List<ScoredValue<String>> fresh, long now) {
+            entries.clear();
+            scores.clear();
+            for (ScoredValue<String> entry : fresh) {
+                entries.add(entry);
+                scores.put(entry.getValue(), entry.getScore());
+            }
+            whole = fresh.size() < capacity;
+            floor = entries.isEmpty() ? null : entries.last();
+            loadedAt = now;
+            loaded = true;
+            snapshot = null;
+        }
+
+        void invalidate() {
+            loaded = false;
+        }
+
+        boolean isStale(long now) {
+            return !loaded || now - loadedAt >= refreshIntervalNanos;
+        }
+
+        boolean covers(long stop) {
+            return whole || stop < entries.size();
+        }
+
+        void apply(String member, double score) {
+            if (!loaded) {
+                return;
+            }
+            Double previous = scores.remove(member);
+            if (previous != null) {
+                entries.remove(ScoredValue.just(previous, member));
+            }
+            ScoredValue<String> entry = ScoredValue.just(score, member);
+            if (whole || (floor != null && RANK_ORDER.compare(entry, floor) < 0)) {
+                entries.add(entry);
+                scores.put(member, score);
+                if (entries.size() > capacity) {
+                    floor = entries.pollLast();
+                    scores.remove(floor.getValue());
+                    whole = false;
+                }
+            }
+            snapshot = null;
+        }
+
+        List<ScoredValue<String>> range(int start, int stop) {
+            if (snapshot == null) {
+                snapshot = Collections.unmodifiableList(new ArrayList<>(entries));
+            }
+            if (start >= snapshot.size()) {
+                return Collections.emptyList();
+            }
+            return snapshot.subList(start, Math.min(stop + 1, snapshot.size()));
+        }
+
+        int rank(String member) {
+            Double score = scores.get(member);
+            return score == null ? -1 : entries.headSet(ScoredValue.just(score, member)).size();
+        }
+    }
+
+    private static final class RangeWindow {
+
+        final List<ScoredValue<String>> entries;
+
+        final long loadedAt;
+
+        RangeWindow(List<ScoredValue<String>> entries, long loadedAt) {
+            this.entries = entries;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public static class Stats {
+
+        private final long updates;
+
+        private final long writeCommands;
+
+        private final long reads;
+
+        private final long readCommands;
+
+        private final long windowLoads;
+
+        private final long pendingMembers;
+
+        Stats(long updates, long writeCommands, long reads, long readCommands, long windowLoads,
+                long pendingMembers) {
+            this.updates = updates;
+            this.writeCommands = writeCommands;
+            this.reads = reads;
+            this.readCommands = readCommands;
+            this.windowLoads = windowLoads;
+            this.pendingMembers = pendingMembers;
+        }
+
+        /**
+         * Calls of {@link #increment} and {@link #setScore}.
+         */
+        public long getUpdates() {
+            return updates;
+        }
+
+        /**
+         * ZINCRBY and ZADD commands sent.
+         */
+        public long getWriteCommands() {
+            return writeCommands;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        /**
+         * ZREVRANGE and ZREVRANK commands sent.
+         */
+        public long getReadCommands() {
+            return readCommands;
+        }
+
+        public long getWindowLoads() {
+            return windowLoads;
+        }
+
+        public long getPendingMembers() {
+            return pendingMembers;
+        }
+
+        public double getWriteCommandsPerUpdate() {
+            return updates == 0 ? 0 : (double) writeCommands / updates;
+        }
+
+        public double getReadCommandsPerRead() {
+            return reads == 0 ? 0 : (double) readCommands / reads;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{updates=" + updates + ", writeCommands=" + writeCommands + ", reads=" + reads
+                    + ", readCommands=" + readCommands + ", windowLoads=" + windowLoads + ", pendingMembers="
+                    + pendingMembers + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private final StatefulRedisConnection<String, String> connection;
+
+        private final String key;
+
+        private ScheduledExecutorService scheduler;
+
+        private Duration flushInterval = Duration.ofMillis(50);
+
+        private int maxPendingMembers = 10_000;
+
+        private int windowSize = 100;
+
+        private Duration refreshInterval = Duration.ofSeconds(1);
+
+        private Builder(StatefulRedisConnection<String, String> connection, String key) {
+            this.connection = connection;
+            this.key = key;
+        }
+
+        /**
+         * Runs the periodic flush, defaults to the event executor group of the connection's client resources.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Longest time an update stays pending, defaults to 50 ms.
+         */
+        public Builder flushInterval(Duration flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * Number of members with pending updates that triggers a flush, defaults to 10000.
+         */
+        public Builder maxPendingMembers(int maxPendingMembers) {
+            this.maxPendingMembers = maxPendingMembers;
+            return this;
+        }
+
+        /**
+         * Ranks kept locally and served without a round trip, defaults to 100.
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Age after which cached ranks are reloaded to pick up updates of other clients, defaults to 1 second.
+         */
+        public Builder refreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        public Leaderboard build() {
+            if (connection == null || key == null) {
+                throw new IllegalArgumentException("A connection and a key are required");
+            }
+            if (windowSize < 1 || maxPendingMembers < 1) {
+                throw new IllegalArgumentException("windowSize and maxPendingMembers must be positive");
+            }
+            if (flushInterval.isNegative() || flushInterval.isZero() || refreshInterval.isNegative()) {
+                throw new IllegalArgumentException("flushInterval must be positive, refreshInterval not negative");
+            }
+            return new Leaderboard(this);
+        }
+    }
+}
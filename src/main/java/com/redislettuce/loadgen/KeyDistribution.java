@@ -0,0 +1,144 @@
+package com.redislettuce.loadgen;
+
+import java.util.Random;
+
+/**
+ * Picks which of {@code n} keys an operation goes to.
+ */
+public abstract class KeyDistribution {
+
+    private final long keys;
+
+    KeyDistribution(long keys) {
+        if (keys < 1) {
+            throw new IllegalArgumentException("keys must be positive, got " + keys);
+        }
+        this.keys = keys;
+    }
+
+    /**
+     * Every key equally likely.
+     */
+    public static KeyDistribution uniform(long keys) {
+        return new Uniform(keys);
+    }
+
+    /**
+     * Key popularity following Zipf's law with exponent {@code theta} (0.99 is the usual hot-key workload): the
+     * most popular key is picked about {@code 2^theta} times as often as the second one. The popular keys are
+     * scattered over the key space rather than being the lowest indexes, so they land in different slots.
+     */
+    public static KeyDistribution zipfian(long keys, double theta) {
+        return new Zipfian(keys, theta);
+    }
+
+    /**
+     * {@code uniform}, {@code zipfian} or {@code zipfian:<theta>}.
+     */
+    public static KeyDistribution parse(String name, long keys) {
+        if (name.equals("uniform")) {
+            return uniform(keys);
+        }
+        if (name.equals("zipfian")) {
+            return zipfian(keys, 0.99);
+        }
+        if (name.startsWith("zipfian:")) {
+            return zipfian(keys, Double.parseDouble(name.substring("zipfian:".length())));
+        }
+        throw new IllegalArgumentException("Unknown key distribution " + name + ", expected uniform or zipfian[:theta]");
+    }
+
+    public long getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return a key index in {@code [0, keys)}.
+     */
+    public abstract long next(Random random);
+
+    private static final class Uniform extends KeyDistribution {
+
+        Uniform(long keys) {
+            super(keys);
+        }
+
+        @Override
+        public long next(Random random) {
+            long keys = getKeys();
+            return keys <= Integer.MAX_VALUE ? random.nextInt((int) keys) : Math.floorMod(random.nextLong(), keys);
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /**
+     * The rejection-free generator of Gray et al., "Quickly generating billion-record synthetic databases", with
+     * the rank scrambled by a 64-bit FNV hash.
+     */
+    private static final class Zipfian extends KeyDistribution {
+
+        private final double theta;
+
+        private final double zetaN;
+
+        private final double alpha;
+
+        private final double eta;
+
+        private final double secondThreshold;
+
+        Zipfian(long keys, double theta) {
+            super(keys);
+            if (!(theta > 0 && theta < 1)) {
+                throw new IllegalArgumentException("zipfian theta must be in (0, 1), got " + theta);
+            }
+            this.theta = theta;
+            this.zetaN = zeta(keys, theta);
+            this.alpha = 1 / (1 - theta);
+            this.eta = (1 - Math.pow(2.0 / keys, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+            this.secondThreshold = 1 + Math.pow(0.5, theta);
+        }
+
+        @Override
+        public long next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            long rank;
+            if (uz < 1) {
+                rank = 0;
+            } else if (uz < secondThreshold) {
+                rank = 1;
+            } else {
+                rank = (long) (getKeys() * Math.pow(eta * u - eta + 1, alpha));
+            }
+            return Math.floorMod(fnv(Math.min(rank, getKeys() - 1)), getKeys());
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian:" + theta;
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        private static long fnv(long value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < 8; i++) {
+                hash ^= value & 0xFF;
+                hash *= 0x100000001B3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+    }
+}
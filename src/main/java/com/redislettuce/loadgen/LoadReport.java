@@ -0,0 +1,279 @@
+package com.redislettuce.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Result of a {@link LoadRun}: latency histograms in microseconds over the measured period and the throughput of
+ * each report interval.
+ *
+ * Response time runs from when an operation was due to be sent, by the fixed rate of an open or throttled run, to
+ * its reply. Time the operation spent waiting behind slow earlier ones is included, so stalls are not hidden by
+ * the load generator slowing down with the server (coordinated omission). Service time runs from when it was
+ * actually sent; without a rate the two are the same.
+ */
+public class LoadReport {
+
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+    private final String mode;
+
+    private final int connections;
+
+    private final double targetRate;
+
+    private final double seconds;
+
+    private final long errors;
+
+    private final long unanswered;
+
+    private final Histogram responseTime;
+
+    private final Histogram serviceTime;
+
+    private final Map<Operation, Histogram> operations;
+
+    private final List<Interval> intervals;
+
+    LoadReport(String mode, int connections, double targetRate, double seconds, long errors, long unanswered,
+            Histogram responseTime, Histogram serviceTime, Map<Operation, Histogram> operations,
+            List<Interval> intervals) {
+        this.mode = mode;
+        this.connections = connections;
+        this.targetRate = targetRate;
+        this.seconds = seconds;
+        this.errors = errors;
+        this.unanswered = unanswered;
+        this.responseTime = responseTime;
+        this.serviceTime = serviceTime;
+        this.operations = operations;
+        this.intervals = Collections.unmodifiableList(new ArrayList<>(intervals));
+    }
+
+    /**
+     * {@code closed}, {@code throttled} (closed loop at a fixed rate) or {@code open}.
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Operations per second the run was asked for, 0 for as fast as possible.
+     */
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public double getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * Operations that got a reply, errors excluded.
+     */
+    public long getOperations() {
+        return responseTime.getTotalCount();
+    }
+
+    /**
+     * Failed operations, the unanswered ones included.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Operations still without reply when the run stopped waiting for them.
+     */
+    public long getUnanswered() {
+        return unanswered;
+    }
+
+    public double getThroughput() {
+        return seconds == 0 ? 0 : getOperations() / seconds;
+    }
+
+    public Histogram getResponseTime() {
+        return responseTime;
+    }
+
+    public Histogram getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Response time per operation.
+     */
+    public Map<Operation, Histogram> getOperationResponseTimes() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    public List<Interval> getIntervals() {
+        return intervals;
+    }
+
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "mode=%s connections=%d target=%s duration=%.1fs%n", mode, connections,
+                targetRate > 0 ? String.format(Locale.ROOT, "%.0f ops/s", targetRate) : "max", seconds));
+        text.append(String.format(Locale.ROOT, "operations=%d errors=%d unanswered=%d throughput=%.1f ops/s%n%n",
+                getOperations(), errors, unanswered, getThroughput()));
+        text.append(String.format(Locale.ROOT, "%-14s %10s", "latency (us)", "count"));
+        for (double percentile : PERCENTILES) {
+            text.append(String.format(Locale.ROOT, " %9s", "p" + format(percentile)));
+        }
+        text.append(String.format(Locale.ROOT, " %9s %9s%n", "max", "mean"));
+        row(text, "response", responseTime);
+        row(text, "service", serviceTime);
+        for (Map.Entry<Operation, Histogram> operation : operations.entrySet()) {
+            row(text, "  " + operation.getKey().name().toLowerCase(Locale.ROOT), operation.getValue());
+        }
+        return text.toString();
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"mode\": \"").append(mode).append("\",\n");
+        json.append("  \"connections\": ").append(connections).append(",\n");
+        json.append("  \"targetRate\": ").append(number(targetRate)).append(",\n");
+        json.append("  \"seconds\": ").append(number(seconds)).append(",\n");
+        json.append("  \"operations\": ").append(getOperations()).append(",\n");
+        json.append("  \"errors\": ").append(errors).append(",\n");
+        json.append("  \"unanswered\": ").append(unanswered).append(",\n");
+        json.append("  \"throughput\": ").append(number(getThroughput())).append(",\n");
+        json.append("  \"responseTimeMicros\": ");
+        histogram(json, responseTime);
+        json.append(",\n  \"serviceTimeMicros\": ");
+        histogram(json, serviceTime);
+        json.append(",\n  \"operationResponseTimeMicros\": {");
+        String separator = "\n    ";
+        for (Map.Entry<Operation, Histogram> operation : operations.entrySet()) {
+            json.append(separator).append('"').append(operation.getKey().name().toLowerCase(Locale.ROOT))
+                    .append("\": ");
+            histogram(json, operation.getValue());
+            separator = ",\n    ";
+        }
+        json.append("\n  },\n  \"intervals\": [");
+        separator = "\n    ";
+        for (Interval interval : intervals) {
+            json.append(separator).append("{\"second\": ").append(number(interval.second))
+                    .append(", \"operations\": ").append(interval.operations)
+                    .append(", \"errors\": ").append(interval.errors)
+                    .append(", \"throughput\": ").append(number(interval.getThroughput()))
+                    .append(", \"p50\": ").append(interval.p50)
+                    .append(", \"p99\": ").append(interval.p99)
+                    .append(", \"max\": ").append(interval.max).append('}');
+            separator = ",\n    ";
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    private static void row(StringBuilder text, String name, Histogram histogram) {
+        text.append(String.format(Locale.ROOT, "%-14s %10d", name, histogram.getTotalCount()));
+        for (double percentile : PERCENTILES) {
+            text.append(String.format(Locale.ROOT, " %9d", histogram.getValueAtPercentile(percentile)));
+        }
+        text.append(String.format(Locale.ROOT, " %9d %9.1f%n", histogram.getMaxValue(), histogram.getMean()));
+    }
+
+    private static void histogram(StringBuilder json, Histogram histogram) {
+        json.append("{\"count\": ").append(histogram.getTotalCount());
+        for (double percentile : PERCENTILES) {
+            json.append(", \"p").append(format(percentile)).append("\": ")
+                    .append(histogram.getValueAtPercentile(percentile));
+        }
+        json.append(", \"max\": ").append(histogram.getMaxValue())
+                .append(", \"mean\": ").append(number(histogram.getMean())).append('}');
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "0" : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * One report interval: operations completed in it and their response times in microseconds.
+     */
+    public static class Interval {
+
+        private final double second;
+
+        private final double length;
+
+        private final long operations;
+
+        private final long errors;
+
+        private final long p50;
+
+        private final long p99;
+
+        private final long max;
+
+        Interval(double second, double length, long operations, long errors, long p50, long p99, long max) {
+            this.second = second;
+            this.length = length;
+            this.operations = operations;
+            this.errors = errors;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        /**
+         * End of the interval, in seconds since the measurement started.
+         */
+        public double getSecond() {
+            return second;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return length == 0 ? 0 : operations / length;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%7.1fs %10.1f ops/s  p50=%dus p99=%dus max=%dus errors=%d", second,
+                    getThroughput(), p50, p99, max, errors);
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.redislettuce.loadgen;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Drives a {@link Workload} against redis over a number of connections and measures it.
+ *
+ * Three ways to generate load:
+ * <ul>
+ * <li>closed loop: every connection keeps {@code concurrency} operations in flight and sends the next one when a
+ * reply arrives, as fast as the server allows. Measures peak throughput; its latencies are service times, a slow
+ * server simply gets fewer requests.</li>
+ * <li>throttled closed loop ({@link Builder#rate(double)}): the same, but every in-flight slot sends on a fixed
+ * schedule. An operation that could not be sent on time because the previous one was slow is measured from when
+ * it was due.</li>
+ * <li>open loop ({@link Builder#openLoop(boolean)} with a rate): one thread sends at the fixed rate whatever the
+ * replies do, round robin over the connections, like real independent clients. Latency is measured from the
+ * scheduled send time, so stalls show up in full instead of pausing the load (coordinated omission).</li>
+ * </ul>
+ * Operations due during the warm-up are sent but not measured, replies to operations due before the end are
+ * waited for and measured. Those still unanswered after {@link Builder#drainTimeout(Duration)} count as errors
+ * and are reported as {@link LoadReport#getUnanswered() unanswered}: they are the slowest of the run and must not
+ * just drop out of it.
+ * <pre>
+ * LoadReport report = LoadRun.builder(client)
+ *         .workload(Workload.builder().mix(Workload.parseMix("get=90,set=10")).build())
+ *         .connections(8).rate(50_000).openLoop(true).duration(Duration.ofMinutes(1))
+ *         .build().run();
+ * System.out.println(report.toText());
+ * </pre>
+ */
+public class LoadRun {
+
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final long ERROR_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int ABANDONED = Integer.MIN_VALUE / 2;
+
+    private final RedisClient client;
+
+    private final RedisClusterClient clusterClient;
+
+    private final Workload workload;
+
+    private final int connectionCount;
+
+    private final int concurrency;
+
+    private final double rate;
+
+    private final boolean openLoop;
+
+    private final int maxInFlight;
+
+    private final long warmupNanos;
+
+    private final long durationNanos;
+
+    private final long intervalNanos;
+
+    private final long drainNanos;
+
+    private final Consumer<LoadReport.Interval> listener;
+
+    private final Recorder responseTime = new Recorder(HIGHEST_MICROS, 3);
+
+    private final Recorder serviceTime = new Recorder(HIGHEST_MICROS, 3);
+
+    private final Map<Operation, Recorder> operationTimes = new EnumMap<>(Operation.class);
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder intervalErrors = new LongAdder();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // measured operations without reply; set to ABANDONED once the drain timeout passed.
+    private final AtomicInteger unanswered = new AtomicInteger();
+
+    private volatile boolean running;
+
+    private volatile long measureStart;
+
+    private volatile long end;
+
+    private ScheduledExecutorService scheduler;
+
+    private boolean used;
+
+    private LoadRun(Builder builder) {
+        this.client = builder.client;
+        this.clusterClient = builder.clusterClient;
+        this.workload = builder.workload;
+        this.connectionCount = builder.connections;
+        this.concurrency = builder.concurrency;
+        this.rate = builder.rate;
+        this.openLoop = builder.openLoop;
+        this.maxInFlight = builder.maxInFlight;
+        this.warmupNanos = builder.warmup.toNanos();
+        this.durationNanos = builder.duration.toNanos();
+        this.intervalNanos = builder.reportInterval.toNanos();
+        this.drainNanos = builder.drainTimeout.toNanos();
+        this.listener = builder.listener;
+        for (Operation operation : workload.getMix().keySet()) {
+            operationTimes.put(operation, new Recorder(HIGHEST_MICROS, 3));
+        }
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    /**
+     * Runs the warm-up and the measured period, then waits for the replies still outstanding. A run can only be
+     * used once.
+     */
+    public LoadReport run() throws InterruptedException {
+        synchronized (this) {
+            if (used) {
+                throw new IllegalStateException("A LoadRun can only run once");
+            }
+            used = true;
+        }
+        List<StatefulConnection<String, String>> connections = new ArrayList<>(connectionCount);
+        List<RedisClusterAsyncCommands<String, String>> commands = new ArrayList<>(connectionCount);
+        Thread pacer = null;
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                if (clusterClient != null) {
+                    StatefulRedisClusterConnection<String, String> connection = clusterClient.connect();
+                    connections.add(connection);
+                    commands.add(connection.async());
+                } else {
+                    StatefulRedisConnection<String, String> connection = client.connect();
+                    connections.add(connection);
+                    commands.add(connection.async());
+                }
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "load-run-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long start = System.nanoTime();
+            measureStart = start + warmupNanos;
+            end = measureStart + durationNanos;
+            running = true;
+            if (openLoop) {
+                pacer = new Thread(() -> pace(commands, start), "load-run-pacer");
+                pacer.setDaemon(true);
+                pacer.start();
+            } else {
+                startSlots(commands, start);
+            }
+
+            Histogram responseTotal = new Histogram(HIGHEST_MICROS, 3);
+            Histogram serviceTotal = new Histogram(HIGHEST_MICROS, 3);
+            List<LoadReport.Interval> intervals = new ArrayList<>();
+            sleepUntil(measureStart);
+            long last = measureStart;
+            for (long tick = measureStart + intervalNanos; tick - end <= 0; tick += intervalNanos) {
+                sleepUntil(tick);
+                snapshot(responseTotal, serviceTotal, intervals, tick, tick - last);
+                last = tick;
+            }
+            sleepUntil(end);
+            running = false;
+            if (pacer != null) {
+                pacer.join();
+            }
+            awaitOutstanding();
+            // replies still arriving from now on are no longer recorded, these are counted instead.
+            long abandoned = Math.max(unanswered.getAndSet(ABANDONED), 0);
+            errors.add(abandoned);
+            intervalErrors.add(abandoned);
+            long finished = System.nanoTime();
+            snapshot(responseTotal, serviceTotal, intervals, finished, finished - last);
+
+            Map<Operation, Histogram> operations = new EnumMap<>(Operation.class);
+            for (Map.Entry<Operation, Recorder> operation : operationTimes.entrySet()) {
+                operations.put(operation.getKey(), operation.getValue().getIntervalHistogram());
+            }
+            String mode = openLoop ? "open" : rate > 0 ? "throttled" : "closed";
+            return new LoadReport(mode, connectionCount, rate, durationNanos / 1e9, errors.sum(), abandoned,
+                    responseTotal, serviceTotal, operations, intervals);
+        } finally {
+            running = false;
+            if (pacer != null) {
+                pacer.interrupt();
+            }
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            for (StatefulConnection<String, String> connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Closed loop: {@code concurrency} slots per connection, throttled ones spread evenly over the period.
+     */
+    private void startSlots(List<RedisClusterAsyncCommands<String, String>> commands, long start) {
+        int slots = commands.size() * concurrency;
+        long period = rate > 0 ? (long) (slots * 1e9 / rate) : 0;
+        int index = 0;
+        for (RedisClusterAsyncCommands<String, String> connection : commands) {
+            for (int i = 0; i < concurrency; i++) {
+                Slot slot = new Slot(connection, period, start + (period > 0 ? period * index / slots : 0));
+                index++;
+                slot.next();
+            }
+        }
+    }
+
+    /**
+     * Open loop: operation {@code i} is due {@code i / rate} seconds after the start and sent then, or right away
+     * if the pacer is behind.
+     */
+    private void pace(List<RedisClusterAsyncCommands<String, String>> commands, long start) {
+        double period = 1e9 / rate;
+        for (long i = 0; running; i++) {
+            long due = start + (long) (i * period);
+            if (due - end >= 0) {
+                return;
+            }
+            waitUntil(due);
+            while (outstanding.get() >= maxInFlight) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(20_000);
+            }
+            send(commands.get((int) (i % commands.size())), due, null);
+        }
+    }
+
+    private void send(RedisClusterAsyncCommands<String, String> commands, long due, Slot slot) {
+        Random random = ThreadLocalRandom.current();
+        Operation operation = workload.nextOperation(random);
+        String key = workload.key(operation, random);
+        outstanding.incrementAndGet();
+        if (measured(due)) {
+            unanswered.incrementAndGet();
+        }
+        long sent = System.nanoTime();
+        RedisFuture<?> future;
+        try {
+            future = operation.send(commands, key, workload, random);
+        } catch (RuntimeException e) {
+            completed(operation, due, sent, e, slot);
+            return;
+        }
+        future.whenComplete((result, error) -> completed(operation, due, sent, error, slot));
+    }
+
+    private void completed(Operation operation, long due, long sent, Throwable error, Slot slot) {
+        long now = System.nanoTime();
+        outstanding.decrementAndGet();
+        if (measured(due) && unanswered.getAndDecrement() > 0) {
+            if (error != null) {
+                errors.increment();
+                intervalErrors.increment();
+            } else {
+                long response = micros(now - due);
+                responseTime.recordValue(response);
+                serviceTime.recordValue(micros(now - sent));
+                operationTimes.get(operation).recordValue(response);
+            }
+        }
+        if (slot != null) {
+            if (error != null) {
+                // a failing connection fails fast, retrying inline would spin on the event loop.
+                slot.schedule(ERROR_PAUSE_NANOS);
+            } else {
+                slot.next();
+            }
+        }
+    }
+
+    private void snapshot(Histogram responseTotal, Histogram serviceTotal, List<LoadReport.Interval> intervals,
+            long now, long length) {
+        Histogram response = responseTime.getIntervalHistogram();
+        Histogram service = serviceTime.getIntervalHistogram();
+        long failed = intervalErrors.sumThenReset();
+        responseTotal.add(response);
+        serviceTotal.add(service);
+        if (response.getTotalCount() > 0 || failed > 0 || now - end <= 0) {
+            LoadReport.Interval interval = new LoadReport.Interval((now - measureStart) / 1e9, length / 1e9,
+                    response.getTotalCount(), failed, response.getValueAtPercentile(50),
+                    response.getValueAtPercentile(99), response.getMaxValue());
+            intervals.add(interval);
+            if (listener != null) {
+                listener.accept(interval);
+            }
+        }
+    }
+
+    private boolean measured(long due) {
+        return due - measureStart >= 0 && due - end < 0;
+    }
+
+    private void awaitOutstanding() throws InterruptedException {
+        long deadline = System.nanoTime() + drainNanos;
+        while (outstanding.get() > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(Math.max(nanos / 1000, 0), HIGHEST_MICROS);
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    /**
+     * Parks for most of the wait and spins the last stretch, parking alone oversleeps by tens of microseconds.
+     */
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100_000) {
+                LockSupport.parkNanos(remaining - 50_000);
+            }
+        }
+    }
+
+    /**
+     * One closed-loop in-flight operation.
+     */
+    private final class Slot {
+
+        private final RedisClusterAsyncCommands<String, String> commands;
+
+        private final long period;
+
+        private long due;
+
+        Slot(RedisClusterAsyncCommands<String, String> commands, long period, long due) {
+            this.commands = commands;
+            this.period = period;
+            this.due = due;
+        }
+
+        void next() {
+            if (period == 0) {
+                due = System.nanoTime();
+                send();
+            } else {
+                schedule(due - System.nanoTime());
+            }
+        }
+
+        void schedule(long delayNanos) {
+            if (!running) {
+                return;
+            }
+            if (delayNanos <= 0) {
+                send();
+                return;
+            }
+            try {
+                scheduler.schedule(this::send, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the run is over.
+            }
+        }
+
+        private void send() {
+            if (!running) {
+                return;
+            }
+            long sending = period == 0 ? System.nanoTime() : due;
+            due += period;
+            LoadRun.this.send(commands, sending, this);
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private Workload workload = Workload.builder().build();
+
+        private int connections = 4;
+
+        private int concurrency = 1;
+
+        private double rate;
+
+        private boolean openLoop;
+
+        private int maxInFlight = 100_000;
+
+        private Duration warmup = Duration.ofSeconds(5);
+
+        private Duration duration = Duration.ofSeconds(30);
+
+        private Duration reportInterval = Duration.ofSeconds(1);
+
+        private Duration drainTimeout = Duration.ofSeconds(30);
+
+        private Consumer<LoadReport.Interval> listener;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+        }
+
+        public Builder workload(Workload workload) {
+            this.workload = workload;
+            return this;
+        }
+
+        /**
+         * Connections opened for the run, defaults to 4.
+         */
+        public Builder connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * Operations in flight per connection in the closed loop, defaults to 1.
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Operations per second over all connections; 0, the default, runs the closed loop as fast as possible.
+         */
+        public Builder rate(double rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        /**
+         * Send at the rate whatever the replies do instead of waiting for them, defaults to false.
+         */
+        public Builder openLoop(boolean openLoop) {
+            this.openLoop = openLoop;
+            return this;
+        }
+
+        /**
+         * Most operations the open loop keeps outstanding before it waits, so a stalled server does not fill the
+         * heap; defaults to 100000. Waiting operations are still measured from when they were due.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Defaults to 5 seconds.
+         */
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        /**
+         * Measured period, defaults to 30 seconds.
+         */
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Length of the throughput intervals, defaults to 1 second.
+         */
+        public Builder reportInterval(Duration reportInterval) {
+            this.reportInterval = reportInterval;
+            return this;
+        }
+
+        /**
+         * How long to wait for the replies still outstanding at the end, defaults to 30 seconds. Measured
+         * operations without reply by then count as errors.
+         */
+        public Builder drainTimeout(Duration drainTimeout) {
+            this.drainTimeout = drainTimeout;
+            return this;
+        }
+
+        /**
+         * Called with every interval as it ends, on the thread running the load.
+         */
+        public Builder listener(Consumer<LoadReport.Interval> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public LoadRun build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A RedisClient or RedisClusterClient is required");
+            }
+            if (connections < 1 || concurrency < 1 || maxInFlight < 1) {
+                throw new IllegalArgumentException("connections, concurrency and maxInFlight must be positive");
+            }
+            if (rate < 0 || (openLoop && rate == 0)) {
+                throw new IllegalArgumentException("rate must not be negative, and is required for the open loop");
+            }
+            if (warmup.isNegative() || duration.isZero() || duration.isNegative() || reportInterval.isZero()
+                    || reportInterval.isNegative() || drainTimeout.isNegative()) {
+                throw new IllegalArgumentException("duration and reportInterval must be positive, warmup and "
+                        + "drainTimeout must not be negative");
+            }
+            return new LoadRun(this);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.redislettuce.loadgen;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The commands a workload mixes. Each data type has its own keys, so operations on different types never hit a
+ * WRONGTYPE error.
+ */
+public enum Operation {
+
+    GET("string") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.get(key);
+        }
+    },
+
+    SET("string") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.set(key, workload.value(random));
+        }
+    },
+
+    INCR("counter") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.incr(key);
+        }
+    },
+
+    HGET("hash") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.hget(key, workload.member(random));
+        }
+    },
+
+    HSET("hash") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.hset(key, workload.member(random), workload.value(random));
+        }
+    },
+
+    HGETALL("hash") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.hgetall(key);
+        }
+    },
+
+    LPUSH("list") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.lpush(key, workload.value(random));
+        }
+    },
+
+    RPOP("list") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.rpop(key);
+        }
+    },
+
+    LRANGE("list") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.lrange(key, 0, workload.getRangeSize() - 1);
+        }
+    },
+
+    SADD("set") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.sadd(key, workload.member(random));
+        }
+    },
+
+    SREM("set") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.srem(key, workload.member(random));
+        }
+    },
+
+    SISMEMBER("set") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.sismember(key, workload.member(random));
+        }
+    },
+
+    ZADD("zset") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.zadd(key, random.nextInt(1_000_000), workload.member(random));
+        }
+    },
+
+    ZINCRBY("zset") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.zincrby(key, 1, workload.member(random));
+        }
+    },
+
+    ZSCORE("zset") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.zscore(key, workload.member(random));
+        }
+    },
+
+    ZRANGE("zset") {
+        @Override
+        RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+                Random random) {
+            return commands.zrange(key, 0, workload.getRangeSize() - 1);
+        }
+    };
+
+    private final String type;
+
+    Operation(String type) {
+        this.type = type;
+    }
+
+    /**
+     * The keys this operation works on: {@code <prefix><type>:<index>}.
+     */
+    public String getType() {
+        return type;
+    }
+
+    public static Operation parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown operation " + name, e);
+        }
+    }
+
+    abstract RedisFuture<?> send(RedisClusterAsyncCommands<String, String> commands, String key, Workload workload,
+            Random random);
+}
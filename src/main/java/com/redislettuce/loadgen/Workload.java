@@ -0,0 +1,252 @@
+package com.redislettuce.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * What a load run sends: the operation mix, which keys the operations go to and how large the values are.
+ *
+ * Values are drawn from a pool generated up front, so producing them costs no allocation or randomness per
+ * operation. Hash fields, set and sorted set members are {@code m0} to {@code m<members-1>}.
+ */
+public class Workload {
+
+    private static final int VALUE_POOL = 1024;
+
+    private final Operation[] operations;
+
+    private final int[] cumulativeWeights;
+
+    private final int totalWeight;
+
+    private final KeyDistribution keys;
+
+    private final String[][] keyNames;
+
+    private final String prefix;
+
+    private final String[] values;
+
+    private final String[] members;
+
+    private final int minValueSize;
+
+    private final int maxValueSize;
+
+    private final int rangeSize;
+
+    private Workload(Builder builder) {
+        this.operations = builder.mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += builder.mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        this.totalWeight = total;
+        this.keys = builder.keys;
+        this.prefix = builder.prefix;
+        // key names are built once for small key spaces, on the fly for large ones.
+        this.keyNames = new String[Operation.values().length][];
+        if (keys.getKeys() <= 1 << 16) {
+            for (Operation operation : operations) {
+                String[] names = new String[(int) keys.getKeys()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = keyName(operation, i);
+                }
+                keyNames[operation.ordinal()] = names;
+            }
+        }
+        this.minValueSize = builder.minValueSize;
+        this.maxValueSize = builder.maxValueSize;
+        this.values = new String[VALUE_POOL];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = randomValue(random, minValueSize + random.nextInt(maxValueSize - minValueSize + 1));
+        }
+        this.members = new String[builder.members];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = "m" + i;
+        }
+        this.rangeSize = builder.rangeSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@code op=weight,...}, for example {@code get=80,set=20}.
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected op=weight in mix, got " + entry);
+            }
+            weights.put(Operation.parse(entry.substring(0, equals)), Integer.parseInt(entry.substring(equals + 1).trim()));
+        }
+        return weights;
+    }
+
+    public Operation nextOperation(Random random) {
+        if (operations.length == 1) {
+            return operations[0];
+        }
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    public String key(Operation operation, Random random) {
+        long index = keys.next(random);
+        String[] names = keyNames[operation.ordinal()];
+        return names != null ? names[(int) index] : keyName(operation, index);
+    }
+
+    public String value(Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    public String member(Random random) {
+        return members[random.nextInt(members.length)];
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    public Map<Operation, Integer> getMix() {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (int i = 0; i < operations.length; i++) {
+            mix.put(operations[i], cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]));
+        }
+        return mix;
+    }
+
+    public KeyDistribution getKeys() {
+        return keys;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getMinValueSize() {
+        return minValueSize;
+    }
+
+    public int getMaxValueSize() {
+        return maxValueSize;
+    }
+
+    String keyName(Operation operation, long index) {
+        return prefix + operation.getType() + ":" + index;
+    }
+
+    private static String randomValue(Random random, int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    public static class Builder {
+
+        private Map<Operation, Integer> mix = parseMix("get=80,set=20");
+
+        private KeyDistribution keys = KeyDistribution.uniform(100_000);
+
+        private String prefix = "loadgen:";
+
+        private int minValueSize = 100;
+
+        private int maxValueSize = 100;
+
+        private int members = 100;
+
+        private int rangeSize = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Relative weight of each operation, defaults to {@code get=80,set=20}.
+         */
+        public Builder mix(Map<Operation, Integer> mix) {
+            this.mix = new EnumMap<>(mix);
+            return this;
+        }
+
+        /**
+         * Keys per data type and how they are picked, defaults to 100000 uniformly picked keys.
+         */
+        public Builder keys(KeyDistribution keys) {
+            this.keys = keys;
+            return this;
+        }
+
+        /**
+         * Prefix of every key, defaults to {@code loadgen:}.
+         */
+        public Builder prefix(String prefix) {
+            this.prefix = prefix;
+            return this;
+        }
+
+        /**
+         * Size of the values written, in bytes; defaults to 100.
+         */
+        public Builder valueSize(int valueSize) {
+            return valueSize(valueSize, valueSize);
+        }
+
+        /**
+         * Values between {@code min} and {@code max} bytes, uniformly distributed.
+         */
+        public Builder valueSize(int min, int max) {
+            this.minValueSize = min;
+            this.maxValueSize = max;
+            return this;
+        }
+
+        /**
+         * Distinct hash fields and set members per key, defaults to 100.
+         */
+        public Builder members(int members) {
+            this.members = members;
+            return this;
+        }
+
+        /**
+         * Elements read by LRANGE and ZRANGE, defaults to 10.
+         */
+        public Builder rangeSize(int rangeSize) {
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        public Workload build() {
+            if (mix.isEmpty() || mix.values().stream().anyMatch(weight -> weight < 0)
+                    || mix.values().stream().mapToInt(Integer::intValue).sum() < 1) {
+                throw new IllegalArgumentException("The mix needs a positive weight, got " + mix);
+            }
+            mix.values().removeIf(weight -> weight == 0);
+            if (minValueSize < 0 || maxValueSize < minValueSize) {
+                throw new IllegalArgumentException("Require 0 <= min value size <= max value size, got "
+                        + minValueSize + ", " + maxValueSize);
+            }
+            if (members < 1 || rangeSize < 1) {
+                throw new IllegalArgumentException("members and rangeSize must be positive");
+            }
+            return new Workload(this);
+        }
+    }
+}
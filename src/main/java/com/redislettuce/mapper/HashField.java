@@ -0,0 +1,18 @@
+package com.redislettuce.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Name of the hash field a field of a {@link RedisHash} class is stored in, the field name by default.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface HashField {
+
+    String value();
+}
@@ -0,0 +1,55 @@
+package com.redislettuce.mapper;
+
+import io.lettuce.core.protocol.CommandArgs;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Converts between objects of a {@link RedisHash} class and hash fields, implemented by generated code.
+ *
+ * Fields are addressed by their index in {@link #fieldNames()}. Values are written to and parsed from the command
+ * buffers directly: no map, no reflection, and no boxing for primitive fields.
+ */
+public interface HashMapper<T> {
+
+    Class<T> type();
+
+    T newInstance();
+
+    /**
+     * Hash field names, in declaration order.
+     */
+    List<String> fieldNames();
+
+    /**
+     * @return the index of the hash field {@code name}, -1 if the class has no such field.
+     */
+    int indexOf(String name);
+
+    /**
+     * Same as {@link #indexOf(String)} for a field name in a reply buffer, without decoding it.
+     */
+    int indexOf(ByteBuffer name);
+
+    /**
+     * Adds a name and a value for every non-null field of {@code object}.
+     */
+    void write(T object, CommandArgs<String, String> args);
+
+    /**
+     * Adds a name and a value for every field that differs between {@code before} and {@code after} and is not null
+     * in {@code after} to {@code changed}, and the name of every field that became null to {@code removed}.
+     */
+    void writeChanged(T before, T after, CommandArgs<String, String> changed, CommandArgs<String, String> removed);
+
+    /**
+     * Sets the field at {@code index} from its value in a reply buffer.
+     */
+    void read(T object, int index, ByteBuffer value);
+
+    /**
+     * A copy of {@code object} that does not share mutable state ({@code byte[]}) with it.
+     */
+    T copy(T object);
+}
@@ -0,0 +1,41 @@
+package com.redislettuce.mapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the generated {@link HashMapper} of a {@link RedisHash} class. The lookup loads the generated class once;
+ * code that knows the class can use its {@code INSTANCE} field directly.
+ */
+public final class HashMappers {
+
+    private static final ConcurrentHashMap<Class<?>, HashMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    private HashMappers() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> HashMapper<T> get(Class<T> type) {
+        return (HashMapper<T>) MAPPERS.computeIfAbsent(type, HashMappers::load);
+    }
+
+    /**
+     * {@code pkg.Outer$Inner} is mapped by {@code pkg.Outer_InnerHashMapper}.
+     */
+    static String mapperName(String binaryName) {
+        int dot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, dot + 1) + binaryName.substring(dot + 1).replace('$', '_') + "HashMapper";
+    }
+
+    private static HashMapper<?> load(Class<?> type) {
+        String name = mapperName(type.getName());
+        try {
+            Class<?> mapper = Class.forName(name, true, type.getClassLoader());
+            return (HashMapper<?>) mapper.getField("INSTANCE").get(null);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("No " + name + ": is " + type.getName()
+                    + " annotated with @RedisHash and the annotation processor enabled?", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + name, e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.redislettuce.mapper;
+
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses an HGETALL reply (field, value, field, value...) or an HMGET reply (values of the requested fields) into
+ * an object, without building a map. The output is {@code null} when no field was found.
+ */
+class HashObjectOutput<T> extends CommandOutput<String, String, T> {
+
+    private final HashMapper<T> mapper;
+
+    private final int[] requested;
+
+    private int position;
+
+    private int field = -1;
+
+    /**
+     * @param requested field indexes of an HMGET, {@code null} for HGETALL.
+     */
+    HashObjectOutput(HashMapper<T> mapper, int[] requested) {
+        super(StringCodec.UTF8, null);
+        this.mapper = mapper;
+        this.requested = requested;
+    }
+
+    @Override
+    public void set(ByteBuffer bytes) {
+        int index = position++;
+        if (requested != null) {
+            if (bytes != null) {
+                read(requested[index], bytes);
+            }
+            return;
+        }
+        if ((index & 1) == 0) {
+            field = bytes == null ? -1 : mapper.indexOf(bytes);
+        } else if (field >= 0 && bytes != null) {
+            read(field, bytes);
+        }
+    }
+
+    private void read(int index, ByteBuffer value) {
+        if (output == null) {
+            output = mapper.newInstance();
+        }
+        mapper.read(output, index, value);
+    }
+}
@@ -0,0 +1,185 @@
+package com.redislettuce.mapper;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores objects of a {@link RedisHash} class as hashes through their generated {@link HashMapper}.
+ *
+ * {@link #save(String, Object)} writes every non-null field with one HSET whose arguments the mapper fills in
+ * directly, {@link #load(String)} parses the HGETALL reply straight into a new object and
+ * {@link #load(String, String...)} reads only some fields with HMGET. An object loaded with
+ * {@link #loadTracked(String)} remembers the state it was loaded in, and {@link #update(Tracked)} writes only the
+ * fields changed since then: one HSET for the changed values, one HDEL for the fields set to null.
+ * <pre>
+ * HashRepository&lt;User&gt; users = HashRepository.of(connection, UserHashMapper.INSTANCE);
+ * HashRepository.Tracked&lt;User&gt; user = users.loadTracked("user:42");
+ * user.get().setLastLogin(now);
+ * users.update(user);
+ * </pre>
+ */
+public class HashRepository<T> {
+
+    private final StatefulConnection<String, String> connection;
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+
+    private final HashMapper<T> mapper;
+
+    private HashRepository(StatefulConnection<String, String> connection,
+            RedisClusterAsyncCommands<String, String> commands, HashMapper<T> mapper) {
+        this.connection = connection;
+        this.commands = commands;
+        this.mapper = mapper;
+    }
+
+    public static <T> HashRepository<T> of(StatefulRedisConnection<String, String> connection, HashMapper<T> mapper) {
+        return new HashRepository<>(connection, connection.async(), mapper);
+    }
+
+    public static <T> HashRepository<T> of(StatefulRedisClusterConnection<String, String> connection,
+            HashMapper<T> mapper) {
+        return new HashRepository<>(connection, connection.async(), mapper);
+    }
+
+    public static <T> HashRepository<T> of(StatefulRedisConnection<String, String> connection, Class<T> type) {
+        return of(connection, HashMappers.get(type));
+    }
+
+    public static <T> HashRepository<T> of(StatefulRedisClusterConnection<String, String> connection,
+            Class<T> type) {
+        return of(connection, HashMappers.get(type));
+    }
+
+    /**
+     * Writes all non-null fields of {@code object}. Fields that are null are left as they are in the hash.
+     */
+    public void save(String key, T object) {
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        mapper.write(object, args);
+        if (args.count() > 1) {
+            await(commands.dispatch(CommandType.HSET, new IntegerOutput<>(StringCodec.UTF8), args));
+        }
+    }
+
+    /**
+     * @return the object stored in {@code key}, {@code null} if there is no such hash.
+     */
+    public T load(String key) {
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        return await(commands.dispatch(CommandType.HGETALL, new HashObjectOutput<>(mapper, null), args));
+    }
+
+    /**
+     * Reads only {@code fields}; the other fields keep the values of a new instance.
+     *
+     * @return {@code null} if none of the fields exists.
+     */
+    public T load(String key, String... fields) {
+        int[] indexes = new int[fields.length];
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        for (int i = 0; i < fields.length; i++) {
+            indexes[i] = mapper.indexOf(fields[i]);
+            if (indexes[i] < 0) {
+                throw new IllegalArgumentException(mapper.type().getName() + " has no hash field " + fields[i]);
+            }
+            args.add(fields[i]);
+        }
+        return await(commands.dispatch(CommandType.HMGET, new HashObjectOutput<>(mapper, indexes), args));
+    }
+
+    /**
+     * @return the object stored in {@code key} with a snapshot for {@link #update(Tracked)}, {@code null} if there
+     * is no such hash.
+     */
+    public Tracked<T> loadTracked(String key) {
+        T object = load(key);
+        return object == null ? null : new Tracked<>(key, object, mapper.copy(object));
+    }
+
+    /**
+     * Starts tracking an object that is already stored in {@code key} in its current state.
+     */
+    public Tracked<T> track(String key, T object) {
+        return new Tracked<>(key, object, mapper.copy(object));
+    }
+
+    /**
+     * Writes the fields changed since the object was loaded or last updated.
+     *
+     * @return the number of fields written or removed.
+     */
+    public int update(Tracked<T> tracked) {
+        int updated = update(tracked.key, tracked.snapshot, tracked.object);
+        tracked.snapshot = mapper.copy(tracked.object);
+        return updated;
+    }
+
+    /**
+     * Writes the fields that differ between {@code before} and {@code after}.
+     *
+     * @return the number of fields written or removed.
+     */
+    public int update(String key, T before, T after) {
+        CommandArgs<String, String> changed = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        CommandArgs<String, String> removed = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        mapper.writeChanged(before, after, changed, removed);
+        RedisFuture<Long> set = changed.count() > 1
+                ? commands.dispatch(CommandType.HSET, new IntegerOutput<>(StringCodec.UTF8), changed) : null;
+        RedisFuture<Long> delete = removed.count() > 1
+                ? commands.dispatch(CommandType.HDEL, new IntegerOutput<>(StringCodec.UTF8), removed) : null;
+        if (set != null) {
+            await(set);
+        }
+        if (delete != null) {
+            await(delete);
+        }
+        return (changed.count() - 1) / 2 + removed.count() - 1;
+    }
+
+    public HashMapper<T> getMapper() {
+        return mapper;
+    }
+
+    private <R> R await(RedisFuture<R> future) {
+        Duration timeout = connection.getTimeout();
+        return LettuceFutures.awaitOrCancel(future, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * An object with the state it was last read or written in.
+     */
+    public static final class Tracked<T> {
+
+        private final String key;
+
+        private final T object;
+
+        private T snapshot;
+
+        private Tracked(String key, T object, T snapshot) {
+            this.key = key;
+            this.object = object;
+            this.snapshot = snapshot;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public T get() {
+            return object;
+        }
+    }
+}
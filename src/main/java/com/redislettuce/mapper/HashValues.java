@@ -0,0 +1,101 @@
+package com.redislettuce.mapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parsing of hash values straight from reply buffers, used by generated {@link HashMapper}s. None of the methods
+ * moves the position of the buffer.
+ */
+public final class HashValues {
+
+    private HashValues() {
+    }
+
+    public static long parseLong(ByteBuffer value) {
+        int position = value.position();
+        int limit = value.limit();
+        if (position == limit) {
+            throw new NumberFormatException("empty value");
+        }
+        boolean negative = value.get(position) == '-';
+        int i = negative ? position + 1 : position;
+        if (i == limit) {
+            throw new NumberFormatException("not an integer: " + string(value));
+        }
+        long result = 0;
+        for (; i < limit; i++) {
+            int digit = value.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("not an integer: " + string(value));
+            }
+            // accumulated negatively so that Long.MIN_VALUE parses.
+            if (result < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("integer out of range: " + string(value));
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                throw new NumberFormatException("integer out of range: " + string(value));
+            }
+            return -result;
+        }
+        return result;
+    }
+
+    public static double parseDouble(ByteBuffer value) {
+        return Double.parseDouble(string(value));
+    }
+
+    public static float parseFloat(ByteBuffer value) {
+        return Float.parseFloat(string(value));
+    }
+
+    /**
+     * "1" and "true" (any case) are true, everything else is false.
+     */
+    public static boolean parseBoolean(ByteBuffer value) {
+        int length = value.remaining();
+        if (length == 1) {
+            return value.get(value.position()) == '1';
+        }
+        return length == 4 && "true".equalsIgnoreCase(string(value));
+    }
+
+    public static String string(ByteBuffer value) {
+        return StandardCharsets.UTF_8.decode(value.duplicate()).toString();
+    }
+
+    public static byte[] bytes(ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Index of the name in {@code name} among {@code names} (UTF-8), -1 if absent.
+     */
+    public static int indexOf(ByteBuffer name, byte[][] names) {
+        int position = name.position();
+        int length = name.remaining();
+        for (int n = 0; n < names.length; n++) {
+            byte[] candidate = names[n];
+            if (candidate.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && candidate[i] == name.get(position + i)) {
+                i++;
+            }
+            if (i == length) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    public static byte[] utf8(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,21 @@
+package com.redislettuce.mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class to be stored as a redis hash. The annotation processor generates a {@link HashMapper} named
+ * {@code <Class>HashMapper} (nested classes: {@code <Outer>_<Inner>HashMapper}) in the same package.
+ *
+ * The class needs a non-private no-argument constructor. Every non-static, non-transient field declared by the class
+ * becomes a hash field; private fields are accessed through their getter and setter. Supported field types are the
+ * primitives and their wrappers, {@code String}, enums and {@code byte[]}.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface RedisHash {
+}
@@ -0,0 +1,437 @@
+package com.redislettuce.mapper.processor;
+
+import com.redislettuce.mapper.HashField;
+import com.redislettuce.mapper.RedisHash;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@code HashMapper} for every class annotated with {@link RedisHash}.
+ *
+ * The generated mapper reads and writes each field with code written for its type: numbers go into the HSET
+ * arguments as integers or doubles and are parsed from the reply buffer without a String (integers) or boxing.
+ * Unsupported classes and fields are reported as compile errors on the element.
+ */
+public class HashMapperProcessor extends AbstractProcessor {
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(RedisHash.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (Element element : round.getElementsAnnotatedWith(RedisHash.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@RedisHash is only supported on classes");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<Field> fields = fields(type);
+            if (fields != null && checkClass(type)) {
+                write(type, fields);
+            }
+        }
+        return true;
+    }
+
+    private boolean checkClass(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            error(type, "@RedisHash classes must be concrete and not generic");
+            return false;
+        }
+        if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "@RedisHash nested classes must be static");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        error(type, "@RedisHash classes need a non-private no-argument constructor");
+        return false;
+    }
+
+    private List<Field> fields(TypeElement type) {
+        List<Field> fields = new ArrayList<>();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(type.getEnclosedElements());
+        boolean valid = true;
+        for (VariableElement variable : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = variable.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            String name = variable.getSimpleName().toString();
+            HashField hashField = variable.getAnnotation(HashField.class);
+            Kind kind = kind(variable.asType());
+            if (kind == null) {
+                error(variable, "unsupported type for a hash field: " + variable.asType());
+                valid = false;
+                continue;
+            }
+            String getter;
+            String setter;
+            if (!modifiers.contains(Modifier.PRIVATE)) {
+                if (modifiers.contains(Modifier.FINAL)) {
+                    error(variable, "hash fields must not be final");
+                    valid = false;
+                    continue;
+                }
+                getter = name;
+                setter = null;
+            } else {
+                String property = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                getter = accessor(methods, kind == Kind.BOOLEAN ? "is" + property : "get" + property, 0);
+                if (getter == null) {
+                    getter = accessor(methods, "get" + property, 0);
+                }
+                setter = accessor(methods, "set" + property, 1);
+                if (getter == null || setter == null) {
+                    error(variable, "private hash field " + name + " needs a getter and a setter");
+                    valid = false;
+                    continue;
+                }
+            }
+            fields.add(new Field(hashField != null ? hashField.value() : name, kind,
+                    variable.asType().toString(), getter, setter));
+        }
+        if (valid && fields.isEmpty()) {
+            error(type, "@RedisHash class without fields");
+            valid = false;
+        }
+        return valid ? fields : null;
+    }
+
+    private static String accessor(List<ExecutableElement> methods, String name, int parameters) {
+        for (ExecutableElement method : methods) {
+            if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == parameters
+                    && !method.getModifiers().contains(Modifier.PRIVATE)
+                    && !method.getModifiers().contains(Modifier.STATIC)) {
+                return name + "()";
+            }
+        }
+        return null;
+    }
+
+    private Kind kind(TypeMirror type) {
+        switch (type.getKind()) {
+            case LONG:
+                return Kind.LONG;
+            case INT:
+                return Kind.INT;
+            case SHORT:
+                return Kind.SHORT;
+            case BYTE:
+                return Kind.BYTE;
+            case DOUBLE:
+                return Kind.DOUBLE;
+            case FLOAT:
+                return Kind.FLOAT;
+            case BOOLEAN:
+                return Kind.BOOLEAN;
+            case CHAR:
+                return Kind.CHAR;
+            case ARRAY:
+                return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? Kind.BYTES : null;
+            case DECLARED:
+                Element element = ((DeclaredType) type).asElement();
+                if (element.getKind() == ElementKind.ENUM) {
+                    return Kind.ENUM;
+                }
+                switch (((TypeElement) element).getQualifiedName().toString()) {
+                    case "java.lang.String":
+                        return Kind.STRING;
+                    case "java.lang.Long":
+                        return Kind.LONG_OBJECT;
+                    case "java.lang.Integer":
+                        return Kind.INT_OBJECT;
+                    case "java.lang.Short":
+                        return Kind.SHORT_OBJECT;
+                    case "java.lang.Byte":
+                        return Kind.BYTE_OBJECT;
+                    case "java.lang.Double":
+                        return Kind.DOUBLE_OBJECT;
+                    case "java.lang.Float":
+                        return Kind.FLOAT_OBJECT;
+                    case "java.lang.Boolean":
+                        return Kind.BOOLEAN_OBJECT;
+                    case "java.lang.Character":
+                        return Kind.CHAR_OBJECT;
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    private void write(TypeElement type, List<Field> fields) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + "HashMapper";
+        String target = type.getQualifiedName().toString();
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("import com.redislettuce.mapper.HashMapper;\n");
+        out.append("import com.redislettuce.mapper.HashValues;\n");
+        out.append("import io.lettuce.core.protocol.CommandArgs;\n\n");
+        out.append("import java.nio.ByteBuffer;\n");
+        out.append("import java.util.Arrays;\n");
+        out.append("import java.util.Collections;\n");
+        out.append("import java.util.List;\n");
+        out.append("import java.util.Objects;\n\n");
+        out.append("/**\n * Generated by ").append(getClass().getName()).append(" for {@link ").append(target)
+                .append("}.\n */\n");
+        out.append("public final class ").append(simpleName).append(" implements HashMapper<").append(target)
+                .append("> {\n\n");
+        out.append("    public static final ").append(simpleName).append(" INSTANCE = new ").append(simpleName)
+                .append("();\n\n");
+        out.append("    private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(");
+        for (int i = 0; i < fields.size(); i++) {
+            out.append(i == 0 ? "" : ", ").append(literal(fields.get(i).hashName));
+        }
+        out.append("));\n\n");
+        out.append("    private static final byte[][] BYTES = new byte[").append(fields.size()).append("][];\n\n");
+        out.append("    static {\n");
+        out.append("        for (int i = 0; i < BYTES.length; i++) {\n");
+        out.append("            BYTES[i] = HashValues.utf8(NAMES.get(i));\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+        out.append("    private ").append(simpleName).append("() {\n    }\n\n");
+
+        out.append("    @Override\n    public Class<").append(target).append("> type() {\n");
+        out.append("        return ").append(target).append(".class;\n    }\n\n");
+
+        out.append("    @Override\n    public ").append(target).append(" newInstance() {\n");
+        out.append("        return new ").append(target).append("();\n    }\n\n");
+
+        out.append("    @Override\n    public List<String> fieldNames() {\n        return NAMES;\n    }\n\n");
+
+        out.append("    @Override\n    public int indexOf(String name) {\n");
+        out.append("        return NAMES.indexOf(name);\n    }\n\n");
+
+        out.append("    @Override\n    public int indexOf(ByteBuffer name) {\n");
+        out.append("        return HashValues.indexOf(name, BYTES);\n    }\n\n");
+
+        out.append("    @Override\n    public void write(").append(target)
+                .append(" object, CommandArgs<String, String> args) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            writeField(out, fields.get(i), i, "object", "args", "        ", true);
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n    public void writeChanged(").append(target).append(" before, ").append(target)
+                .append(" after, CommandArgs<String, String> changed,\n");
+        out.append("            CommandArgs<String, String> removed) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            String before = "before." + field.getter;
+            String after = "after." + field.getter;
+            out.append("        if (").append(field.kind.changed(before, after)).append(") {\n");
+            if (field.kind.nullable) {
+                out.append("            if (").append(after).append(" == null) {\n");
+                out.append("                removed.add(BYTES[").append(i).append("]);\n");
+                out.append("            } else {\n");
+                writeField(out, field, i, "after", "changed", "                ", false);
+                out.append("            }\n");
+            } else {
+                writeField(out, field, i, "after", "changed", "            ", false);
+            }
+            out.append("        }\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n    public void read(").append(target)
+                .append(" object, int index, ByteBuffer value) {\n");
+        out.append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            out.append("            case ").append(i).append(":\n");
+            out.append("                ").append(field.assign("object", field.kind.parse("value", field.type)))
+                    .append(";\n");
+            out.append("                return;\n");
+        }
+        out.append("            default:\n");
+        out.append("                throw new IndexOutOfBoundsException(\"field \" + index);\n");
+        out.append("        }\n    }\n\n");
+
+        out.append("    @Override\n    public ").append(target).append(" copy(").append(target).append(" object) {\n");
+        out.append("        ").append(target).append(" copy = new ").append(target).append("();\n");
+        for (Field field : fields) {
+            String value = "object." + field.getter;
+            if (field.kind == Kind.BYTES) {
+                value = value + " == null ? null : " + value + ".clone()";
+            }
+            out.append("        ").append(field.assign("copy", value)).append(";\n");
+        }
+        out.append("        return copy;\n    }\n}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                    packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(out.toString());
+            }
+        } catch (IOException e) {
+            error(type, "cannot write " + simpleName + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeField(StringBuilder out, Field field, int index, String object, String args,
+            String indent, boolean checkNull) {
+        String value = object + "." + field.getter;
+        String add = args + ".add(BYTES[" + index + "]).add(" + field.kind.encode(value) + ");\n";
+        if (checkNull && field.kind.nullable) {
+            out.append(indent).append("if (").append(value).append(" != null) {\n");
+            out.append(indent).append("    ").append(add);
+            out.append(indent).append("}\n");
+        } else {
+            out.append(indent).append(add);
+        }
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Field {
+
+        final String hashName;
+
+        final Kind kind;
+
+        final String type;
+
+        /**
+         * Field name or getter call, appended to the object expression.
+         */
+        final String getter;
+
+        /**
+         * Setter name with "()", {@code null} for direct field access.
+         */
+        final String setter;
+
+        Field(String hashName, Kind kind, String type, String getter, String setter) {
+            this.hashName = hashName;
+            this.kind = kind;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        String assign(String object, String value) {
+            if (setter == null) {
+                return object + "." + getter + " = " + value;
+            }
+            return object + "." + setter.substring(0, setter.length() - 1) + value + ")";
+        }
+    }
+
+    /**
+     * How a field type is encoded into command arguments, parsed from a reply and compared.
+     */
+    private enum Kind {
+
+        LONG(false, "%s", "HashValues.parseLong(%s)"),
+        INT(false, "(long) %s", "(int) HashValues.parseLong(%s)"),
+        SHORT(false, "(long) %s", "(short) HashValues.parseLong(%s)"),
+        BYTE(false, "(long) %s", "(byte) HashValues.parseLong(%s)"),
+        DOUBLE(false, "%s", "HashValues.parseDouble(%s)"),
+        FLOAT(false, "Float.toString(%s)", "HashValues.parseFloat(%s)"),
+        BOOLEAN(false, "%s ? 1L : 0L", "HashValues.parseBoolean(%s)"),
+        CHAR(false, "String.valueOf(%s)", "HashValues.string(%s).charAt(0)"),
+        LONG_OBJECT(true, "%s.longValue()", "Long.valueOf(HashValues.parseLong(%s))"),
+        INT_OBJECT(true, "%s.longValue()", "Integer.valueOf((int) HashValues.parseLong(%s))"),
+        SHORT_OBJECT(true, "%s.longValue()", "Short.valueOf((short) HashValues.parseLong(%s))"),
+        BYTE_OBJECT(true, "%s.longValue()", "Byte.valueOf((byte) HashValues.parseLong(%s))"),
+        DOUBLE_OBJECT(true, "%s.doubleValue()", "Double.valueOf(HashValues.parseDouble(%s))"),
+        FLOAT_OBJECT(true, "%s.toString()", "Float.valueOf(HashValues.parseFloat(%s))"),
+        BOOLEAN_OBJECT(true, "%s ? 1L : 0L", "Boolean.valueOf(HashValues.parseBoolean(%s))"),
+        CHAR_OBJECT(true, "%s.toString()", "Character.valueOf(HashValues.string(%s).charAt(0))"),
+        STRING(true, "%s", "HashValues.string(%s)"),
+        ENUM(true, "%s.name()", "%2$s.valueOf(HashValues.string(%1$s))"),
+        BYTES(true, "%s", "HashValues.bytes(%s)");
+
+        final boolean nullable;
+
+        private final String encode;
+
+        private final String parse;
+
+        Kind(boolean nullable, String encode, String parse) {
+            this.nullable = nullable;
+            this.encode = encode;
+            this.parse = parse;
+        }
+
+        String encode(String value) {
+            return String.format(encode, value);
+        }
+
+        String parse(String buffer, String type) {
+            return String.format(parse, buffer, type);
+        }
+
+        String changed(String before, String after) {
+            switch (this) {
+                case DOUBLE:
+                    return "Double.compare(" + before + ", " + after + ") != 0";
+                case FLOAT:
+                    return "Float.compare(" + before + ", " + after + ") != 0";
+                case BYTES:
+                    return "!Arrays.equals(" + before + ", " + after + ")";
+                default:
+                    return nullable ? "!Objects.equals(" + before + ", " + after + ")" : before + " != " + after;
+            }
+        }
+    }
+}
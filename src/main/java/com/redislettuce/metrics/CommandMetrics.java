@@ -0,0 +1,500 @@
+package com.redislettuce.metrics;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.event.command.CommandFailedEvent;
+import io.lettuce.core.event.command.CommandListener;
+import io.lettuce.core.event.command.CommandStartedEvent;
+import io.lettuce.core.event.command.CommandSucceededEvent;
+import io.lettuce.core.metrics.CommandLatencyRecorder;
+import io.lettuce.core.protocol.CommandHandler;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.NettyCustomizer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client-side command metrics: HdrHistogram latency histograms per command type and per node, commands in flight,
+ * queue depth, bytes sent and received and errors.
+ *
+ * The metrics plug into lettuce's own extension points: latencies come from the {@link CommandLatencyRecorder} the
+ * command handler reports completed commands to, bytes from a netty handler installed through the
+ * {@link NettyCustomizer}, and in-flight commands and errors from a {@link CommandListener}. Recording is wait-free
+ * and allocation-free (lettuce itself allocates a small wrapper per command once latency recording or command
+ * listeners are enabled), so the metrics can stay on in production.
+ * <pre>
+ * CommandMetrics metrics = CommandMetrics.builder().build();
+ * ClientResources resources = metrics.configure(ClientResources.builder()).build();
+ * RedisClient client = RedisClient.create(resources, uri);
+ * metrics.attach(client);
+ *
+ * metrics.registerMBean("orders");
+ * PrometheusEndpoint endpoint = PrometheusEndpoint.start(metrics, new InetSocketAddress(9404));
+ * </pre>
+ * {@link #snapshot()} reads everything from code. Histograms are cumulative since the metrics were created.
+ */
+public class CommandMetrics implements CommandLatencyRecorder, CommandListener, AutoCloseable {
+
+    private static final CommandType[] TYPES = CommandType.values();
+
+    private final long highestTrackableMicros;
+
+    private final int significantDigits;
+
+    private final AtomicReferenceArray<LatencyStats> byType = new AtomicReferenceArray<>(TYPES.length);
+
+    private final Map<String, LatencyStats> byName = new ConcurrentHashMap<>();
+
+    private final Map<SocketAddress, LatencyStats> byNode = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder finished = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    private final ChannelHandler byteCounter = new ByteCounter();
+
+    private final List<ObjectName> mbeans = new ArrayList<>();
+
+    private CommandMetrics(Builder builder) {
+        this.highestTrackableMicros = builder.highestTrackableLatency.toNanos() / 1000;
+        this.significantDigits = builder.significantDigits;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Install the latency recorder and the byte counter into client resources that are about to be built. Replaces
+     * a netty customizer set on the builder before.
+     */
+    public ClientResources.Builder configure(ClientResources.Builder builder) {
+        return builder.commandLatencyRecorder(this).nettyCustomizer(new NettyCustomizer() {
+
+            @Override
+            public void afterChannelInitialized(Channel channel) {
+                channel.pipeline().addFirst("commandMetrics", byteCounter);
+                channels.add(channel);
+            }
+        });
+    }
+
+    /**
+     * Count in-flight commands and errors of connections created by {@code client}.
+     */
+    public void attach(AbstractRedisClient client) {
+        client.addListener(this);
+    }
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+            long firstResponseLatency, long completionLatency) {
+        long micros = completionLatency / 1000;
+        stats(commandType).record(micros);
+        if (remote != null) {
+            LatencyStats node = byNode.get(remote);
+            if (node == null) {
+                node = byNode.computeIfAbsent(remote, address -> newStats());
+            }
+            node.record(micros);
+        }
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        started.increment();
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        finished.increment();
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        finished.increment();
+        errors.increment();
+        stats(event.getCommand().getType()).recordError();
+    }
+
+    public Snapshot snapshot() {
+        Map<String, LatencySnapshot> commands = new TreeMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            LatencyStats stats = byType.get(i);
+            if (stats != null) {
+                commands.put(TYPES[i].name(), stats.snapshot());
+            }
+        }
+        for (Map.Entry<String, LatencyStats> entry : byName.entrySet()) {
+            commands.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, LatencySnapshot> nodes = new TreeMap<>();
+        for (Map.Entry<SocketAddress, LatencyStats> entry : byNode.entrySet()) {
+            nodes.put(nodeName(entry.getKey()), entry.getValue().snapshot());
+        }
+
+        long awaitingReply = 0;
+        for (Channel channel : channels) {
+            CommandHandler handler = channel.pipeline().get(CommandHandler.class);
+            if (handler != null) {
+                awaitingReply += handler.getStack().size();
+            }
+        }
+        long inFlight = Math.max(0, started.sum() - finished.sum());
+        return new Snapshot(inFlight, Math.max(0, inFlight - awaitingReply), bytesIn.sum(), bytesOut.sum(),
+                errors.sum(), Collections.unmodifiableMap(commands), Collections.unmodifiableMap(nodes));
+    }
+
+    /**
+     * Register the metrics with the platform MBean server as
+     * {@code com.redislettuce:type=CommandMetrics,name=<name>}. Unregistered on {@link #close()}.
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.redislettuce:type=CommandMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBeanAdapter(this), objectName);
+            synchronized (mbeans) {
+                mbeans.add(objectName);
+            }
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register CommandMetrics MBean " + name, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (mbeans) {
+            for (ObjectName name : mbeans) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (JMException e) {
+                    // already gone.
+                }
+            }
+            mbeans.clear();
+        }
+    }
+
+    private LatencyStats stats(ProtocolKeyword keyword) {
+        if (keyword instanceof CommandType) {
+            int index = ((CommandType) keyword).ordinal();
+            LatencyStats stats = byType.get(index);
+            if (stats == null) {
+                byType.compareAndSet(index, null, newStats());
+                stats = byType.get(index);
+            }
+            return stats;
+        }
+        return byName.computeIfAbsent(keyword.name(), name -> newStats());
+    }
+
+    private LatencyStats newStats() {
+        return new LatencyStats(highestTrackableMicros, significantDigits);
+    }
+
+    private static String nodeName(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getHostString() + ":" + inet.getPort();
+        }
+        return address.toString();
+    }
+
+    @ChannelHandler.Sharable
+    private class ByteCounter extends ChannelDuplexHandler {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            bytesIn.add(size(msg));
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            bytesOut.add(size(msg));
+            super.write(ctx, msg, promise);
+        }
+
+        private int size(Object msg) {
+            if (msg instanceof ByteBuf) {
+                return ((ByteBuf) msg).readableBytes();
+            }
+            if (msg instanceof ByteBufHolder) {
+                return ((ByteBufHolder) msg).content().readableBytes();
+            }
+            return 0;
+        }
+    }
+
+    private static class MXBeanAdapter implements CommandMetricsMXBean {
+
+        private final CommandMetrics metrics;
+
+        MXBeanAdapter(CommandMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public long getInFlight() {
+            return metrics.snapshot().getInFlight();
+        }
+
+        @Override
+        public long getQueueDepth() {
+            return metrics.snapshot().getQueueDepth();
+        }
+
+        @Override
+        public long getBytesIn() {
+            return metrics.bytesIn.sum();
+        }
+
+        @Override
+        public long getBytesOut() {
+            return metrics.bytesOut.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return metrics.errors.sum();
+        }
+
+        @Override
+        public Map<String, LatencySnapshot> getCommands() {
+            return metrics.snapshot().getCommands();
+        }
+
+        @Override
+        public Map<String, LatencySnapshot> getNodes() {
+            return metrics.snapshot().getNodes();
+        }
+    }
+
+    /**
+     * Point-in-time view of all metrics.
+     */
+    public static class Snapshot {
+
+        private final long inFlight;
+
+        private final long queueDepth;
+
+        private final long bytesIn;
+
+        private final long bytesOut;
+
+        private final long errors;
+
+        private final Map<String, LatencySnapshot> commands;
+
+        private final Map<String, LatencySnapshot> nodes;
+
+        Snapshot(long inFlight, long queueDepth, long bytesIn, long bytesOut, long errors,
+                Map<String, LatencySnapshot> commands, Map<String, LatencySnapshot> nodes) {
+            this.inFlight = inFlight;
+            this.queueDepth = queueDepth;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.errors = errors;
+            this.commands = commands;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Commands dispatched and not completed yet.
+         */
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * In-flight commands not written to a connection yet, e.g. buffered while reconnecting.
+         */
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Latencies by command type, e.g. {@code GET}.
+         */
+        public Map<String, LatencySnapshot> getCommands() {
+            return commands;
+        }
+
+        /**
+         * Latencies by node, as {@code host:port}.
+         */
+        public Map<String, LatencySnapshot> getNodes() {
+            return nodes;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{inFlight=" + inFlight + ", queueDepth=" + queueDepth + ", bytesIn=" + bytesIn
+                    + ", bytesOut=" + bytesOut + ", errors=" + errors + ", commands=" + commands + ", nodes=" + nodes
+                    + "}";
+        }
+    }
+
+    /**
+     * Latency distribution of one command type or node. Latencies are in microseconds.
+     */
+    public static class LatencySnapshot {
+
+        private final long count;
+
+        private final long errors;
+
+        private final long sumMicros;
+
+        private final long p50Micros;
+
+        private final long p90Micros;
+
+        private final long p99Micros;
+
+        private final long p999Micros;
+
+        private final long maxMicros;
+
+        LatencySnapshot(long count, long errors, long sumMicros, long p50Micros, long p90Micros, long p99Micros,
+                long p999Micros, long maxMicros) {
+            this.count = count;
+            this.errors = errors;
+            this.sumMicros = sumMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getSumMicros() {
+            return sumMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : sumMicros / count;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getP999Micros() {
+            return p999Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "LatencySnapshot{count=" + count + ", errors=" + errors + ", p50=" + p50Micros + "us, p99="
+                    + p99Micros + "us, p999=" + p999Micros + "us, max=" + maxMicros + "us}";
+        }
+    }
+
+    public static class Builder {
+
+        private Duration highestTrackableLatency = Duration.ofMinutes(1);
+
+        private int significantDigits = 2;
+
+        private Builder() {
+        }
+
+        /**
+         * Longer latencies are recorded as this value. Defaults to one minute.
+         */
+        public Builder highestTrackableLatency(Duration highestTrackableLatency) {
+            this.highestTrackableLatency = highestTrackableLatency;
+            return this;
+        }
+
+        /**
+         * Precision of the histograms, from 1 (10%) to 5 (0.001%); defaults to 2 (1%). Every extra digit makes
+         * each histogram about ten times larger.
+         */
+        public Builder significantDigits(int significantDigits) {
+            this.significantDigits = significantDigits;
+            return this;
+        }
+
+        public CommandMetrics build() {
+            if (highestTrackableLatency.compareTo(Duration.ofMillis(1)) < 0) {
+                throw new IllegalArgumentException("highestTrackableLatency must be at least 1ms, got "
+                        + highestTrackableLatency);
+            }
+            if (significantDigits < 1 || significantDigits > 5) {
+                throw new IllegalArgumentException("significantDigits must be between 1 and 5, got "
+                        + significantDigits);
+            }
+            return new CommandMetrics(this);
+        }
+    }
+}
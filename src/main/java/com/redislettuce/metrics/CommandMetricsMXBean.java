@@ -0,0 +1,24 @@
+package com.redislettuce.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CommandMetrics}, see {@link CommandMetrics#registerMBean(String)}. Latency maps are exposed as
+ * tabular data keyed by command type or node.
+ */
+public interface CommandMetricsMXBean {
+
+    long getInFlight();
+
+    long getQueueDepth();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getErrors();
+
+    Map<String, CommandMetrics.LatencySnapshot> getCommands();
+
+    Map<String, CommandMetrics.LatencySnapshot> getNodes();
+}
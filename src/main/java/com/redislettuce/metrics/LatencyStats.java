@@ -0,0 +1,51 @@
+package com.redislettuce.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one command type or one node.
+ *
+ * Writers record into a {@link Recorder}, which is wait-free and does not allocate. Readers swap out the interval
+ * histogram and add it to a running total, so snapshots are cumulative since the metrics were created.
+ */
+class LatencyStats {
+
+    private final long highestTrackableMicros;
+
+    private final Recorder recorder;
+
+    private final Histogram total;
+
+    private final LongAdder sumMicros = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private Histogram interval;
+
+    LatencyStats(long highestTrackableMicros, int significantDigits) {
+        this.highestTrackableMicros = highestTrackableMicros;
+        this.recorder = new Recorder(highestTrackableMicros, significantDigits);
+        this.total = new Histogram(highestTrackableMicros, significantDigits);
+    }
+
+    void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), highestTrackableMicros);
+        recorder.recordValue(value);
+        sumMicros.add(value);
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    synchronized CommandMetrics.LatencySnapshot snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return new CommandMetrics.LatencySnapshot(total.getTotalCount(), errors.sum(), sumMicros.sum(),
+                total.getValueAtPercentile(50), total.getValueAtPercentile(90), total.getValueAtPercentile(99),
+                total.getValueAtPercentile(99.9), total.getMaxValue());
+    }
+}
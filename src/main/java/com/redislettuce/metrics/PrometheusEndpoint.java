@@ -0,0 +1,126 @@
+package com.redislettuce.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves {@link CommandMetrics} in the Prometheus text exposition format on {@code GET /metrics}, using the HTTP
+ * server that ships with the JDK. {@link #format(CommandMetrics.Snapshot)} produces the same text for callers that
+ * already run their own endpoint.
+ * <pre>
+ * try (PrometheusEndpoint endpoint = PrometheusEndpoint.start(metrics, new InetSocketAddress(9404))) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class PrometheusEndpoint implements AutoCloseable {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+
+    private PrometheusEndpoint(HttpServer server) {
+        this.server = server;
+    }
+
+    public static PrometheusEndpoint start(CommandMetrics metrics, InetSocketAddress address) {
+        try {
+            HttpServer server = HttpServer.create(address, 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = format(metrics.snapshot()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            return new PrometheusEndpoint(server);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot bind metrics endpoint to " + address, e);
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public static String format(CommandMetrics.Snapshot snapshot) {
+        StringBuilder out = new StringBuilder(4096);
+        summary(out, "redis_client_command_latency_seconds", "Completion latency by command type.", "command",
+                snapshot.getCommands());
+        summary(out, "redis_client_node_latency_seconds", "Completion latency by node.", "node", snapshot.getNodes());
+
+        header(out, "redis_client_command_errors_total", "counter", "Failed commands by command type.");
+        for (Map.Entry<String, CommandMetrics.LatencySnapshot> entry : snapshot.getCommands().entrySet()) {
+            sample(out, "redis_client_command_errors_total", "command", entry.getKey(), null,
+                    entry.getValue().getErrors());
+        }
+        scalar(out, "redis_client_commands_in_flight", "gauge", "Commands dispatched and not completed.",
+                snapshot.getInFlight());
+        scalar(out, "redis_client_queue_depth", "gauge", "In-flight commands not written to a connection yet.",
+                snapshot.getQueueDepth());
+        scalar(out, "redis_client_received_bytes_total", "counter", "Bytes read from redis.", snapshot.getBytesIn());
+        scalar(out, "redis_client_sent_bytes_total", "counter", "Bytes written to redis.", snapshot.getBytesOut());
+        scalar(out, "redis_client_errors_total", "counter", "Failed commands.", snapshot.getErrors());
+        return out.toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String label,
+            Map<String, CommandMetrics.LatencySnapshot> latencies) {
+        header(out, name, "summary", help);
+        for (Map.Entry<String, CommandMetrics.LatencySnapshot> entry : latencies.entrySet()) {
+            CommandMetrics.LatencySnapshot latency = entry.getValue();
+            quantile(out, name, label, entry.getKey(), "0.5", latency.getP50Micros());
+            quantile(out, name, label, entry.getKey(), "0.9", latency.getP90Micros());
+            quantile(out, name, label, entry.getKey(), "0.99", latency.getP99Micros());
+            quantile(out, name, label, entry.getKey(), "0.999", latency.getP999Micros());
+            sample(out, name + "_sum", label, entry.getKey(), null, seconds(latency.getSumMicros()));
+            sample(out, name + "_count", label, entry.getKey(), null, latency.getCount());
+        }
+    }
+
+    private static void quantile(StringBuilder out, String name, String label, String value, String quantile,
+            long micros) {
+        sample(out, name, label, value, quantile, seconds(micros));
+    }
+
+    private static void scalar(StringBuilder out, String name, String type, String help, long value) {
+        header(out, name, type, help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, String quantile,
+            Object sample) {
+        out.append(name).append('{').append(label).append("=\"").append(escape(value)).append('"');
+        if (quantile != null) {
+            out.append(",quantile=\"").append(quantile).append('"');
+        }
+        out.append("} ").append(sample).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,542 @@
+package com.redislettuce.queue;
+
+import io.lettuce.core.LMoveArgs;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.ArrayOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A job queue on a redis list: producers LPUSH, consumers take jobs from the other end in batches and run them on
+ * a pool of workers.
+ *
+ * One dispatcher thread fetches up to {@code batchSize} jobs per round trip, with LMPOP ... COUNT, and waits with
+ * BLMPOP when the queue is empty instead of polling. Jobs are handed to the worker {@link Executor}; at most
+ * {@code maxInFlight} of them are fetched and not yet finished, so the dispatcher stops fetching when the workers
+ * fall behind, and fetches again once a batch worth of slots is free while the workers still have the previous
+ * batch to work on. Whatever the number of workers, a queue uses two connections: one for the fetches, which may
+ * block, and one shared by all workers for acks.
+ *
+ * With {@link Builder#reliable(boolean)} jobs are moved with LMOVE (pipelined, BLMOVE when idle) to a processing
+ * list instead of being popped. A finished job is removed from it (LREM), a failed one is pushed back to the queue
+ * first; jobs of a consumer that died stay in the processing list until {@link #recover()} moves them back. Without
+ * it a failed job is pushed back as well, but a job is lost if the consumer dies while running it.
+ * <pre>
+ * try (WorkQueue queue = WorkQueue.builder(client, "jobs").workers(64).reliable(true).build()) {
+ *     queue.start(job -&gt; process(job));
+ *     ...
+ * }
+ * </pre>
+ * The workers default to a fixed pool of {@code workers} threads; on a JDK with virtual threads pass
+ * {@code Executors.newVirtualThreadPerTaskExecutor()} and a large {@code maxInFlight}
+ * instead. LMPOP and BLMPOP need redis 7.0, the reliable mode redis 6.2. Failed jobs are retried until they
+ * succeed, a job that always fails has to be dropped by its handler.
+ */
+public class WorkQueue implements AutoCloseable {
+
+    private static final ProtocolKeyword LMPOP = keyword("LMPOP");
+
+    private static final ProtocolKeyword BLMPOP = keyword("BLMPOP");
+
+    private final String key;
+
+    private final String processingKey;
+
+    private final StatefulConnection<String, String> fetchConnection;
+
+    private final RedisClusterAsyncCommands<String, String> fetch;
+
+    private final StatefulConnection<String, String> ackConnection;
+
+    private final RedisClusterAsyncCommands<String, String> acks;
+
+    private final int batchSize;
+
+    private final int maxInFlight;
+
+    private final int refill;
+
+    private final double blockTimeout;
+
+    private final Semaphore permits;
+
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutor;
+
+    private final LongAdder processed = new LongAdder();
+
+    private final LongAdder requeued = new LongAdder();
+
+    private final LongAdder fetchCommands = new LongAdder();
+
+    private volatile boolean running;
+
+    private Thread dispatcher;
+
+    private WorkQueue(Builder builder) {
+        this.key = builder.key;
+        this.processingKey = builder.reliable
+                ? builder.processingKey != null ? builder.processingKey : processingKey(builder.key) : null;
+        if (builder.clusterClient != null) {
+            StatefulRedisClusterConnection<String, String> fetchCluster = builder.clusterClient.connect();
+            StatefulRedisClusterConnection<String, String> ackCluster = builder.clusterClient.connect();
+            this.fetchConnection = fetchCluster;
+            this.fetch = fetchCluster.async();
+            this.ackConnection = ackCluster;
+            this.acks = ackCluster.async();
+        } else {
+            StatefulRedisConnection<String, String> fetchStandalone = builder.client.connect();
+            StatefulRedisConnection<String, String> ackStandalone = builder.client.connect();
+            this.fetchConnection = fetchStandalone;
+            this.fetch = fetchStandalone.async();
+            this.ackConnection = ackStandalone;
+            this.acks = ackStandalone.async();
+        }
+        fetchConnection.setAutoFlushCommands(false);
+        this.batchSize = builder.batchSize;
+        this.maxInFlight = builder.maxInFlight > 0 ? builder.maxInFlight : 2 * batchSize;
+        this.refill = Math.max(1, Math.min(batchSize, maxInFlight - batchSize));
+        this.blockTimeout = builder.blockTimeout.toMillis() / 1000.0;
+        this.permits = new Semaphore(maxInFlight);
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = Executors.newFixedThreadPool(builder.workers, workerThreads(key));
+            this.executor = ownedExecutor;
+        }
+    }
+
+    public static Builder builder(RedisClient client, String key) {
+        return new Builder(client, null, key);
+    }
+
+    public static Builder builder(RedisClusterClient client, String key) {
+        return new Builder(null, client, key);
+    }
+
+    /**
+     * Adds jobs to the queue, they are taken in the order given.
+     *
+     * @return the length of the queue.
+     */
+    public long push(String... jobs) {
+        return await(acks.lpush(key, jobs), ackConnection);
+    }
+
+    public long size() {
+        return await(acks.llen(key), ackConnection);
+    }
+
+    /**
+     * Starts fetching jobs and running them with {@code handler}. A job is done when the handler returns and failed
+     * when it throws.
+     */
+    public synchronized void start(JobHandler handler) {
+        if (dispatcher != null) {
+            throw new IllegalStateException("WorkQueue " + key + " is already started");
+        }
+        running = true;
+        dispatcher = new Thread(() -> dispatch(handler), "work-queue-" + key);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Moves the jobs left in the processing list by a consumer that stopped without finishing them back to the
+     * queue, where they are taken next. Only for the reliable mode, and only while no consumer shares the
+     * processing list.
+     *
+     * @return the number of jobs moved.
+     */
+    public int recover() {
+        if (processingKey == null) {
+            throw new IllegalStateException("recover needs a reliable WorkQueue");
+        }
+        int moved = 0;
+        // the newest job goes first, so the oldest one ends up at the tail of the queue.
+        while (await(acks.lmove(processingKey, key, LMoveArgs.Builder.leftRight()), ackConnection) != null) {
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * Stops fetching, waits for the jobs already fetched to finish and closes the connections.
+     */
+    @Override
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = dispatcher;
+        }
+        boolean interrupted = false;
+        if (stopping != null) {
+            try {
+                // wakes up after at most blockTimeout, jobs fetched by a last blocking call are still run.
+                stopping.join();
+                permits.acquire(maxInFlight);
+                permits.release(maxInFlight);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+        fetchConnection.close();
+        ackConnection.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the processing list of the reliable mode, {@code null} otherwise.
+     */
+    public String getProcessingKey() {
+        return processingKey;
+    }
+
+    /**
+     * Jobs finished by the handler.
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Jobs the handler failed on, pushed back to the queue.
+     */
+    public long getRequeued() {
+        return requeued.sum();
+    }
+
+    /**
+     * Commands sent to fetch jobs, blocking ones included.
+     */
+    public long getFetchCommands() {
+        return fetchCommands.sum();
+    }
+
+    /**
+     * Jobs fetched and not finished yet.
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    private void dispatch(JobHandler handler) {
+        while (running) {
+            try {
+                permits.acquire(refill);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) {
+                permits.release(refill);
+                return;
+            }
+            int wanted = refill;
+            while (wanted < batchSize && permits.tryAcquire()) {
+                wanted++;
+            }
+            List<String> jobs;
+            try {
+                jobs = fetch(wanted);
+            } catch (RedisException e) {
+                permits.release(wanted);
+                if (running) {
+                    pause();
+                }
+                continue;
+            }
+            permits.release(wanted - jobs.size());
+            for (String job : jobs) {
+                try {
+                    executor.execute(() -> run(handler, job));
+                } catch (RejectedExecutionException e) {
+                    requeue(job).whenComplete((result, error) -> permits.release());
+                }
+            }
+        }
+    }
+
+    private List<String> fetch(int count) {
+        if (processingKey == null) {
+            List<String> jobs = pop(LMPOP, count);
+            return jobs.isEmpty() && running ? pop(BLMPOP, count) : jobs;
+        }
+        List<RedisFuture<String>> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moves.add(fetch.lmove(key, processingKey, LMoveArgs.Builder.rightLeft()));
+        }
+        fetchConnection.flushCommands();
+        fetchCommands.add(count);
+        List<String> jobs = new ArrayList<>(count);
+        for (RedisFuture<String> move : moves) {
+            String job = await(move, fetchConnection);
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        if (jobs.isEmpty() && running) {
+            RedisFuture<String> move = fetch.blmove(key, processingKey, LMoveArgs.Builder.rightLeft(), blockTimeout);
+            fetchConnection.flushCommands();
+            fetchCommands.increment();
+            String job = await(move, fetchConnection);
+            return job == null ? Collections.emptyList() : Collections.singletonList(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * LMPOP 1 key RIGHT COUNT count, or BLMPOP with the block timeout: {@code [key, [jobs]]} or nil.
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> pop(ProtocolKeyword command, int count) {
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8);
+        if (command == BLMPOP) {
+            args.add(blockTimeout);
+        }
+        args.add(1).addKey(key).add("RIGHT").add("COUNT").add(count);
+        RedisFuture<List<Object>> reply = fetch.dispatch(command, new ArrayOutput<>(StringCodec.UTF8), args);
+        fetchConnection.flushCommands();
+        fetchCommands.increment();
+        List<Object> result = await(reply, fetchConnection);
+        if (result == null || result.size() < 2 || !(result.get(1) instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<String> jobs = new ArrayList<>();
+        for (Object job : (List<Object>) result.get(1)) {
+            jobs.add((String) job);
+        }
+        return jobs;
+    }
+
+    private void run(JobHandler handler, String job) {
+        CompletionStage<?> done;
+        try {
+            handler.handle(job);
+            processed.increment();
+            done = ack(job);
+        } catch (Exception e) {
+            requeued.increment();
+            done = requeue(job);
+        }
+        // the slot is free once redis knows the outcome, which bounds the unacknowledged jobs as well.
+        done.whenComplete((result, error) -> permits.release());
+    }
+
+    private CompletionStage<?> ack(String job) {
+        if (processingKey == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // the oldest jobs sit at the tail of the processing list, where LREM -1 starts.
+        return acks.lrem(processingKey, -1, job);
+    }
+
+    private CompletionStage<?> requeue(String job) {
+        RedisFuture<Long> push = acks.lpush(key, job);
+        if (processingKey == null) {
+            return push;
+        }
+        // pushed before it is removed: a crash in between duplicates the job rather than losing it.
+        return push.thenCompose(length -> acks.lrem(processingKey, -1, job));
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static <T> T await(RedisFuture<T> future, StatefulConnection<?, ?> connection) {
+        Duration timeout = connection.getTimeout();
+        return LettuceFutures.awaitOrCancel(future, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A key in the slot of {@code key}, so LMOVE between them works on a cluster.
+     */
+    private static String processingKey(String key) {
+        String candidate = key + ":processing";
+        return SlotHash.getSlot(candidate) == SlotHash.getSlot(key) ? candidate : "{" + key + "}:processing";
+    }
+
+    private static ThreadFactory workerThreads(String key) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "work-queue-" + key + "-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static ProtocolKeyword keyword(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        return new ProtocolKeyword() {
+
+            @Override
+            public byte[] getBytes() {
+                return bytes;
+            }
+
+            @Override
+            public String name() {
+                return name;
+            }
+        };
+    }
+
+    /**
+     * Runs one job.
+     */
+    @FunctionalInterface
+    public interface JobHandler {
+
+        void handle(String job) throws Exception;
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private final String key;
+
+        private int batchSize = 100;
+
+        private int workers = Runtime.getRuntime().availableProcessors() * 2;
+
+        private int maxInFlight;
+
+        private Duration blockTimeout = Duration.ofSeconds(1);
+
+        private boolean reliable;
+
+        private String processingKey;
+
+        private Executor executor;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient, String key) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+            this.key = key;
+        }
+
+        /**
+         * Most jobs taken per fetch, defaults to 100.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Threads of the default executor, defaults to twice the number of processors.
+         */
+        public Builder workers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Most jobs fetched and not finished at a time, defaults to twice the batch size.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * How long a BLMPOP/BLMOVE waits on an empty queue, and so how long {@link WorkQueue#close()} may wait
+         * for the dispatcher; defaults to 1 second. Must stay below the command timeout.
+         */
+        public Builder blockTimeout(Duration blockTimeout) {
+            this.blockTimeout = blockTimeout;
+            return this;
+        }
+
+        /**
+         * Keeps jobs in a processing list until they are finished, defaults to false.
+         */
+        public Builder reliable(boolean reliable) {
+            this.reliable = reliable;
+            return this;
+        }
+
+        /**
+         * Processing list of the reliable mode, defaults to {@code <key>:processing} in the slot of the queue.
+         */
+        public Builder processingKey(String processingKey) {
+            this.processingKey = processingKey;
+            return this;
+        }
+
+        /**
+         * Runs the jobs, defaults to a fixed pool of {@code workers} threads shut down by close.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public WorkQueue build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A RedisClient or RedisClusterClient is required");
+            }
+            if (key == null) {
+                throw new IllegalArgumentException("A queue key is required");
+            }
+            if (batchSize < 1 || workers < 1 || maxInFlight < 0) {
+                throw new IllegalArgumentException("batchSize and workers must be positive, maxInFlight must not "
+                        + "be negative");
+            }
+            if (blockTimeout.toMillis() < 1) {
+                throw new IllegalArgumentException("blockTimeout must be at least 1 ms, 0 would block forever");
+            }
+            if (processingKey != null && SlotHash.getSlot(processingKey) != SlotHash.getSlot(key)) {
+                throw new IllegalArgumentException("processingKey must hash to the slot of " + key);
+            }
+            return new WorkQueue(this);
+        }
+    }
+}
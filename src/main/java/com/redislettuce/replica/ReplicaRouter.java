@@ -0,0 +1,658 @@
+package com.redislettuce.replica;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read commands of a master/replica setup to the replica that answers fastest, writes to the master.
+ *
+ * Each read goes to the cheaper of two replicas picked at random, the cost being a peak-EWMA of the replica's
+ * round trip times multiplied by the commands it has in flight. The EWMA jumps up to a slow reply right away and
+ * decays over the time given by {@link Builder#decay(Duration)}, so a replica that slows down is avoided at once
+ * and is tried again a little later. A background poll reads {@code INFO replication} from every node; a replica
+ * that is behind the master by more than {@link Builder#maxLag(long)} bytes of replication stream, has lost its
+ * link or does not answer gets no reads until it caught up, and when no replica is left reads go to the master.
+ *
+ * {@link #async()} reads whatever the chosen replica has. {@link #session()} gives read-your-writes: its reads go
+ * to the master while one of its writes is in flight. Once it completed, the first poll started after it gives the
+ * master's offset the write is known to be under, and reads go only to replicas a poll found at or past that
+ * offset; so a session reads from the master for about a poll interval plus the replication delay after each write,
+ * even while other clients keep writing. Commands that change no data (PING, INFO, SCAN, ...) do not count as
+ * writes. Commands inside MULTI/EXEC always go to the master.
+ * <pre>
+ * ReplicaRouter router = ReplicaRouter.builder(client, RedisURI.create("redis://localhost:7001"))
+ *         .replicas(RedisURI.create("redis://localhost:8001")).build();
+ * router.async().get("phone").thenAccept(...);
+ * System.out.println(router.stats());
+ * </pre>
+ * Lettuce's own {@code ReadFrom} picks among the replicas once per topology refresh, which is why routing by
+ * measured latency needs explicit nodes; with a cluster, use one router per master and its replicas.
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+    private static final Set<String> READ_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "get", "mget", "getrange", "strlen", "exists", "type", "ttl", "pttl",
+            "hget", "hmget", "hgetall", "hkeys", "hvals", "hlen", "hexists", "hstrlen",
+            "lrange", "lindex", "llen",
+            "smembers", "sismember", "smismember", "scard", "srandmember", "sinter", "sunion", "sdiff",
+            "zrange", "zrangeWithScores", "zrevrange", "zrevrangeWithScores", "zrangebyscore",
+            "zrangebyscoreWithScores", "zrevrangebyscore", "zrevrangebyscoreWithScores", "zscore", "zmscore",
+            "zrank", "zrevrank", "zcard", "zcount")));
+
+    // sent to the master, but change no data a session would have to wait for on the replicas.
+    private static final Set<String> NON_WRITES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "ping", "echo", "info", "time", "dbsize", "lastsave", "clientGetname", "clientId", "clientList",
+            "configGet", "commandCount", "commandInfo", "slowlogGet", "slowlogLen", "memoryUsage", "objectEncoding",
+            "objectFreq", "objectIdletime", "keys", "scan", "sscan", "hscan", "zscan", "randomkey", "getbit",
+            "bitcount", "bitpos", "lpos", "hrandfield", "hrandfieldWithvalues", "zrandmember",
+            "zrandmemberWithScores", "zrangebylex", "zrevrangebylex", "zlexcount", "xlen", "xrange", "xrevrange",
+            "geopos", "geodist", "geohash", "dump")));
+
+    // polls whose master offset is kept for sessions that have not read since their last write.
+    private static final int MASTER_OFFSETS = 64;
+
+    // commands that apply to every connection rather than to the one a command goes to.
+    private static final Set<String> ALL_NODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "setAutoFlushCommands", "flushCommands", "setTimeout")));
+
+    // cost of a node that has commands in flight but no measured round trip yet.
+    private static final double UNMEASURED_PENALTY_NANOS = 1e9;
+
+    private final Node master;
+
+    private final Node[] replicas;
+
+    private final long maxLag;
+
+    private final long pollNanos;
+
+    private final double decayNanos;
+
+    private final LongAdder masterReads = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    // the master's offsets read by the last MASTER_OFFSETS polls, oldest first.
+    private final Deque<MasterOffset> masterOffsets = new ArrayDeque<>();
+
+    private final ScheduledFuture<?> scheduledPoll;
+
+    private ReplicaRouter(Builder builder) {
+        this.maxLag = builder.maxLag;
+        this.pollNanos = builder.pollInterval.toNanos();
+        this.decayNanos = builder.decay.toNanos();
+        List<Node> connected = new ArrayList<>();
+        try {
+            connected.add(new Node(builder.client.connect(builder.master), builder.master));
+            for (RedisURI uri : builder.replicas) {
+                connected.add(new Node(builder.client.connect(uri), uri));
+            }
+        } catch (RuntimeException e) {
+            for (Node node : connected) {
+                node.connection.close();
+            }
+            throw e;
+        }
+        this.master = connected.get(0);
+        this.replicas = connected.subList(1, connected.size()).toArray(new Node[0]);
+        try {
+            poll().get(Math.max(pollNanos, master.connection.getTimeout().toNanos()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // replicas stay without reads until a later poll reaches them.
+        }
+        ScheduledExecutorService scheduler = master.connection.getResources().eventExecutorGroup();
+        this.scheduledPoll = scheduler.scheduleWithFixedDelay(this::poll, pollNanos, pollNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder(RedisClient client, RedisURI master) {
+        return new Builder(client, master);
+    }
+
+    /**
+     * Async commands whose reads go to the best replica, with no ordering against this caller's writes.
+     */
+    public RedisAsyncCommands<String, String> async() {
+        return proxy(null);
+    }
+
+    /**
+     * Async commands that read their own writes, see the class comment. Each call starts a new session.
+     */
+    public RedisAsyncCommands<String, String> session() {
+        return proxy(new Session());
+    }
+
+    public StatefulRedisConnection<String, String> getMasterConnection() {
+        return master.connection;
+    }
+
+    public Stats stats() {
+        List<NodeStats> nodes = new ArrayList<>(replicas.length);
+        for (Node replica : replicas) {
+            nodes.add(new NodeStats(replica.uri, replica.reads.sum(), replica.cost(System.nanoTime(), 0) / 1000,
+                    replica.inFlight.get(), replica.lag, replica.eligible));
+        }
+        return new Stats(masterReads.sum(), fallbacks.sum(), nodes);
+    }
+
+    @Override
+    public void close() {
+        scheduledPoll.cancel(false);
+        master.connection.close();
+        for (Node replica : replicas) {
+            replica.connection.close();
+        }
+    }
+
+    /**
+     * Reads the replication offsets, keeping the master's offset with the time the poll started: every write
+     * completed before then is in the stream up to that offset, so a replica found at or past it has the write.
+     */
+    private CompletableFuture<Void> poll() {
+        long started = System.nanoTime();
+        CompletableFuture<Long> masterOffset = master.info().thenApply(info -> {
+            long offset = field(info, "master_repl_offset");
+            if (offset < 0) {
+                throw new IllegalStateException(master.uri + " did not report its replication offset");
+            }
+            synchronized (masterOffsets) {
+                masterOffsets.addLast(new MasterOffset(offset, started));
+                if (masterOffsets.size() > MASTER_OFFSETS) {
+                    masterOffsets.removeFirst();
+                }
+            }
+            return offset;
+        });
+        List<CompletableFuture<Void>> polls = new ArrayList<>(replicas.length);
+        for (Node replica : replicas) {
+            if (!replica.polling.compareAndSet(false, true)) {
+                // still waiting for the previous poll.
+                replica.eligible = false;
+                continue;
+            }
+            polls.add(replica.info().thenCombine(masterOffset, (info, offset) -> {
+                long applied = field(info, "slave_repl_offset");
+                boolean linked = info.contains("master_link_status:up") && applied >= 0;
+                replica.lag = linked ? Math.max(0, offset - applied) : -1;
+                replica.applied = linked ? applied : -1;
+                replica.eligible = linked && replica.lag <= maxLag;
+                return (Void) null;
+            }).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    replica.eligible = false;
+                }
+                replica.polling.set(false);
+            }));
+        }
+        return CompletableFuture.allOf(polls.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private Node choose(Session session) {
+        if (session != null && session.pendingWrites.get() > 0) {
+            masterReads.increment();
+            return master;
+        }
+        // offset a replica needs to have applied, unknown (-1) until a poll after the session's last write.
+        long required = session == null ? 0 : session.required(this);
+        Node first = null;
+        Node second = null;
+        int candidates = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // reservoir sampling of two distinct eligible replicas.
+        for (Node replica : replicas) {
+            if (!replica.eligible || required < 0 || replica.applied < required) {
+                continue;
+            }
+            candidates++;
+            if (candidates == 1) {
+                first = replica;
+            } else if (candidates == 2) {
+                second = replica;
+            } else {
+                int slot = random.nextInt(candidates);
+                if (slot == 0) {
+                    first = replica;
+                } else if (slot == 1) {
+                    second = replica;
+                }
+            }
+        }
+        if (first == null) {
+            masterReads.increment();
+            if (replicas.length > 0) {
+                fallbacks.increment();
+            }
+            return master;
+        }
+        Node chosen = first;
+        if (second != null) {
+            long now = System.nanoTime();
+            if (second.cost(now, second.inFlight.get()) < first.cost(now, first.inFlight.get())) {
+                chosen = second;
+            }
+        }
+        chosen.reads.increment();
+        return chosen;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisAsyncCommands<String, String> proxy(Session session) {
+        Object async = master.async;
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        interfaces.add(RedisAsyncCommands.class);
+        for (Class<?> c = async.getClass(); c != null; c = c.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        return (RedisAsyncCommands<String, String>) Proxy.newProxyInstance(RedisAsyncCommands.class.getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), new Routing(session));
+    }
+
+    /**
+     * @return the master's offset read by the first poll started after the given time, or by the oldest poll kept
+     *         if it started after that too, -1 if no poll started after it yet.
+     */
+    private long masterOffsetAfter(long time) {
+        synchronized (masterOffsets) {
+            for (MasterOffset polled : masterOffsets) {
+                if (polled.polledAt - time > 0) {
+                    return polled.offset;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static long field(String info, String name) {
+        int start = info.indexOf(name + ":");
+        if (start < 0) {
+            return -1;
+        }
+        start += name.length() + 1;
+        int end = start;
+        while (end < info.length() && Character.isDigit(info.charAt(end))) {
+            end++;
+        }
+        return end == start ? -1 : Long.parseLong(info.substring(start, end));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class Routing implements InvocationHandler {
+
+        private final Session session;
+
+        private volatile boolean transaction;
+
+        Routing(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (ALL_NODES.contains(name)) {
+                for (Node replica : replicas) {
+                    ReplicaRouter.invoke(method, replica.async, args);
+                }
+                return ReplicaRouter.invoke(method, master.async, args);
+            }
+            if (name.equals("multi")) {
+                transaction = true;
+            } else if (name.equals("exec") || name.equals("discard")) {
+                transaction = false;
+            }
+            if (!transaction && READ_COMMANDS.contains(name) && method.getReturnType() == RedisFuture.class) {
+                return read(method, args);
+            }
+            if (session == null || method.getReturnType() != RedisFuture.class || READ_COMMANDS.contains(name)
+                    || NON_WRITES.contains(name)) {
+                return ReplicaRouter.invoke(method, master.async, args);
+            }
+            session.pendingWrites.incrementAndGet();
+            RedisFuture<?> future;
+            try {
+                future = (RedisFuture<?>) ReplicaRouter.invoke(method, master.async, args);
+            } catch (Throwable e) {
+                session.pendingWrites.decrementAndGet();
+                throw e;
+            }
+            future.whenComplete((result, error) -> session.written(System.nanoTime()));
+            return future;
+        }
+
+        private Object read(Method method, Object[] args) throws Throwable {
+            Node node = choose(session);
+            if (node == master) {
+                return ReplicaRouter.invoke(method, master.async, args);
+            }
+            long sent = System.nanoTime();
+            node.inFlight.incrementAndGet();
+            RedisFuture<?> future;
+            try {
+                future = (RedisFuture<?>) ReplicaRouter.invoke(method, node.async, args);
+            } catch (Throwable e) {
+                node.inFlight.decrementAndGet();
+                throw e;
+            }
+            future.whenComplete((result, error) -> {
+                node.inFlight.decrementAndGet();
+                node.observe(System.nanoTime(), sent);
+            });
+            return future;
+        }
+    }
+
+    private final class Node {
+
+        final RedisURI uri;
+
+        final StatefulRedisConnection<String, String> connection;
+
+        final RedisAsyncCommands<String, String> async;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final LongAdder reads = new LongAdder();
+
+        final AtomicBoolean polling = new AtomicBoolean();
+
+        volatile boolean eligible;
+
+        volatile long lag = -1;
+
+        // replication offset applied as of the last poll, -1 if unknown or the link was down.
+        volatile long applied = -1;
+
+        // peak-EWMA of the round trip in nanoseconds, as of stamp.
+        private double ewma;
+
+        private long stamp = System.nanoTime();
+
+        Node(StatefulRedisConnection<String, String> connection, RedisURI uri) {
+            this.connection = connection;
+            this.async = connection.async();
+            this.uri = uri;
+        }
+
+        CompletableFuture<String> info() {
+            long sent = System.nanoTime();
+            return async.info("replication").toCompletableFuture()
+                    .whenComplete((info, error) -> observe(System.nanoTime(), sent));
+        }
+
+        synchronized void observe(long now, long sent) {
+            double rtt = Math.max(0, now - sent);
+            double decayed = decayed(now);
+            ewma = rtt > decayed ? rtt : decayed + (rtt - decayed) * (1 - weight(now));
+            stamp = Math.max(stamp, now);
+        }
+
+        synchronized double cost(long now, int pending) {
+            double latency = decayed(now);
+            if (latency == 0 && pending > 0) {
+                return UNMEASURED_PENALTY_NANOS + pending;
+            }
+            return latency * (pending + 1);
+        }
+
+        // the EWMA moves toward zero while no replies come in, so an idle slow node gets another chance.
+        private double decayed(long now) {
+            return ewma * weight(now);
+        }
+
+        private double weight(long now) {
+            return Math.exp(-Math.max(0, now - stamp) / decayNanos);
+        }
+    }
+
+    private static final class MasterOffset {
+
+        final long offset;
+
+        // System.nanoTime() when the poll that read it started.
+        final long polledAt;
+
+        MasterOffset(long offset, long polledAt) {
+            this.offset = offset;
+            this.polledAt = polledAt;
+        }
+    }
+
+    private static final class Session {
+
+        final AtomicInteger pendingWrites = new AtomicInteger();
+
+        private boolean written;
+
+        // completion time of the last write.
+        private long writtenAt;
+
+        // master offset covering the last write, -1 until a poll started after it.
+        private long required = -1;
+
+        synchronized void written(long now) {
+            if (!written || now - writtenAt > 0) {
+                writtenAt = now;
+            }
+            written = true;
+            required = -1;
+            pendingWrites.decrementAndGet();
+        }
+
+        /**
+         * @return the offset a replica must have applied to show this session's writes, -1 if not known yet.
+         */
+        synchronized long required(ReplicaRouter router) {
+            if (!written) {
+                return 0;
+            }
+            if (required < 0) {
+                required = router.masterOffsetAfter(writtenAt);
+            }
+            return required;
+        }
+    }
+
+    /**
+     * Point-in-time counters: reads served by the master, among them {@code fallbacks} because no replica was
+     * eligible, and the state of every replica.
+     */
+    public static class Stats {
+
+        private final long masterReads;
+
+        private final long fallbacks;
+
+        private final List<NodeStats> replicas;
+
+        Stats(long masterReads, long fallbacks, List<NodeStats> replicas) {
+            this.masterReads = masterReads;
+            this.fallbacks = fallbacks;
+            this.replicas = Collections.unmodifiableList(replicas);
+        }
+
+        public long getMasterReads() {
+            return masterReads;
+        }
+
+        public long getFallbacks() {
+            return fallbacks;
+        }
+
+        public List<NodeStats> getReplicas() {
+            return replicas;
+        }
+
+        @Override
+        public String toString() {
+            return "ReplicaRouterStats{masterReads=" + masterReads + ", fallbacks=" + fallbacks + ", replicas="
+                    + replicas + "}";
+        }
+    }
+
+    public static class NodeStats {
+
+        private final RedisURI uri;
+
+        private final long reads;
+
+        private final double latencyMicros;
+
+        private final int inFlight;
+
+        private final long lag;
+
+        private final boolean eligible;
+
+        NodeStats(RedisURI uri, long reads, double latencyMicros, int inFlight, long lag, boolean eligible) {
+            this.uri = uri;
+            this.reads = reads;
+            this.latencyMicros = latencyMicros;
+            this.inFlight = inFlight;
+            this.lag = lag;
+            this.eligible = eligible;
+        }
+
+        public RedisURI getUri() {
+            return uri;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        /**
+         * The decayed peak-EWMA of the round trip.
+         */
+        public double getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Bytes of replication stream the replica was behind at the last poll, -1 if its link was down.
+         */
+        public long getLag() {
+            return lag;
+        }
+
+        public boolean isEligible() {
+            return eligible;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + uri.getHost() + ":" + uri.getPort() + " reads=" + reads + ", latency="
+                    + String.format("%.0f", latencyMicros) + "us, inFlight=" + inFlight + ", lag=" + lag
+                    + ", eligible=" + eligible + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisURI master;
+
+        private final List<RedisURI> replicas = new ArrayList<>();
+
+        private long maxLag = 1024 * 1024;
+
+        private Duration pollInterval = Duration.ofMillis(100);
+
+        private Duration decay = Duration.ofSeconds(1);
+
+        private Builder(RedisClient client, RedisURI master) {
+            this.client = client;
+            this.master = master;
+        }
+
+        public Builder replicas(RedisURI... replicas) {
+            this.replicas.addAll(Arrays.asList(replicas));
+            return this;
+        }
+
+        /**
+         * Bytes of replication stream a replica may be behind the master and still get reads, defaults to 1 MiB.
+         */
+        public Builder maxLag(long maxLag) {
+            this.maxLag = maxLag;
+            return this;
+        }
+
+        /**
+         * How often the replication offsets are read, defaults to 100 ms.
+         */
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * Time constant of the latency EWMA, defaults to 1 second.
+         */
+        public Builder decay(Duration decay) {
+            this.decay = decay;
+            return this;
+        }
+
+        public ReplicaRouter build() {
+            if (client == null || master == null) {
+                throw new IllegalArgumentException("client and master must not be null");
+            }
+            if (replicas.contains(null)) {
+                throw new IllegalArgumentException("replicas must not be null");
+            }
+            if (maxLag < 0) {
+                throw new IllegalArgumentException("maxLag must not be negative");
+            }
+            if (pollInterval == null || pollInterval.isNegative() || pollInterval.isZero()) {
+                throw new IllegalArgumentException("pollInterval must be positive");
+            }
+            if (decay == null || decay.isNegative() || decay.isZero()) {
+                throw new IllegalArgumentException("decay must be positive");
+            }
+            return new ReplicaRouter(this);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.redislettuce.scan;
+
+import io.lettuce.core.KeyScanArgs;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanIterator;
+import io.lettuce.core.ScanStream;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates keys, hash fields, set members and sorted set entries with SCAN, HSCAN, SSCAN and ZSCAN instead of
+ * KEYS, HGETALL, SMEMBERS or ZRANGE 0 -1.
+ *
+ * Every result is available as a lazy {@link Stream} and as a {@link Flux}. The next page is only requested once
+ * the consumer has taken the previous one, so at most one page per node (about COUNT elements) is held in memory
+ * however large the keyspace is, and redis is never blocked by one huge reply.
+ *
+ * On a cluster, {@link #keys} and {@link #keysFlux} scan all masters in parallel, each on its own cursor; the
+ * element scans are routed to the node owning the key. MATCH, COUNT and (for keys, redis 6.0+) TYPE are passed
+ * through {@link ScanArgs} and {@link KeyScanArgs}. Like SCAN itself, a key added or removed during the iteration
+ * may or may not be returned, and a key may be returned more than once if the keyspace is rehashed meanwhile.
+ * <pre>
+ * KeyScanner&lt;String, String&gt; scanner = KeyScanner.of(connection);
+ * try (Stream&lt;String&gt; keys = scanner.keys(KeyScanArgs.Builder.matches("user:*").limit(500).type("hash"))) {
+ *     keys.forEach(this::migrate);
+ * }
+ * </pre>
+ * Streams of a cluster scan are backed by a running {@link Flux} and should be closed when not consumed to the end.
+ */
+public class KeyScanner<K, V> {
+
+    private static final int PREFETCH = 256;
+
+    private final StatefulRedisConnection<K, V> connection;
+
+    private final StatefulRedisClusterConnection<K, V> clusterConnection;
+
+    private KeyScanner(StatefulRedisConnection<K, V> connection, StatefulRedisClusterConnection<K, V> clusterConnection) {
+        this.connection = connection;
+        this.clusterConnection = clusterConnection;
+    }
+
+    public static <K, V> KeyScanner<K, V> of(StatefulRedisConnection<K, V> connection) {
+        return new KeyScanner<>(connection, null);
+    }
+
+    public static <K, V> KeyScanner<K, V> of(StatefulRedisClusterConnection<K, V> connection) {
+        return new KeyScanner<>(null, connection);
+    }
+
+    public Stream<K> keys() {
+        return keys(new ScanArgs());
+    }
+
+    public Stream<K> keys(ScanArgs args) {
+        if (connection != null) {
+            return stream(ScanIterator.scan(connection.sync(), args));
+        }
+        return keysFlux(args).toStream(PREFETCH);
+    }
+
+    public Flux<K> keysFlux() {
+        return keysFlux(new ScanArgs());
+    }
+
+    public Flux<K> keysFlux(ScanArgs args) {
+        if (connection != null) {
+            return ScanStream.scan(connection.reactive(), args);
+        }
+        List<RedisClusterNode> masters = masters();
+        if (masters.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.fromIterable(masters)
+                .flatMap(node -> Mono.fromCompletionStage(clusterConnection.getConnectionAsync(node.getNodeId()))
+                        .flatMapMany(nodeConnection -> ScanStream.scan(nodeConnection.reactive(), args)),
+                        masters.size(), PREFETCH);
+    }
+
+    public Stream<KeyValue<K, V>> hscan(K key) {
+        return hscan(key, new ScanArgs());
+    }
+
+    public Stream<KeyValue<K, V>> hscan(K key, ScanArgs args) {
+        if (connection != null) {
+            return stream(ScanIterator.hscan(connection.sync(), key, args));
+        }
+        return stream(ScanIterator.hscan(clusterConnection.sync(), key, args));
+    }
+
+    public Flux<KeyValue<K, V>> hscanFlux(K key, ScanArgs args) {
+        if (connection != null) {
+            return ScanStream.hscan(connection.reactive(), key, args);
+        }
+        return ScanStream.hscan(clusterConnection.reactive(), key, args);
+    }
+
+    public Stream<V> sscan(K key) {
+        return sscan(key, new ScanArgs());
+    }
+
+    public Stream<V> sscan(K key, ScanArgs args) {
+        if (connection != null) {
+            return stream(ScanIterator.sscan(connection.sync(), key, args));
+        }
+        return stream(ScanIterator.sscan(clusterConnection.sync(), key, args));
+    }
+
+    public Flux<V> sscanFlux(K key, ScanArgs args) {
+        if (connection != null) {
+            return ScanStream.sscan(connection.reactive(), key, args);
+        }
+        return ScanStream.sscan(clusterConnection.reactive(), key, args);
+    }
+
+    public Stream<ScoredValue<V>> zscan(K key) {
+        return zscan(key, new ScanArgs());
+    }
+
+    public Stream<ScoredValue<V>> zscan(K key, ScanArgs args) {
+        if (connection != null) {
+            return stream(ScanIterator.zscan(connection.sync(), key, args));
+        }
+        return stream(ScanIterator.zscan(clusterConnection.sync(), key, args));
+    }
+
+    public Flux<ScoredValue<V>> zscanFlux(K key, ScanArgs args) {
+        if (connection != null) {
+            return ScanStream.zscan(connection.reactive(), key, args);
+        }
+        return ScanStream.zscan(clusterConnection.reactive(), key, args);
+    }
+
+    /**
+     * {@link ScanIterator#stream()} reports a known size of 0, which lets {@code count()} skip the scan entirely.
+     */
+    private static <T> Stream<T> stream(ScanIterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    private List<RedisClusterNode> masters() {
+        List<RedisClusterNode> masters = new ArrayList<>();
+        for (RedisClusterNode node : clusterConnection.getPartitions()) {
+            if (node.getRole().isUpstream() && !node.getSlots().isEmpty()) {
+                masters.add(node);
+            }
+        }
+        return masters;
+    }
+}
@@ -0,0 +1,72 @@
+package com.redislettuce.script;
+
+import io.lettuce.core.ScriptOutputType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A Lua script with the type of its reply and its SHA1 digest, the name redis caches it under.
+ */
+public final class Script {
+
+    private final String name;
+
+    private final ScriptOutputType outputType;
+
+    private final String source;
+
+    private final String sha;
+
+    private Script(String name, ScriptOutputType outputType, String source) {
+        this.name = name;
+        this.outputType = outputType;
+        this.source = source;
+        this.sha = sha1(source);
+    }
+
+    public static Script of(String name, ScriptOutputType outputType, String source) {
+        if (name == null || outputType == null || source == null) {
+            throw new IllegalArgumentException("name, outputType and source are required");
+        }
+        return new Script(name, outputType, source);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ScriptOutputType getOutputType() {
+        return outputType;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Lowercase hex SHA1 of the source, as returned by SCRIPT LOAD.
+     */
+    public String getSha() {
+        return sha;
+    }
+
+    @Override
+    public String toString() {
+        return "Script{name=" + name + ", sha=" + sha + "}";
+    }
+
+    private static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.redislettuce.script;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compound operations that would otherwise take several round trips (and race between them), each done in one
+ * round trip by a Lua script.
+ *
+ * All scripts of the library, built-in and added through {@link Builder#script(Script)}, are loaded with SCRIPT
+ * LOAD on the standalone server or on every node of the cluster when the library is built, and then called by
+ * EVALSHA. If a node answers NOSCRIPT (restarted, failed over, SCRIPT FLUSH) the call is repeated once with EVAL,
+ * which caches the script on that node again.
+ * <pre>
+ * try (ScriptLibrary scripts = ScriptLibrary.builder(client).build()) {
+ *     long hits = scripts.incrementWithTtl("rate:" + user, 1, Duration.ofMinutes(1));
+ *     List&lt;String&gt; batch = scripts.moveItems("queue", "queue:processing", 100);
+ * }
+ * </pre>
+ * On a cluster all keys of one call have to hash to the same slot, e.g. {@code {queue}} and
+ * {@code {queue}:processing}.
+ */
+public class ScriptLibrary implements AutoCloseable {
+
+    /**
+     * KEYS[1] counter, ARGV[1] delta, ARGV[2] ttl in ms; the ttl is only set when the counter has none, so a window
+     * starts with its first increment.
+     */
+    public static final Script INCREMENT_WITH_TTL = Script.of("incrementWithTtl", ScriptOutputType.INTEGER,
+            "local value = redis.call('INCRBY', KEYS[1], ARGV[1])\n"
+                    + "if redis.call('PTTL', KEYS[1]) < 0 then\n"
+                    + "    redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+                    + "end\n"
+                    + "return value\n");
+
+    /**
+     * KEYS[1] source list, KEYS[2] destination list, ARGV[1] count; moves up to count items from the head of the
+     * source to the tail of the destination and returns them.
+     */
+    public static final Script MOVE_ITEMS = Script.of("moveItems", ScriptOutputType.MULTI,
+            "local items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n"
+                    + "if #items > 0 then\n"
+                    + "    redis.call('LTRIM', KEYS[1], #items, -1)\n"
+                    + "    local unpack = unpack or table.unpack\n"
+                    + "    for i = 1, #items, 1000 do\n"
+                    + "        redis.call('RPUSH', KEYS[2], unpack(items, i, math.min(i + 999, #items)))\n"
+                    + "    end\n"
+                    + "end\n"
+                    + "return items\n");
+
+    /**
+     * KEYS[1], ARGV[1] expected value, ARGV[2] new value; returns 1 if the value was replaced.
+     */
+    public static final Script COMPARE_AND_SET = Script.of("compareAndSet", ScriptOutputType.INTEGER,
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+                    + "    redis.call('SET', KEYS[1], ARGV[2], 'KEEPTTL')\n"
+                    + "    return 1\n"
+                    + "end\n"
+                    + "return 0\n");
+
+    /**
+     * KEYS[1], ARGV[1] expected value; returns 1 if the key was deleted. Releases a lock only its owner holds.
+     */
+    public static final Script COMPARE_AND_DELETE = Script.of("compareAndDelete", ScriptOutputType.INTEGER,
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+                    + "    return redis.call('DEL', KEYS[1])\n"
+                    + "end\n"
+                    + "return 0\n");
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private final StatefulConnection<String, String> connection;
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+
+    private final Map<String, Script> scripts;
+
+    private ScriptLibrary(Builder builder) {
+        this.scripts = Collections.unmodifiableMap(new LinkedHashMap<>(builder.scripts));
+        if (builder.clusterClient != null) {
+            StatefulRedisClusterConnection<String, String> cluster = builder.clusterClient.connect(StringCodec.UTF8);
+            this.connection = cluster;
+            this.commands = cluster.async();
+        } else {
+            StatefulRedisConnection<String, String> standalone = builder.client.connect(StringCodec.UTF8);
+            this.connection = standalone;
+            this.commands = standalone.async();
+        }
+        try {
+            await(preload());
+        } catch (RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    /**
+     * SET NX PX: already a single atomic command, so no script is needed for SETNX followed by EXPIRE.
+     *
+     * @return whether the key was set.
+     */
+    public boolean setIfAbsent(String key, String value, Duration ttl) {
+        return "OK".equals(await(commands.set(key, value, SetArgs.Builder.nx().px(ttl.toMillis()))));
+    }
+
+    /**
+     * INCRBY that also sets a TTL when the counter has none yet.
+     *
+     * @return the value after the increment.
+     */
+    public long incrementWithTtl(String key, long delta, Duration ttl) {
+        Long value = execute(INCREMENT_WITH_TTL, new String[] { key }, Long.toString(delta),
+                Long.toString(ttl.toMillis()));
+        return value;
+    }
+
+    /**
+     * Moves up to {@code count} items from the head of {@code source} to the tail of {@code destination}.
+     *
+     * @return the moved items, in order.
+     */
+    public List<String> moveItems(String source, String destination, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be positive, got " + count);
+        }
+        List<String> items = execute(MOVE_ITEMS, new String[] { source, destination }, Integer.toString(count));
+        return items;
+    }
+
+    /**
+     * Replaces the value of {@code key} only if it currently is {@code expected}, keeping its TTL.
+     */
+    public boolean compareAndSet(String key, String expected, String value) {
+        Long replaced = execute(COMPARE_AND_SET, new String[] { key }, expected, value);
+        return replaced == 1;
+    }
+
+    /**
+     * Deletes {@code key} only if its value is {@code expected}.
+     */
+    public boolean compareAndDelete(String key, String expected) {
+        Long deleted = execute(COMPARE_AND_DELETE, new String[] { key }, expected);
+        return deleted == 1;
+    }
+
+    public <T> T execute(Script script, String[] keys, String... args) {
+        return await(executeAsync(script, keys, args));
+    }
+
+    /**
+     * EVALSHA, falling back to EVAL once if the node does not know the script.
+     */
+    public <T> CompletableFuture<T> executeAsync(Script script, String[] keys, String... args) {
+        String[] scriptKeys = keys == null ? NO_KEYS : keys;
+        CompletableFuture<T> result = new CompletableFuture<>();
+        commands.<T>evalsha(script.getSha(), script.getOutputType(), scriptKeys, args).whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (unwrap(error) instanceof RedisNoScriptException) {
+                commands.<T>eval(script.getSource(), script.getOutputType(), scriptKeys, args)
+                        .whenComplete((retried, retryError) -> {
+                            if (retryError == null) {
+                                result.complete(retried);
+                            } else {
+                                result.completeExceptionally(unwrap(retryError));
+                            }
+                        });
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Script> getScripts() {
+        return scripts;
+    }
+
+    public StatefulConnection<String, String> getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private CompletableFuture<Void> preload() {
+        List<CompletableFuture<?>> loads = new ArrayList<>();
+        if (connection instanceof StatefulRedisClusterConnection) {
+            StatefulRedisClusterConnection<String, String> cluster =
+                    (StatefulRedisClusterConnection<String, String>) connection;
+            for (RedisClusterNode node : cluster.getPartitions()) {
+                loads.add(cluster.getConnectionAsync(node.getNodeId())
+                        .thenCompose(nodeConnection -> loadAll(nodeConnection.async())).toCompletableFuture());
+            }
+        } else {
+            loads.add(loadAll(commands));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> loadAll(RedisClusterAsyncCommands<String, String> node) {
+        List<CompletableFuture<String>> loads = new ArrayList<>();
+        for (Script script : scripts.values()) {
+            loads.add(node.scriptLoad(script.getSource()).toCompletableFuture().thenApply(sha -> {
+                if (!script.getSha().equals(sha)) {
+                    throw new IllegalStateException("SCRIPT LOAD of " + script + " returned " + sha);
+                }
+                return sha;
+            }));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
+    }
+
+    private <T> T await(CompletionStage<T> stage) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return stage.toCompletableFuture().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            throw cause instanceof RedisException ? (RedisException) cause : new RedisException(cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private final Map<String, Script> scripts = new LinkedHashMap<>();
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+            for (Script script : Arrays.asList(INCREMENT_WITH_TTL, MOVE_ITEMS, COMPARE_AND_SET, COMPARE_AND_DELETE)) {
+                scripts.put(script.getName(), script);
+            }
+        }
+
+        /**
+         * Preload an application script, call it with {@link ScriptLibrary#execute(Script, String[], String...)}.
+         */
+        public Builder script(Script script) {
+            scripts.put(script.getName(), script);
+            return this;
+        }
+
+        public ScriptLibrary build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A RedisClient or RedisClusterClient is required");
+            }
+            return new ScriptLibrary(this);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.redislettuce.set;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.ValueScanCursor;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * SINTER, SUNION and SDIFF (and their STORE variants) for sets in different hash slots, streamed batch by batch.
+ *
+ * SINTER and friends need all keys in one slot and answer with the whole result in one reply. Here one set drives
+ * the operation and is read with SSCAN, {@code batchSize} members per page; every page is checked against the other
+ * sets with one SMISMEMBER per set, all sent at once, and the members that pass are handed to the caller before the
+ * next page is taken. The next SSCAN page is requested together with the checks of the current one.
+ * <ul>
+ * <li>{@link #intersect(String...)} drives with the smallest set (by SCARD) and keeps members found in every other
+ * set; an empty operand ends it right away.</li>
+ * <li>{@link #union(String...)} streams every set, the largest first, and keeps a member of a set only if none of
+ * the sets streamed before holds it.</li>
+ * <li>{@link #difference(String, String...)} drives with the first set and keeps members found in no other set.</li>
+ * </ul>
+ * The client holds two pages plus one SMISMEMBER reply per operand, whatever the size of the sets, and each command
+ * goes to the node owning its key. The {@code ...Store} variants write the result with SADD, one per page, into a
+ * temporary key in the destination's slot and RENAME it over the destination at the end, so the destination may
+ * also be an operand. SMISMEMBER needs redis 6.2 or newer.
+ * <pre>
+ * try (Stream&lt;String&gt; common = algebra.intersect("followers:1", "followers:2")) {
+ *     common.forEach(this::notify);
+ * }
+ * </pre>
+ * Like SSCAN itself, a member added or removed during the operation may or may not be counted, and a member may be
+ * returned twice if a set is rehashed meanwhile; the store variants are not affected by the latter.
+ */
+public class SetAlgebra implements AutoCloseable {
+
+    private final StatefulConnection<String, String> connection;
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+
+    private final int batchSize;
+
+    private SetAlgebra(Builder builder) {
+        if (builder.clusterClient != null) {
+            StatefulRedisClusterConnection<String, String> cluster = builder.clusterClient.connect(StringCodec.UTF8);
+            this.connection = cluster;
+            this.commands = cluster.async();
+        } else {
+            StatefulRedisConnection<String, String> standalone = builder.client.connect(StringCodec.UTF8);
+            this.connection = standalone;
+            this.commands = standalone.async();
+        }
+        this.batchSize = builder.batchSize;
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    public Stream<String> intersect(String... keys) {
+        return stream(intersection(keys));
+    }
+
+    public Stream<String> union(String... keys) {
+        return stream(unionOf(keys));
+    }
+
+    public Stream<String> difference(String key, String... others) {
+        return stream(new Probe(key, Arrays.asList(others), false));
+    }
+
+    /**
+     * @return the number of members stored in {@code destination}.
+     */
+    public long intersectStore(String destination, String... keys) {
+        return store(destination, intersection(keys));
+    }
+
+    public long unionStore(String destination, String... keys) {
+        return store(destination, unionOf(keys));
+    }
+
+    public long differenceStore(String destination, String key, String... others) {
+        return store(destination, new Probe(key, Arrays.asList(others), false));
+    }
+
+    public StatefulConnection<String, String> getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+
+    private Iterator<String> intersection(String... keys) {
+        List<Operand> operands = cardinalities(keys);
+        if (operands.isEmpty() || operands.get(0).cardinality == 0) {
+            return new Probe(null, new ArrayList<>(), true);
+        }
+        List<String> others = new ArrayList<>();
+        for (Operand operand : operands.subList(1, operands.size())) {
+            others.add(operand.key);
+        }
+        return new Probe(operands.get(0).key, others, true);
+    }
+
+    private Iterator<String> unionOf(String... keys) {
+        List<Operand> operands = cardinalities(keys);
+        List<Probe> probes = new ArrayList<>();
+        List<String> streamed = new ArrayList<>();
+        for (int i = operands.size() - 1; i >= 0; i--) {
+            Operand operand = operands.get(i);
+            if (operand.cardinality > 0) {
+                probes.add(new Probe(operand.key, new ArrayList<>(streamed), false));
+                streamed.add(operand.key);
+            }
+        }
+        Iterator<Probe> remaining = probes.iterator();
+        return new Iterator<String>() {
+
+            private Iterator<String> current = remaining.hasNext() ? remaining.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                while (current != null && !current.hasNext()) {
+                    current = remaining.hasNext() ? remaining.next() : null;
+                }
+                return current != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * SCARD of every key, all sent at once, in ascending order of cardinality.
+     */
+    private List<Operand> cardinalities(String... keys) {
+        List<RedisFuture<Long>> replies = new ArrayList<>();
+        for (String key : keys) {
+            replies.add(commands.scard(key));
+        }
+        List<Operand> operands = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            operands.add(new Operand(keys[i], await(replies.get(i))));
+        }
+        operands.sort(Comparator.comparingLong(operand -> operand.cardinality));
+        return operands;
+    }
+
+    private long store(String destination, Iterator<String> members) {
+        String target = temporaryKey(destination);
+        long stored = 0;
+        try {
+            RedisFuture<Long> pending = null;
+            List<String> batch = new ArrayList<>(batchSize);
+            while (members.hasNext()) {
+                batch.add(members.next());
+                if (batch.size() == batchSize || !members.hasNext()) {
+                    // one SADD in flight while the next batch is computed.
+                    if (pending != null) {
+                        stored += await(pending);
+                    }
+                    pending = commands.sadd(target, batch.toArray(new String[0]));
+                    batch.clear();
+                }
+            }
+            if (pending != null) {
+                stored += await(pending);
+            }
+            if (stored > 0) {
+                await(commands.rename(target, destination));
+            } else {
+                await(commands.del(destination));
+            }
+            return stored;
+        } catch (RuntimeException e) {
+            commands.del(target);
+            throw e;
+        }
+    }
+
+    /**
+     * A new key in the slot of {@code destination}, so RENAME works on a cluster: the destination's own hash tag if
+     * it has one, else the destination as hash tag. For keys where neither works, such as {@code a{}b} with its empty
+     * tag, a numeric hash tag is searched that lands in the slot; the destination is never written before the end, as
+     * it may be one of the operands.
+     */
+    private String temporaryKey(String destination) {
+        String suffix = ":tmp:" + UUID.randomUUID();
+        int slot = SlotHash.getSlot(destination);
+        if (SlotHash.getSlot(destination + suffix) == slot) {
+            return destination + suffix;
+        }
+        if (SlotHash.getSlot("{" + destination + "}" + suffix) == slot) {
+            return "{" + destination + "}" + suffix;
+        }
+        for (int tag = 0; ; tag++) {
+            String key = "{" + tag + "}" + suffix;
+            if (SlotHash.getSlot(key) == slot) {
+                return key;
+            }
+        }
+    }
+
+    private <T> T await(RedisFuture<T> future) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RedisException ? (RedisException) e.getCause()
+                    : new RedisException(e.getCause());
+        }
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
+    private static final class Operand {
+
+        final String key;
+
+        final long cardinality;
+
+        Operand(String key, long cardinality) {
+            this.key = key;
+            this.cardinality = cardinality;
+        }
+    }
+
+    /**
+     * Members of {@code driver} present in all (or in none) of the {@code others}, one SSCAN page at a time.
+     */
+    private final class Probe implements Iterator<String> {
+
+        private final String driver;
+
+        private final String[] others;
+
+        private final boolean inAll;
+
+        private final ScanArgs args = ScanArgs.Builder.limit(batchSize);
+
+        private final ArrayDeque<String> buffer = new ArrayDeque<>();
+
+        private RedisFuture<ValueScanCursor<String>> page;
+
+        private boolean started;
+
+        Probe(String driver, List<String> others, boolean inAll) {
+            this.driver = driver;
+            this.others = others.toArray(new String[0]);
+            this.inAll = inAll;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (buffer.isEmpty()) {
+                if (!started) {
+                    // started on first use: the probes of a union would otherwise all scan at once.
+                    started = true;
+                    page = driver == null ? null : commands.sscan(driver, ScanCursor.INITIAL, args);
+                }
+                if (page == null) {
+                    return false;
+                }
+                ValueScanCursor<String> cursor = await(page);
+                page = cursor.isFinished() ? null : commands.sscan(driver, cursor, args);
+                filter(cursor.getValues());
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return buffer.poll();
+        }
+
+        private void filter(List<String> members) {
+            if (members.isEmpty()) {
+                return;
+            }
+            if (others.length == 0) {
+                buffer.addAll(members);
+                return;
+            }
+            String[] batch = members.toArray(new String[0]);
+            List<RedisFuture<List<Boolean>>> replies = new ArrayList<>(others.length);
+            for (String other : others) {
+                replies.add(commands.smismember(other, batch));
+            }
+            int[] found = new int[batch.length];
+            for (RedisFuture<List<Boolean>> reply : replies) {
+                List<Boolean> flags = await(reply);
+                for (int i = 0; i < batch.length; i++) {
+                    if (flags.get(i)) {
+                        found[i]++;
+                    }
+                }
+            }
+            int required = inAll ? others.length : 0;
+            for (int i = 0; i < batch.length; i++) {
+                if (found[i] == required) {
+                    buffer.add(batch[i]);
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private int batchSize = 1000;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+        }
+
+        /**
+         * SSCAN COUNT, and so members per SMISMEMBER and per SADD; defaults to 1000.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public SetAlgebra build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A RedisClient or RedisClusterClient is required");
+            }
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            return new SetAlgebra(this);
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package com.redislettuce.snapshot;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandInterruptedException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
+import io.lettuce.core.codec.ByteArrayCodec;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Copies a keyspace into a file and back with SCAN, DUMP and RESTORE, e.g. to seed another environment with the
+ * keys of this one.
+ *
+ * {@link #export(Path)} scans every master in parallel, one thread per node. Each SCAN page of
+ * {@link Builder#batchSize(int)} keys costs one round trip of pipelined DUMP and PTTL commands, sent together with
+ * the SCAN of the next page. The payloads go into a block per node that is compressed as it grows and written once
+ * it holds {@link Builder#blockSize(int)} bytes, see {@link SnapshotFile} for the layout; memory is bounded by a
+ * page and a block per node however large the keyspace is.
+ *
+ * {@link #restore(Path)} hands the blocks of the file to {@link Builder#threads(int)} workers, which decompress
+ * them and send RESTORE to the node owning each key in pipelined batches of {@link Builder#batchSize(int)}
+ * commands, with at most {@link Builder#pipelineDepth(int)} batches in flight per node.
+ *
+ * A snapshot is not a point-in-time copy: like SCAN itself, a key written during the export may or may not be in
+ * it, and may be in it twice. Keys that disappear between SCAN and DUMP are skipped. TTLs are stored as the time
+ * remaining at the export and start counting again at the restore. Existing keys are skipped (BUSYKEY) unless
+ * {@link Builder#replace(boolean)} is set. DUMP payloads carry the RDB version, a snapshot restores on the same or
+ * a newer redis version only.
+ * <pre>
+ * Snapshot.Result exported = Snapshot.builder(clusterClient).build().export(Paths.get("keys.snapshot"));
+ * Snapshot.Result restored = Snapshot.builder(client).replace(true).build().restore(Paths.get("keys.snapshot"));
+ * </pre>
+ */
+public class Snapshot {
+
+    private final RedisClient client;
+
+    private final RedisClusterClient clusterClient;
+
+    private final String match;
+
+    private final int threads;
+
+    private final int batchSize;
+
+    private final int pipelineDepth;
+
+    private final int blockSize;
+
+    private final int compressionLevel;
+
+    private final boolean replace;
+
+    private Snapshot(Builder builder) {
+        this.client = builder.client;
+        this.clusterClient = builder.clusterClient;
+        this.match = builder.match;
+        this.threads = builder.threads;
+        this.batchSize = builder.batchSize;
+        this.pipelineDepth = builder.pipelineDepth;
+        this.blockSize = builder.blockSize;
+        this.compressionLevel = builder.compressionLevel;
+        this.replace = builder.replace;
+    }
+
+    public static Builder builder(RedisClient client) {
+        return new Builder(client, null);
+    }
+
+    public static Builder builder(RedisClusterClient client) {
+        return new Builder(null, client);
+    }
+
+    /**
+     * Writes all keys, or those matching the {@link Builder#match(String) pattern}, to {@code file}.
+     */
+    public Result export(Path file) throws IOException, InterruptedException {
+        Counters counters = new Counters();
+        try (SnapshotFile.Writer writer = new SnapshotFile.Writer(file)) {
+            if (client != null) {
+                try (StatefulRedisConnection<byte[], byte[]> connection = client.connect(ByteArrayCodec.INSTANCE)) {
+                    connection.setAutoFlushCommands(false);
+                    exportNode(connection, writer, counters);
+                }
+            } else {
+                try (StatefulRedisClusterConnection<byte[], byte[]> connection =
+                             clusterClient.connect(ByteArrayCodec.INSTANCE)) {
+                    List<Callable<Void>> nodes = new ArrayList<>();
+                    for (RedisClusterNode node : masters(connection)) {
+                        StatefulRedisConnection<byte[], byte[]> nodeConnection =
+                                connection.getConnection(node.getNodeId());
+                        nodeConnection.setAutoFlushCommands(false);
+                        nodes.add(() -> {
+                            exportNode(nodeConnection, writer, counters);
+                            return null;
+                        });
+                    }
+                    runAll(nodes, "snapshot-export");
+                }
+            }
+            long size = writer.finish();
+            return counters.result(writer.blocks(), size);
+        }
+    }
+
+    /**
+     * Restores all keys of {@code file}.
+     */
+    public Result restore(Path file) throws IOException, InterruptedException {
+        Counters counters = new Counters();
+        try (SnapshotFile.Reader reader = new SnapshotFile.Reader(file)) {
+            AtomicInteger next = new AtomicInteger();
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.min(threads, Math.max(1, reader.blocks())); i++) {
+                workers.add(() -> {
+                    restoreBlocks(reader, next, counters);
+                    return null;
+                });
+            }
+            runAll(workers, "snapshot-restore");
+            return counters.result(reader.blocks(), reader.size());
+        }
+    }
+
+    private void exportNode(StatefulRedisConnection<byte[], byte[]> connection, SnapshotFile.Writer writer,
+            Counters counters) throws IOException {
+        RedisAsyncCommands<byte[], byte[]> commands = connection.async();
+        ScanArgs args = ScanArgs.Builder.limit(batchSize);
+        if (match != null) {
+            args.match(match);
+        }
+        SnapshotFile.Block block = new SnapshotFile.Block(compressionLevel);
+        try {
+            try {
+                RedisFuture<KeyScanCursor<byte[]>> scan = commands.scan(ScanCursor.INITIAL, args);
+                connection.flushCommands();
+                while (scan != null) {
+                    KeyScanCursor<byte[]> page = await(scan, connection);
+                    scan = page.isFinished() ? null : commands.scan(page, args);
+                    List<byte[]> keys = page.getKeys();
+                    List<RedisFuture<byte[]>> dumps = new ArrayList<>(keys.size());
+                    List<RedisFuture<Long>> ttls = new ArrayList<>(keys.size());
+                    for (byte[] key : keys) {
+                        dumps.add(commands.dump(key));
+                        ttls.add(commands.pttl(key));
+                    }
+                    connection.flushCommands();
+                    for (int i = 0; i < keys.size(); i++) {
+                        byte[] payload;
+                        long pttl;
+                        try {
+                            payload = await(dumps.get(i), connection);
+                            pttl = await(ttls.get(i), connection);
+                        } catch (RedisCommandExecutionException e) {
+                            counters.fail(e);
+                            continue;
+                        }
+                        // deleted or expired since the SCAN.
+                        if (payload == null || pttl == -2 || pttl == 0) {
+                            counters.skipped.increment();
+                            continue;
+                        }
+                        block.add(keys.get(i), pttl, payload);
+                        counters.keys.increment();
+                        counters.bytes.add(payload.length);
+                        if (block.size() >= blockSize) {
+                            writer.write(block);
+                        }
+                    }
+                }
+            } catch (RedisException e) {
+                counters.fail(e);
+            }
+            writer.write(block);
+        } finally {
+            block.end();
+        }
+    }
+
+    private void restoreBlocks(SnapshotFile.Reader reader, AtomicInteger next, Counters counters)
+            throws IOException {
+        Targets targets = new Targets(counters);
+        try {
+            for (int index; (index = next.getAndIncrement()) < reader.blocks(); ) {
+                try (SnapshotFile.BlockReader block = reader.read(index)) {
+                    while (block.next()) {
+                        targets.node(block.key).add(block.key, block.pttl, block.payload);
+                    }
+                }
+            }
+            for (NodeRestorer node : targets.nodes()) {
+                node.flush();
+            }
+            for (NodeRestorer node : targets.nodes()) {
+                node.await();
+            }
+        } catch (RedisException e) {
+            counters.fail(e);
+        } finally {
+            targets.close();
+        }
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, String name) throws IOException, InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size(), daemon(name));
+        try {
+            List<Future<Void>> running = new ArrayList<>(tasks.size());
+            for (Callable<Void> task : tasks) {
+                running.add(pool.submit(task));
+            }
+            for (Future<Void> task : running) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                            : new RedisException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T await(RedisFuture<T> future, StatefulRedisConnection<?, ?> connection) {
+        Duration timeout = connection.getTimeout();
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisCommandInterruptedException(e);
+        } catch (TimeoutException e) {
+            throw new RedisCommandTimeoutException("Command timed out after " + timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            throw cause instanceof RedisException ? (RedisException) cause : new RedisException(cause);
+        }
+    }
+
+    private static List<RedisClusterNode> masters(StatefulRedisClusterConnection<?, ?> connection) {
+        List<RedisClusterNode> masters = new ArrayList<>();
+        for (RedisClusterNode node : connection.getPartitions()) {
+            if (node.getRole().isUpstream() && !node.getSlots().isEmpty()) {
+                masters.add(node);
+            }
+        }
+        return masters;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * The connections of one restore worker: one standalone connection, or a cluster connection and a restorer
+     * per master.
+     */
+    private final class Targets {
+
+        private final Counters counters;
+
+        private final StatefulRedisConnection<byte[], byte[]> standalone;
+
+        private final StatefulRedisClusterConnection<byte[], byte[]> cluster;
+
+        private final Map<String, NodeRestorer> nodes = new HashMap<>();
+
+        private final NodeRestorer single;
+
+        Targets(Counters counters) {
+            this.counters = counters;
+            if (client != null) {
+                standalone = client.connect(ByteArrayCodec.INSTANCE);
+                standalone.setAutoFlushCommands(false);
+                cluster = null;
+                single = new NodeRestorer(standalone, counters);
+            } else {
+                standalone = null;
+                cluster = clusterClient.connect(ByteArrayCodec.INSTANCE);
+                cluster.setAutoFlushCommands(false);
+                single = null;
+            }
+        }
+
+        NodeRestorer node(byte[] key) {
+            if (single != null) {
+                return single;
+            }
+            int slot = SlotHash.getSlot(key);
+            RedisClusterNode node = cluster.getPartitions().getPartitionBySlot(slot);
+            if (node == null) {
+                throw new RedisException("No cluster node serves slot " + slot);
+            }
+            NodeRestorer restorer = nodes.get(node.getNodeId());
+            if (restorer == null) {
+                StatefulRedisConnection<byte[], byte[]> connection = cluster.getConnection(node.getNodeId());
+                connection.setAutoFlushCommands(false);
+                restorer = new NodeRestorer(connection, counters);
+                nodes.put(node.getNodeId(), restorer);
+            }
+            return restorer;
+        }
+
+        Iterable<NodeRestorer> nodes() {
+            return single != null ? Collections.singletonList(single) : nodes.values();
+        }
+
+        void close() {
+            if (standalone != null) {
+                standalone.close();
+            } else {
+                cluster.close();
+            }
+        }
+    }
+
+    /**
+     * Batches RESTORE commands for one node, with at most {@code pipelineDepth} batches in flight.
+     */
+    private final class NodeRestorer {
+
+        private final StatefulRedisConnection<byte[], byte[]> connection;
+
+        private final RedisAsyncCommands<byte[], byte[]> commands;
+
+        private final Counters counters;
+
+        private final Semaphore depth = new Semaphore(pipelineDepth);
+
+        private final byte[][] keys = new byte[batchSize][];
+
+        private final long[] ttls = new long[batchSize];
+
+        private final byte[][] payloads = new byte[batchSize][];
+
+        private int pending;
+
+        NodeRestorer(StatefulRedisConnection<byte[], byte[]> connection, Counters counters) {
+            this.connection = connection;
+            this.commands = connection.async();
+            this.counters = counters;
+        }
+
+        void add(byte[] key, long pttl, byte[] payload) {
+            keys[pending] = key;
+            ttls[pending] = pttl;
+            payloads[pending] = payload;
+            if (++pending == batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (pending == 0) {
+                return;
+            }
+            acquire(1);
+            CompletableFuture<?>[] replies = new CompletableFuture[pending];
+            for (int i = 0; i < pending; i++) {
+                RestoreArgs args = new RestoreArgs().ttl(Math.max(0, ttls[i])).replace(replace);
+                int size = payloads[i].length;
+                replies[i] = commands.restore(keys[i], payloads[i], args).toCompletableFuture()
+                        .whenComplete((ignored, error) -> counters.restored(size, error));
+            }
+            connection.flushCommands();
+            Arrays.fill(keys, 0, pending, null);
+            Arrays.fill(payloads, 0, pending, null);
+            pending = 0;
+            CompletableFuture.allOf(replies).whenComplete((ignored, error) -> depth.release());
+        }
+
+        /**
+         * Waits until every batch was answered.
+         */
+        void await() {
+            acquire(pipelineDepth);
+            depth.release(pipelineDepth);
+        }
+
+        private void acquire(int permits) {
+            Duration timeout = connection.getTimeout();
+            try {
+                if (!depth.tryAcquire(permits, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    throw new RedisCommandTimeoutException("No pipelined batch was answered within " + timeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RedisCommandInterruptedException(e);
+            }
+        }
+    }
+
+    private static final class Counters {
+
+        private final long startedAt = System.nanoTime();
+
+        final LongAdder keys = new LongAdder();
+
+        final LongAdder bytes = new LongAdder();
+
+        final LongAdder skipped = new LongAdder();
+
+        final LongAdder failed = new LongAdder();
+
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        void fail(Throwable error) {
+            failed.increment();
+            firstFailure.compareAndSet(null, error);
+        }
+
+        void restored(int size, Throwable error) {
+            if (error == null) {
+                keys.increment();
+                bytes.add(size);
+            } else if (error.getMessage() != null && error.getMessage().startsWith("BUSYKEY")) {
+                skipped.increment();
+            } else {
+                fail(error);
+            }
+        }
+
+        Result result(int blocks, long fileBytes) {
+            Throwable failure = firstFailure.get();
+            return new Result(keys.sum(), skipped.sum(), failed.sum(), blocks, bytes.sum(), fileBytes,
+                    (System.nanoTime() - startedAt) / 1e9, failure == null ? null : failure.toString());
+        }
+    }
+
+    /**
+     * Outcome of an export or restore.
+     */
+    public static class Result {
+
+        private final long keys;
+
+        private final long skipped;
+
+        private final long failed;
+
+        private final int blocks;
+
+        private final long payloadBytes;
+
+        private final long fileBytes;
+
+        private final double seconds;
+
+        private final String firstFailure;
+
+        Result(long keys, long skipped, long failed, int blocks, long payloadBytes, long fileBytes, double seconds,
+                String firstFailure) {
+            this.keys = keys;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.blocks = blocks;
+            this.payloadBytes = payloadBytes;
+            this.fileBytes = fileBytes;
+            this.seconds = seconds;
+            this.firstFailure = firstFailure;
+        }
+
+        /**
+         * Keys written to the file, or restored.
+         */
+        public long getKeys() {
+            return keys;
+        }
+
+        /**
+         * Keys deleted or expired during the export, or that already existed during a restore without replace.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Keys lost to failed commands, a failed SCAN counts once for all keys of its node that were not reached.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public int getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Total size of the DUMP payloads.
+         */
+        public long getPayloadBytes() {
+            return payloadBytes;
+        }
+
+        public long getFileBytes() {
+            return fileBytes;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public double getKeysPerSecond() {
+            return seconds <= 0 ? 0 : keys / seconds;
+        }
+
+        public double getMegabytesPerSecond() {
+            return seconds <= 0 ? 0 : payloadBytes / 1e6 / seconds;
+        }
+
+        public String getFirstFailure() {
+            return firstFailure;
+        }
+
+        public boolean isComplete() {
+            return failed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d keys, %.1f MB in %.1fs (%.0f keys/s, %.1f MB/s), %d skipped, "
+                            + "%d failed, %d blocks, %d bytes of file", keys, payloadBytes / 1e6, seconds,
+                    getKeysPerSecond(), getMegabytesPerSecond(), skipped, failed, blocks, fileBytes);
+        }
+    }
+
+    public static class Builder {
+
+        private final RedisClient client;
+
+        private final RedisClusterClient clusterClient;
+
+        private String match;
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private int batchSize = 1000;
+
+        private int pipelineDepth = 8;
+
+        private int blockSize = 1024 * 1024;
+
+        private int compressionLevel = Deflater.BEST_SPEED;
+
+        private boolean replace;
+
+        private Builder(RedisClient client, RedisClusterClient clusterClient) {
+            this.client = client;
+            this.clusterClient = clusterClient;
+        }
+
+        /**
+         * SCAN MATCH pattern of the keys to export, all keys by default.
+         */
+        public Builder match(String match) {
+            this.match = match;
+            return this;
+        }
+
+        /**
+         * Restore workers, the number of cores by default. An export always uses one thread per master.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * SCAN COUNT and DUMP pipeline of an export, RESTORE commands per pipelined batch of a restore, 1000 by
+         * default.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * RESTORE batches in flight per worker and node, 8 by default.
+         */
+        public Builder pipelineDepth(int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        /**
+         * Uncompressed bytes per block of the file, 1 MiB by default. A block is the unit of compression and of
+         * parallel restore.
+         */
+        public Builder blockSize(int blockSize) {
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * Deflate level from 0 (store) to 9, {@link Deflater#BEST_SPEED} by default.
+         */
+        public Builder compressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+
+        /**
+         * Whether a restore overwrites existing keys, false by default.
+         */
+        public Builder replace(boolean replace) {
+            this.replace = replace;
+            return this;
+        }
+
+        public Snapshot build() {
+            if (client == null && clusterClient == null) {
+                throw new IllegalArgumentException("A client is required");
+            }
+            if (threads <= 0 || batchSize <= 0 || pipelineDepth <= 0 || blockSize <= 0) {
+                throw new IllegalArgumentException("threads, batchSize, pipelineDepth and blockSize must be "
+                        + "positive");
+            }
+            if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("compressionLevel must be between 0 and 9");
+            }
+            return new Snapshot(this);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.redislettuce.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Layout of a snapshot file, all numbers big-endian:
+ * <pre>
+ * header   "RLSNAP" 0 1
+ * block*   int compressed length, int entries, int CRC32 of the compressed bytes, deflated entries
+ * index    per block: long offset, int compressed length, int entries
+ * trailer  long index offset, int blocks, long entries, "RLSNAPIX"
+ * </pre>
+ * An entry is an int key length, the key, the long PTTL (-1 without TTL), an int payload length and the DUMP
+ * payload. Blocks are independent deflate streams, so they are compressed and decompressed by several threads at
+ * once, and the index at the end lets a reader hand them out without scanning the file.
+ */
+final class SnapshotFile {
+
+    private static final byte[] MAGIC = { 'R', 'L', 'S', 'N', 'A', 'P', 0, 1 };
+
+    private static final byte[] INDEX_MAGIC = { 'R', 'L', 'S', 'N', 'A', 'P', 'I', 'X' };
+
+    private static final int BLOCK_HEADER = 12;
+
+    private static final int INDEX_ENTRY = 16;
+
+    private static final int TRAILER = 28;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Appends blocks to a new file. {@link #write(Block)} may be called from several threads.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+        private final DataOutputStream indexOut = new DataOutputStream(index);
+
+        private int blocks;
+
+        private long entries;
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            writeFully(ByteBuffer.wrap(MAGIC));
+        }
+
+        /**
+         * Writes the entries added to {@code block} since the last write and resets it; does nothing if there are
+         * none.
+         */
+        void write(Block block) throws IOException {
+            if (block.entries == 0) {
+                return;
+            }
+            block.deflated.finish();
+            int length = block.compressed.size();
+            CRC32 crc = new CRC32();
+            crc.update(block.compressed.buffer(), 0, length);
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER);
+            header.putInt(length).putInt(block.entries).putInt((int) crc.getValue()).flip();
+            synchronized (this) {
+                long offset = channel.position();
+                writeFully(header);
+                writeFully(ByteBuffer.wrap(block.compressed.buffer(), 0, length));
+                indexOut.writeLong(offset);
+                indexOut.writeInt(length);
+                indexOut.writeInt(block.entries);
+                blocks++;
+                entries += block.entries;
+            }
+            block.reset();
+        }
+
+        /**
+         * Writes the index and trailer; the file is incomplete, and cannot be read, until this is called.
+         */
+        synchronized long finish() throws IOException {
+            long indexOffset = channel.position();
+            writeFully(ByteBuffer.wrap(index.toByteArray()));
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+            trailer.putLong(indexOffset).putInt(blocks).putLong(entries).put(INDEX_MAGIC).flip();
+            writeFully(trailer);
+            channel.force(false);
+            return channel.position();
+        }
+
+        synchronized int blocks() {
+            return blocks;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * The entries of one block, compressed while they are added. Not thread-safe, every export thread fills its
+     * own block and hands it to {@link Writer#write(Block)} once it is large enough.
+     */
+    static final class Block {
+
+        private final Deflater deflater;
+
+        private final Buffer compressed = new Buffer();
+
+        private DeflaterOutputStream deflated;
+
+        private DataOutputStream out;
+
+        private int entries;
+
+        private long size;
+
+        Block(int level) {
+            deflater = new Deflater(level);
+            reset();
+        }
+
+        void add(byte[] key, long pttl, byte[] payload) throws IOException {
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(pttl);
+            out.writeInt(payload.length);
+            out.write(payload);
+            entries++;
+            size += 16 + key.length + payload.length;
+        }
+
+        /**
+         * Uncompressed bytes added since the last write.
+         */
+        long size() {
+            return size;
+        }
+
+        void end() {
+            deflater.end();
+        }
+
+        private void reset() {
+            deflater.reset();
+            compressed.reset();
+            deflated = new DeflaterOutputStream(compressed, deflater, 64 * 1024);
+            out = new DataOutputStream(deflated);
+            entries = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Reads the index on open and single blocks on demand; {@link #read(int)} may be called from several threads.
+     */
+    static final class Reader implements Closeable {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private final long[] offsets;
+
+        private final int[] lengths;
+
+        private final int[] counts;
+
+        private final long entries;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < MAGIC.length + TRAILER || !Arrays.equals(readFully(0, MAGIC.length).array(), MAGIC)) {
+                    throw new IOException(file + " is not a snapshot file");
+                }
+                ByteBuffer trailer = readFully(size - TRAILER, TRAILER);
+                long indexOffset = trailer.getLong();
+                int blocks = trailer.getInt();
+                entries = trailer.getLong();
+                byte[] magic = new byte[INDEX_MAGIC.length];
+                trailer.get(magic);
+                if (!Arrays.equals(magic, INDEX_MAGIC) || blocks < 0 || indexOffset < MAGIC.length
+                        || indexOffset + (long) blocks * INDEX_ENTRY != size - TRAILER) {
+                    throw new IOException(file + " is incomplete or corrupt: no valid index");
+                }
+                ByteBuffer index = readFully(indexOffset, blocks * INDEX_ENTRY);
+                offsets = new long[blocks];
+                lengths = new int[blocks];
+                counts = new int[blocks];
+                for (int i = 0; i < blocks; i++) {
+                    offsets[i] = index.getLong();
+                    lengths[i] = index.getInt();
+                    counts[i] = index.getInt();
+                    if (offsets[i] < MAGIC.length || lengths[i] < 0
+                            || offsets[i] + BLOCK_HEADER + lengths[i] > indexOffset) {
+                        throw new IOException(file + " is corrupt: block " + i + " is outside of the data");
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int blocks() {
+            return offsets.length;
+        }
+
+        long entries() {
+            return entries;
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        BlockReader read(int block) throws IOException {
+            ByteBuffer buffer = readFully(offsets[block], BLOCK_HEADER + lengths[block]);
+            int length = buffer.getInt();
+            int count = buffer.getInt();
+            int checksum = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), BLOCK_HEADER, lengths[block]);
+            if (length != lengths[block] || count != counts[block] || checksum != (int) crc.getValue()) {
+                throw new IOException("Block " + block + " of " + file + " is corrupt");
+            }
+            return new BlockReader(file, block, buffer.array(), count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private ByteBuffer readFully(long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Decompresses the entries of one block as they are read.
+     */
+    static final class BlockReader implements Closeable {
+
+        private final Path file;
+
+        private final int block;
+
+        private final Inflater inflater = new Inflater();
+
+        private final DataInputStream in;
+
+        private int remaining;
+
+        byte[] key;
+
+        long pttl;
+
+        byte[] payload;
+
+        private BlockReader(Path file, int block, byte[] data, int count) {
+            this.file = file;
+            this.block = block;
+            this.in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data, BLOCK_HEADER,
+                    data.length - BLOCK_HEADER), inflater, 64 * 1024));
+            this.remaining = count;
+        }
+
+        /**
+         * Moves to the next entry, whose key, PTTL and payload are then in the fields of this reader.
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            try {
+                key = read();
+                pttl = in.readLong();
+                payload = read();
+            } catch (EOFException e) {
+                throw new IOException("Block " + block + " of " + file + " is truncated");
+            }
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        private byte[] read() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Block " + block + " of " + file + " is corrupt");
+            }
+            byte[] value = new byte[length];
+            in.readFully(value);
+            return value;
+        }
+    }
+
+    /**
+     * Gives access to the internal array, so a finished block is written without copying it.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(64 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
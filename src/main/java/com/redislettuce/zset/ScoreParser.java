@@ -0,0 +1,110 @@
+package com.redislettuce.zset;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the scores RESP2 sends as bulk strings ({@code 42}, {@code -1.5}, {@code 2.5e-05}, {@code inf}) without
+ * going through a {@link String}.
+ *
+ * Scores of up to 15 significant digits with a decimal exponent within 22 are exact as one multiplication or
+ * division of two doubles (the mantissa and the power of ten are both exact doubles, and IEEE rounds the one
+ * operation correctly), which covers integer scores and the short decimals Redis 7 prints. Longer ones, like the
+ * 17 digits older servers print for 0.1, fall back to {@link Double#parseDouble}.
+ */
+final class ScoreParser {
+
+    private static final int MAX_DIGITS = 15;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private ScoreParser() {
+    }
+
+    static double parse(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        int i = bytes.position();
+        boolean negative = false;
+        if (i < limit && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean fraction = false;
+        for (; i < limit; i++) {
+            byte b = bytes.get(i);
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    exponent -= fraction ? 1 : 0;
+                    continue;
+                }
+                if (digits == MAX_DIGITS) {
+                    return parseSlowly(bytes);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                exponent -= fraction ? 1 : 0;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigit) {
+            return parseSlowly(bytes);
+        }
+        if (i < limit) {
+            if (bytes.get(i) != 'e' && bytes.get(i) != 'E') {
+                return parseSlowly(bytes);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < limit && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExponent = bytes.get(i) == '-';
+                i++;
+            }
+            if (i == limit) {
+                return parseSlowly(bytes);
+            }
+            int value = 0;
+            for (; i < limit; i++) {
+                byte b = bytes.get(i);
+                if (b < '0' || b > '9' || value > 1000) {
+                    return parseSlowly(bytes);
+                }
+                value = value * 10 + (b - '0');
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseSlowly(bytes);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseSlowly(ByteBuffer bytes) {
+        String text = StandardCharsets.US_ASCII.decode(bytes.duplicate()).toString();
+        switch (text) {
+            case "inf":
+            case "+inf":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                return Double.parseDouble(text);
+        }
+    }
+}
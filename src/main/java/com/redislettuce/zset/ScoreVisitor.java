@@ -0,0 +1,16 @@
+package com.redislettuce.zset;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the entries of a sorted set range one by one while the reply is parsed, see
+ * {@link SortedSetReader#visitRange}.
+ *
+ * Called on the connection's event loop: it must not block, and must not wait for commands of the same connection.
+ * {@code member} holds the raw member bytes and is reused for the next entry, copy what has to be kept.
+ */
+@FunctionalInterface
+public interface ScoreVisitor {
+
+    void visit(ByteBuffer member, double score);
+}
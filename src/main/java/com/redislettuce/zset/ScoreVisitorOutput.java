@@ -0,0 +1,70 @@
+package com.redislettuce.zset;
+
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hands each member and score of a WITHSCORES reply to a {@link ScoreVisitor} as soon as the score was read, see
+ * {@link ScoredRangeOutput} for the reply shapes. The output is the number of entries visited.
+ *
+ * The member is copied into a buffer of the output: the buffer lettuce passes to {@link #set(ByteBuffer)} is only
+ * valid during the call, and the score may arrive in a later network read.
+ */
+class ScoreVisitorOutput extends CommandOutput<String, String, Long> {
+
+    private final ScoreVisitor visitor;
+
+    private ByteBuffer member = ByteBuffer.allocate(64);
+
+    private boolean expectMember = true;
+
+    private long visited;
+
+    ScoreVisitorOutput(ScoreVisitor visitor) {
+        super(StringCodec.UTF8, null);
+        this.visitor = visitor;
+    }
+
+    @Override
+    public void set(ByteBuffer bytes) {
+        if (expectMember) {
+            copyMember(bytes);
+            expectMember = false;
+        } else {
+            visit(bytes == null ? Double.NaN : ScoreParser.parse(bytes));
+        }
+    }
+
+    @Override
+    public void set(double number) {
+        visit(number);
+    }
+
+    @Override
+    public Long get() {
+        return visited;
+    }
+
+    private void copyMember(ByteBuffer bytes) {
+        member.clear();
+        if (bytes == null) {
+            member.flip();
+            return;
+        }
+        if (bytes.remaining() > member.capacity()) {
+            member = ByteBuffer.allocate(Math.max(bytes.remaining(), member.capacity() * 2));
+        }
+        int position = bytes.position();
+        member.put(bytes).flip();
+        bytes.position(position);
+    }
+
+    private void visit(double score) {
+        expectMember = true;
+        visited++;
+        member.rewind();
+        visitor.visit(member, score);
+    }
+}
@@ -0,0 +1,105 @@
+package com.redislettuce.zset;
+
+import java.util.Arrays;
+
+/**
+ * The members and scores of a sorted set range as two parallel arrays, instead of a list of
+ * {@link io.lettuce.core.ScoredValue} with a boxed score each.
+ *
+ * A range can be passed to the next read of {@link SortedSetReader} again, which then fills the same arrays as long
+ * as they are large enough: reading the same 10k ranks many times a second allocates the member strings only. The
+ * arrays returned by {@link #members()} and {@link #scores()} are the backing arrays and may be longer than
+ * {@link #size()}. A range is not thread-safe and must not be passed to two reads at the same time.
+ */
+public final class ScoredRange {
+
+    private static final String[] NO_MEMBERS = new String[0];
+
+    private static final double[] NO_SCORES = new double[0];
+
+    private String[] members;
+
+    private double[] scores;
+
+    private int size;
+
+    public ScoredRange() {
+        this(0);
+    }
+
+    public ScoredRange(int capacity) {
+        members = capacity == 0 ? NO_MEMBERS : new String[capacity];
+        scores = capacity == 0 ? NO_SCORES : new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String member(int index) {
+        checkIndex(index);
+        return members[index];
+    }
+
+    public double score(int index) {
+        checkIndex(index);
+        return scores[index];
+    }
+
+    /**
+     * The backing array, members at {@code 0} to {@code size() - 1}.
+     */
+    public String[] members() {
+        return members;
+    }
+
+    /**
+     * The backing array, scores at {@code 0} to {@code size() - 1}.
+     */
+    public double[] scores() {
+        return scores;
+    }
+
+    public int capacity() {
+        return members.length;
+    }
+
+    void clear() {
+        // drop the members of a larger previous read, they would be kept alive otherwise.
+        Arrays.fill(members, 0, size, null);
+        size = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > members.length) {
+            members = Arrays.copyOf(members, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+    }
+
+    void addMember(String member) {
+        if (size == members.length) {
+            ensureCapacity(Math.max(16, size * 2));
+        }
+        members[size++] = member;
+    }
+
+    void setLastScore(double score) {
+        scores[size - 1] = score;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            text.append(i == 0 ? "" : ", ").append(members[i]).append('=').append(scores[i]);
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.redislettuce.zset;
+
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a WITHSCORES reply into a {@link ScoredRange}: a flat array of member, score, member, score... (RESP2,
+ * and the RESP3 reply of ZRANGEBYSCORE) or an array of [member, score] pairs (RESP3 ZRANGE). Scores arrive as bulk
+ * strings with RESP2 and as doubles with RESP3; neither is boxed.
+ */
+class ScoredRangeOutput extends CommandOutput<String, String, ScoredRange> {
+
+    private int arrays;
+
+    private int outerCount;
+
+    private boolean member = true;
+
+    ScoredRangeOutput(ScoredRange into) {
+        super(StringCodec.UTF8, into);
+        into.clear();
+    }
+
+    @Override
+    public void multi(int count) {
+        if (arrays++ == 0) {
+            outerCount = count;
+        }
+    }
+
+    @Override
+    public void set(ByteBuffer bytes) {
+        if (member) {
+            if (output.size() == 0) {
+                // a nested pair was opened before the first member when the reply is an array of pairs.
+                output.ensureCapacity(arrays > 1 ? outerCount : outerCount / 2);
+            }
+            output.addMember(bytes == null ? null : codec.decodeValue(bytes));
+        } else {
+            output.setLastScore(bytes == null ? Double.NaN : ScoreParser.parse(bytes));
+        }
+        member = !member;
+    }
+
+    @Override
+    public void set(double number) {
+        output.setLastScore(number);
+        member = true;
+    }
+}
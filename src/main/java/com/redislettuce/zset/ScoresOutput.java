@@ -0,0 +1,28 @@
+package com.redislettuce.zset;
+
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses a ZSCORE or ZMSCORE reply into a {@code double[]}, {@link Double#NaN} for members that are not in the set.
+ */
+class ScoresOutput extends CommandOutput<String, String, double[]> {
+
+    private int index;
+
+    ScoresOutput(double[] into) {
+        super(StringCodec.UTF8, into);
+    }
+
+    @Override
+    public void set(ByteBuffer bytes) {
+        output[index++] = bytes == null ? Double.NaN : ScoreParser.parse(bytes);
+    }
+
+    @Override
+    public void set(double number) {
+        output[index++] = number;
+    }
+}
@@ -0,0 +1,186 @@
+package com.redislettuce.zset;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandKeyword;
+import io.lettuce.core.protocol.CommandType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads sorted set ranges and scores into primitive arrays instead of {@code List<ScoredValue<String>>} and
+ * {@code Double}: {@code zrangeWithScores} allocates a {@link io.lettuce.core.ScoredValue}, a boxed score and,
+ * with RESP2, a {@link String} to parse the score from, for every entry.
+ *
+ * The range reads fill a {@link ScoredRange}, two parallel arrays that can be passed to the next read again; the
+ * visit reads hand each member and score to a {@link ScoreVisitor} while the reply is parsed and keep nothing.
+ * Scores are parsed from the reply bytes (RESP2) or taken as the doubles RESP3 sends, see {@link ScoreParser}.
+ * <pre>
+ * SortedSetReader reader = SortedSetReader.of(connection);
+ * ScoredRange top = new ScoredRange(10_000);
+ * reader.reverseRange("scores", 0, 9_999, top);
+ * double total = 0;
+ * for (int i = 0; i &lt; top.size(); i++) {
+ *     total += top.score(i);
+ * }
+ * </pre>
+ */
+public class SortedSetReader {
+
+    private final StatefulConnection<String, String> connection;
+
+    private final RedisClusterAsyncCommands<String, String> commands;
+
+    private SortedSetReader(StatefulConnection<String, String> connection,
+            RedisClusterAsyncCommands<String, String> commands) {
+        this.connection = connection;
+        this.commands = commands;
+    }
+
+    public static SortedSetReader of(StatefulRedisConnection<String, String> connection) {
+        return new SortedSetReader(connection, connection.async());
+    }
+
+    public static SortedSetReader of(StatefulRedisClusterConnection<String, String> connection) {
+        return new SortedSetReader(connection, connection.async());
+    }
+
+    /**
+     * ZRANGE {@code key start stop} WITHSCORES, lowest score first.
+     */
+    public ScoredRange range(String key, long start, long stop) {
+        return range(key, start, stop, new ScoredRange());
+    }
+
+    /**
+     * ZRANGE {@code key start stop} WITHSCORES into {@code into}, replacing its previous content.
+     *
+     * @return {@code into}.
+     */
+    public ScoredRange range(String key, long start, long stop, ScoredRange into) {
+        return await(commands.dispatch(CommandType.ZRANGE, new ScoredRangeOutput(into), rankArgs(key, start, stop)));
+    }
+
+    /**
+     * ZREVRANGE {@code key start stop} WITHSCORES, highest score first.
+     */
+    public ScoredRange reverseRange(String key, long start, long stop) {
+        return reverseRange(key, start, stop, new ScoredRange());
+    }
+
+    /**
+     * ZREVRANGE {@code key start stop} WITHSCORES into {@code into}, replacing its previous content.
+     *
+     * @return {@code into}.
+     */
+    public ScoredRange reverseRange(String key, long start, long stop, ScoredRange into) {
+        return await(commands.dispatch(CommandType.ZREVRANGE, new ScoredRangeOutput(into),
+                rankArgs(key, start, stop)));
+    }
+
+    /**
+     * ZRANGEBYSCORE {@code key min max} WITHSCORES, both bounds inclusive and infinite ones allowed.
+     *
+     * @return {@code into}.
+     */
+    public ScoredRange rangeByScore(String key, double min, double max, ScoredRange into) {
+        return await(commands.dispatch(CommandType.ZRANGEBYSCORE, new ScoredRangeOutput(into),
+                scoreArgs(key, min, max)));
+    }
+
+    /**
+     * ZRANGEBYSCORE {@code key min max} WITHSCORES LIMIT {@code offset count}.
+     *
+     * @return {@code into}.
+     */
+    public ScoredRange rangeByScore(String key, double min, double max, long offset, long count,
+            ScoredRange into) {
+        CommandArgs<String, String> args = scoreArgs(key, min, max).add(CommandKeyword.LIMIT).add(offset).add(count);
+        return await(commands.dispatch(CommandType.ZRANGEBYSCORE, new ScoredRangeOutput(into), args));
+    }
+
+    /**
+     * Passes the entries of ZRANGE {@code key start stop} WITHSCORES to {@code visitor} in order.
+     *
+     * @return the number of entries visited.
+     */
+    public long visitRange(String key, long start, long stop, ScoreVisitor visitor) {
+        return await(commands.dispatch(CommandType.ZRANGE, new ScoreVisitorOutput(visitor),
+                rankArgs(key, start, stop)));
+    }
+
+    /**
+     * Passes the entries of ZREVRANGE {@code key start stop} WITHSCORES to {@code visitor} in order.
+     *
+     * @return the number of entries visited.
+     */
+    public long visitReverseRange(String key, long start, long stop, ScoreVisitor visitor) {
+        return await(commands.dispatch(CommandType.ZREVRANGE, new ScoreVisitorOutput(visitor),
+                rankArgs(key, start, stop)));
+    }
+
+    /**
+     * Passes the entries of ZRANGEBYSCORE {@code key min max} WITHSCORES to {@code visitor} in order.
+     *
+     * @return the number of entries visited.
+     */
+    public long visitRangeByScore(String key, double min, double max, ScoreVisitor visitor) {
+        return await(commands.dispatch(CommandType.ZRANGEBYSCORE, new ScoreVisitorOutput(visitor),
+                scoreArgs(key, min, max)));
+    }
+
+    /**
+     * @return the score of {@code member}, {@link Double#NaN} if the set or the member does not exist.
+     */
+    public double score(String key, String member) {
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key).addValue(member);
+        return await(commands.dispatch(CommandType.ZSCORE, new ScoresOutput(new double[1]), args))[0];
+    }
+
+    /**
+     * The scores of {@code members} with one ZMSCORE (Redis 6.2 and later).
+     *
+     * @return the scores in the order of {@code members}, {@link Double#NaN} for members not in the set.
+     */
+    public double[] scores(String key, String... members) {
+        if (members.length == 0) {
+            return new double[0];
+        }
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key).addValues(members);
+        return await(commands.dispatch(CommandType.ZMSCORE, new ScoresOutput(new double[members.length]), args));
+    }
+
+    private static CommandArgs<String, String> rankArgs(String key, long start, long stop) {
+        return new CommandArgs<>(StringCodec.UTF8).addKey(key).add(start).add(stop).add(CommandKeyword.WITHSCORES);
+    }
+
+    private static CommandArgs<String, String> scoreArgs(String key, double min, double max) {
+        CommandArgs<String, String> args = new CommandArgs<>(StringCodec.UTF8).addKey(key);
+        bound(args, min);
+        bound(args, max);
+        return args.add(CommandKeyword.WITHSCORES);
+    }
+
+    private static void bound(CommandArgs<String, String> args, double score) {
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("A score bound must not be NaN");
+        }
+        if (Double.isInfinite(score)) {
+            args.add(score > 0 ? "+inf" : "-inf");
+        } else {
+            args.add(score);
+        }
+    }
+
+    private <R> R await(RedisFuture<R> future) {
+        Duration timeout = connection.getTimeout();
+        return LettuceFutures.awaitOrCancel(future, timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+}
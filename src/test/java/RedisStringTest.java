@@ -1,3 +1,5 @@
+import com.redislettuce.lcs.LcsEngine;
+import com.redislettuce.scan.KeyScanner;
 import io.lettuce.core.*;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.async.RedisAsyncCommands;
@@ -8,6 +10,7 @@ import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class RedisStringTest {
 
@@ -62,12 +65,11 @@ public class RedisStringTest {
         RedisClient client = RedisClient.create(uri);
 
         StatefulRedisConnection<String, String> connect = client.connect();
-        RedisAsyncCommands<String, String> commands = connect.async();
 
-        RedisFuture<List<String>> future = commands.keys("*");
-        future.thenAccept(keys -> {
+        // KEYS * blocks the server and builds the whole reply in memory, SCAN pages through the keyspace.
+        try (Stream<String> keys = KeyScanner.of(connect).keys()) {
             keys.forEach(System.out::println);
-        });
+        }
 
         connect.close();
         client.shutdown();
@@ -325,7 +327,22 @@ public class RedisStringTest {
         RedisClient client = RedisClient.create(uri);
 
         StatefulRedisConnection<String, String> connect = client.connect();
-        RedisAsyncCommands<String, String> commands = connect.async();
+        RedisCommands<String, String> commands = connect.sync();
+        Map<String, String> values = new HashMap<>();
+        values.put("key1", "ohmytext");
+        values.put("key2", "mynewtext");
+        commands.mset(values);
+
+        try (LcsEngine lcs = LcsEngine.builder(client).build()) {
+            // LCS on 7.0+, computed on the client from GETRANGE chunks on older servers.
+            System.out.println("length = " + lcs.length("key1", "key2"));
+            System.out.println("similarity = " + lcs.similarity("key1", "key2"));
+            System.out.println("lcs = " + lcs.lcs("key1", "key2"));
+            System.out.println("matches = " + lcs.matches("key1", "key2", 4));
+        }
+
+        connect.close();
+        client.shutdown();
     }
 
     /**
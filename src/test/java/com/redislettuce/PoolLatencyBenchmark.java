@@ -0,0 +1,69 @@
+package com.redislettuce;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of a single GET when every call creates its own client (what the *Test classes do)
+ * against the same GET through a pre-warmed {@link RedisClientFactory}.
+ *
+ * usage: PoolLatencyBenchmark [redis-uri] [iterations]
+ *
+ * Without a uri it runs against a {@link LocalRedisServer}, which shows the client side of the difference only.
+ */
+public class PoolLatencyBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        if (args.length > 0) {
+            run(args[0], iterations);
+            return;
+        }
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            run(server.getUri().toURI().toString(), iterations);
+        }
+    }
+
+    private static void run(String uri, int iterations) {
+
+        long[] cold = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            RedisClient client = RedisClient.create(uri);
+            StatefulRedisConnection<String, String> connection = client.connect();
+            connection.sync().get("hello");
+            connection.close();
+            client.shutdown();
+            cold[i] = System.nanoTime() - start;
+        }
+
+        long[] pooled = new long[iterations];
+        try (RedisClientFactory factory = RedisClientFactory.builder(uri).minIdle(2).maxTotal(4).build()) {
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                factory.execute(connection -> connection.sync().get("hello"));
+                pooled[i] = System.nanoTime() - start;
+            }
+            System.out.println(factory.stats());
+        }
+
+        print("cold per call", cold);
+        print("pooled", pooled);
+    }
+
+    private static void print(String name, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s p50=%8dus p99=%8dus max=%8dus%n", name,
+                micros(sorted, 0.50), micros(sorted, 0.99), TimeUnit.NANOSECONDS.toMicros(sorted[sorted.length - 1]));
+    }
+
+    private static long micros(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(0, index)]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.redislettuce;
+
+import com.redislettuce.metrics.CommandMetrics;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RedisClientFactoryTest {
+
+    private LocalRedisServer server;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void warmsUpMinIdleConnections() {
+        try (CommandMetrics metrics = CommandMetrics.builder().build();
+             RedisClientFactory factory = RedisClientFactory.builder(server.getUri()).minIdle(3).maxTotal(5)
+                     .metrics(metrics).build()) {
+            RedisClientFactory.PoolStats stats = factory.stats();
+            assertEquals(stats.toString(), 3, stats.getConnections());
+            assertEquals(3, stats.getIdle());
+            assertEquals(5, stats.getMaxTotal());
+            assertEquals(3, metrics.snapshot().getCommands().get("PING").getCount());
+        }
+    }
+
+    @Test
+    public void recordsBorrowWaits() {
+        try (RedisClientFactory factory = RedisClientFactory.builder(server.getUri()).minIdle(1).maxTotal(2).build()) {
+            factory.execute(connection -> connection.sync().set("hello", "world"));
+            assertEquals("world", factory.execute(connection -> connection.sync().get("hello")));
+            StatefulRedisConnection<String, String> connection = factory.borrowAsync().join();
+            factory.release(connection).join();
+
+            RedisClientFactory.PoolStats stats = factory.stats();
+            assertEquals(3, stats.getBorrowCount());
+            assertTrue(stats.toString(), stats.getMeanWaitNanos() > 0);
+            assertTrue(stats.getMaxWaitNanos() >= stats.getMeanWaitNanos());
+            assertEquals(stats.getConnections(), stats.getIdle());
+        }
+    }
+
+    @Test
+    public void timedOutBorrowDoesNotShrinkThePool() throws Exception {
+        try (RedisClientFactory factory = RedisClientFactory.builder(server.getUri()).minIdle(0).maxTotal(1)
+                .borrowTimeout(Duration.ofMillis(100)).build()) {
+            // opening the only connection takes longer than the borrow timeout.
+            server.network().latency("PING", Duration.ofMillis(400), Duration.ZERO);
+            long start = System.nanoTime();
+            try {
+                factory.borrow();
+                fail();
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Timed out"));
+            }
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+            // the abandoned acquire completes later and has to hand the connection back.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (factory.stats().getIdle() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, factory.stats().getIdle());
+            server.network().latency("PING", Duration.ZERO, Duration.ZERO);
+            for (int i = 0; i < 3; i++) {
+                try (StatefulRedisConnection<String, String> connection = factory.borrow()) {
+                    assertEquals("PONG", connection.sync().ping());
+                }
+            }
+            assertEquals(1, factory.stats().getConnections());
+            assertTrue(factory.stats().getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test
+    public void failsAtOnceWhenAllConnectionsAreBorrowed() {
+        try (RedisClientFactory factory = RedisClientFactory.builder(server.getUri()).minIdle(1).maxTotal(1).build();
+             StatefulRedisConnection<String, String> held = factory.borrow()) {
+            try {
+                factory.borrow();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof NoSuchElementException);
+            }
+            assertEquals("PONG", held.sync().ping());
+        }
+    }
+
+    @Test
+    public void rejectsInvalidPoolSizes() {
+        try {
+            RedisClientFactory.builder(server.getUri()).minIdle(3).maxTotal(2).build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
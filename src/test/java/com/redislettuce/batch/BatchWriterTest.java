@@ -0,0 +1,238 @@
+package com.redislettuce.batch;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.event.command.CommandListener;
+import io.lettuce.core.event.command.CommandStartedEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchWriterTest {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> writerConnection;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        client.addListener(new CommandListener() {
+            @Override
+            public void commandStarted(CommandStartedEvent event) {
+                sent.add(event.getCommand().getType().name());
+            }
+        });
+        writerConnection = client.connect();
+        connection = client.connect();
+        commands = connection.sync();
+    }
+
+    @After
+    public void tearDown() {
+        writerConnection.close();
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void mergesCallsOfOneKeyIntoOneCommand() throws Exception {
+        try (BatchWriter writer = BatchWriter.builder(writerConnection).maxBatchSize(1000)
+                .maxDelay(Duration.ofHours(1)).build()) {
+            CompletableFuture<Long> first = writer.lpush("mylist", "a");
+            CompletableFuture<Long> other = writer.lpush("otherlist", "x");
+            CompletableFuture<Long> second = writer.lpush("mylist", "b", "c");
+            CompletableFuture<Long> tail = writer.rpush("mylist", "z");
+            CompletableFuture<Long> alice = writer.sadd("users", "alice");
+            CompletableFuture<Long> bob = writer.sadd("users", "bob", "alice");
+            CompletableFuture<Long> scoreA = writer.zadd("myzset", 1.5, "a");
+            CompletableFuture<Long> scoreB = writer.zadd("myzset", -2, "b");
+            CompletableFuture<Long> name = writer.hset("myhash", "name", "alice");
+            CompletableFuture<Long> age = writer.hset("myhash", "age", "30");
+            assertFalse(first.isDone());
+
+            writer.flush().get(5, TimeUnit.SECONDS);
+
+            // each call gets the list length right after its own values, as if sent alone.
+            assertEquals(Long.valueOf(1), first.get());
+            assertEquals(Long.valueOf(3), second.get());
+            assertEquals(Long.valueOf(4), tail.get());
+            assertEquals(Long.valueOf(1), other.get());
+            // the others get the reply of the merged command.
+            assertEquals(Long.valueOf(2), alice.get());
+            assertEquals(Long.valueOf(2), bob.get());
+            assertEquals(Long.valueOf(2), scoreA.get());
+            assertEquals(Long.valueOf(2), scoreB.get());
+            assertEquals(Long.valueOf(2), name.get());
+            assertEquals(Long.valueOf(2), age.get());
+            assertEquals(Arrays.asList("LPUSH", "LPUSH", "RPUSH", "SADD", "ZADD", "HSET"), new ArrayList<>(sent));
+
+            assertEquals(Arrays.asList("c", "b", "a", "z"), commands.lrange("mylist", 0, -1));
+            assertEquals(new HashSet<>(Arrays.asList("alice", "bob")), commands.smembers("users"));
+            assertEquals(Arrays.asList(ScoredValue.just(-2, "b"), ScoredValue.just(1.5, "a")),
+                    commands.zrangeWithScores("myzset", 0, -1));
+            Map<String, String> hash = new HashMap<>();
+            hash.put("name", "alice");
+            hash.put("age", "30");
+            assertEquals(hash, commands.hgetall("myhash"));
+        }
+    }
+
+    @Test
+    public void flushesWhenMaxBatchSizeIsReached() throws Exception {
+        try (BatchWriter writer = BatchWriter.builder(writerConnection).maxBatchSize(4)
+                .maxDelay(Duration.ofHours(1)).build()) {
+            List<CompletableFuture<Long>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                calls.add(writer.sadd("users", "user" + i));
+            }
+            Thread.sleep(50);
+            assertFalse(calls.get(0).isDone());
+            assertEquals(Long.valueOf(0), commands.scard("users"));
+            assertEquals(Collections.singletonList("SCARD"), new ArrayList<>(sent));
+            sent.clear();
+
+            calls.add(writer.sadd("users", "user3"));
+            for (CompletableFuture<Long> call : calls) {
+                assertEquals(Long.valueOf(4), call.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(Collections.singletonList("SADD"), new ArrayList<>(sent));
+        }
+    }
+
+    @Test
+    public void flushesAfterMaxDelay() throws Exception {
+        try (BatchWriter writer = BatchWriter.builder(writerConnection).maxBatchSize(1000)
+                .maxDelay(Duration.ofMillis(50)).build()) {
+            long start = System.nanoTime();
+            CompletableFuture<Long> first = writer.rpush("mylist", "a");
+            CompletableFuture<Long> second = writer.rpush("mylist", "b");
+
+            assertEquals(Long.valueOf(2), second.get(5, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(1), first.get());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+            assertEquals(Collections.singletonList("RPUSH"), new ArrayList<>(sent));
+        }
+    }
+
+    @Test
+    public void blocksAndFailsCallsWhenTooManyValuesArePending() throws Exception {
+        server.network().latency("SADD", Duration.ofMillis(500), Duration.ZERO);
+        try (BatchWriter writer = BatchWriter.builder(writerConnection).maxBatchSize(4).maxPending(4)
+                .maxDelay(Duration.ofHours(1)).backpressureTimeout(Duration.ofMillis(100)).build()) {
+            CompletableFuture<Long> inFlight = writer.sadd("users", "a", "b", "c", "d");
+
+            long start = System.nanoTime();
+            CompletableFuture<Long> rejected = writer.sadd("users", "e");
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            try {
+                rejected.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RedisException);
+                assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("buffer full"));
+            }
+
+            assertEquals(Long.valueOf(4), inFlight.get(5, TimeUnit.SECONDS));
+            CompletableFuture<Long> accepted = writer.sadd("users", "f");
+            writer.flush().get(5, TimeUnit.SECONDS);
+            assertEquals(Long.valueOf(1), accepted.get());
+            assertEquals(Long.valueOf(5), commands.scard("users"));
+        }
+    }
+
+    @Test
+    public void reportsErrorsOnTheCallsOnly() throws Exception {
+        commands.set("phone", "18902835052");
+        try (BatchWriter writer = BatchWriter.builder(writerConnection).maxDelay(Duration.ofHours(1)).build()) {
+            CompletableFuture<Long> wrongType = writer.lpush("phone", "x");
+            CompletableFuture<Long> fine = writer.lpush("mylist", "x");
+
+            assertNull(writer.flush().get(5, TimeUnit.SECONDS));
+            try {
+                wrongType.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandExecutionException);
+                assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("WRONGTYPE"));
+            }
+            assertEquals(Long.valueOf(1), fine.get());
+
+            List<CompletableFuture<Long>> invalid = Arrays.asList(writer.sadd("users"), writer.lpush(null, "x"),
+                    writer.sadd("users", "alice", null), writer.zadd("myzset", 1, null),
+                    writer.hset("myhash", "name", null));
+            CompletableFuture<Long> valid = writer.sadd("users", "alice");
+            for (CompletableFuture<Long> call : invalid) {
+                try {
+                    call.get(0, TimeUnit.SECONDS);
+                    fail();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalArgumentException);
+                }
+            }
+            assertNull(writer.flush().get(5, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(1), valid.get());
+        }
+    }
+
+    @Test
+    public void closeFlushesAndRejectsLaterCalls() throws Exception {
+        BatchWriter writer = BatchWriter.builder(writerConnection).maxDelay(Duration.ofHours(1)).build();
+        CompletableFuture<Long> buffered = writer.rpush("mylist", "a");
+        writer.close();
+
+        assertEquals(Long.valueOf(1), buffered.get(0, TimeUnit.SECONDS));
+        try {
+            writer.rpush("mylist", "b").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("closed"));
+        }
+        // auto-flush is back on, a plain command on the connection completes.
+        assertEquals("PONG", writerConnection.sync().ping());
+        assertEquals(Arrays.asList("a"), commands.lrange("mylist", 0, -1));
+    }
+
+    @Test
+    public void rejectsBatchSizeAbovePending() {
+        try {
+            BatchWriter.builder(writerConnection).maxBatchSize(10).maxPending(5).build();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.redislettuce.blob;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlobStoreTest {
+
+    @Test
+    public void streamsChunksAndReadsRanges() throws IOException {
+        byte[] data = random(1_000_003, 1);
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (BlobStore blobs = BlobStore.builder(client).chunkSize(64 * 1024).build()) {
+                write(blobs, "doc", data, 10_000);
+                BlobStore.Manifest manifest = blobs.manifest("doc");
+                assertEquals(data.length, manifest.getSize());
+                assertEquals(16, manifest.getChunks());
+                assertEquals(64 * 1024, manifest.getChunkSize());
+
+                assertArrayEquals(data, readAll(blobs.openInputStream("doc")));
+
+                byte[] range = new byte[200_000];
+                assertEquals(range.length, blobs.read(manifest, 60_000, range, 0, range.length));
+                assertArrayEquals(Arrays.copyOfRange(data, 60_000, 260_000), range);
+                assertEquals(3, blobs.read(manifest, data.length - 3, range, 0, range.length));
+                assertEquals(-1, blobs.read(manifest, data.length, range, 0, range.length));
+
+                try (InputStream in = blobs.openInputStream("doc")) {
+                    assertEquals(data[0] & 0xff, in.read());
+                    assertEquals(500_000, in.skip(500_000));
+                    assertEquals(data[500_001] & 0xff, in.read());
+                    assertEquals(data.length - 500_002, readAll(in).length);
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void replacesAndDeletesAtomically() throws IOException {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (BlobStore blobs = BlobStore.builder(client).chunkSize(1000).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                write(blobs, "doc", random(10_500, 2), 777);
+                assertEquals(12, (long) commands.dbsize());
+
+                InputStream stale = blobs.openInputStream("doc");
+                byte[] replacement = random(2_500, 3);
+                write(blobs, "doc", replacement, 4096);
+                assertEquals(4, (long) commands.dbsize());
+                assertArrayEquals(replacement, readAll(blobs.openInputStream("doc")));
+                try {
+                    readAll(stale);
+                    fail("the chunks of the replaced blob are gone");
+                } catch (IOException expected) {
+                }
+
+                write(blobs, "empty", new byte[0], 1);
+                assertEquals(0, readAll(blobs.openInputStream("empty")).length);
+
+                assertTrue(blobs.delete("doc"));
+                assertFalse(blobs.delete("doc"));
+                assertNull(blobs.manifest("doc"));
+                assertEquals(1, (long) commands.dbsize());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void detectsCorruptedChunks() throws IOException {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (BlobStore blobs = BlobStore.builder(client).chunkSize(1000).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                write(blobs, "doc", random(5_000, 4), 5_000);
+                BlobStore.Manifest manifest = blobs.manifest("doc");
+                connection.sync().setrange("doc:" + manifest.getId() + ":3", 10, "x");
+                try {
+                    readAll(blobs.openInputStream("doc"));
+                    fail("checksum must not match");
+                } catch (IOException expected) {
+                    assertTrue(expected.getMessage().contains("Checksum"));
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void keepsThePreviousVersionUnlessCommitted() throws Exception {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisURI uri = server.getUri();
+            uri.setTimeout(Duration.ofMillis(200));
+            RedisClient client = RedisClient.create(uri);
+            try (BlobStore blobs = BlobStore.builder(client).chunkSize(1000).writeWindow(1).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                byte[] original = random(2_500, 6);
+                write(blobs, "doc", original, 1000);
+                String id = blobs.manifest("doc").getId();
+
+                // the source fails halfway, as Files.copy would.
+                try (OutputStream out = blobs.openOutputStream("doc")) {
+                    out.write(random(5_000, 7));
+                    throw new IOException("source failed");
+                } catch (IOException expected) {
+                    assertEquals("source failed", expected.getMessage());
+                }
+                assertEquals(id, blobs.manifest("doc").getId());
+                assertArrayEquals(original, readAll(blobs.openInputStream("doc")));
+                assertEquals(4, (long) commands.dbsize());
+
+                InputStream closed = blobs.openInputStream("doc");
+                closed.close();
+                try {
+                    closed.read();
+                    fail("read after close");
+                } catch (IOException expected) {
+                    assertEquals("Stream closed", expected.getMessage());
+                }
+
+                // a chunk SET times out: commit fails and the chunks sent are unlinked on close.
+                server.network().latency("SET", Duration.ofMillis(500), Duration.ZERO);
+                BlobStore.BlobOutputStream out = blobs.openOutputStream("doc");
+                try {
+                    out.write(random(3_000, 8));
+                    fail("the first chunk times out");
+                } catch (IOException expected) {
+                }
+                try {
+                    out.commit();
+                    fail("a chunk is missing");
+                } catch (IOException expected) {
+                }
+                try {
+                    out.close();
+                    fail("close reports the failed write");
+                } catch (IOException expected) {
+                }
+                server.network().reset();
+                assertEquals(id, commands.hget("doc", "id"));
+                assertEquals(4, (long) commands.dbsize());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void spreadsChunksOverClusterNodes() throws IOException {
+        byte[] data = random(300_000, 5);
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            try (BlobStore blobs = BlobStore.builder(client).chunkSize(10_000).readAhead(8).build()) {
+                write(blobs, "doc", data, 65_536);
+                assertArrayEquals(data, readAll(blobs.openInputStream("doc")));
+                write(blobs, "doc", Arrays.copyOf(data, 1), 1);
+                assertEquals(1, blobs.manifest("doc").getChunks());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static void write(BlobStore blobs, String name, byte[] data, int writeSize) throws IOException {
+        try (BlobStore.BlobOutputStream out = blobs.openOutputStream(name)) {
+            for (int i = 0; i < data.length; i += writeSize) {
+                out.write(data, i, Math.min(writeSize, data.length - i));
+            }
+            out.commit();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7_000];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
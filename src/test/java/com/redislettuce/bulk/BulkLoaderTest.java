@@ -0,0 +1,190 @@
+package com.redislettuce.bulk;
+
+import com.redislettuce.BulkImport;
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkLoaderTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        connection = client.connect();
+        commands = connection.sync();
+        directory = Files.createTempDirectory("bulk");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connection.close();
+        client.shutdown();
+        server.close();
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void loadsCsvAcrossThreadsAndSegments() throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("# type,key,...");
+        for (int i = 0; i < 5000; i++) {
+            lines.add("string,user:" + i + ":name,name" + i);
+            lines.add("hash,user:" + i + ",name,name" + i + ",age," + (i % 90));
+            lines.add("hash,user:" + i + ",city,\"Paris, \"\"France\"\"\"");
+            lines.add("zset,ranking," + i + ",user:" + i);
+            lines.add("set,tags:" + (i % 10) + ",t" + i + ",shared");
+        }
+        lines.add("");
+        lines.add("list,nope,1");
+        lines.add("string,only-a-key");
+        Path file = write("data.csv", lines);
+        List<BulkLoader.Progress> reports = new ArrayList<>();
+
+        BulkLoader.Progress result = BulkLoader.builder(client).threads(4).batchSize(100).pipelineDepth(2)
+                .segmentSize(8 * 1024).progressInterval(Duration.ofMillis(50)).listener(reports::add).build()
+                .load(file);
+
+        assertTrue(result.toString(), result.isComplete());
+        assertEquals(25_000, result.getRecords());
+        assertEquals(2, result.getInvalid());
+        assertTrue(result.getFirstInvalid(), result.getFirstInvalid().contains("Unknown type"));
+        assertEquals(result.getFileSize(), result.getCheckpoint());
+        assertEquals(result, reports.get(reports.size() - 1));
+        assertEquals("name4999", commands.get("user:4999:name"));
+        assertEquals("Paris, \"France\"", commands.hget("user:42", "city"));
+        assertEquals("42", commands.hget("user:42", "age"));
+        assertEquals(Long.valueOf(5000), commands.zcard("ranking"));
+        assertEquals(Double.valueOf(4999), commands.zscore("ranking", "user:4999"));
+        assertEquals(Long.valueOf(501), commands.scard("tags:3"));
+    }
+
+    @Test
+    public void loadsJsonLinesIntoACluster() throws Exception {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient clusterClient = RedisClusterClient.create(cluster.getUris());
+            try (StatefulRedisClusterConnection<String, String> clusterConnection = clusterClient.connect()) {
+                List<String> lines = new ArrayList<>();
+                for (int i = 0; i < 2000; i++) {
+                    lines.add("{\"type\":\"string\",\"key\":\"k" + i + "\",\"value\":\"v" + i + "\"}");
+                    lines.add("{\"key\":\"h" + i + "\", \"value\": {\"n\": " + i + ", \"s\": \"x\\\"y\\u00e9\"},"
+                            + " \"type\": \"hash\"}");
+                }
+                lines.add("{\"type\":\"zset\",\"key\":\"{z}ranking\",\"value\":{\"a\":1.5,\"b\":-2}}");
+                lines.add("{\"type\":\"set\",\"key\":\"members\",\"value\":[\"a\",\"b\",\"c\"],\"ttl\":null}");
+                lines.add("{\"type\":\"set\",\"key\":\"broken\"");
+                Path file = write("data.jsonl", lines);
+
+                BulkLoader.Progress result = BulkLoader.builder(clusterClient).threads(3).batchSize(64)
+                        .segmentSize(4096).build().load(file);
+
+                assertTrue(result.toString(), result.isComplete());
+                assertEquals(4002, result.getRecords());
+                assertEquals(1, result.getInvalid());
+                RedisAdvancedClusterCommands<String, String> sync = clusterConnection.sync();
+                assertEquals("v1999", sync.get("k1999"));
+                assertEquals("1999", sync.hget("h1999", "n"));
+                assertEquals("x\"y\u00e9", sync.hget("h7", "s"));
+                assertEquals(Arrays.asList(ScoredValue.just(-2, "b"), ScoredValue.just(1.5, "a")),
+                        sync.zrangeWithScores("{z}ranking", 0, -1));
+                assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), sync.smembers("members"));
+                for (int node = 0; node < cluster.size(); node++) {
+                    try (StatefulRedisConnection<String, String> nodeConnection =
+                                 client.connect(cluster.node(node).getUri())) {
+                        assertTrue(nodeConnection.sync().dbsize() > 0);
+                    }
+                }
+            } finally {
+                clusterClient.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void resumesFromTheCheckpoint() throws Exception {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("string,key" + i + ",value" + i);
+        }
+        Path file = write("data.csv", lines);
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        long offset = text.indexOf("string,key500,");
+        Path checkpoint = directory.resolve("data.checkpoint");
+        Files.write(checkpoint, (offset + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        BulkLoader.Progress result = BulkLoader.builder(client).threads(2).segmentSize(1024)
+                .checkpointFile(checkpoint).build().load(file);
+
+        assertTrue(result.isComplete());
+        assertEquals(offset, result.getStartOffset());
+        assertEquals(500, result.getRecords());
+        assertNull(commands.get("key499"));
+        assertEquals("value500", commands.get("key500"));
+        assertEquals("value999", commands.get("key999"));
+        assertEquals(Long.toString(Files.size(file)),
+                new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim());
+
+        BulkLoader.Progress again = BulkLoader.builder(client).checkpointFile(checkpoint).build().load(file);
+        assertTrue(again.isComplete());
+        assertEquals(0, again.getRecords());
+    }
+
+    @Test
+    public void commandLineImports() throws Exception {
+        Path file = write("data.csv", Arrays.asList("string,phone,18902835052", "set,tags,a,b"));
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int status = BulkImport.run(new String[] { "--uri", server.getUri().toURI().toString(), "--threads", "2",
+                "--checkpoint", directory.resolve("cli.checkpoint").toString(), file.toString() },
+                new PrintStream(text, true, "UTF-8"));
+        String output = new String(text.toByteArray(), StandardCharsets.UTF_8);
+
+        assertEquals(output, 0, status);
+        assertTrue(output, output.contains("done: 2 records"));
+        assertEquals("18902835052", commands.get("phone"));
+        assertEquals(2, BulkImport.run(new String[] { "--bogus" }, new PrintStream(new ByteArrayOutputStream())));
+        assertFalse(Files.exists(directory.resolve("cli.checkpoint.tmp")));
+    }
+
+    private Path write(String name, List<String> lines) throws IOException {
+        return Files.write(directory.resolve(name), lines, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,166 @@
+package com.redislettuce.cache;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NearCacheTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> writer;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        writer = client.connect();
+    }
+
+    @After
+    public void tearDown() {
+        writer.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void servesRepeatedReadsFromMemory() {
+        RedisCommands<String, String> redis = writer.sync();
+        redis.set("phone", "18902835052");
+        redis.hset("myhash", "hellofield", "hello");
+        redis.zadd("myScoredValue", 3.5, "score3");
+        try (NearCache cache = NearCache.builder(client).build()) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("18902835052", cache.get("phone"));
+                assertEquals("hello", cache.hget("myhash", "hellofield"));
+                assertEquals(Double.valueOf(3.5), cache.zscore("myScoredValue", "score3"));
+            }
+            NearCache.Stats stats = cache.stats();
+            assertEquals(3, stats.getMisses());
+            assertEquals(6, stats.getHits());
+            assertEquals(3, stats.getSize());
+        }
+    }
+
+    @Test
+    public void invalidatesOnWritesFromOtherClients() {
+        RedisCommands<String, String> redis = writer.sync();
+        redis.set("hello", "world");
+        redis.hset("myhash", "a", "1");
+        try (NearCache cache = NearCache.builder(client).build()) {
+            assertEquals("world", cache.get("hello"));
+            assertEquals("1", cache.hget("myhash", "a"));
+            assertNull(cache.hget("myhash", "b"));
+
+            redis.set("hello", "redis");
+            await(() -> cache.stats().getInvalidations() == 1);
+            assertEquals("redis", cache.get("hello"));
+
+            redis.hset("myhash", "b", "2");
+            await(() -> cache.stats().getInvalidations() == 3);
+            assertEquals("2", cache.hget("myhash", "b"));
+            // HSET invalidates the whole key, so field a is loaded again as well.
+            assertEquals("1", cache.hget("myhash", "a"));
+            assertEquals(6, cache.stats().getMisses());
+        }
+    }
+
+    @Test
+    public void cachesMissingKeys() {
+        try (NearCache cache = NearCache.builder(client).build()) {
+            assertNull(cache.get("missing"));
+            assertNull(cache.get("missing"));
+            assertEquals(1, cache.stats().getHits());
+
+            writer.sync().set("missing", "found");
+            await(() -> cache.stats().getInvalidations() == 1);
+            assertEquals("found", cache.get("missing"));
+        }
+        try (NearCache cache = NearCache.builder(client).cacheNulls(false).build()) {
+            assertNull(cache.get("other"));
+            assertNull(cache.get("other"));
+            assertEquals(0, cache.stats().getHits());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        try (NearCache cache = NearCache.builder(client).maximumSize(2).concurrencyLevel(1).build()) {
+            cache.get("a");
+            cache.get("b");
+            cache.get("a");
+            cache.get("c");
+            assertEquals(1, cache.stats().getEvictions());
+
+            cache.get("a");
+            assertEquals(2, cache.stats().getHits());
+            cache.get("b");
+            assertEquals(2, cache.stats().getEvictions());
+        }
+    }
+
+    @Test
+    public void evictsByWeight() {
+        char[] chars = new char[1000];
+        String large = new String(chars).replace('\0', 'x');
+        writer.sync().set("large", large);
+        try (NearCache cache = NearCache.builder(client).maximumWeight(2100).concurrencyLevel(1).build()) {
+            cache.get("small");
+            assertEquals(large, cache.get("large"));
+            assertEquals(1, cache.stats().getEvictions());
+            assertTrue(cache.stats().getWeight() <= 2100);
+        }
+    }
+
+    @Test
+    public void broadcastModeInvalidatesByPrefix() {
+        try (NearCache cache = NearCache.builder(client).broadcast("user:").build()) {
+            cache.get("user:1");
+            cache.get("order:1");
+            writer.sync().set("order:1", "x");
+            writer.sync().set("user:1", "y");
+            await(() -> cache.stats().getInvalidations() == 1);
+            assertEquals("y", cache.get("user:1"));
+            // order:1 is outside the prefix, so its stale nil survives.
+            assertNull(cache.get("order:1"));
+        }
+    }
+
+    @Test
+    public void flushDropsEverything() {
+        try (NearCache cache = NearCache.builder(client).build()) {
+            cache.get("a");
+            cache.get("b");
+            server.flushAll();
+            await(() -> cache.stats().getSize() == 0);
+            assertEquals(2, cache.stats().getInvalidations());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("condition not met within 5s", System.nanoTime() < deadline);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.redislettuce.cache;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        connection = client.connect();
+        connection.sync().set("hot", "value");
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void identicalReadsInFlightShareOneCommand() {
+        SingleFlight flights = SingleFlight.builder().build();
+        RedisAsyncCommands<String, String> async = flights.wrap(connection.async());
+        // nothing leaves the client until the flush, so every GET below finds the first one in flight.
+        connection.setAutoFlushCommands(false);
+        List<RedisFuture<String>> gets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            gets.add(async.get("hot"));
+        }
+        RedisFuture<String> other = async.get("cold");
+        RedisFuture<Long> length = async.strlen("hot");
+        connection.flushCommands();
+        connection.setAutoFlushCommands(true);
+        for (RedisFuture<String> get : gets) {
+            assertEquals("value", LettuceFutures.awaitOrCancel(get, 1, TimeUnit.SECONDS));
+        }
+        assertEquals(null, LettuceFutures.awaitOrCancel(other, 1, TimeUnit.SECONDS));
+        assertEquals(5, (long) LettuceFutures.awaitOrCancel(length, 1, TimeUnit.SECONDS));
+
+        SingleFlight.Stats stats = flights.stats();
+        assertEquals(102, stats.getRequests());
+        assertEquals(3, stats.getExecuted());
+        assertEquals(99, stats.getJoined());
+        assertEquals(0, stats.getShared());
+
+        // without result sharing a read after the reply goes to redis again, writes are never coalesced.
+        async.set("hot", "changed");
+        assertEquals("changed", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+        assertEquals(4, flights.stats().getExecuted());
+    }
+
+    @Test
+    public void sharesResultsForTheConfiguredTime() throws InterruptedException {
+        SingleFlight flights = SingleFlight.builder().shareResultsFor(Duration.ofMillis(200)).build();
+        RedisAsyncCommands<String, String> async = flights.wrap(connection.async());
+        assertEquals("value", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+        connection.sync().set("hot", "changed");
+        assertEquals("value", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+        assertEquals(1, flights.stats().getShared());
+
+        Thread.sleep(250);
+        assertEquals("changed", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+        assertEquals(2, flights.stats().getExecuted());
+    }
+
+    @Test
+    public void errorsAndCancellationsStayWithTheirCallers() {
+        SingleFlight flights = SingleFlight.builder().shareResultsFor(Duration.ofMinutes(1)).build();
+        RedisAsyncCommands<String, String> async = flights.wrap(connection.async());
+        connection.setAutoFlushCommands(false);
+        RedisFuture<String> failing = async.hget("hot", "field");
+        RedisFuture<String> joined = async.hget("hot", "field");
+        RedisFuture<String> cancelled = async.get("hot");
+        RedisFuture<String> kept = async.get("hot");
+        cancelled.cancel(true);
+        connection.flushCommands();
+        connection.setAutoFlushCommands(true);
+
+        assertEquals("value", LettuceFutures.awaitOrCancel(kept, 1, TimeUnit.SECONDS));
+        for (RedisFuture<String> future : Arrays.asList(failing, joined)) {
+            try {
+                LettuceFutures.awaitOrCancel(future, 1, TimeUnit.SECONDS);
+                fail("expected WRONGTYPE");
+            } catch (RedisCommandExecutionException e) {
+                assertTrue(e.getMessage().startsWith("WRONGTYPE"));
+            }
+            assertTrue(future.getError().startsWith("WRONGTYPE"));
+        }
+        // the error was not kept: the next HGET is sent again, the GET result is still shared.
+        try {
+            LettuceFutures.awaitOrCancel(async.hget("hot", "field"), 1, TimeUnit.SECONDS);
+            fail("expected WRONGTYPE");
+        } catch (RedisCommandExecutionException expected) {
+        }
+        assertEquals("value", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+        SingleFlight.Stats stats = flights.stats();
+        assertEquals(3, stats.getExecuted());
+        assertEquals(2, stats.getJoined());
+        assertEquals(1, stats.getShared());
+    }
+
+    @Test
+    public void commandsThrowingWhenSentFailTheirJoinedCallers() throws Exception {
+        SingleFlight flights = SingleFlight.builder().build();
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch joinedIn = new CountDownLatch(1);
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> flights.execute("key", () -> {
+            sending.countDown();
+            try {
+                joinedIn.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalArgumentException("Key must not be null");
+        }));
+        assertTrue(sending.await(1, TimeUnit.SECONDS));
+        RedisFuture<Object> joined = flights.execute("key", () -> {
+            throw new AssertionError("joins the flight in progress");
+        });
+        joinedIn.countDown();
+
+        for (Future<Object> future : Arrays.asList(first, joined)) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("expected IllegalArgumentException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        assertEquals(1, flights.stats().getJoined());
+
+        // through the wrapper, lettuce's argument checks throw before anything is sent.
+        RedisAsyncCommands<String, String> async = flights.wrap(connection.async());
+        try {
+            async.get(null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("value", LettuceFutures.awaitOrCancel(async.get("hot"), 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void coalescesClusterReads() {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient clusterClient = RedisClusterClient.create(cluster.getUris());
+            try (StatefulRedisClusterConnection<String, String> clusterConnection = clusterClient.connect()) {
+                clusterConnection.sync().hset("user:1", "name", "lettuce");
+                SingleFlight flights = SingleFlight.builder().build();
+                RedisAdvancedClusterAsyncCommands<String, String> async = flights.wrap(clusterConnection.async());
+                clusterConnection.setAutoFlushCommands(false);
+                List<RedisFuture<String>> reads = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    reads.add(async.hget("user:1", "name"));
+                }
+                clusterConnection.flushCommands();
+                clusterConnection.setAutoFlushCommands(true);
+                for (RedisFuture<String> read : reads) {
+                    assertEquals("lettuce", LettuceFutures.awaitOrCancel(read, 1, TimeUnit.SECONDS));
+                }
+                assertEquals(1, flights.stats().getExecuted());
+            } finally {
+                clusterClient.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.redislettuce.cache;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteBehindCacheTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> cacheConnection;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        cacheConnection = client.connect();
+        connection = client.connect();
+        commands = connection.sync();
+    }
+
+    @After
+    public void tearDown() {
+        cacheConnection.close();
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void overwritesAreCoalesced() throws Exception {
+        try (WriteBehindCache cache = WriteBehindCache.builder(cacheConnection).lossWindow(Duration.ofHours(1))
+                .build()) {
+            for (int i = 0; i < 1000; i++) {
+                cache.set("phone", "value" + i, Duration.ofSeconds(15));
+            }
+            assertEquals("value999", cache.get("phone").get(1, TimeUnit.SECONDS));
+            assertNull(commands.get("phone"));
+
+            cache.flush().get(1, TimeUnit.SECONDS);
+            assertEquals("value999", commands.get("phone"));
+            assertTrue(commands.ttl("phone") > 10);
+            WriteBehindCache.Stats stats = cache.stats();
+            assertEquals(1000, stats.getWrites());
+            assertEquals(999, stats.getCoalesced());
+            assertEquals(1, stats.getFlushed());
+            assertEquals(0, stats.getBufferedKeys());
+        }
+    }
+
+    @Test
+    public void ttlRunsFromTheWrite() throws Exception {
+        commands.set("gone", "old");
+        try (WriteBehindCache cache = WriteBehindCache.builder(cacheConnection).lossWindow(Duration.ofHours(1))
+                .build()) {
+            cache.set("session", "state", Duration.ofMillis(1000));
+            cache.set("gone", "new", Duration.ofMillis(50));
+            Thread.sleep(300);
+            assertNull(cache.get("gone").get(1, TimeUnit.SECONDS));
+
+            cache.flush().get(1, TimeUnit.SECONDS);
+            long pttl = commands.pttl("session");
+            assertTrue(String.valueOf(pttl), pttl > 0 && pttl <= 700);
+            assertEquals(Long.valueOf(0), commands.exists("gone"));
+
+            cache.set("session", "forever");
+            cache.flush().get(1, TimeUnit.SECONDS);
+            assertEquals(Long.valueOf(-1), commands.pttl("session"));
+        }
+    }
+
+    @Test
+    public void hashesReadTheirOwnWrites() throws Exception {
+        commands.hset("myhash", "a", "1");
+        commands.hset("myhash", "b", "2");
+        try (WriteBehindCache cache = WriteBehindCache.builder(cacheConnection).lossWindow(Duration.ofHours(1))
+                .build()) {
+            cache.hset("myhash", "b", "3");
+            cache.hset("myhash", "c", "4");
+            assertEquals("3", cache.hget("myhash", "b").get(1, TimeUnit.SECONDS));
+            assertEquals("1", cache.hget("myhash", "a").get(1, TimeUnit.SECONDS));
+            Map<String, String> expected = new HashMap<>();
+            expected.put("a", "1");
+            expected.put("b", "3");
+            expected.put("c", "4");
+            assertEquals(expected, cache.hgetall("myhash").get(1, TimeUnit.SECONDS));
+            assertEquals("2", commands.hget("myhash", "b"));
+
+            cache.set("phone", "18902835052");
+            try {
+                cache.hset("phone", "field", "value");
+                fail();
+            } catch (RedisCommandExecutionException e) {
+                assertTrue(e.getMessage().startsWith("WRONGTYPE"));
+            }
+            try {
+                cache.get("myhash").get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandExecutionException);
+            }
+            cache.flush().get(1, TimeUnit.SECONDS);
+            assertEquals(expected, commands.hgetall("myhash"));
+            assertEquals(2, cache.stats().getFlushed());
+        }
+    }
+
+    @Test
+    public void hashOverAnExpiredStringReplacesTheKey() throws Exception {
+        // one key the server still holds as a string, one it holds as an older hash.
+        commands.set("flushed", "string");
+        commands.hset("unflushed", "old", "1");
+        try (WriteBehindCache cache = WriteBehindCache.builder(cacheConnection).lossWindow(Duration.ofHours(1))
+                .build()) {
+            cache.set("flushed", "string", Duration.ofMillis(50));
+            cache.set("unflushed", "string", Duration.ofMillis(50));
+            Thread.sleep(100);
+            cache.hset("flushed", "new", "2");
+            cache.hset("unflushed", "new", "2");
+            Map<String, String> expected = new HashMap<>();
+            expected.put("new", "2");
+            assertEquals(expected, cache.hgetall("unflushed").get(1, TimeUnit.SECONDS));
+            assertNull(cache.hget("unflushed", "old").get(1, TimeUnit.SECONDS));
+
+            cache.flush().get(1, TimeUnit.SECONDS);
+            assertEquals(expected, commands.hgetall("flushed"));
+            assertEquals(expected, commands.hgetall("unflushed"));
+            assertEquals(0, cache.stats().getFailed());
+        }
+    }
+
+    @Test
+    public void periodicFlushAndCloseWriteEverything() throws Exception {
+        WriteBehindCache cache = WriteBehindCache.builder(cacheConnection).lossWindow(Duration.ofMillis(20))
+                .maximumKeys(4).flushThreshold(2).build();
+        cache.set("first", "1");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (commands.get("first") == null && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("1", commands.get("first"));
+
+        // more keys than the buffer holds: writes wait for flushes to make room.
+        for (int i = 0; i < 100; i++) {
+            cache.set("key" + i, Integer.toString(i));
+        }
+        cache.close();
+        assertEquals(0, cache.getBufferedKeys());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.toString(i), commands.get("key" + i));
+        }
+        try {
+            cache.set("late", "x");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.redislettuce.cluster;
+
+import com.redislettuce.server.LocalRedisCluster;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterMultiKeyCommandsTest {
+
+    private LocalRedisCluster cluster;
+
+    private RedisClusterClient client;
+
+    private ClusterMultiKeyCommands commands;
+
+    @Before
+    public void setUp() {
+        cluster = LocalRedisCluster.start();
+        client = RedisClusterClient.create(cluster.getUris());
+        commands = ClusterMultiKeyCommands.builder(client).build();
+    }
+
+    @After
+    public void tearDown() {
+        commands.close();
+        client.shutdown();
+        cluster.close();
+    }
+
+    @Test
+    public void msetAndMgetAcrossAllNodes() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        assertEquals("OK", commands.mset(values));
+        for (int node = 0; node < cluster.size(); node++) {
+            assertTrue(dbsize(node) > 0);
+        }
+
+        List<String> keys = new ArrayList<>(values.keySet());
+        Collections.reverse(keys);
+        keys.add("missing");
+        keys.add("key7");
+        List<KeyValue<String, String>> result = commands.mget(keys);
+        assertEquals(keys.size(), result.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(KeyValue.just(keys.get(i), values.get(keys.get(i))), result.get(i));
+        }
+        assertFalse(result.get(100).hasValue());
+        assertEquals(KeyValue.just("key7", "value7"), result.get(101));
+    }
+
+    @Test
+    public void followsMovedAfterSlotMigration() {
+        commands.mset(Collections.singletonMap("hello", "world"));
+        int slot = SlotHash.getSlot("hello");
+        int from = cluster.slotOwner(slot);
+        int to = (from + 1) % cluster.size();
+        cluster.moveSlot(slot, to);
+
+        assertEquals(KeyValue.just("hello", "world"), commands.mget("hello").get(0));
+        assertEquals("OK", commands.mset(Collections.singletonMap("hello", "redis")));
+        assertEquals(KeyValue.just("hello", "redis"), commands.mget("hello").get(0));
+        assertEquals(0, dbsize(from));
+        assertEquals(1, dbsize(to));
+
+        // the MOVED triggered a topology refresh, later calls go to the new owner directly.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (commands.getConnection().getPartitions().getPartitionBySlot(slot).getUri().getPort()
+                != cluster.node(to).getPort()) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void followsAskDuringSlotMigration() {
+        int slot = SlotHash.getSlot("hello");
+        int from = cluster.slotOwner(slot);
+        int to = (from + 1) % cluster.size();
+        commands.mset(Collections.singletonMap("{hello}old", "stays"));
+        cluster.migrateSlot(slot, to);
+
+        commands.mset(Collections.singletonMap("hello", "world"));
+        assertEquals(1, dbsize(from));
+        assertEquals(1, dbsize(to));
+        assertEquals(KeyValue.just("hello", "world"), commands.mget("hello").get(0));
+        assertEquals(KeyValue.just("{hello}old", "stays"), commands.mget("{hello}old").get(0));
+
+        cluster.moveSlot(slot, to);
+        assertEquals(2, dbsize(to));
+    }
+
+    @Test
+    public void slotGroupsRunInParallel() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        commands.mset(values);
+        for (int node = 0; node < cluster.size(); node++) {
+            cluster.node(node).network().latency("MGET", Duration.ofMillis(50), Duration.ZERO);
+        }
+
+        long start = System.nanoTime();
+        List<KeyValue<String, String>> result = commands.mget(new ArrayList<>(values.keySet()));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(KeyValue.just("key29", "value29"), result.get(29));
+        // 30 slots one after the other would take 1.5s.
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 300);
+    }
+
+    private long dbsize(int node) {
+        RedisClient nodeClient = RedisClient.create(cluster.node(node).getUri());
+        try (StatefulRedisConnection<String, String> connection = nodeClient.connect()) {
+            return connection.sync().dbsize();
+        } finally {
+            nodeClient.shutdown();
+        }
+    }
+}
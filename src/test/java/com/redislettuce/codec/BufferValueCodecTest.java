@@ -0,0 +1,95 @@
+package com.redislettuce.codec;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BufferValueCodecTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, BufferValue> connection;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        connection = client.connect(BufferValueCodec.INSTANCE);
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void roundTripsLargeBinaryValues() {
+        byte[] bytes = new byte[10 * 1024 * 1024];
+        new Random(7).nextBytes(bytes);
+        RedisCommands<String, BufferValue> commands = connection.sync();
+        commands.set("blob", BufferValue.wrap(bytes));
+
+        try (BufferValue value = commands.get("blob")) {
+            assertEquals(bytes.length, value.size());
+            ByteBuffer buffer = value.buffer();
+            assertTrue(buffer.isReadOnly());
+            assertTrue(buffer.isDirect());
+            assertArrayEquals(bytes, value.toByteArray());
+        }
+        assertNull(commands.get("missing"));
+    }
+
+    @Test
+    public void writesFromByteBufferRemaining() {
+        ByteBuffer buffer = ByteBuffer.wrap("xxhello worldxx".getBytes(StandardCharsets.US_ASCII));
+        buffer.position(2).limit(13);
+        RedisCommands<String, BufferValue> commands = connection.sync();
+        commands.set("hello", BufferValue.wrap(buffer));
+        assertEquals(2, buffer.position());
+
+        try (BufferValue range = commands.getrange("hello", 6, -1)) {
+            assertEquals("world", range.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void decodesListElements() {
+        RedisCommands<String, BufferValue> commands = connection.sync();
+        commands.rpush("mylist", wrap("hello"), wrap("world"));
+        List<BufferValue> values = commands.lrange("mylist", 0, -1);
+        assertEquals("hello", values.get(0).toString(StandardCharsets.US_ASCII));
+        assertEquals("world", values.get(1).toString(StandardCharsets.US_ASCII));
+        values.forEach(BufferValue::release);
+    }
+
+    @Test
+    public void releaseIsIdempotent() {
+        connection.sync().set("hello", wrap("world"));
+        BufferValue value = connection.sync().get("hello");
+        value.release();
+        value.release();
+        assertEquals("BufferValue{size=released}", value.toString());
+    }
+
+    private static BufferValue wrap(String value) {
+        return BufferValue.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,183 @@
+package com.redislettuce.codec;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompressionCodecTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<byte[], byte[]> raw;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        raw = client.connect(ByteArrayCodec.INSTANCE);
+    }
+
+    @After
+    public void tearDown() {
+        raw.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void compressesLargeValuesAndReadsLegacyOnes() {
+        CompressionCodec<String, String> codec = CompressionCodec.builder(StringCodec.UTF8).threshold(128).build();
+        try (StatefulRedisConnection<String, String> connection = client.connect(codec);
+             StatefulRedisConnection<String, String> plain = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            String large = json(0, 40);
+            commands.set("large", large);
+            commands.set("small", "{\"id\":1}");
+            commands.hset("myhash", "profile", large);
+            plain.sync().set("legacy", large);
+
+            assertEquals(large, commands.get("large"));
+            assertEquals("{\"id\":1}", commands.get("small"));
+            assertEquals(large, commands.hget("myhash", "profile"));
+            assertEquals(large, commands.get("legacy"));
+            byte[] stored = raw.sync().get(bytes("large"));
+            assertArrayEquals(new byte[] { (byte) 0xFF, 0, (byte) 0xC0, 1 }, Arrays.copyOf(stored, 4));
+            assertTrue(stored.length * 4 < large.length());
+            assertEquals("{\"id\":1}", plain.sync().get("small"));
+
+            CompressionCodec.Stats stats = codec.stats();
+            assertEquals(3, stats.getValues());
+            assertEquals(2, stats.getCompressed());
+            assertEquals(1, stats.getBelowThreshold());
+            assertEquals(0, stats.getIncompressible());
+            assertEquals(2, stats.getDecompressed());
+            assertTrue(stats.toString(), stats.getRatio() > 3);
+            assertTrue(stats.getCompressNanos() > 0);
+        }
+    }
+
+    @Test
+    public void storesIncompressibleAndHeaderLikeBinaryValuesAsTheyAre() {
+        CompressionCodec<byte[], byte[]> codec = CompressionCodec.builder(ByteArrayCodec.INSTANCE).threshold(16)
+                .build();
+        try (StatefulRedisConnection<byte[], byte[]> connection = client.connect(codec)) {
+            RedisCommands<byte[], byte[]> commands = connection.sync();
+            byte[] random = new byte[4096];
+            new Random(3).nextBytes(random);
+            random[0] = (byte) 0xFF;
+            random[1] = 0;
+            random[2] = (byte) 0xC0;
+            byte[] header = { (byte) 0xFF, 0, (byte) 0xC0, 1 };
+            byte[] empty = new byte[0];
+            commands.set(bytes("random"), random);
+            commands.set(bytes("header"), header);
+            commands.set(bytes("empty"), empty);
+
+            assertArrayEquals(random, commands.get(bytes("random")));
+            assertArrayEquals(header, commands.get(bytes("header")));
+            assertArrayEquals(empty, commands.get(bytes("empty")));
+            byte[] stored = raw.sync().get(bytes("random"));
+            assertEquals(random.length + 4, stored.length);
+            assertArrayEquals(new byte[] { (byte) 0xFF, 0, (byte) 0xC0, 3 }, Arrays.copyOf(stored, 4));
+            assertEquals(1, codec.stats().getIncompressible());
+
+            // values written without the codec: MessagePack -1, -2 and -3 and a map, and a raw 0xFD byte.
+            byte[][] legacy = { { (byte) 0xFF }, { (byte) 0xFE }, { (byte) 0xFD, 7 },
+                    { (byte) 0x81, (byte) 0xA1, 'a', (byte) 0xFF } };
+            for (byte[] value : legacy) {
+                raw.sync().set(bytes("legacy"), value);
+                assertArrayEquals(value, commands.get(bytes("legacy")));
+            }
+        }
+    }
+
+    @Test
+    public void dictionaryCompressesSmallValues() {
+        try (StatefulRedisConnection<byte[], byte[]> connection = client.connect(ByteArrayCodec.INSTANCE)) {
+            for (int i = 0; i < 200; i++) {
+                connection.sync().set(bytes("user:" + i), bytes(json(i, 1)));
+                connection.sync().hset(bytes("users:" + i), bytes("profile"), bytes(json(i + 1000, 1)));
+            }
+            connection.sync().rpush(bytes("mylist"), bytes("skipped"));
+            List<byte[]> samples = CompressionDictionary.sample(connection, ScanArgs.Builder.matches("user*"), 100);
+            assertEquals(100, samples.size());
+
+            CompressionDictionary dictionary = CompressionDictionary.train(samples, 4096);
+            assertTrue(dictionary.size() > 0 && dictionary.size() <= 4096);
+            assertEquals(dictionary.id(), CompressionDictionary.of(dictionary.bytes()).id());
+
+            CompressionCodec<String, String> plain = CompressionCodec.builder(StringCodec.UTF8).threshold(32).build();
+            CompressionCodec<String, String> trained = CompressionCodec.builder(StringCodec.UTF8).threshold(32)
+                    .dictionary(dictionary).build();
+            String value = json(5000, 1);
+            int withoutDictionary = plain.encodeValue(value).remaining();
+            int withDictionary = trained.encodeValue(value).remaining();
+            assertTrue(withDictionary + " vs " + withoutDictionary, withDictionary * 2 < withoutDictionary);
+
+            try (StatefulRedisConnection<String, String> writer = client.connect(trained);
+                 StatefulRedisConnection<String, String> other = client.connect(plain)) {
+                writer.sync().set("compact", value);
+                assertEquals(value, writer.sync().get("compact"));
+                assertEquals(2, raw.sync().get(bytes("compact"))[3]);
+                try {
+                    other.sync().get("compact");
+                    fail();
+                } catch (RedisException e) {
+                    assertTrue(e.getMessage(), e.getMessage().contains("dictionary"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void trainingNeedsCommonContent() {
+        List<byte[]> samples = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 10; i++) {
+            byte[] sample = new byte[100];
+            random.nextBytes(sample);
+            samples.add(sample);
+        }
+        try {
+            CompressionDictionary.train(samples, 1024);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String json(int id, int orders) {
+        StringBuilder json = new StringBuilder("{\"id\":").append(id).append(",\"name\":\"user").append(id)
+                .append("\",\"email\":\"user").append(id).append("@example.com\",\"status\":\"active\",\"orders\":[");
+        for (int i = 0; i < orders; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"orderId\":").append(id * 100 + i)
+                    .append(",\"currency\":\"EUR\",\"shipping\":\"standard\",\"state\":\"delivered\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,205 @@
+package com.redislettuce.counter;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StripedCountersTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> counterConnection;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        counterConnection = client.connect();
+        connection = client.connect();
+        commands = connection.sync();
+    }
+
+    @After
+    public void tearDown() {
+        counterConnection.close();
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void flushAndGetReturnsExactValues() {
+        commands.set("number", "10");
+        try (StripedCounters counters = StripedCounters.builder(counterConnection)
+                .flushInterval(Duration.ofHours(1)).build()) {
+            for (int i = 0; i < 100; i++) {
+                counters.increment("number");
+                counters.incrementByFloat("float", 0.5);
+                counters.hincrementBy("hits", "home", 2);
+                counters.hincrementByFloat("revenue", "fr", 0.25);
+            }
+            assertEquals(4, counters.getDirtyCount());
+            assertEquals(null, commands.get("float"));
+
+            assertEquals(110, counters.flushAndGet("number"));
+            assertEquals(50.0, counters.flushAndGetFloat("float"), 0);
+            assertEquals(200, counters.flushAndGet("hits", "home"));
+            assertEquals(25.0, counters.flushAndGetFloat("revenue", "fr"), 0);
+            assertEquals(0, counters.flushAndGet("missing"));
+            assertEquals(110, counters.flushAndGet("number"));
+            assertEquals("110", commands.get("number"));
+        }
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws InterruptedException {
+        int threads = 8;
+        int increments = 50_000;
+        StripedCounters counters = StripedCounters.builder(counterConnection)
+                .flushInterval(Duration.ofMillis(5)).build();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < increments; i++) {
+                    counters.increment("events");
+                    counters.incrementByFloat("amount", 0.5);
+                    counters.hincrementBy("per-key", "k" + (i % 4), 1);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        counters.close();
+
+        assertEquals(String.valueOf(threads * increments), commands.get("events"));
+        assertEquals(threads * increments * 0.5, Double.parseDouble(commands.get("amount")), 0);
+        long perKey = 0;
+        for (String value : commands.hgetall("per-key").values()) {
+            perKey += Long.parseLong(value);
+        }
+        assertEquals(threads * increments, perKey);
+    }
+
+    @Test
+    public void thresholdTriggersFlush() throws InterruptedException {
+        try (StripedCounters counters = StripedCounters.builder(counterConnection)
+                .flushInterval(Duration.ofHours(1)).flushThreshold(3).build()) {
+            counters.increment("a");
+            counters.increment("b");
+            counters.increment("c");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (commands.get("c") == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals("1", commands.get("a"));
+            assertEquals("1", commands.get("c"));
+            assertEquals(0, counters.getDirtyCount());
+        }
+    }
+
+    @Test
+    public void closeWritesPendingAndRejectsLaterIncrements() {
+        StripedCounters counters = StripedCounters.builder(counterConnection).flushInterval(Duration.ofHours(1))
+                .build();
+        counters.incrementBy("pending", 42);
+        counters.close();
+        assertEquals("42", commands.get("pending"));
+        try {
+            counters.increment("pending");
+            fail("increment after close");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("closed"));
+        }
+        assertEquals("OK", counterConnection.sync().set("autoflush", "restored"));
+    }
+
+    @Test
+    public void dropsDeltasRedisRejects() {
+        commands.set("name", "alice");
+        try (StripedCounters counters = StripedCounters.builder(counterConnection)
+                .flushInterval(Duration.ofHours(1)).build()) {
+            counters.incrementBy("name", 5);
+            counters.increment("visits");
+            try {
+                counters.flush().join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandExecutionException);
+            }
+            assertEquals(1, counters.getFailedCount());
+            assertEquals(0, counters.getDirtyCount());
+            assertEquals("1", commands.get("visits"));
+
+            // not sent again by later flushes.
+            counters.flush().join();
+            assertEquals(1, counters.getFailedCount());
+            assertEquals("alice", commands.get("name"));
+        }
+    }
+
+    @Test
+    public void retriesTimedOutDeltasAtLeastOnce() throws InterruptedException {
+        client.setOptions(ClientOptions.builder()
+                .timeoutOptions(TimeoutOptions.builder().fixedTimeout(Duration.ofMillis(100)).build()).build());
+        server.network().latency("INCRBY", Duration.ofMillis(300), Duration.ZERO);
+        try (StatefulRedisConnection<String, String> timingOut = client.connect();
+             StripedCounters counters = StripedCounters.builder(timingOut).flushInterval(Duration.ofHours(1))
+                     .build()) {
+            counters.incrementBy("visits", 5);
+            try {
+                counters.flush().join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandTimeoutException);
+            }
+            assertEquals(0, counters.getFailedCount());
+            assertEquals(1, counters.getDirtyCount());
+
+            server.network().latency("INCRBY", Duration.ZERO, Duration.ZERO);
+            // the late reply is still ahead of the next one on the connection.
+            Thread.sleep(300);
+            counters.flush().join();
+            // the timed out INCRBY was applied by the server as well.
+            assertEquals("10", commands.get("visits"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroInterval() {
+        StripedCounters.builder(counterConnection).flushInterval(Duration.ZERO).build();
+    }
+}
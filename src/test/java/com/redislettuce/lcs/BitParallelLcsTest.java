@@ -0,0 +1,71 @@
+package com.redislettuce.lcs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitParallelLcsTest {
+
+    @Test
+    public void matchesDynamicProgramming() {
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            byte[] a = random(random, random.nextInt(300), 2 + random.nextInt(6));
+            byte[] b = random(random, random.nextInt(300), 2 + random.nextInt(6));
+            assertEquals(Arrays.toString(a) + " " + Arrays.toString(b), table(a, b), BitParallelLcs.length(a, b));
+        }
+        assertEquals(6, BitParallelLcs.length(bytes("ohmytext"), bytes("mynewtext")));
+        assertEquals(0, BitParallelLcs.length(new byte[0], bytes("abc")));
+        assertEquals(0, BitParallelLcs.length(bytes("abc"), new byte[0]));
+    }
+
+    @Test
+    public void stripesCarryBetweenEachOther() {
+        Random random = new Random(12);
+        for (int i = 0; i < 50; i++) {
+            byte[] a = random(random, 1 + random.nextInt(1000), 4);
+            byte[] b = random(random, random.nextInt(1000), 4);
+            int stripeSize = 1 + random.nextInt(200);
+            int[] carries = new int[b.length];
+            int total = 0;
+            for (int start = 0; start < a.length; start += stripeSize) {
+                BitParallelLcs stripe = new BitParallelLcs(a, start, Math.min(stripeSize, a.length - start));
+                for (int row = 0; row < b.length; row++) {
+                    carries[row] = stripe.step(b[row], carries[row]);
+                }
+                total += stripe.lcsLength();
+            }
+            assertEquals("stripe size " + stripeSize, table(a, b), total);
+        }
+    }
+
+    private static byte[] random(Random random, int length, int alphabet) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(alphabet));
+        }
+        return bytes;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int table(byte[] a, byte[] b) {
+        int[] previous = new int[b.length + 1];
+        int[] current = new int[b.length + 1];
+        for (byte x : a) {
+            for (int j = 1; j <= b.length; j++) {
+                current[j] = x == b[j - 1] ? previous[j - 1] + 1 : Math.max(previous[j], current[j - 1]);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length];
+    }
+}
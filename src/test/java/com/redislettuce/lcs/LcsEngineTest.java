@@ -0,0 +1,104 @@
+package com.redislettuce.lcs;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.StringMatchResult;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LcsEngineTest {
+
+    @Test
+    public void usesLcsCommandOnRedis7() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (LcsEngine lcs = LcsEngine.builder(client).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                connection.sync().mset(map("key1", "ohmytext", "key2", "mynewtext"));
+                assertEquals(7, lcs.getServerMajorVersion());
+                assertEquals(6, lcs.length("key1", "key2"));
+                assertEquals(6, lcs.clientSideLength("key1", "key2"));
+                assertEquals(0, lcs.length("key1", "missing"));
+                assertEquals("mytext", lcs.lcs("key1", "key2"));
+
+                StringMatchResult matches = lcs.matches("key1", "key2", 4);
+                assertEquals(6, matches.getLen());
+                List<StringMatchResult.MatchedPosition> positions = matches.getMatches();
+                assertEquals(1, positions.size());
+                assertEquals(4, positions.get(0).getA().getStart());
+                assertEquals(7, positions.get(0).getA().getEnd());
+                assertEquals(5, positions.get(0).getB().getStart());
+                assertEquals(8, positions.get(0).getB().getEnd());
+                assertEquals(4, positions.get(0).getMatchLen());
+                assertEquals(2, lcs.matches("key1", "key2", 0).getMatches().size());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackToClientSideBeforeRedis7() {
+        try (LocalRedisServer server = LocalRedisServer.builder().version("6.2.6").start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (LcsEngine lcs = LcsEngine.builder(client).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                connection.sync().mset(map("key1", "ohmytext", "key2", "mynewtext"));
+                assertEquals(6, lcs.getServerMajorVersion());
+                assertEquals(6, lcs.length("key1", "key2"));
+                assertEquals("mytext", lcs.lcs("key1", "key2"));
+                assertEquals(1, lcs.matches("key1", "key2", 4).getMatches().size());
+                assertEquals(2.0 * 6 / 17, lcs.similarity("key1", "key2"), 1e-9);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void streamsLargeValuesInStripesAndChunks() {
+        Random random = new Random(13);
+        byte[] a = new byte[120_000];
+        byte[] b = new byte[80_000];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = (byte) ('a' + random.nextInt(4));
+        }
+        for (int i = 0; i < b.length; i++) {
+            // mostly a copy of a with mutations, so the expected length is far from both bounds.
+            b[i] = random.nextInt(10) == 0 ? (byte) ('a' + random.nextInt(4)) : a[i + i / 2];
+        }
+        int expected = BitParallelLcs.length(a, b);
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (LcsEngine lcs = LcsEngine.builder(client).stripeSize(30_000).chunkSize(16_384).build();
+                 StatefulRedisConnection<String, byte[]> connection =
+                         client.connect(RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE))) {
+                connection.sync().set("a", a);
+                connection.sync().set("b", b);
+                // far above the server table limit, so computed on the client.
+                assertEquals(expected, lcs.length("a", "b"));
+                assertEquals(expected, lcs.length("b", "a"));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static Map<String, String> map(String... keyValues) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+}
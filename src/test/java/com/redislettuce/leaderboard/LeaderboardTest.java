@@ -0,0 +1,199 @@
+package com.redislettuce.leaderboard;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LeaderboardTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> boardConnection;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        boardConnection = client.connect();
+        connection = client.connect();
+        commands = connection.sync();
+    }
+
+    @After
+    public void tearDown() {
+        boardConnection.close();
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void coalescesIncrementsPerMember() {
+        try (Leaderboard board = Leaderboard.builder(boardConnection, "scores")
+                .flushInterval(Duration.ofHours(1)).build()) {
+            for (int i = 0; i < 1000; i++) {
+                board.increment("player" + (i % 10), 1);
+            }
+            board.setScore("player0", 5);
+            board.increment("player0", 2);
+            board.flush().join();
+
+            assertEquals(1002, board.getStats().getUpdates());
+            // nine ZINCRBY and one ZADD for player0.
+            assertEquals(10, board.getStats().getWriteCommands());
+            assertEquals(7.0, commands.zscore("scores", "player0"), 0);
+            assertEquals(100.0, commands.zscore("scores", "player9"), 0);
+        }
+    }
+
+    @Test
+    public void keepsTopWindowExactWithoutReloading() {
+        for (int i = 0; i < 300; i++) {
+            commands.zadd("scores", i, "player" + i);
+        }
+        try (Leaderboard board = Leaderboard.builder(boardConnection, "scores").windowSize(50)
+                .flushInterval(Duration.ofHours(1)).refreshInterval(Duration.ofHours(1)).build()) {
+            assertEquals(server(0, 9), board.top(10));
+            assertEquals(1, board.getStats().getWindowLoads());
+
+            Random random = new Random(7);
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 20; i++) {
+                    String member = "player" + random.nextInt(300);
+                    board.increment(member, random.nextInt(21) - 10);
+                }
+                if (round % 10 == 0) {
+                    board.setScore("player" + random.nextInt(300), random.nextInt(300));
+                    // a tie with another member, ordered by member like ZREVRANGE.
+                    board.setScore("player" + random.nextInt(300), 250);
+                }
+                board.flush().join();
+                assertEquals(server(0, 19), board.top(20));
+                assertEquals(server(5, 7), board.range(5, 7));
+            }
+            // members dropping out shorten the window, it is only reloaded when it gets too short.
+            assertEquals(server(0, 49), board.top(50));
+            long loads = board.getStats().getWindowLoads();
+            assertFalse(board.getStats().toString(), loads > 20);
+            assertEquals(server(100, 119), board.range(100, 119));
+            assertEquals(server(100, 119), board.range(100, 119));
+            assertEquals(board.getStats().toString(), loads, board.getStats().getWindowLoads());
+        }
+    }
+
+    @Test
+    public void looksUpRanksInOnePipeline() {
+        for (int i = 0; i < 300; i++) {
+            commands.zadd("scores", i, "player" + i);
+        }
+        try (Leaderboard board = Leaderboard.builder(boardConnection, "scores").windowSize(100)
+                .refreshInterval(Duration.ofMillis(100)).build()) {
+            board.top(1);
+            long before = board.getStats().getReadCommands();
+            Map<String, Long> ranks = board.ranks(Arrays.asList("player299", "player250", "player10", "nobody"));
+            assertEquals(0L, (long) ranks.get("player299"));
+            assertEquals(49L, (long) ranks.get("player250"));
+            assertEquals(289L, (long) ranks.get("player10"));
+            assertFalse(ranks.containsKey("nobody"));
+            // player299 and player250 are in the window.
+            assertEquals(2, board.getStats().getReadCommands() - before);
+
+            // updates of other clients are picked up after the refresh interval.
+            commands.zadd("scores", 1000, "other");
+            sleep(150);
+            assertEquals("other", board.top(1).get(0).getValue());
+        }
+    }
+
+    @Test
+    public void dropsUpdatesRedisRejects() {
+        commands.set("scores", "not a sorted set");
+        try (Leaderboard board = Leaderboard.builder(boardConnection, "scores")
+                .flushInterval(Duration.ofHours(1)).build()) {
+            board.increment("player0", 1);
+            board.setScore("player1", 5);
+            try {
+                board.flush().join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandExecutionException);
+            }
+            assertEquals(0, board.getStats().getPendingMembers());
+            commands.del("scores");
+            board.flush().join();
+            assertEquals(0, (long) commands.zcard("scores"));
+        }
+    }
+
+    @Test
+    public void resendsUpdatesThatFailedInTransport() {
+        client.setOptions(ClientOptions.builder()
+                .timeoutOptions(TimeoutOptions.builder().fixedTimeout(Duration.ofMillis(100)).build()).build());
+        server.network().latency("ZINCRBY", Duration.ofMillis(300), Duration.ZERO);
+        server.network().latency("ZADD", Duration.ofMillis(300), Duration.ZERO);
+        try (StatefulRedisConnection<String, String> timingOut = client.connect();
+             Leaderboard board = Leaderboard.builder(timingOut, "scores").flushInterval(Duration.ofHours(1))
+                     .build()) {
+            board.increment("player0", 2);
+            board.setScore("player1", 5);
+            try {
+                board.flush().join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RedisCommandTimeoutException);
+            }
+            assertEquals(2, board.getStats().getPendingMembers());
+            // newer updates apply after the ones put back.
+            board.increment("player0", 1);
+            board.increment("player1", 1);
+
+            server.network().reset();
+            // the late replies are still ahead of the next ones on the connection.
+            sleep(300);
+            board.flush().join();
+            // the timed out ZINCRBY was applied by the server as well.
+            assertEquals(5.0, commands.zscore("scores", "player0"), 0);
+            assertEquals(6.0, commands.zscore("scores", "player1"), 0);
+        }
+    }
+
+    private List<ScoredValue<String>> server(long start, long stop) {
+        return new ArrayList<>(commands.zrevrangeWithScores("scores", start, stop));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
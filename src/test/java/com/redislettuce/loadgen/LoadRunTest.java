@@ -0,0 +1,154 @@
+package com.redislettuce.loadgen;
+
+import com.redislettuce.LoadGenerator;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadRunTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void closedLoopRunsTheWholeMix() throws InterruptedException {
+        Workload workload = Workload.builder()
+                .mix(Workload.parseMix("get=4,set=2,incr=1,hget=1,hset=1,hgetall=1,lpush=1,rpop=1,lrange=1,"
+                        + "sadd=1,srem=1,sismember=1,zadd=1,zincrby=1,zscore=1,zrange=1"))
+                .keys(KeyDistribution.zipfian(1000, 0.99)).valueSize(10, 200).build();
+        List<LoadReport.Interval> seen = new ArrayList<>();
+        LoadReport report = LoadRun.builder(client).workload(workload).connections(2).concurrency(4)
+                .warmup(Duration.ofMillis(200)).duration(Duration.ofSeconds(1))
+                .reportInterval(Duration.ofMillis(250)).listener(seen::add).build().run();
+
+        assertEquals("closed", report.getMode());
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getOperations() > 100);
+        assertEquals(report.getOperations(), report.getServiceTime().getTotalCount());
+        assertEquals(EnumSet.allOf(Operation.class), report.getOperationResponseTimes().keySet());
+        long perOperation = 0;
+        for (Histogram histogram : report.getOperationResponseTimes().values()) {
+            perOperation += histogram.getTotalCount();
+        }
+        assertEquals(report.getOperations(), perOperation);
+        assertTrue(seen.size() >= 4);
+        assertEquals(seen, report.getIntervals());
+        assertTrue(report.toText().contains("zincrby"));
+    }
+
+    @Test
+    public void openLoopKeepsTheRate() throws InterruptedException {
+        LoadReport report = LoadRun.builder(client).rate(500).openLoop(true).warmup(Duration.ZERO)
+                .duration(Duration.ofSeconds(1)).reportInterval(Duration.ofMillis(500)).build().run();
+
+        assertEquals("open", report.getMode());
+        assertEquals(500, report.getOperations(), 5);
+        // the pacer measures from the scheduled time, which can only add to the time on the wire.
+        assertTrue(report.getResponseTime().getMaxValue() >= report.getServiceTime().getMaxValue());
+        String json = report.toJson();
+        assertTrue(json.contains("\"mode\": \"open\""));
+        assertTrue(json.contains("\"responseTimeMicros\": {\"count\": " + report.getOperations()));
+    }
+
+    @Test
+    public void throttledClosedLoopKeepsTheRate() throws InterruptedException {
+        LoadReport report = LoadRun.builder(client).connections(2).concurrency(2).rate(400)
+                .warmup(Duration.ZERO).duration(Duration.ofSeconds(1)).build().run();
+
+        assertEquals("throttled", report.getMode());
+        assertEquals(400, report.getOperations(), 8);
+    }
+
+    @Test
+    public void repliesMissingAfterTheDrainTimeoutCountAsErrors() throws InterruptedException {
+        server.network().latency("GET", Duration.ofSeconds(2), Duration.ZERO);
+        Workload workload = Workload.builder().mix(Workload.parseMix("get=1")).build();
+        LoadReport report = LoadRun.builder(client).workload(workload).rate(100).openLoop(true)
+                .warmup(Duration.ZERO).duration(Duration.ofMillis(500)).drainTimeout(Duration.ofMillis(100))
+                .build().run();
+
+        assertEquals(0, report.getOperations());
+        assertEquals(50, report.getUnanswered(), 2);
+        assertEquals(report.getUnanswered(), report.getErrors());
+        LoadReport.Interval last = report.getIntervals().get(report.getIntervals().size() - 1);
+        assertEquals(report.getUnanswered(), last.getErrors());
+        assertTrue(report.toText().contains("unanswered=" + report.getUnanswered()));
+    }
+
+    @Test
+    public void zipfianKeysAreSkewedAndScattered() {
+        Random random = new Random(1);
+        int[] zipfian = new int[1000];
+        int[] uniform = new int[1000];
+        KeyDistribution skewed = KeyDistribution.zipfian(1000, 0.99);
+        KeyDistribution flat = KeyDistribution.uniform(1000);
+        for (int i = 0; i < 100_000; i++) {
+            zipfian[(int) skewed.next(random)]++;
+            uniform[(int) flat.next(random)]++;
+        }
+        int hottest = 0;
+        for (int i = 1; i < zipfian.length; i++) {
+            if (zipfian[i] > zipfian[hottest]) {
+                hottest = i;
+            }
+        }
+        // rank 0 gets 1 / zeta(1000) of the picks, about 13%, and is not key 0.
+        assertTrue(zipfian[hottest] > 10_000);
+        assertTrue(hottest != 0);
+        for (int count : uniform) {
+            assertTrue(count < 200);
+        }
+    }
+
+    @Test
+    public void commandLineWritesJson() throws Exception {
+        File json = File.createTempFile("loadgen", ".json");
+        try {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            String uri = server.getUri().toURI().toString();
+            int status = LoadGenerator.run(new String[] { "--uri", uri, "--mix", "get=1,hset=1", "--duration", "500ms",
+                    "--warmup", "0s", "--interval", "250ms", "--value-size", "8-16", "--json", json.getPath() },
+                    new PrintStream(text, true, "UTF-8"));
+            assertEquals(0, status);
+            String output = new String(text.toByteArray(), StandardCharsets.UTF_8);
+            assertTrue(output, output.contains("response"));
+            String report = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+            assertTrue(report.contains("\"hset\": {\"count\": "));
+
+            assertEquals(2, LoadGenerator.run(new String[] { "--rate", "10", "--open", "--bogus", "1" },
+                    new PrintStream(new ByteArrayOutputStream(), true, "UTF-8")));
+        } finally {
+            json.delete();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.redislettuce.mapper;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HashRepositoryTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    private RedisCommands<String, String> commands;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+        connection = client.connect();
+        commands = connection.sync();
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void generatesMapperForAnnotatedClasses() {
+        HashMapper<User> mapper = HashMappers.get(User.class);
+        assertSame(UserHashMapper.INSTANCE, mapper);
+        assertEquals(Arrays.asList("name", "visits", "balance", "admin", "last-login", "status", "rating",
+                "verified", "grade", "avatar"), mapper.fieldNames());
+        assertEquals(4, mapper.indexOf(ByteBuffer.wrap("last-login".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(-1, mapper.indexOf("cachedHash"));
+        assertSame(User_SessionHashMapper.INSTANCE, HashMappers.get(User.Session.class));
+    }
+
+    @Test
+    public void savesAndLoadsAllFieldTypes() {
+        HashRepository<User> users = HashRepository.of(connection, User.class);
+        User user = user();
+        users.save("user:1", user);
+
+        Map<String, String> stored = commands.hgetall("user:1");
+        assertEquals("ada", stored.get("name"));
+        assertEquals("12", stored.get("visits"));
+        assertEquals("1", stored.get("admin"));
+        assertEquals("1700000000000", stored.get("last-login"));
+        assertEquals("ACTIVE", stored.get("status"));
+        assertEquals("4.5", stored.get("rating"));
+        assertFalse(stored.containsKey("verified"));
+
+        User loaded = users.load("user:1");
+        assertEquals("ada", loaded.getName());
+        assertEquals(12, loaded.getVisits());
+        assertEquals(-3.25, loaded.getBalance(), 0);
+        assertTrue(loaded.isAdmin());
+        assertEquals(Long.valueOf(1_700_000_000_000L), loaded.lastLogin);
+        assertEquals(User.Status.ACTIVE, loaded.status);
+        assertEquals(4.5f, loaded.rating, 0);
+        assertNull(loaded.verified);
+        assertEquals('A', loaded.grade);
+        assertArrayEquals(new byte[]{1, 2, 3}, loaded.avatar);
+
+        assertNull(users.load("user:missing"));
+    }
+
+    @Test
+    public void readsSomeFieldsWithHmget() {
+        HashRepository<User> users = HashRepository.of(connection, User.class);
+        users.save("user:1", user());
+        commands.hset("user:1", "unknown", "ignored");
+
+        User partial = users.load("user:1", "visits", "status", "verified");
+        assertEquals(12, partial.getVisits());
+        assertEquals(User.Status.ACTIVE, partial.status);
+        assertNull(partial.getName());
+        assertNull(users.load("user:missing", "visits"));
+        assertEquals("ada", users.load("user:1").getName());
+    }
+
+    @Test
+    public void updatesOnlyChangedFields() {
+        HashRepository<User> users = HashRepository.of(connection, User.class);
+        users.save("user:1", user());
+        HashRepository.Tracked<User> tracked = users.loadTracked("user:1");
+        assertEquals(0, users.update(tracked));
+
+        commands.hset("user:1", "name", "changed elsewhere");
+        tracked.get().setVisits(13);
+        tracked.get().status = null;
+        tracked.get().avatar[0] = 9;
+        assertEquals(3, users.update(tracked));
+
+        Map<String, String> stored = commands.hgetall("user:1");
+        assertEquals("13", stored.get("visits"));
+        assertFalse(stored.containsKey("status"));
+        assertEquals("changed elsewhere", stored.get("name"));
+        assertEquals(0, users.update(tracked));
+    }
+
+    @Test
+    public void parsesIntegersWithoutStrings() {
+        assertEquals(Long.MIN_VALUE, HashValues.parseLong(buffer(String.valueOf(Long.MIN_VALUE))));
+        assertEquals(Long.MAX_VALUE, HashValues.parseLong(buffer(String.valueOf(Long.MAX_VALUE))));
+        assertEquals(-42, HashValues.parseLong(buffer("-42")));
+        for (String invalid : new String[]{"", "-", "1x", "9223372036854775808", "-9223372036854775809"}) {
+            try {
+                HashValues.parseLong(buffer(invalid));
+                throw new AssertionError(invalid);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+
+    private static ByteBuffer buffer(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setName("ada");
+        user.setVisits(12);
+        user.setBalance(-3.25);
+        user.setAdmin(true);
+        user.lastLogin = 1_700_000_000_000L;
+        user.status = User.Status.ACTIVE;
+        user.rating = 4.5f;
+        user.grade = 'A';
+        user.avatar = new byte[]{1, 2, 3};
+        return user;
+    }
+}
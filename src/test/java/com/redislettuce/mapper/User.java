@@ -0,0 +1,74 @@
+package com.redislettuce.mapper;
+
+@RedisHash
+public class User {
+
+    public enum Status {
+        ACTIVE, BANNED
+    }
+
+    static final String PREFIX = "user:";
+
+    private String name;
+
+    private long visits;
+
+    private double balance;
+
+    private boolean admin;
+
+    @HashField("last-login")
+    Long lastLogin;
+
+    Status status;
+
+    float rating;
+
+    Boolean verified;
+
+    char grade;
+
+    byte[] avatar;
+
+    transient int cachedHash;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getVisits() {
+        return visits;
+    }
+
+    public void setVisits(long visits) {
+        this.visits = visits;
+    }
+
+    public double getBalance() {
+        return balance;
+    }
+
+    public void setBalance(double balance) {
+        this.balance = balance;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    public void setAdmin(boolean admin) {
+        this.admin = admin;
+    }
+
+    @RedisHash
+    public static class Session {
+
+        String token;
+
+        int ttl;
+    }
+}
@@ -0,0 +1,161 @@
+package com.redislettuce.metrics;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.resource.ClientResources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandMetricsTest {
+
+    private LocalRedisServer server;
+
+    private CommandMetrics metrics;
+
+    private ClientResources resources;
+
+    private RedisClient client;
+
+    private StatefulRedisConnection<String, String> connection;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        metrics = CommandMetrics.builder().build();
+        resources = metrics.configure(ClientResources.builder()).build();
+        client = RedisClient.create(resources, server.getUri());
+        metrics.attach(client);
+        connection = client.connect();
+    }
+
+    @After
+    public void tearDown() {
+        connection.close();
+        client.shutdown();
+        resources.shutdown();
+        metrics.close();
+        server.close();
+    }
+
+    @Test
+    public void recordsLatenciesByCommandAndNode() {
+        RedisCommands<String, String> commands = connection.sync();
+        for (int i = 0; i < 100; i++) {
+            commands.set("key" + i, "value");
+            commands.get("key" + i);
+        }
+        commands.set("text", "abc");
+        try {
+            commands.incr("text");
+            fail("INCR on a string must fail");
+        } catch (RedisCommandExecutionException expected) {
+        }
+
+        // command listeners are notified after the caller got its reply.
+        CommandMetrics.Snapshot snapshot = awaitSnapshot(s -> s.getErrors() == 1 && s.getInFlight() == 0);
+        assertEquals(100, snapshot.getCommands().get("GET").getCount());
+        assertEquals(101, snapshot.getCommands().get("SET").getCount());
+        assertEquals(1, snapshot.getCommands().get("INCR").getErrors());
+        assertEquals(1, snapshot.getErrors());
+        assertEquals(0, snapshot.getInFlight());
+        assertEquals(0, snapshot.getQueueDepth());
+        assertTrue(snapshot.getBytesIn() > 0);
+        assertTrue(snapshot.getBytesOut() > 100 * "key0".length());
+
+        CommandMetrics.LatencySnapshot node = snapshot.getNodes().get("127.0.0.1:" + server.getPort());
+        assertTrue(node.getCount() >= 202);
+        assertTrue(node.getP50Micros() <= node.getP99Micros());
+        assertTrue(node.getP99Micros() <= node.getMaxMicros());
+    }
+
+    @Test
+    public void exportsJmxAndPrometheus() throws Exception {
+        connection.sync().set("hello", "world");
+        connection.sync().get("hello");
+
+        ObjectName name = metrics.registerMBean("test");
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        TabularData commands = (TabularData) mbeans.getAttribute(name, "Commands");
+        CompositeData get = (CompositeData) commands.get(new Object[] { "GET" }).get("value");
+        assertEquals(1L, get.get("count"));
+        assertTrue((Long) mbeans.getAttribute(name, "BytesOut") > 0);
+
+        try (PrometheusEndpoint endpoint = PrometheusEndpoint.start(metrics, new InetSocketAddress("127.0.0.1", 0))) {
+            URL url = new URL("http://127.0.0.1:" + endpoint.getAddress().getPort() + "/metrics");
+            HttpURLConnection http = (HttpURLConnection) url.openConnection();
+            assertEquals(200, http.getResponseCode());
+            assertEquals(PrometheusEndpoint.CONTENT_TYPE, http.getContentType());
+            String body = read(http.getInputStream());
+            assertTrue(body, body.contains("# TYPE redis_client_command_latency_seconds summary\n"));
+            assertTrue(body, body.contains("redis_client_command_latency_seconds_count{command=\"GET\"} 1\n"));
+            assertTrue(body, body.contains("redis_client_command_latency_seconds{command=\"GET\",quantile=\"0.99\"}"));
+            assertTrue(body, body.contains("redis_client_errors_total 0\n"));
+        }
+
+        metrics.close();
+        assertTrue(!mbeans.isRegistered(name));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        InetSocketAddress local = new InetSocketAddress("127.0.0.1", 50000);
+        InetSocketAddress remote = new InetSocketAddress("127.0.0.1", 6379);
+        for (int i = 0; i < 100_000; i++) {
+            metrics.recordCommandLatency(local, remote, CommandType.GET, 1000, 1000 + i);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            metrics.recordCommandLatency(local, remote, CommandType.GET, 1000, 1000 + i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(200_000, metrics.snapshot().getCommands().get("GET").getCount());
+    }
+
+    private CommandMetrics.Snapshot awaitSnapshot(Predicate<CommandMetrics.Snapshot> condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        CommandMetrics.Snapshot snapshot = metrics.snapshot();
+        while (!condition.test(snapshot) && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            snapshot = metrics.snapshot();
+        }
+        return snapshot;
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,143 @@
+package com.redislettuce.queue;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkQueueTest {
+
+    @Test
+    public void runsEveryJobOnceWithBoundedInFlight() throws InterruptedException {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try {
+                int jobs = 2000;
+                Set<String> seen = ConcurrentHashMap.newKeySet();
+                AtomicInteger running = new AtomicInteger();
+                AtomicInteger maxRunning = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(jobs);
+                WorkQueue queue = WorkQueue.builder(client, "jobs").workers(8).batchSize(50)
+                        .blockTimeout(Duration.ofMillis(100)).build();
+                queue.push(jobs(0, jobs / 2));
+                queue.start(job -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    assertTrue(seen.add(job));
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+                Thread.sleep(200);
+                // the consumer is idle in BLMPOP now and has to wake up for these.
+                queue.push(jobs(jobs / 2, jobs));
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                queue.close();
+
+                assertEquals(jobs, seen.size());
+                assertEquals(jobs, queue.getProcessed());
+                assertTrue(maxRunning.get() <= 8);
+                assertTrue("batched fetches: " + queue.getFetchCommands(), queue.getFetchCommands() < jobs / 10);
+                assertEquals(0, queue.getInFlight());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void reliableModeAcksAndRequeuesFailedJobs() throws InterruptedException {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                List<String> order = Collections.synchronizedList(new ArrayList<>());
+                Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+                CountDownLatch done = new CountDownLatch(100);
+                WorkQueue queue = WorkQueue.builder(client, "jobs").reliable(true).workers(4).batchSize(10)
+                        .blockTimeout(Duration.ofMillis(50)).build();
+                String processing = queue.getProcessingKey();
+                assertEquals("{jobs}:processing", processing);
+                queue.push(jobs(0, 100));
+                queue.start(job -> {
+                    if (Integer.parseInt(job.substring(3)) % 10 == 0 && failedOnce.add(job)) {
+                        throw new IllegalStateException("first attempt of " + job + " fails");
+                    }
+                    order.add(job);
+                    done.countDown();
+                });
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                queue.close();
+
+                assertEquals(100, order.size());
+                assertEquals(100, queue.getProcessed());
+                assertEquals(10, queue.getRequeued());
+                assertEquals(0, (long) commands.llen("jobs"));
+                assertEquals(0, (long) commands.llen(processing));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void recoverMovesUnfinishedJobsBack() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (StatefulRedisConnection<String, String> connection = client.connect();
+                 WorkQueue queue = WorkQueue.builder(client, "jobs").reliable(true).build()) {
+                RedisCommands<String, String> commands = connection.sync();
+                // a consumer took job0 and job1 and died.
+                commands.lpush(queue.getProcessingKey(), "job0", "job1");
+                queue.push("job2");
+                assertEquals(2, queue.recover());
+                assertEquals(3, queue.size());
+                assertEquals("job0", commands.rpop("jobs"));
+                assertEquals("job1", commands.rpop("jobs"));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void consumesFromCluster() throws InterruptedException {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            try {
+                CountDownLatch done = new CountDownLatch(300);
+                WorkQueue queue = WorkQueue.builder(client, "jobs").reliable(true).workers(4)
+                        .blockTimeout(Duration.ofMillis(50)).build();
+                queue.start(job -> done.countDown());
+                queue.push(jobs(0, 300));
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                queue.close();
+                assertEquals(300, queue.getProcessed());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static String[] jobs(int from, int to) {
+        String[] jobs = new String[to - from];
+        for (int i = from; i < to; i++) {
+            jobs[i - from] = "job" + i;
+        }
+        return jobs;
+    }
+}
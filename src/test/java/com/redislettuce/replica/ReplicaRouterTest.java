@@ -0,0 +1,158 @@
+package com.redislettuce.replica;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicaRouterTest {
+
+    private LocalRedisServer master;
+
+    private LocalRedisServer replica1;
+
+    private LocalRedisServer replica2;
+
+    private RedisClient client;
+
+    private ReplicaRouter router;
+
+    @Before
+    public void setUp() {
+        master = LocalRedisServer.start();
+        replica1 = LocalRedisServer.builder().replicaOf(master).start();
+        replica2 = LocalRedisServer.builder().replicaOf(master).start();
+        client = RedisClient.create();
+        router = ReplicaRouter.builder(client, master.getUri()).replicas(replica1.getUri(), replica2.getUri())
+                .pollInterval(Duration.ofMillis(20)).build();
+    }
+
+    @After
+    public void tearDown() {
+        router.close();
+        client.shutdown();
+        replica1.close();
+        replica2.close();
+        master.close();
+    }
+
+    @Test
+    public void writesGoToTheMasterAndReadsToReplicas() throws Exception {
+        RedisAsyncCommands<String, String> async = router.async();
+        async.set("phone", "18902835052").get(1, TimeUnit.SECONDS);
+        async.hset("myhash", "hellofield", "hello").get(1, TimeUnit.SECONDS);
+        awaitReplicas();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("18902835052", async.get("phone").get(1, TimeUnit.SECONDS));
+            assertEquals("hello", async.hget("myhash", "hellofield").get(1, TimeUnit.SECONDS));
+        }
+        ReplicaRouter.Stats stats = router.stats();
+        assertEquals(0, stats.getMasterReads());
+        assertEquals(200, stats.getReplicas().get(0).getReads() + stats.getReplicas().get(1).getReads());
+        assertTrue(stats.toString(), stats.getReplicas().get(0).isEligible() && stats.getReplicas().get(1).isEligible());
+    }
+
+    @Test
+    public void prefersTheFasterReplica() throws Exception {
+        replica2.network().latency(Duration.ofMillis(20), Duration.ZERO);
+        RedisAsyncCommands<String, String> async = router.async();
+        for (int i = 0; i < 100; i++) {
+            async.get("phone").get(1, TimeUnit.SECONDS);
+        }
+        ReplicaRouter.Stats stats = router.stats();
+        assertTrue(stats.toString(), stats.getReplicas().get(0).getReads() > 90);
+        assertTrue(stats.getReplicas().get(1).getLatencyMicros() > stats.getReplicas().get(0).getLatencyMicros());
+    }
+
+    @Test
+    public void laggingReplicasFallBackToTheMaster() throws Exception {
+        router.close();
+        router = ReplicaRouter.builder(client, master.getUri()).replicas(replica1.getUri(), replica2.getUri())
+                .pollInterval(Duration.ofMillis(20)).maxLag(0).build();
+        RedisAsyncCommands<String, String> async = router.async();
+        replica1.pauseReplication(true);
+        replica2.pauseReplication(true);
+        async.set("phone", "18902835052").get(1, TimeUnit.SECONDS);
+        Thread.sleep(100);
+
+        assertEquals("18902835052", async.get("phone").get(1, TimeUnit.SECONDS));
+        ReplicaRouter.Stats stats = router.stats();
+        assertEquals(1, stats.getFallbacks());
+        assertTrue(stats.toString(), stats.getReplicas().get(0).getLag() > 0 && !stats.getReplicas().get(0).isEligible());
+
+        replica1.pauseReplication(false);
+        replica2.pauseReplication(false);
+        Thread.sleep(100);
+        assertEquals("18902835052", async.get("phone").get(1, TimeUnit.SECONDS));
+        assertEquals(1, router.stats().getMasterReads());
+    }
+
+    @Test
+    public void sessionReadsItsOwnWrites() throws Exception {
+        replica1.replicationDelay(Duration.ofMillis(200));
+        replica2.replicationDelay(Duration.ofMillis(200));
+        RedisAsyncCommands<String, String> session = router.session();
+        session.set("phone", "18902835052").get(1, TimeUnit.SECONDS);
+
+        assertEquals("18902835052", session.get("phone").get(1, TimeUnit.SECONDS));
+        assertNull(router.async().get("phone").get(1, TimeUnit.SECONDS));
+        assertEquals(1, router.stats().getMasterReads());
+
+        Thread.sleep(400);
+        assertEquals("18902835052", session.get("phone").get(1, TimeUnit.SECONDS));
+        assertEquals(1, router.stats().getMasterReads());
+    }
+
+    @Test
+    public void sessionReadsFromReplicasWhileOthersKeepWriting() throws Exception {
+        replica1.replicationDelay(Duration.ofMillis(50));
+        replica2.replicationDelay(Duration.ofMillis(50));
+        RedisAsyncCommands<String, String> others = router.async();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; writing.get(); i++) {
+                try {
+                    others.set("counter", Integer.toString(i)).get(1, TimeUnit.SECONDS);
+                    Thread.sleep(2);
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        });
+        writer.start();
+        try {
+            RedisAsyncCommands<String, String> session = router.session();
+            session.set("phone", "18902835052").get(1, TimeUnit.SECONDS);
+            Thread.sleep(400);
+            assertEquals("PONG", session.ping().get(1, TimeUnit.SECONDS));
+            long masterReads = router.stats().getMasterReads();
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("18902835052", session.get("phone").get(1, TimeUnit.SECONDS));
+            }
+            assertEquals(masterReads, router.stats().getMasterReads());
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+    }
+
+    private void awaitReplicas() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while ((replica1.replicationOffset() < master.replicationOffset()
+                || replica2.replicationOffset() < master.replicationOffset()) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
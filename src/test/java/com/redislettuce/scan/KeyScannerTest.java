@@ -0,0 +1,131 @@
+package com.redislettuce.scan;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.KeyScanArgs;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyScannerTest {
+
+    @Test
+    public void scansKeysWithMatchAndType() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            StatefulRedisConnection<String, String> connection = client.connect();
+            RedisCommands<String, String> commands = connection.sync();
+            for (int i = 0; i < 1000; i++) {
+                commands.set("string:" + i, "v");
+                commands.hset("hash:" + i, "f", "v");
+            }
+            KeyScanner<String, String> scanner = KeyScanner.of(connection);
+
+            try (Stream<String> keys = scanner.keys()) {
+                assertEquals(2000, keys.distinct().count());
+            }
+            try (Stream<String> keys = scanner.keys(ScanArgs.Builder.matches("string:1*").limit(7))) {
+                assertEquals(111, keys.distinct().count());
+            }
+            Set<String> hashes = scanner.keysFlux(KeyScanArgs.Builder.type("hash").limit(50))
+                    .collect(Collectors.toSet()).block();
+            assertEquals(1000, hashes.size());
+            assertTrue(hashes.stream().allMatch(key -> key.startsWith("hash:")));
+
+            connection.close();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void scansHashSetAndSortedSetElements() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            StatefulRedisConnection<String, String> connection = client.connect();
+            RedisCommands<String, String> commands = connection.sync();
+            for (int i = 0; i < 500; i++) {
+                commands.hset("hash", "field" + i, "value" + i);
+                commands.sadd("set", "member" + i);
+                commands.zadd("zset", i, "member" + i);
+            }
+            KeyScanner<String, String> scanner = KeyScanner.of(connection);
+
+            Map<String, String> fields = scanner.hscan("hash", ScanArgs.Builder.limit(20))
+                    .collect(Collectors.toMap(KeyValue::getKey, KeyValue::getValue));
+            assertEquals(500, fields.size());
+            assertEquals("value42", fields.get("field42"));
+
+            assertEquals(500, scanner.sscan("set").distinct().count());
+            assertEquals(10L, (long) scanner.sscanFlux("set", ScanArgs.Builder.matches("member4?")).count().block());
+
+            List<ScoredValue<String>> entries = scanner.zscan("zset").collect(Collectors.toList());
+            assertEquals(500, entries.size());
+            for (ScoredValue<String> entry : entries) {
+                assertEquals(entry.getValue(), "member" + (int) entry.getScore());
+            }
+
+            connection.close();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void fluxPagesOnDemand() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            StatefulRedisConnection<String, String> connection = client.connect();
+            for (int i = 0; i < 10000; i++) {
+                connection.async().set("key" + i, "v");
+            }
+            connection.sync().ping();
+
+            List<String> first = KeyScanner.of(connection).keysFlux(ScanArgs.Builder.limit(100)).take(10)
+                    .collectList().block();
+            assertEquals(10, first.size());
+
+            connection.close();
+            client.shutdown();
+        }
+    }
+
+    @Test
+    public void scansAllClusterMastersInParallel() {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            StatefulRedisClusterConnection<String, String> connection = client.connect();
+            for (int i = 0; i < 1000; i++) {
+                connection.sync().set("key" + i, "v");
+            }
+            connection.sync().sadd("{key1}set", "a", "b", "c");
+            KeyScanner<String, String> scanner = KeyScanner.of(connection);
+
+            Set<String> keys = new HashSet<>();
+            scanner.keysFlux(KeyScanArgs.Builder.type("string").limit(10)).toIterable().forEach(keys::add);
+            assertEquals(1000, keys.size());
+
+            try (Stream<String> stream = scanner.keys(ScanArgs.Builder.matches("key99*"))) {
+                assertEquals(11, stream.count());
+            }
+            assertEquals(3, scanner.sscan("{key1}set").count());
+
+            connection.close();
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.redislettuce.script;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptLibraryTest {
+
+    private static final Script SUM = Script.of("sum", ScriptOutputType.INTEGER,
+            "local sum = 0\nfor i, key in ipairs(KEYS) do sum = sum + tonumber(redis.call('GET', key) or 0) end\n"
+                    + "return sum\n");
+
+    @Test
+    public void runsCompoundOperationsInOneCall() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (ScriptLibrary scripts = ScriptLibrary.builder(client).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+
+                assertTrue(scripts.setIfAbsent("lock", "owner-1", Duration.ofSeconds(30)));
+                assertFalse(scripts.setIfAbsent("lock", "owner-2", Duration.ofSeconds(30)));
+                assertTrue(commands.pttl("lock") > 0);
+                assertFalse(scripts.compareAndDelete("lock", "owner-2"));
+                assertTrue(scripts.compareAndDelete("lock", "owner-1"));
+                assertEquals(0, (long) commands.exists("lock"));
+
+                assertEquals(1, scripts.incrementWithTtl("rate", 1, Duration.ofMinutes(1)));
+                commands.pexpire("rate", 500_000);
+                assertEquals(6, scripts.incrementWithTtl("rate", 5, Duration.ofMinutes(1)));
+                assertTrue(commands.pttl("rate") > 60_000);
+
+                commands.set("version", "1");
+                assertFalse(scripts.compareAndSet("version", "0", "2"));
+                assertTrue(scripts.compareAndSet("version", "1", "2"));
+                assertEquals("2", commands.get("version"));
+
+                commands.rpush("queue", "a", "b", "c", "d", "e");
+                assertEquals(Arrays.asList("a", "b", "c"), scripts.moveItems("queue", "processing", 3));
+                assertEquals(Arrays.asList("d", "e"), scripts.moveItems("queue", "processing", 10));
+                assertEquals(Collections.emptyList(), scripts.moveItems("queue", "processing", 10));
+                assertEquals(Arrays.asList("a", "b", "c", "d", "e"), commands.lrange("processing", 0, -1));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void preloadsAndReloadsAfterScriptFlush() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (ScriptLibrary scripts = ScriptLibrary.builder(client).script(SUM).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                assertEquals(Arrays.asList(true, true), commands.scriptExists(SUM.getSha(),
+                        ScriptLibrary.MOVE_ITEMS.getSha()));
+
+                commands.set("a", "40");
+                commands.set("b", "2");
+                assertEquals(42L, (long) scripts.<Long>execute(SUM, new String[] { "a", "b", "c" }));
+
+                commands.scriptFlush();
+                assertEquals(42L, (long) scripts.<Long>execute(SUM, new String[] { "a", "b" }));
+                assertEquals(Collections.singletonList(true), commands.scriptExists(SUM.getSha()));
+
+                commands.set("text", "abc");
+                try {
+                    scripts.incrementWithTtl("text", 1, Duration.ofMinutes(1));
+                    fail("INCRBY on a string must fail");
+                } catch (RedisCommandExecutionException expected) {
+                    assertTrue(expected.getMessage(), expected.getMessage().contains("not an integer"));
+                }
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void preloadsOnEveryClusterNode() {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            try (ScriptLibrary scripts = ScriptLibrary.builder(client).build()) {
+                for (int i = 0; i < cluster.size(); i++) {
+                    RedisClient nodeClient = RedisClient.create(cluster.node(i).getUri());
+                    try (StatefulRedisConnection<String, String> node = nodeClient.connect()) {
+                        assertEquals(Collections.singletonList(true),
+                                node.sync().scriptExists(ScriptLibrary.INCREMENT_WITH_TTL.getSha()));
+                    } finally {
+                        nodeClient.shutdown();
+                    }
+                }
+
+                for (int i = 0; i < 20; i++) {
+                    assertEquals(1, scripts.incrementWithTtl("counter" + i, 1, Duration.ofMinutes(1)));
+                }
+                StatefulRedisClusterConnection<String, String> connection =
+                        (StatefulRedisClusterConnection<String, String>) scripts.getConnection();
+                connection.sync().rpush("{jobs}:queue", "1", "2");
+                List<String> moved = scripts.moveItems("{jobs}:queue", "{jobs}:processing", 5);
+                assertEquals(Arrays.asList("1", "2"), moved);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+}
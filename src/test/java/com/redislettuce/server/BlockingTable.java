@@ -0,0 +1,116 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clients blocked by BLMPOP or BLMOVE, per key in the order they blocked.
+ *
+ * A blocking command that finds nothing to pop throws {@link Blocked}; the connection then stops executing commands
+ * (later ones are kept in order) until the command succeeds or times out. After every command the waiters of keys
+ * that exist again are retried, oldest first, like redis serves its ready keys. Everything runs on the single
+ * command thread.
+ */
+class BlockingTable {
+
+    /**
+     * A connection waiting in a blocking command.
+     */
+    interface Waiter {
+
+        /**
+         * Runs the blocked command again.
+         *
+         * @return {@code false} if it is still blocked.
+         */
+        boolean retry();
+    }
+
+    /**
+     * Thrown by a blocking command that has to wait for one of {@code keys}.
+     */
+    static final class Blocked extends RuntimeException {
+
+        final List<String> keys;
+
+        final long timeoutMillis;
+
+        final boolean arrayReply;
+
+        /**
+         * @param timeoutMillis 0 waits forever.
+         * @param arrayReply reply a null array rather than a null bulk on timeout.
+         */
+        Blocked(List<String> keys, long timeoutMillis, boolean arrayReply) {
+            super(null, null, false, false);
+            this.keys = keys;
+            this.timeoutMillis = timeoutMillis;
+            this.arrayReply = arrayReply;
+        }
+    }
+
+    private final Keyspace keyspace;
+
+    private final Map<String, Set<Waiter>> waiters = new LinkedHashMap<>();
+
+    private boolean signalling;
+
+    private boolean again;
+
+    BlockingTable(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+
+    void block(Waiter waiter, List<String> keys) {
+        for (String key : keys) {
+            waiters.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(waiter);
+        }
+    }
+
+    void unblock(Waiter waiter, List<String> keys) {
+        for (String key : keys) {
+            Set<Waiter> blocked = waiters.get(key);
+            if (blocked != null) {
+                blocked.remove(waiter);
+                if (blocked.isEmpty()) {
+                    waiters.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retries the waiters of every key that exists after a command. A waiter that is served unblocks itself; the
+     * command it ran may feed other keys, so the scan repeats until nothing was served.
+     */
+    void afterCommand() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        if (signalling) {
+            again = true;
+            return;
+        }
+        signalling = true;
+        try {
+            do {
+                again = false;
+                for (String key : new ArrayList<>(waiters.keySet())) {
+                    Set<Waiter> blocked = waiters.get(key);
+                    while (blocked != null && !blocked.isEmpty() && keyspace.exists(key)) {
+                        if (!blocked.iterator().next().retry()) {
+                            break;
+                        }
+                        blocked = waiters.get(key);
+                    }
+                }
+            } while (again);
+        } finally {
+            signalling = false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.redislettuce.server;
+
+import io.lettuce.core.cluster.SlotHash;
+
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * Cluster commands, only registered on nodes of a {@link LocalRedisCluster}.
+ */
+class ClusterCommands {
+
+    static void register(CommandTable table, ClusterNode node) {
+        table.register("cluster", -2, (session, args, out) -> {
+            switch (upper(args[1])) {
+                case "NODES":
+                    out.bulk(node.cluster.nodes(node.index));
+                    break;
+                case "MYID":
+                    out.bulk(node.id());
+                    break;
+                case "KEYSLOT":
+                    if (args.length != 3) {
+                        throw RespError.syntax();
+                    }
+                    out.integer(SlotHash.getSlot(args[2]));
+                    break;
+                case "INFO":
+                    out.bulk("cluster_state:ok\r\ncluster_slots_assigned:" + SlotHash.SLOT_COUNT
+                            + "\r\ncluster_slots_ok:" + SlotHash.SLOT_COUNT + "\r\ncluster_known_nodes:"
+                            + node.cluster.size() + "\r\ncluster_size:" + node.cluster.size() + "\r\n");
+                    break;
+                default:
+                    throw new RespError("ERR unknown subcommand '" + str(args[1]) + "'");
+            }
+        });
+        table.register("asking", 1, (session, args, out) -> out.ok());
+        table.register("readonly", 1, (session, args, out) -> out.ok());
+        table.register("readwrite", 1, (session, args, out) -> out.ok());
+    }
+}
@@ -0,0 +1,154 @@
+package com.redislettuce.server;
+
+import io.lettuce.core.cluster.SlotHash;
+
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * One node's view of a {@link LocalRedisCluster}: decides whether a command may run here or has to be redirected
+ * with MOVED, ASK, TRYAGAIN or CROSSSLOT, the way a redis cluster node does.
+ */
+class ClusterNode {
+
+    final LocalRedisCluster cluster;
+
+    final int index;
+
+    private final Keyspace keyspace;
+
+    ClusterNode(LocalRedisCluster cluster, int index, Keyspace keyspace) {
+        this.cluster = cluster;
+        this.index = index;
+        this.keyspace = keyspace;
+    }
+
+    String id() {
+        return cluster.nodeId(index);
+    }
+
+    /**
+     * @return the error to reply with, or {@code null} if the command can run on this node.
+     */
+    String redirect(Session session, String name, byte[][] args) {
+        int first = firstKey(name, args.length);
+        int last = lastKey(name, args.length);
+        if (name.equals("EVAL") || name.equals("EVALSHA")) {
+            // keys are declared by numkeys, a script without keys runs anywhere.
+            long numKeys = args.length > 2 ? parseKeyCount(args[2]) : 0;
+            first = numKeys > 0 ? 3 : -1;
+            last = (int) Math.min(2 + numKeys, args.length - 1);
+        } else if (name.equals("LMPOP") || name.equals("BLMPOP")) {
+            int at = name.equals("LMPOP") ? 1 : 2;
+            long numKeys = args.length > at ? parseKeyCount(args[at]) : 0;
+            first = numKeys > 0 ? at + 1 : -1;
+            last = (int) Math.min(at + numKeys, args.length - 1);
+        }
+        if (first < 0) {
+            return null;
+        }
+        int step = keyStep(name);
+        int slot = SlotHash.getSlot(args[first]);
+        for (int i = first + step; i <= last; i += step) {
+            if (SlotHash.getSlot(args[i]) != slot) {
+                return "CROSSSLOT Keys in request don't hash to the same slot";
+            }
+        }
+
+        int owner = cluster.slotOwner(slot);
+        int migratingTo = cluster.migratingTo(slot);
+        if (owner != index) {
+            if (migratingTo == index && session.asking) {
+                return null;
+            }
+            return "MOVED " + slot + " " + cluster.address(owner);
+        }
+        if (migratingTo < 0) {
+            return null;
+        }
+        int missing = 0;
+        int keys = 0;
+        for (int i = first; i <= last; i += step) {
+            keys++;
+            if (!keyspace.exists(str(args[i]))) {
+                missing++;
+            }
+        }
+        if (missing == 0) {
+            return null;
+        }
+        if (missing == keys) {
+            return "ASK " + slot + " " + cluster.address(migratingTo);
+        }
+        return "TRYAGAIN Multiple keys request during rehashing of slot";
+    }
+
+    private static long parseKeyCount(byte[] arg) {
+        try {
+            return Long.parseLong(str(arg));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Position of the first key argument, -1 for commands without keys.
+     */
+    private static int firstKey(String name, int argc) {
+        switch (name) {
+            case "PING":
+            case "ECHO":
+            case "HELLO":
+            case "AUTH":
+            case "SELECT":
+            case "CLIENT":
+            case "INFO":
+            case "COMMAND":
+            case "CLUSTER":
+            case "ASKING":
+            case "READONLY":
+            case "READWRITE":
+            case "FLUSHALL":
+            case "FLUSHDB":
+            case "DBSIZE":
+            case "KEYS":
+            case "SCAN":
+            case "SCRIPT":
+            case "STRALGO":
+                return -1;
+            default:
+                return argc > 1 ? 1 : -1;
+        }
+    }
+
+    private static int lastKey(String name, int argc) {
+        switch (name) {
+            case "DEL":
+            case "UNLINK":
+            case "EXISTS":
+            case "MGET":
+            case "SINTER":
+            case "SUNION":
+            case "SDIFF":
+            case "SINTERSTORE":
+            case "SUNIONSTORE":
+            case "SDIFFSTORE":
+                return argc - 1;
+            case "MSET":
+            case "MSETNX":
+                return argc - 2;
+            case "RENAME":
+            case "SMOVE":
+            case "LMOVE":
+            case "BLMOVE":
+            case "RPOPLPUSH":
+            case "LCS":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int keyStep(String name) {
+        return name.equals("MSET") || name.equals("MSETNX") ? 2 : 1;
+    }
+}
@@ -0,0 +1,117 @@
+package com.redislettuce.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Name to implementation lookup for the commands the stand-in server understands.
+ */
+class CommandTable {
+
+    interface Command {
+
+        void execute(Session session, byte[][] args, RespWriter out);
+    }
+
+    static final class Spec {
+
+        final String name;
+
+        // redis convention: n means exactly n arguments including the command name, -n means at least n.
+        final int arity;
+
+        final Command command;
+
+        Spec(String name, int arity, Command command) {
+            this.name = name;
+            this.arity = arity;
+            this.command = command;
+        }
+
+        boolean accepts(int argc) {
+            return arity >= 0 ? argc == arity : argc >= -arity;
+        }
+    }
+
+    private final Map<String, Spec> commands = new HashMap<>();
+
+    void register(String name, int arity, Command command) {
+        commands.put(name.toUpperCase(Locale.ROOT), new Spec(name.toLowerCase(Locale.ROOT), arity, command));
+    }
+
+    Spec lookup(byte[] name) {
+        return commands.get(upper(name));
+    }
+
+    static String str(byte[] arg) {
+        return new String(arg, StandardCharsets.ISO_8859_1);
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static String upper(byte[] arg) {
+        return str(arg).toUpperCase(Locale.ROOT);
+    }
+
+    static long parseLong(byte[] arg) {
+        try {
+            return Long.parseLong(str(arg));
+        } catch (NumberFormatException e) {
+            throw RespError.notInteger();
+        }
+    }
+
+    static int parseInt(byte[] arg) {
+        long value = parseLong(arg);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw RespError.notInteger();
+        }
+        return (int) value;
+    }
+
+    static double parseDouble(byte[] arg) {
+        String value = str(arg);
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "inf":
+            case "+inf":
+                return Double.POSITIVE_INFINITY;
+            case "-inf":
+                return Double.NEGATIVE_INFINITY;
+            default:
+                try {
+                    double parsed = Double.parseDouble(value);
+                    if (Double.isNaN(parsed)) {
+                        throw RespError.notFloat();
+                    }
+                    return parsed;
+                } catch (NumberFormatException e) {
+                    throw RespError.notFloat();
+                }
+        }
+    }
+
+    /**
+     * Normalizes redis style [start, stop] indexes (negative counts from the end) against a length.
+     *
+     * @return {@code {start, stop}} with {@code start > stop} for an empty range.
+     */
+    static int[] range(long start, long stop, int length) {
+        if (start < 0) {
+            start = Math.max(0, length + start);
+        }
+        if (stop < 0) {
+            stop = length + stop;
+        }
+        if (stop >= length) {
+            stop = length - 1;
+        }
+        if (start > stop || start >= length) {
+            return new int[]{0, -1};
+        }
+        return new int[]{(int) start, (int) stop};
+    }
+}
@@ -0,0 +1,146 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * Connection handshake and server introspection commands.
+ */
+class ConnectionCommands {
+
+    static void register(CommandTable table, LocalRedisServer server) {
+        Keyspace keyspace = server.keyspace();
+        TrackingTable tracking = server.tracking();
+        String version = server.version();
+        String mode = server.clusterNode() == null ? "standalone" : "cluster";
+        table.register("ping", -1, (session, args, out) -> {
+            if (args.length > 1) {
+                out.bulk(args[1]);
+            } else {
+                out.simple("PONG");
+            }
+        });
+        table.register("echo", 2, (session, args, out) -> out.bulk(args[1]));
+        table.register("hello", -1, (session, args, out) -> {
+            int protocol = session.protocol;
+            int i = 1;
+            if (args.length > 1) {
+                long requested = parseLong(args[1]);
+                if (requested != 2 && requested != 3) {
+                    throw new RespError("NOPROTO unsupported protocol version");
+                }
+                protocol = (int) requested;
+                i = 2;
+            }
+            for (; i < args.length; i++) {
+                String option = upper(args[i]);
+                if (option.equals("AUTH") && i + 2 < args.length) {
+                    i += 2;
+                } else if (option.equals("SETNAME") && i + 1 < args.length) {
+                    session.clientName = str(args[++i]);
+                } else {
+                    throw RespError.syntax();
+                }
+            }
+            session.protocol = protocol;
+            out.mapHeader(7);
+            out.bulk("server");
+            out.bulk("redis");
+            out.bulk("version");
+            out.bulk(version);
+            out.bulk("proto");
+            out.integer(protocol);
+            out.bulk("id");
+            out.integer(session.id);
+            out.bulk("mode");
+            out.bulk(mode);
+            out.bulk("role");
+            out.bulk("master");
+            out.bulk("modules");
+            out.arrayHeader(0);
+        });
+        table.register("auth", -2, (session, args, out) -> out.ok());
+        table.register("select", 2, (session, args, out) -> {
+            if (parseLong(args[1]) != 0) {
+                throw new RespError("ERR DB index is out of range");
+            }
+            out.ok();
+        });
+        table.register("client", -2, (session, args, out) -> {
+            switch (upper(args[1])) {
+                case "SETNAME":
+                    if (args.length != 3) {
+                        throw RespError.syntax();
+                    }
+                    session.clientName = str(args[2]);
+                    out.ok();
+                    break;
+                case "GETNAME":
+                    out.bulk(session.clientName);
+                    break;
+                case "ID":
+                    out.integer(session.id);
+                    break;
+                case "TRACKING":
+                    tracking(tracking, session, args);
+                    out.ok();
+                    break;
+                default:
+                    throw new RespError("ERR unknown subcommand '" + str(args[1]) + "'");
+            }
+        });
+        table.register("info", -1, (session, args, out) -> out.bulk("# Server\r\nredis_version:" + version
+                + "\r\nredis_mode:" + mode + "\r\n\r\n# Clients\r\nconnected_clients:" + server.connectedClients()
+                + "\r\n\r\n# Replication\r\n" + server.replication().info() + "\r\n"
+                + "# Cluster\r\ncluster_enabled:" + (server.clusterNode() == null ? 0 : 1)
+                + "\r\n\r\n# Keyspace\r\ndb0:keys=" + keyspace.size() + "\r\n"));
+        table.register("command", -1, (session, args, out) -> out.arrayHeader(0));
+    }
+
+    /**
+     * CLIENT TRACKING ON|OFF [BCAST] [PREFIX prefix]... [NOLOOP]. REDIRECT, OPTIN and OPTOUT are not supported.
+     */
+    private static void tracking(TrackingTable tracking, Session session, byte[][] args) {
+        if (args.length < 3) {
+            throw RespError.syntax();
+        }
+        boolean on;
+        switch (upper(args[2])) {
+            case "ON":
+                on = true;
+                break;
+            case "OFF":
+                on = false;
+                break;
+            default:
+                throw RespError.syntax();
+        }
+        boolean bcast = false;
+        boolean noLoop = false;
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            String option = upper(args[i]);
+            if (option.equals("BCAST")) {
+                bcast = true;
+            } else if (option.equals("NOLOOP")) {
+                noLoop = true;
+            } else if (option.equals("PREFIX") && i + 1 < args.length) {
+                prefixes.add(str(args[++i]));
+            } else {
+                throw new RespError("ERR unsupported CLIENT TRACKING option '" + str(args[i]) + "'");
+            }
+        }
+        if (!prefixes.isEmpty() && !bcast) {
+            throw new RespError("ERR PREFIX option requires BCAST mode to be enabled");
+        }
+        if (on) {
+            tracking.enable(session, bcast, noLoop, prefixes);
+        } else {
+            tracking.disable(session);
+        }
+    }
+}
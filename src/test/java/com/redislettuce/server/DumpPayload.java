@@ -0,0 +1,165 @@
+package com.redislettuce.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.redislettuce.server.CommandTable.bytes;
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * Serialized values of DUMP and RESTORE. Laid out like a redis payload (type, value, 2 byte version, 8 byte
+ * checksum) so that clients treat it the same way, but the value encoding is this server's own: payloads only
+ * round-trip between stand-in servers.
+ */
+final class DumpPayload {
+
+    static final String INVALID = "ERR DUMP payload version or checksum are wrong";
+
+    private static final int VERSION = 9;
+
+    private static final byte STRING = 0;
+
+    private static final byte LIST = 1;
+
+    private static final byte SET = 2;
+
+    private static final byte ZSET = 3;
+
+    private static final byte HASH = 4;
+
+    private DumpPayload() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static byte[] dump(Object value) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            if (value instanceof byte[]) {
+                out.writeByte(STRING);
+                write(out, (byte[]) value);
+            } else if (value instanceof ArrayDeque) {
+                ArrayDeque<byte[]> list = (ArrayDeque<byte[]>) value;
+                out.writeByte(LIST);
+                out.writeInt(list.size());
+                for (byte[] element : list) {
+                    write(out, element);
+                }
+            } else if (value instanceof HashSet) {
+                HashSet<String> set = (HashSet<String>) value;
+                out.writeByte(SET);
+                out.writeInt(set.size());
+                for (String member : set) {
+                    write(out, bytes(member));
+                }
+            } else if (value instanceof HashMap) {
+                HashMap<String, byte[]> hash = (HashMap<String, byte[]>) value;
+                out.writeByte(HASH);
+                out.writeInt(hash.size());
+                for (Map.Entry<String, byte[]> field : hash.entrySet()) {
+                    write(out, bytes(field.getKey()));
+                    write(out, field.getValue());
+                }
+            } else {
+                ZSet zset = (ZSet) value;
+                out.writeByte(ZSET);
+                out.writeInt(zset.size());
+                for (ZSet.Entry entry : zset.ascending()) {
+                    write(out, bytes(entry.member));
+                    out.writeDouble(entry.score);
+                }
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(10).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putShort((short) VERSION);
+            out.write(trailer.array(), 0, 2);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.toByteArray());
+            trailer.putLong(crc.getValue());
+            out.write(trailer.array(), 2, 8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    static Object restore(byte[] payload) {
+        if (payload.length < 11) {
+            throw new RespError(INVALID);
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(payload, payload.length - 10, 10).order(ByteOrder.LITTLE_ENDIAN);
+        int version = trailer.getShort();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length - 8);
+        if (version > VERSION || trailer.getLong() != crc.getValue()) {
+            throw new RespError(INVALID);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(payload,
+                payload.length - 10)));
+        try {
+            byte type = in.readByte();
+            if (type == STRING) {
+                return read(in);
+            }
+            int size = in.readInt();
+            switch (type) {
+                case LIST:
+                    ArrayDeque<byte[]> list = new ArrayDeque<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(read(in));
+                    }
+                    return list;
+                case SET:
+                    HashSet<String> set = new HashSet<>();
+                    for (int i = 0; i < size; i++) {
+                        set.add(str(read(in)));
+                    }
+                    return set;
+                case HASH:
+                    HashMap<String, byte[]> hash = new HashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        hash.put(str(read(in)), read(in));
+                    }
+                    return hash;
+                case ZSET:
+                    ZSet zset = new ZSet();
+                    for (int i = 0; i < size; i++) {
+                        zset.add(str(read(in)), in.readDouble());
+                    }
+                    return zset;
+                default:
+                    throw new RespError("ERR Bad data format");
+            }
+        } catch (EOFException e) {
+            throw new RespError("ERR Bad data format");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new EOFException();
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package com.redislettuce.server;
+
+/**
+ * Redis style glob matching ({@code *}, {@code ?}, {@code [abc]}, {@code [^a-z]}, {@code \} escapes) as used by KEYS
+ * and the MATCH option of the SCAN family.
+ */
+final class Glob {
+
+    private Glob() {
+    }
+
+    static boolean matches(String pattern, String value) {
+        return matches(pattern, 0, value, 0);
+    }
+
+    private static boolean matches(String pattern, int p, String value, int v) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            switch (c) {
+                case '*':
+                    while (p + 1 < pattern.length() && pattern.charAt(p + 1) == '*') {
+                        p++;
+                    }
+                    if (p + 1 == pattern.length()) {
+                        return true;
+                    }
+                    for (int i = v; i <= value.length(); i++) {
+                        if (matches(pattern, p + 1, value, i)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case '?':
+                    if (v >= value.length()) {
+                        return false;
+                    }
+                    p++;
+                    v++;
+                    break;
+                case '[':
+                    if (v >= value.length()) {
+                        return false;
+                    }
+                    int end = pattern.indexOf(']', p + 1);
+                    if (end < 0) {
+                        return false;
+                    }
+                    if (!matchesClass(pattern, p + 1, end, value.charAt(v))) {
+                        return false;
+                    }
+                    p = end + 1;
+                    v++;
+                    break;
+                case '\\':
+                    if (p + 1 < pattern.length()) {
+                        p++;
+                        c = pattern.charAt(p);
+                    }
+                    // fall through: the escaped char is a literal
+                default:
+                    if (v >= value.length() || value.charAt(v) != c) {
+                        return false;
+                    }
+                    p++;
+                    v++;
+            }
+        }
+        return v == value.length();
+    }
+
+    private static boolean matchesClass(String pattern, int from, int to, char c) {
+        boolean negate = from < to && pattern.charAt(from) == '^';
+        boolean match = false;
+        for (int i = negate ? from + 1 : from; i < to; i++) {
+            char start = pattern.charAt(i);
+            if (i + 2 < to && pattern.charAt(i + 1) == '-') {
+                char end = pattern.charAt(i + 2);
+                if (c >= Math.min(start, end) && c <= Math.max(start, end)) {
+                    match = true;
+                }
+                i += 2;
+            } else if (start == c) {
+                match = true;
+            }
+        }
+        return negate != match;
+    }
+}
@@ -0,0 +1,128 @@
+package com.redislettuce.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.redislettuce.server.CommandTable.bytes;
+import static com.redislettuce.server.CommandTable.parseDouble;
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * Hash commands.
+ */
+class HashCommands {
+
+    @SuppressWarnings("unchecked")
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("hset", -4, (session, args, out) -> out.integer(hset(keyspace, args)));
+        table.register("hmset", -4, (session, args, out) -> {
+            hset(keyspace, args);
+            out.ok();
+        });
+        table.register("hsetnx", 4, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.getOrCreate(str(args[1]), HashMap.class, HashMap::new);
+            out.integer(hash.putIfAbsent(str(args[2]), args[3]) == null ? 1 : 0);
+        });
+        table.register("hincrby", 4, (session, args, out) -> {
+            long delta = parseLong(args[3]);
+            Map<String, byte[]> hash = keyspace.getOrCreate(str(args[1]), HashMap.class, HashMap::new);
+            String field = str(args[2]);
+            byte[] current = hash.get(field);
+            long value;
+            try {
+                value = Math.addExact(current == null ? 0 : parseLong(current), delta);
+            } catch (ArithmeticException e) {
+                throw new RespError("ERR increment or decrement would overflow");
+            }
+            hash.put(field, bytes(Long.toString(value)));
+            out.integer(value);
+        });
+        table.register("hincrbyfloat", 4, (session, args, out) -> {
+            double delta = parseDouble(args[3]);
+            Map<String, byte[]> hash = keyspace.getOrCreate(str(args[1]), HashMap.class, HashMap::new);
+            String field = str(args[2]);
+            byte[] current = hash.get(field);
+            double value = (current == null ? 0 : parseDouble(current)) + delta;
+            byte[] formatted = bytes(RespWriter.formatDouble(value));
+            hash.put(field, formatted);
+            out.bulk(formatted);
+        });
+        table.register("hexists", 3, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            out.integer(hash != null && hash.containsKey(str(args[2])) ? 1 : 0);
+        });
+        table.register("hkeys", 2, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            out.bulkArray(hash == null ? Collections.<String>emptySet() : hash.keySet());
+        });
+        table.register("hvals", 2, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            if (hash == null) {
+                out.arrayHeader(0);
+                return;
+            }
+            out.arrayHeader(hash.size());
+            for (byte[] value : hash.values()) {
+                out.bulk(value);
+            }
+        });
+        table.register("hget", 3, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            out.bulk(hash == null ? null : hash.get(str(args[2])));
+        });
+        table.register("hmget", -3, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            out.arrayHeader(args.length - 2);
+            for (int i = 2; i < args.length; i++) {
+                out.bulk(hash == null ? null : hash.get(str(args[i])));
+            }
+        });
+        table.register("hgetall", 2, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            if (hash == null) {
+                out.mapHeader(0);
+                return;
+            }
+            out.mapHeader(hash.size());
+            for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                out.bulk(entry.getKey());
+                out.bulk(entry.getValue());
+            }
+        });
+        table.register("hdel", -3, (session, args, out) -> {
+            String key = str(args[1]);
+            Map<String, byte[]> hash = keyspace.get(key, HashMap.class);
+            long removed = 0;
+            if (hash != null) {
+                for (int i = 2; i < args.length; i++) {
+                    if (hash.remove(str(args[i])) != null) {
+                        removed++;
+                    }
+                }
+                keyspace.removeIfEmpty(key, hash);
+            }
+            out.integer(removed);
+        });
+        table.register("hlen", 2, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            out.integer(hash == null ? 0 : hash.size());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long hset(Keyspace keyspace, byte[][] args) {
+        if (args.length % 2 != 0) {
+            throw new RespError("ERR wrong number of arguments for '" + str(args[0]).toLowerCase() + "' command");
+        }
+        Map<String, byte[]> hash = keyspace.getOrCreate(str(args[1]), HashMap.class, HashMap::new);
+        long added = 0;
+        for (int i = 2; i < args.length; i += 2) {
+            if (hash.put(str(args[i]), args[i + 1]) == null) {
+                added++;
+            }
+        }
+        return added;
+    }
+}
@@ -0,0 +1,157 @@
+package com.redislettuce.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * Generic keyspace commands.
+ */
+class KeyCommands {
+
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("flushall", -1, (session, args, out) -> {
+            keyspace.clear();
+            out.ok();
+        });
+        table.register("flushdb", -1, (session, args, out) -> {
+            keyspace.clear();
+            out.ok();
+        });
+        table.register("dbsize", 1, (session, args, out) -> out.integer(keyspace.keys().size()));
+        CommandTable.Command del = (session, args, out) -> {
+            long removed = 0;
+            for (int i = 1; i < args.length; i++) {
+                if (keyspace.remove(str(args[i]))) {
+                    removed++;
+                }
+            }
+            out.integer(removed);
+        };
+        table.register("del", -2, del);
+        table.register("unlink", -2, del);
+        table.register("keys", 2, (session, args, out) -> {
+            String pattern = str(args[1]);
+            List<String> matching = new ArrayList<>();
+            for (String key : keyspace.keys()) {
+                if (Glob.matches(pattern, key)) {
+                    matching.add(key);
+                }
+            }
+            out.bulkArray(matching);
+        });
+        table.register("type", 2, (session, args, out) -> out.simple(type(keyspace.get(str(args[1])))));
+        table.register("rename", 3, (session, args, out) -> {
+            String source = str(args[1]);
+            Object value = keyspace.get(source);
+            if (value == null) {
+                throw new RespError("ERR no such key");
+            }
+            long pttl = keyspace.pttl(source);
+            keyspace.remove(source);
+            String target = str(args[2]);
+            keyspace.put(target, value);
+            if (pttl > 0) {
+                keyspace.expireAt(target, System.currentTimeMillis() + pttl);
+            }
+            out.ok();
+        });
+        table.register("exists", -2, (session, args, out) -> {
+            long found = 0;
+            for (int i = 1; i < args.length; i++) {
+                if (keyspace.exists(str(args[i]))) {
+                    found++;
+                }
+            }
+            out.integer(found);
+        });
+        table.register("expire", 3, (session, args, out) ->
+                out.integer(expire(keyspace, str(args[1]), parseLong(args[2]) * 1000) ? 1 : 0));
+        table.register("pexpire", 3, (session, args, out) ->
+                out.integer(expire(keyspace, str(args[1]), parseLong(args[2])) ? 1 : 0));
+        table.register("ttl", 2, (session, args, out) -> {
+            long pttl = keyspace.pttl(str(args[1]));
+            out.integer(pttl < 0 ? pttl : (pttl + 500) / 1000);
+        });
+        table.register("pttl", 2, (session, args, out) -> out.integer(keyspace.pttl(str(args[1]))));
+        table.register("dump", 2, (session, args, out) -> {
+            Object value = keyspace.get(str(args[1]));
+            if (value == null) {
+                out.nullBulk();
+            } else {
+                out.bulk(DumpPayload.dump(value));
+            }
+        });
+        table.register("restore", -4, (session, args, out) -> {
+            String key = str(args[1]);
+            long ttl = parseLong(args[2]);
+            boolean replace = false;
+            boolean absolute = false;
+            for (int i = 4; i < args.length; i++) {
+                String option = upper(args[i]);
+                if (option.equals("REPLACE")) {
+                    replace = true;
+                } else if (option.equals("ABSTTL")) {
+                    absolute = true;
+                } else if ((option.equals("IDLETIME") || option.equals("FREQ")) && i + 1 < args.length) {
+                    i++;
+                } else {
+                    throw RespError.syntax();
+                }
+            }
+            if (ttl < 0) {
+                throw new RespError("ERR Invalid TTL value, must be >= 0");
+            }
+            if (!replace && keyspace.exists(key)) {
+                throw new RespError("BUSYKEY Target key name already exists.");
+            }
+            Object value = DumpPayload.restore(args[3]);
+            long expireAt = absolute ? ttl : System.currentTimeMillis() + ttl;
+            if (ttl > 0 && expireAt <= System.currentTimeMillis()) {
+                keyspace.remove(key);
+            } else {
+                keyspace.put(key, value);
+                if (ttl > 0) {
+                    keyspace.expireAt(key, expireAt);
+                }
+            }
+            out.ok();
+        });
+        table.register("persist", 2, (session, args, out) ->
+                out.integer(keyspace.exists(str(args[1])) && keyspace.persist(str(args[1])) ? 1 : 0));
+    }
+
+    static String type(Object value) {
+        if (value == null) {
+            return "none";
+        } else if (value instanceof byte[]) {
+            return "string";
+        } else if (value instanceof HashMap) {
+            return "hash";
+        } else if (value instanceof ArrayDeque) {
+            return "list";
+        } else if (value instanceof HashSet) {
+            return "set";
+        } else {
+            return "zset";
+        }
+    }
+
+    private static boolean expire(Keyspace keyspace, String key, long millis) {
+        if (!keyspace.exists(key)) {
+            return false;
+        }
+        if (millis <= 0) {
+            keyspace.remove(key);
+        } else {
+            keyspace.expireAt(key, System.currentTimeMillis() + millis);
+        }
+        return true;
+    }
+}
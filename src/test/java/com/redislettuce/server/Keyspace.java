@@ -0,0 +1,177 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The data of one stand-in server. Not thread-safe, all access happens on the server's single command thread.
+ *
+ * Values are {@code byte[]} (string), {@code HashMap<String, byte[]>} (hash), {@code ArrayDeque<byte[]>} (list),
+ * {@code HashSet<String>} (set) and {@link ZSet}. Keys, fields and members are ISO-8859-1 strings, which map
+ * one byte to one char and therefore round-trip arbitrary binary data.
+ */
+class Keyspace {
+
+    private final Map<String, Object> data = new HashMap<>();
+
+    private final Map<String, Long> expires = new HashMap<>();
+
+    // keys looked at by the current command, only recorded while some connection has CLIENT TRACKING on.
+    private final List<String> touched = new ArrayList<>();
+
+    private boolean recording;
+
+    private boolean flushed;
+
+    Object get(String key) {
+        touch(key);
+        Long expireAt = expires.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            expires.remove(key);
+            data.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Class<T> type) {
+        Object value = get(key);
+        if (value != null && !type.isInstance(value)) {
+            throw new RespError(RespError.WRONGTYPE);
+        }
+        return (T) value;
+    }
+
+    <T> T getOrCreate(String key, Class<T> type, Supplier<T> factory) {
+        T value = get(key, type);
+        if (value == null) {
+            value = factory.get();
+            data.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Stores a value and clears any TTL, like SET does.
+     */
+    void put(String key, Object value) {
+        touch(key);
+        data.put(key, value);
+        expires.remove(key);
+    }
+
+    /**
+     * Replaces the value of an existing key but keeps its TTL, like INCR or APPEND do.
+     */
+    void replace(String key, Object value) {
+        touch(key);
+        data.put(key, value);
+    }
+
+    boolean remove(String key) {
+        touch(key);
+        expires.remove(key);
+        return data.remove(key) != null;
+    }
+
+    boolean exists(String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Drops a collection value once it became empty, redis never keeps empty aggregates.
+     */
+    void removeIfEmpty(String key, Collection<?> value) {
+        if (value.isEmpty()) {
+            remove(key);
+        }
+    }
+
+    void removeIfEmpty(String key, Map<?, ?> value) {
+        if (value.isEmpty()) {
+            remove(key);
+        }
+    }
+
+    void expireAt(String key, long epochMillis) {
+        touch(key);
+        expires.put(key, epochMillis);
+    }
+
+    boolean persist(String key) {
+        touch(key);
+        return expires.remove(key) != null;
+    }
+
+    /**
+     * Remaining time to live in milliseconds, -1 without TTL and -2 if the key does not exist.
+     */
+    long pttl(String key) {
+        if (get(key) == null) {
+            return -2;
+        }
+        Long expireAt = expires.get(key);
+        return expireAt == null ? -1 : Math.max(0, expireAt - System.currentTimeMillis());
+    }
+
+    List<String> keys() {
+        List<String> keys = new ArrayList<>(data.size());
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Object>> it = data.entrySet().iterator(); it.hasNext(); ) {
+            String key = it.next().getKey();
+            Long expireAt = expires.get(key);
+            if (expireAt != null && expireAt <= now) {
+                expires.remove(key);
+                it.remove();
+            } else {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    int size() {
+        return data.size();
+    }
+
+    void clear() {
+        data.clear();
+        expires.clear();
+        flushed = true;
+    }
+
+    void recordTouches(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Keys touched since the last {@link #resetTouches()}, may contain duplicates.
+     */
+    List<String> touched() {
+        return touched;
+    }
+
+    /**
+     * Whether the keyspace was cleared since the last {@link #resetTouches()}.
+     */
+    boolean flushed() {
+        return flushed;
+    }
+
+    void resetTouches() {
+        touched.clear();
+        flushed = false;
+    }
+
+    private void touch(String key) {
+        if (recording) {
+            touched.add(key);
+        }
+    }
+}
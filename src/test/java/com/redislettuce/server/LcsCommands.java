@@ -0,0 +1,154 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * LCS (redis 7.0+) or STRALGO LCS (redis 6.x), depending on the version the server pretends to be.
+ *
+ * Same dynamic programming table and backtracking as t_string.c, so IDX returns the same ranges in the same
+ * (last to first) order as redis.
+ */
+class LcsCommands {
+
+    static void register(CommandTable table, Keyspace keyspace, String version) {
+        int major = Integer.parseInt(version.substring(0, version.indexOf('.')));
+        if (major >= 7) {
+            table.register("lcs", -3, (session, args, out) ->
+                    lcs(value(keyspace, args[1]), value(keyspace, args[2]), args, 3, out));
+        } else if (major == 6) {
+            table.register("stralgo", -2, (session, args, out) -> {
+                if (!upper(args[1]).equals("LCS") || args.length < 5) {
+                    throw new RespError("ERR syntax error");
+                }
+                String source = upper(args[2]);
+                if (source.equals("KEYS")) {
+                    lcs(value(keyspace, args[3]), value(keyspace, args[4]), args, 5, out);
+                } else if (source.equals("STRINGS")) {
+                    lcs(args[3], args[4], args, 5, out);
+                } else {
+                    throw new RespError("ERR syntax error");
+                }
+            });
+        }
+    }
+
+    private static byte[] value(Keyspace keyspace, byte[] key) {
+        byte[] value = keyspace.get(str(key), byte[].class);
+        return value == null ? new byte[0] : value;
+    }
+
+    private static void lcs(byte[] a, byte[] b, byte[][] args, int optionsFrom, RespWriter out) {
+        boolean len = false;
+        boolean idx = false;
+        boolean withMatchLen = false;
+        long minMatchLen = 0;
+        for (int i = optionsFrom; i < args.length; i++) {
+            String option = upper(args[i]);
+            if (option.equals("LEN")) {
+                len = true;
+            } else if (option.equals("IDX")) {
+                idx = true;
+            } else if (option.equals("WITHMATCHLEN")) {
+                withMatchLen = true;
+            } else if (option.equals("MINMATCHLEN") && i + 1 < args.length) {
+                minMatchLen = Math.max(0, parseLong(args[++i]));
+            } else {
+                throw new RespError("ERR syntax error");
+            }
+        }
+        if (len && idx) {
+            throw new RespError("ERR If you want both the length and indexes, please just use IDX.");
+        }
+
+        int alen = a.length;
+        int blen = b.length;
+        int[] table = new int[(alen + 1) * (blen + 1)];
+        for (int i = 1; i <= alen; i++) {
+            for (int j = 1; j <= blen; j++) {
+                table[j * (alen + 1) + i] = a[i - 1] == b[j - 1]
+                        ? table[(j - 1) * (alen + 1) + i - 1] + 1
+                        : Math.max(table[(j - 1) * (alen + 1) + i], table[j * (alen + 1) + i - 1]);
+            }
+        }
+        int length = table[blen * (alen + 1) + alen];
+        if (len) {
+            out.integer(length);
+            return;
+        }
+
+        byte[] result = new byte[length];
+        List<long[]> matches = new ArrayList<>();
+        int resultIndex = length;
+        int arangeStart = alen;
+        int arangeEnd = 0;
+        int brangeStart = 0;
+        int brangeEnd = 0;
+        int i = alen;
+        int j = blen;
+        while (i > 0 && j > 0) {
+            boolean emitRange = false;
+            if (a[i - 1] == b[j - 1]) {
+                result[--resultIndex] = a[i - 1];
+                if (arangeStart == alen) {
+                    arangeStart = i - 1;
+                    arangeEnd = i - 1;
+                    brangeStart = j - 1;
+                    brangeEnd = j - 1;
+                } else if (arangeStart == i && brangeStart == j) {
+                    arangeStart--;
+                    brangeStart--;
+                } else {
+                    emitRange = true;
+                }
+                if (arangeStart == 0 || brangeStart == 0) {
+                    emitRange = true;
+                }
+                i--;
+                j--;
+            } else {
+                if (table[j * (alen + 1) + i - 1] > table[(j - 1) * (alen + 1) + i]) {
+                    i--;
+                } else {
+                    j--;
+                }
+                if (arangeStart != alen) {
+                    emitRange = true;
+                }
+            }
+            if (emitRange) {
+                int matchLen = arangeEnd - arangeStart + 1;
+                if (minMatchLen == 0 || matchLen >= minMatchLen) {
+                    matches.add(new long[] { arangeStart, arangeEnd, brangeStart, brangeEnd, matchLen });
+                }
+                arangeStart = alen;
+            }
+        }
+
+        if (!idx) {
+            out.bulk(result);
+            return;
+        }
+        out.mapHeader(2);
+        out.bulk("matches");
+        out.arrayHeader(matches.size());
+        for (long[] match : matches) {
+            out.arrayHeader(withMatchLen ? 3 : 2);
+            out.arrayHeader(2);
+            out.integer(match[0]);
+            out.integer(match[1]);
+            out.arrayHeader(2);
+            out.integer(match[2]);
+            out.integer(match[3]);
+            if (withMatchLen) {
+                out.integer(match[4]);
+            }
+        }
+        out.bulk("len");
+        out.integer(length);
+    }
+}
@@ -0,0 +1,261 @@
+package com.redislettuce.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.range;
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * List commands.
+ */
+class ListCommands {
+
+    @SuppressWarnings("unchecked")
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("lpush", -3, (session, args, out) -> {
+            ArrayDeque<byte[]> list = keyspace.getOrCreate(str(args[1]), ArrayDeque.class, ArrayDeque::new);
+            for (int i = 2; i < args.length; i++) {
+                list.addFirst(args[i]);
+            }
+            out.integer(list.size());
+        });
+        table.register("rpush", -3, (session, args, out) -> {
+            ArrayDeque<byte[]> list = keyspace.getOrCreate(str(args[1]), ArrayDeque.class, ArrayDeque::new);
+            for (int i = 2; i < args.length; i++) {
+                list.addLast(args[i]);
+            }
+            out.integer(list.size());
+        });
+        table.register("llen", 2, (session, args, out) -> {
+            ArrayDeque<byte[]> list = keyspace.get(str(args[1]), ArrayDeque.class);
+            out.integer(list == null ? 0 : list.size());
+        });
+        table.register("lrange", 4, (session, args, out) -> {
+            ArrayDeque<byte[]> list = keyspace.get(str(args[1]), ArrayDeque.class);
+            if (list == null) {
+                out.arrayHeader(0);
+                return;
+            }
+            int[] bounds = range(parseLong(args[2]), parseLong(args[3]), list.size());
+            out.arrayHeader(bounds[1] - bounds[0] + 1);
+            Iterator<byte[]> it = list.iterator();
+            for (int index = 0; index <= bounds[1]; index++) {
+                byte[] element = it.next();
+                if (index >= bounds[0]) {
+                    out.bulk(element);
+                }
+            }
+        });
+        table.register("lindex", 3, (session, args, out) -> {
+            ArrayDeque<byte[]> list = keyspace.get(str(args[1]), ArrayDeque.class);
+            if (list == null) {
+                out.nullBulk();
+                return;
+            }
+            long index = parseLong(args[2]);
+            if (index < 0) {
+                index += list.size();
+            }
+            if (index < 0 || index >= list.size()) {
+                out.nullBulk();
+                return;
+            }
+            Iterator<byte[]> it = list.iterator();
+            for (long i = 0; i < index; i++) {
+                it.next();
+            }
+            out.bulk(it.next());
+        });
+        table.register("ltrim", 4, (session, args, out) -> {
+            String key = str(args[1]);
+            ArrayDeque<byte[]> list = keyspace.get(key, ArrayDeque.class);
+            if (list != null) {
+                int[] bounds = range(parseLong(args[2]), parseLong(args[3]), list.size());
+                int size = list.size();
+                for (int i = 0; i < size; i++) {
+                    byte[] element = list.pollFirst();
+                    if (i >= bounds[0] && i <= bounds[1]) {
+                        list.addLast(element);
+                    }
+                }
+                keyspace.removeIfEmpty(key, list);
+            }
+            out.ok();
+        });
+        table.register("lrem", 4, (session, args, out) -> {
+            String key = str(args[1]);
+            ArrayDeque<byte[]> list = keyspace.get(key, ArrayDeque.class);
+            long count = parseLong(args[2]);
+            long removed = 0;
+            if (list != null) {
+                long limit = count == 0 ? Long.MAX_VALUE : Math.abs(count);
+                Iterator<byte[]> it = count < 0 ? list.descendingIterator() : list.iterator();
+                while (it.hasNext() && removed < limit) {
+                    if (Arrays.equals(it.next(), args[3])) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+                keyspace.removeIfEmpty(key, list);
+            }
+            out.integer(removed);
+        });
+        table.register("lmove", 5, (session, args, out) ->
+                out.bulk(move(keyspace, str(args[1]), str(args[2]), isLeft(args[3]), isLeft(args[4]))));
+        table.register("rpoplpush", 3, (session, args, out) ->
+                out.bulk(move(keyspace, str(args[1]), str(args[2]), false, true)));
+        table.register("blmove", 6, (session, args, out) -> {
+            long timeout = timeoutMillis(args[5]);
+            String source = str(args[1]);
+            if (!keyspace.exists(source)) {
+                throw new BlockingTable.Blocked(Collections.singletonList(source), timeout, false);
+            }
+            out.bulk(move(keyspace, source, str(args[2]), isLeft(args[3]), isLeft(args[4])));
+        });
+        table.register("lmpop", -4, (session, args, out) -> {
+            if (!multiPop(keyspace, args, 1, out)) {
+                out.nullArray();
+            }
+        });
+        table.register("blmpop", -5, (session, args, out) -> {
+            long timeout = timeoutMillis(args[1]);
+            if (!multiPop(keyspace, args, 2, out)) {
+                throw new BlockingTable.Blocked(keys(args, 2), timeout, true);
+            }
+        });
+        table.register("lpop", -2, (session, args, out) -> pop(keyspace, args, out, true));
+        table.register("rpop", -2, (session, args, out) -> pop(keyspace, args, out, false));
+    }
+
+    private static boolean isLeft(byte[] arg) {
+        switch (CommandTable.upper(arg)) {
+            case "LEFT":
+                return true;
+            case "RIGHT":
+                return false;
+            default:
+                throw RespError.syntax();
+        }
+    }
+
+    /**
+     * Seconds as a double, like redis 6.0+ accepts them.
+     */
+    private static long timeoutMillis(byte[] arg) {
+        double seconds;
+        try {
+            seconds = Double.parseDouble(str(arg));
+        } catch (NumberFormatException e) {
+            throw new RespError("ERR timeout is not a float or out of range");
+        }
+        if (seconds < 0) {
+            throw new RespError("ERR timeout is negative");
+        }
+        return (long) Math.ceil(seconds * 1000);
+    }
+
+    /**
+     * The keys of [B]LMPOP: {@code numkeys key [key ...]} starting at {@code at}.
+     */
+    private static List<String> keys(byte[][] args, int at) {
+        long numKeys = parseLong(args[at]);
+        if (numKeys <= 0 || at + numKeys >= args.length) {
+            throw new RespError("ERR numkeys should be greater than 0");
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < numKeys; i++) {
+            keys.add(str(args[at + 1 + i]));
+        }
+        return keys;
+    }
+
+    /**
+     * LMPOP from the first non-empty key: {@code [key, [elements]]}.
+     *
+     * @return {@code false} (nothing written) if all keys are empty.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean multiPop(Keyspace keyspace, byte[][] args, int at, RespWriter out) {
+        List<String> keys = keys(args, at);
+        int next = at + 1 + keys.size();
+        boolean left = isLeft(args[next++]);
+        long count = 1;
+        if (next < args.length) {
+            if (next + 2 != args.length || !CommandTable.upper(args[next]).equals("COUNT")) {
+                throw RespError.syntax();
+            }
+            count = parseLong(args[next + 1]);
+            if (count <= 0) {
+                throw new RespError("ERR count should be greater than 0");
+            }
+        }
+        for (String key : keys) {
+            ArrayDeque<byte[]> list = keyspace.get(key, ArrayDeque.class);
+            if (list == null) {
+                continue;
+            }
+            int n = (int) Math.min(count, list.size());
+            out.arrayHeader(2);
+            out.bulk(key);
+            out.arrayHeader(n);
+            for (int i = 0; i < n; i++) {
+                out.bulk(left ? list.pollFirst() : list.pollLast());
+            }
+            keyspace.removeIfEmpty(key, list);
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    static byte[] move(Keyspace keyspace, String source, String destination, boolean fromLeft, boolean toLeft) {
+        ArrayDeque<byte[]> from = keyspace.get(source, ArrayDeque.class);
+        if (from == null) {
+            return null;
+        }
+        ArrayDeque<byte[]> to = keyspace.getOrCreate(destination, ArrayDeque.class, ArrayDeque::new);
+        byte[] element = fromLeft ? from.pollFirst() : from.pollLast();
+        if (toLeft) {
+            to.addFirst(element);
+        } else {
+            to.addLast(element);
+        }
+        keyspace.removeIfEmpty(source, from);
+        return element;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void pop(Keyspace keyspace, byte[][] args, RespWriter out, boolean head) {
+        if (args.length > 3) {
+            throw RespError.syntax();
+        }
+        String key = str(args[1]);
+        ArrayDeque<byte[]> list = keyspace.get(key, ArrayDeque.class);
+        if (args.length == 2) {
+            out.bulk(list == null ? null : head ? list.pollFirst() : list.pollLast());
+        } else {
+            long count = parseLong(args[2]);
+            if (count < 0) {
+                throw new RespError("ERR value is out of range, must be positive");
+            }
+            if (list == null) {
+                out.nullArray();
+                return;
+            }
+            int n = (int) Math.min(count, list.size());
+            out.arrayHeader(n);
+            for (int i = 0; i < n; i++) {
+                out.bulk(head ? list.pollFirst() : list.pollLast());
+            }
+        }
+        if (list != null) {
+            keyspace.removeIfEmpty(key, list);
+        }
+    }
+}
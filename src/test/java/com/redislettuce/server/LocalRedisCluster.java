@@ -0,0 +1,212 @@
+package com.redislettuce.server;
+
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.cluster.SlotHash;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A redis cluster made of in-process {@link LocalRedisServer} masters, enough for
+ * {@link io.lettuce.core.cluster.RedisClusterClient} to discover the topology (CLUSTER NODES) and for testing
+ * redirect handling.
+ *
+ * Slots are split evenly across the masters. {@link #moveSlot(int, int)} hands a slot and its keys to another
+ * node without telling the clients, so they get MOVED until they refresh their topology;
+ * {@link #migrateSlot(int, int)} leaves the slot in the middle of a migration, so the owner answers ASK
+ * for keys it does not have.
+ */
+public class LocalRedisCluster implements AutoCloseable {
+
+    private final List<LocalRedisServer> nodes = new ArrayList<>();
+
+    private final AtomicIntegerArray owners = new AtomicIntegerArray(SlotHash.SLOT_COUNT);
+
+    private final AtomicIntegerArray migratingTo = new AtomicIntegerArray(SlotHash.SLOT_COUNT);
+
+    private LocalRedisCluster(Builder builder) {
+        for (int slot = 0; slot < SlotHash.SLOT_COUNT; slot++) {
+            owners.set(slot, slot * builder.masters / SlotHash.SLOT_COUNT);
+            migratingTo.set(slot, -1);
+        }
+        try {
+            for (int i = 0; i < builder.masters; i++) {
+                nodes.add(LocalRedisServer.builder().version(builder.version).cluster(this, i).start());
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a cluster of three masters.
+     */
+    public static LocalRedisCluster start() {
+        return builder().start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public LocalRedisServer node(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Seed URIs for {@link io.lettuce.core.cluster.RedisClusterClient#create(Iterable)}.
+     */
+    public List<RedisURI> getUris() {
+        List<RedisURI> uris = new ArrayList<>(nodes.size());
+        for (LocalRedisServer node : nodes) {
+            uris.add(node.getUri());
+        }
+        return uris;
+    }
+
+    /**
+     * Index of the node serving {@code slot}.
+     */
+    public int slotOwner(int slot) {
+        return owners.get(slot);
+    }
+
+    /**
+     * Moves {@code slot} and the keys in it to node {@code to}. Not atomic with respect to commands for that slot
+     * running at the same time, they may miss keys that are in transit.
+     */
+    public void moveSlot(int slot, int to) {
+        int from = owners.get(slot);
+        if (from == to) {
+            migratingTo.set(slot, -1);
+            return;
+        }
+        migratingTo.set(slot, to);
+        List<MovedKey> moved = nodes.get(from).call(keyspace -> {
+            List<MovedKey> keys = new ArrayList<>();
+            for (String key : keyspace.keys()) {
+                if (SlotHash.getSlot(CommandTable.bytes(key)) == slot) {
+                    keys.add(new MovedKey(key, keyspace.get(key), keyspace.pttl(key)));
+                    keyspace.remove(key);
+                }
+            }
+            return keys;
+        });
+        nodes.get(to).call(keyspace -> {
+            for (MovedKey key : moved) {
+                keyspace.put(key.key, key.value);
+                if (key.pttl >= 0) {
+                    keyspace.expireAt(key.key, System.currentTimeMillis() + key.pttl);
+                }
+            }
+            return null;
+        });
+        owners.set(slot, to);
+        migratingTo.set(slot, -1);
+    }
+
+    /**
+     * Starts migrating {@code slot} to node {@code to} without moving any keys: the owner keeps serving keys it
+     * has and answers ASK for the others, {@code to} accepts commands for the slot after ASKING.
+     * {@link #moveSlot(int, int)} finishes the migration.
+     */
+    public void migrateSlot(int slot, int to) {
+        migratingTo.set(slot, to);
+    }
+
+    @Override
+    public void close() {
+        for (LocalRedisServer node : nodes) {
+            node.close();
+        }
+    }
+
+    int migratingTo(int slot) {
+        return migratingTo.get(slot);
+    }
+
+    String nodeId(int index) {
+        return String.format("%040x", index + 1);
+    }
+
+    String address(int index) {
+        LocalRedisServer node = nodes.get(index);
+        return node.getHost() + ":" + node.getPort();
+    }
+
+    /**
+     * CLUSTER NODES output as seen from node {@code myself}.
+     */
+    String nodes(int myself) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < nodes.size(); i++) {
+            int port = nodes.get(i).getPort();
+            out.append(nodeId(i)).append(' ').append(address(i)).append('@').append(port + 10000)
+                    .append(i == myself ? " myself,master" : " master").append(" - 0 0 ").append(i + 1)
+                    .append(" connected");
+            int start = -1;
+            for (int slot = 0; slot <= SlotHash.SLOT_COUNT; slot++) {
+                boolean owned = slot < SlotHash.SLOT_COUNT && owners.get(slot) == i;
+                if (owned && start < 0) {
+                    start = slot;
+                } else if (!owned && start >= 0) {
+                    out.append(' ').append(start);
+                    if (slot - 1 > start) {
+                        out.append('-').append(slot - 1);
+                    }
+                    start = -1;
+                }
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private static final class MovedKey {
+
+        final String key;
+
+        final Object value;
+
+        final long pttl;
+
+        MovedKey(String key, Object value, long pttl) {
+            this.key = key;
+            this.value = value;
+            this.pttl = pttl;
+        }
+    }
+
+    public static class Builder {
+
+        private int masters = 3;
+
+        private String version = "7.2.0";
+
+        private Builder() {
+        }
+
+        public Builder masters(int masters) {
+            this.masters = masters;
+            return this;
+        }
+
+        public Builder version(String version) {
+            this.version = version;
+            return this;
+        }
+
+        public LocalRedisCluster start() {
+            if (masters < 1) {
+                throw new IllegalArgumentException("Require at least one master, got " + masters);
+            }
+            return new LocalRedisCluster(this);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.redislettuce.server;
+
+import io.lettuce.core.RedisURI;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for a redis server, speaking RESP2 and RESP3 (after HELLO 3) over loopback.
+ *
+ * All connections share one event loop thread, which executes commands one at a time like redis does,
+ * so the data structures need no locking. Replies of a read burst go out with one flush, which keeps the
+ * server well ahead of a single client on loopback.
+ *
+ * Start it on an ephemeral port and point a client at {@link #getUri()}:
+ * <pre>
+ * try (LocalRedisServer server = LocalRedisServer.builder().latency(Duration.ofMillis(1), Duration.ofMillis(5)).start()) {
+ *     RedisClient client = RedisClient.create(server.getUri());
+ *     ...
+ * }
+ * </pre>
+ *
+ * Latency, jitter and bandwidth can also be changed while the server runs through {@link #network()}.
+ * {@code CLIENT TRACKING} (default and BCAST mode) sends RESP3 invalidation push messages, see {@link TrackingTable}.
+ * BLMPOP and BLMOVE block the connection until data arrives or they time out, see {@link BlockingTable}.
+ * A server started with {@link Builder#replicaOf(LocalRedisServer)} is a read-only replica that applies the
+ * writes of its master asynchronously; its lag can be controlled with {@link #pauseReplication(boolean)} and
+ * {@link #replicationDelay(Duration)}, see {@link Replication}.
+ */
+public class LocalRedisServer implements AutoCloseable {
+
+    private final EventLoopGroup bossGroup;
+
+    private final EventLoopGroup workerGroup;
+
+    private final Channel serverChannel;
+
+    private final Keyspace keyspace = new Keyspace();
+
+    private final NetworkProfile network;
+
+    private final TrackingTable tracking = new TrackingTable(keyspace);
+
+    private final BlockingTable blocking = new BlockingTable(keyspace);
+
+    private final String version;
+
+    private final ClusterNode clusterNode;
+
+    private final AtomicInteger connectedClients = new AtomicInteger();
+
+    private final CommandTable table = new CommandTable();
+
+    private final Replication replication;
+
+    // replicated writes run as this connection-less session, their replies are discarded.
+    private final Session replicationSession = new Session();
+
+    private final RespWriter replicationWriter = new RespWriter(replicationSession);
+
+    private final ByteBuf replicationReplies = Unpooled.buffer();
+
+    private LocalRedisServer(Builder builder) {
+        this.network = builder.network;
+        this.version = builder.version;
+        this.clusterNode = builder.cluster == null ? null
+                : new ClusterNode(builder.cluster, builder.clusterIndex, keyspace);
+        ConnectionCommands.register(table, this);
+        if (clusterNode != null) {
+            ClusterCommands.register(table, clusterNode);
+        }
+        KeyCommands.register(table, keyspace);
+        StringCommands.register(table, keyspace);
+        HashCommands.register(table, keyspace);
+        ListCommands.register(table, keyspace);
+        SetCommands.register(table, keyspace);
+        ZSetCommands.register(table, keyspace);
+        ScanCommands.register(table, keyspace);
+        ScriptCommands.register(table);
+        LcsCommands.register(table, keyspace, version);
+
+        this.bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("local-redis-accept", true));
+        this.workerGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("local-redis-io", true));
+        this.replication = new Replication(this, workerGroup.next());
+        try {
+            this.serverChannel = new ServerBootstrap()
+                    .group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .option(ChannelOption.SO_BACKLOG, 1024)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            connectedClients.incrementAndGet();
+                            ch.closeFuture().addListener(future -> connectedClients.decrementAndGet());
+                            ch.pipeline().addLast(new RespDecoder(),
+                                    new ServerHandler(table, network, tracking, clusterNode, blocking,
+                                            replication));
+                        }
+                    })
+                    .bind(builder.host, builder.port).sync().channel();
+            if (builder.master != null) {
+                builder.master.replication.attach(replication);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shutdownGroups();
+            throw new IllegalStateException("Interrupted while binding", e);
+        } catch (RuntimeException e) {
+            shutdownGroups();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a server on an ephemeral loopback port.
+     */
+    public static LocalRedisServer start() {
+        return builder().start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public String getHost() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getHostString();
+    }
+
+    public RedisURI getUri() {
+        return RedisURI.create(getHost(), getPort());
+    }
+
+    /**
+     * Latency and bandwidth applied to replies, can be changed at runtime.
+     */
+    public NetworkProfile network() {
+        return network;
+    }
+
+    /**
+     * Replica only: holds back the writes of the master while paused, they are applied in order on resume.
+     */
+    public void pauseReplication(boolean pause) {
+        replication.pause(pause);
+    }
+
+    /**
+     * Replica only: applies every write of the master this much later, zero to apply them right away.
+     */
+    public void replicationDelay(Duration delay) {
+        replication.delay(delay.toNanos());
+    }
+
+    /**
+     * The {@code master_repl_offset} of a master, the offset applied so far of a replica.
+     */
+    public long replicationOffset() {
+        return replication.offset();
+    }
+
+    /**
+     * Removes all keys and invalidates client side caches. Runs on the command thread, so it is ordered with
+     * respect to in-flight commands.
+     */
+    public void flushAll() {
+        workerGroup.submit(() -> {
+            keyspace.clear();
+            keyspace.resetTouches();
+            tracking.invalidateAll(null, null);
+        }).syncUninterruptibly();
+    }
+
+    Keyspace keyspace() {
+        return keyspace;
+    }
+
+    TrackingTable tracking() {
+        return tracking;
+    }
+
+    String version() {
+        return version;
+    }
+
+    ClusterNode clusterNode() {
+        return clusterNode;
+    }
+
+    int connectedClients() {
+        return connectedClients.get();
+    }
+
+    Replication replication() {
+        return replication;
+    }
+
+    /**
+     * Runs a write of the master on the command thread of this replica.
+     */
+    void replicate(byte[][] args) {
+        CommandTable.Spec spec = table.lookup(args[0]);
+        if (spec == null) {
+            return;
+        }
+        replicationWriter.target(replicationReplies);
+        try {
+            spec.command.execute(replicationSession, args, replicationWriter);
+        } catch (RuntimeException e) {
+            // the master ran it without an error, a replica failing it has nobody to tell.
+        }
+        tracking.afterCommand(replicationSession, CommandTable.upper(args[0]), replicationWriter);
+        blocking.afterCommand();
+        replicationReplies.clear();
+    }
+
+    /**
+     * Runs {@code action} on the command thread and waits for its result.
+     */
+    <T> T call(Function<Keyspace, T> action) {
+        return workerGroup.submit(() -> action.apply(keyspace)).syncUninterruptibly().getNow();
+    }
+
+    @Override
+    public void close() {
+        replication.close();
+        serverChannel.close().syncUninterruptibly();
+        shutdownGroups();
+    }
+
+    private void shutdownGroups() {
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    public static class Builder {
+
+        private String host = "127.0.0.1";
+
+        private int port;
+
+        private String version = "7.2.0";
+
+        private final NetworkProfile network = new NetworkProfile(42);
+
+        private LocalRedisCluster cluster;
+
+        private int clusterIndex;
+
+        private LocalRedisServer master;
+
+        private Builder() {
+        }
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Port to listen on, 0 (the default) picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Version reported by HELLO and INFO, e.g. to exercise fallbacks for older servers.
+         */
+        public Builder version(String version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Seed of the jitter random, runs with the same seed and command sequence see the same delays.
+         */
+        public Builder seed(long seed) {
+            network.seed(seed);
+            return this;
+        }
+
+        public Builder latency(Duration latency, Duration jitter) {
+            network.latency(latency, jitter);
+            return this;
+        }
+
+        public Builder latency(String command, Duration latency, Duration jitter) {
+            network.latency(command, latency, jitter);
+            return this;
+        }
+
+        public Builder bandwidth(long bytesPerSecond) {
+            network.bandwidth(bytesPerSecond);
+            return this;
+        }
+
+        /**
+         * Starts a replica of {@code master}, which must not have been written to yet.
+         */
+        public Builder replicaOf(LocalRedisServer master) {
+            this.master = master;
+            return this;
+        }
+
+        Builder cluster(LocalRedisCluster cluster, int index) {
+            this.cluster = cluster;
+            this.clusterIndex = index;
+            return this;
+        }
+
+        public LocalRedisServer start() {
+            return new LocalRedisServer(this);
+        }
+    }
+}
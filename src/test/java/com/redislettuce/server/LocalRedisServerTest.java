@@ -0,0 +1,266 @@
+package com.redislettuce.server;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.LMoveArgs;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocalRedisServerTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void resp3() {
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            exerciseDataTypes(connection.sync());
+        }
+    }
+
+    @Test
+    public void resp2() {
+        client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP2).build());
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            exerciseDataTypes(connection.sync());
+        }
+    }
+
+    @Test
+    public void commandLatency() {
+        server.network().latency("GET", Duration.ofMillis(50), Duration.ZERO);
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            long start = System.nanoTime();
+            commands.set("hello", "world");
+            assertTrue(elapsedMillis(start) < 50);
+
+            start = System.nanoTime();
+            assertEquals("world", commands.get("hello"));
+            assertTrue(elapsedMillis(start) >= 50);
+        }
+    }
+
+    @Test
+    public void delayedRepliesKeepPipelineOrder() throws Exception {
+        server.network().latency("GET", Duration.ofMillis(30), Duration.ofMillis(10));
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisAsyncCommands<String, String> commands = connection.async();
+            List<String> completions = Collections.synchronizedList(new ArrayList<>());
+            commands.get("missing").thenRun(() -> completions.add("get"));
+            RedisFuture<String> ping = commands.ping();
+            ping.thenRun(() -> completions.add("ping"));
+            ping.get(1, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("get", "ping"), completions);
+        }
+    }
+
+    @Test
+    public void bandwidthLimit() {
+        char[] chars = new char[100_000];
+        Arrays.fill(chars, 'x');
+        String value = new String(chars);
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            commands.set("large", value);
+            server.network().bandwidth(1_000_000);
+
+            long start = System.nanoTime();
+            assertEquals(value, commands.get("large"));
+            assertTrue(elapsedMillis(start) >= 100);
+
+            server.network().reset();
+            start = System.nanoTime();
+            commands.get("large");
+            assertTrue(elapsedMillis(start) < 100);
+        }
+    }
+
+    @Test
+    public void pipelinedThroughput() {
+        int commands = 100_000;
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisAsyncCommands<String, String> async = connection.async();
+            connection.setAutoFlushCommands(false);
+            List<RedisFuture<Long>> futures = new ArrayList<>(commands);
+            long start = System.nanoTime();
+            for (int i = 0; i < commands; i++) {
+                futures.add(async.incr("counter"));
+            }
+            connection.flushCommands();
+            futures.get(commands - 1).toCompletableFuture().join();
+            System.out.println(commands + " pipelined INCR in " + elapsedMillis(start) + "ms");
+            connection.setAutoFlushCommands(true);
+            assertEquals(String.valueOf(commands), connection.sync().get("counter"));
+        }
+    }
+
+    @Test
+    public void blockingMoveWaitsForPush() throws Exception {
+        try (StatefulRedisConnection<String, String> blocked = client.connect();
+             StatefulRedisConnection<String, String> producer = client.connect()) {
+            RedisAsyncCommands<String, String> commands = blocked.async();
+            RedisFuture<String> move = commands.blmove("jobs", "processing", LMoveArgs.Builder.rightLeft(), 5.0);
+            RedisFuture<String> queuedBehind = commands.get("after");
+            producer.sync().set("after", "ran after the move");
+            Thread.sleep(50);
+            assertTrue(!move.isDone() && !queuedBehind.isDone());
+
+            producer.sync().lpush("jobs", "job1");
+            assertEquals("job1", move.get(1, TimeUnit.SECONDS));
+            assertEquals("ran after the move", queuedBehind.get(1, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("job1"), producer.sync().lrange("processing", 0, -1));
+
+            long start = System.nanoTime();
+            assertNull(blocked.sync().blmove("jobs", "processing", LMoveArgs.Builder.rightLeft(), 0.1));
+            assertTrue(elapsedMillis(start) >= 100);
+        }
+    }
+
+    @Test
+    public void replicaAppliesWritesAndRejectsClientWrites() throws Exception {
+        try (LocalRedisServer replica = LocalRedisServer.builder().replicaOf(server).start();
+             StatefulRedisConnection<String, String> master = client.connect()) {
+            RedisClient replicaClient = RedisClient.create(replica.getUri());
+            try (StatefulRedisConnection<String, String> connection = replicaClient.connect()) {
+                master.sync().set("phone", "18902835052");
+                master.sync().rpush("mylist", "a", "b");
+                assertTrue(master.sync().info("replication").contains("connected_slaves:1"));
+                awaitOffset(replica, server.replicationOffset());
+                assertEquals("18902835052", connection.sync().get("phone"));
+                assertEquals(Arrays.asList("a", "b"), connection.sync().lrange("mylist", 0, -1));
+                assertTrue(connection.sync().info("replication").contains("slave_repl_offset:"
+                        + server.replicationOffset()));
+
+                replica.pauseReplication(true);
+                master.sync().set("phone", "other");
+                Thread.sleep(50);
+                assertEquals("18902835052", connection.sync().get("phone"));
+                assertTrue(replica.replicationOffset() < server.replicationOffset());
+                replica.pauseReplication(false);
+                assertEquals(server.replicationOffset(), replica.replicationOffset());
+                assertEquals("other", connection.sync().get("phone"));
+
+                try {
+                    connection.sync().set("phone", "rejected");
+                    fail();
+                } catch (RedisCommandExecutionException e) {
+                    assertTrue(e.getMessage().startsWith("READONLY"));
+                }
+            } finally {
+                replicaClient.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void dumpAndRestoreRoundTrip() {
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            commands.zadd("myScoredValue", 1.5, "a", -2.0, "b");
+            commands.pexpire("myScoredValue", 60_000);
+            byte[] payload = commands.dump("myScoredValue");
+            assertNull(commands.dump("missing"));
+
+            assertEquals("OK", commands.restore("copy", 5_000, payload));
+            assertEquals(commands.zrangeWithScores("myScoredValue", 0, -1), commands.zrangeWithScores("copy", 0, -1));
+            assertTrue(commands.pttl("copy") > 4_000);
+            try {
+                commands.restore("copy", 0, payload);
+                fail();
+            } catch (RedisCommandExecutionException e) {
+                assertTrue(e.getMessage().startsWith("BUSYKEY"));
+            }
+            assertEquals("OK", commands.restore("copy", payload, new RestoreArgs().replace()));
+            assertEquals(Long.valueOf(-1), commands.pttl("copy"));
+
+            payload[0] ^= 1;
+            try {
+                commands.restore("broken", 0, payload);
+                fail();
+            } catch (RedisCommandExecutionException e) {
+                assertTrue(e.getMessage().contains("checksum"));
+            }
+        }
+    }
+
+    private static void awaitOffset(LocalRedisServer replica, long offset) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (replica.replicationOffset() < offset && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void exerciseDataTypes(RedisCommands<String, String> commands) {
+        assertEquals("OK", commands.set("phone", "18902835052"));
+        assertEquals(Boolean.FALSE, commands.setnx("phone", "other"));
+        assertEquals(Long.valueOf(11), commands.strlen("phone"));
+        assertEquals("1890", commands.getrange("phone", 0, 3));
+        assertEquals(Long.valueOf(16), commands.append("phone", "-home"));
+        assertEquals(Double.valueOf(1.1), commands.incrbyfloat("float", 1.1));
+        assertEquals(Collections.singletonList("phone"), commands.keys("ph*"));
+
+        commands.hset("myhash", "hellofield", "hello");
+        assertEquals("hello", commands.hget("myhash", "hellofield"));
+        assertEquals(Collections.singletonMap("hellofield", "hello"), commands.hgetall("myhash"));
+
+        commands.rpush("mylist", "hello", "world", "!!!");
+        assertEquals(Arrays.asList("hello", "world"), commands.lpop("mylist", 2));
+        assertNull(commands.lpop("nolist"));
+
+        commands.sadd("key1", "a", "b", "c", "d");
+        commands.sadd("key2", "c");
+        commands.sadd("key3", "a", "c", "e");
+        assertEquals(Collections.singleton("c"), commands.sinter("key1", "key2", "key3"));
+        assertEquals(new HashSet<>(Arrays.asList("b", "d")), commands.sdiff("key1", "key2", "key3"));
+        assertEquals(Long.valueOf(2), commands.sdiffstore("key", "key1", "key2", "key3"));
+
+        commands.zadd("myScoredValue", ScoredValue.just(1, "score1"), ScoredValue.just(2, "score2"),
+                ScoredValue.just(3.5, "score3"));
+        assertEquals(Double.valueOf(3.5), commands.zscore("myScoredValue", "score3"));
+        assertNull(commands.zscore("myScoredValue", "score9"));
+        assertEquals(Arrays.asList("score3", "score2"), commands.zrevrange("myScoredValue", 0, 1));
+        assertEquals(Arrays.asList(ScoredValue.just(1, "score1"), ScoredValue.just(2, "score2")),
+                commands.zrangeWithScores("myScoredValue", 0, 1));
+        assertEquals(Long.valueOf(2), commands.zremrangebyrank("myScoredValue", 1, 2));
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,112 @@
+package com.redislettuce.server;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency, jitter and bandwidth the stand-in server adds to its replies. Can be changed at any time from any thread,
+ * e.g. to slow the server down in the middle of a test.
+ *
+ * A reply is held back for {@code latency + uniform(0, jitter)} and then occupies the (server wide) link for
+ * {@code replyBytes / bytesPerSecond}. Replies of one connection never overtake each other, so one slow command
+ * delays everything pipelined behind it, just like on a real connection. Jitter comes from a seeded random,
+ * so a given command sequence always produces the same delays.
+ */
+public class NetworkProfile {
+
+    private static final Delay NONE = new Delay(0, 0);
+
+    private final Map<String, Delay> perCommand = new ConcurrentHashMap<>();
+
+    private volatile Delay defaultDelay = NONE;
+
+    private volatile long bytesPerSecond;
+
+    private volatile boolean active;
+
+    // only touched on the command thread.
+    private final Random random;
+
+    private long linkFreeAt;
+
+    NetworkProfile(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Delay applied to every command without a command specific setting.
+     */
+    public NetworkProfile latency(Duration latency, Duration jitter) {
+        defaultDelay = new Delay(latency.toNanos(), jitter.toNanos());
+        return update();
+    }
+
+    public NetworkProfile latency(String command, Duration latency, Duration jitter) {
+        perCommand.put(command.toUpperCase(Locale.ROOT), new Delay(latency.toNanos(), jitter.toNanos()));
+        return update();
+    }
+
+    /**
+     * Reply bandwidth shared by all connections, 0 for unlimited.
+     */
+    public NetworkProfile bandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return update();
+    }
+
+    public NetworkProfile reset() {
+        perCommand.clear();
+        defaultDelay = NONE;
+        bytesPerSecond = 0;
+        return update();
+    }
+
+    void seed(long seed) {
+        random.setSeed(seed);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    long delayNanos(String command) {
+        Delay delay = perCommand.getOrDefault(command, defaultDelay);
+        if (delay.jitterNanos <= 0) {
+            return delay.latencyNanos;
+        }
+        return delay.latencyNanos + (long) (random.nextDouble() * delay.jitterNanos);
+    }
+
+    /**
+     * Reserves the link for a reply that may start at {@code earliestStart} and returns when it has been sent.
+     */
+    long transmit(long earliestStart, int bytes) {
+        long bandwidth = bytesPerSecond;
+        if (bandwidth <= 0) {
+            return earliestStart;
+        }
+        long start = Math.max(earliestStart, linkFreeAt);
+        linkFreeAt = start + bytes * 1_000_000_000L / bandwidth;
+        return linkFreeAt;
+    }
+
+    private NetworkProfile update() {
+        active = bytesPerSecond > 0 || defaultDelay != NONE || !perCommand.isEmpty();
+        return this;
+    }
+
+    private static final class Delay {
+
+        final long latencyNanos;
+
+        final long jitterNanos;
+
+        Delay(long latencyNanos, long jitterNanos) {
+            this.latencyNanos = latencyNanos;
+            this.jitterNanos = jitterNanos;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.redislettuce.server;
+
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous replication from a stand-in master to stand-in replicas, with the offsets INFO reports.
+ *
+ * The master adds the RESP size of every write it executed to its replication offset and hands the command to
+ * its replicas. A replica executes it on its own command thread, after the replication delay if one is set, and
+ * moves its own offset up to the master's offset at that write; while paused it only queues. Replicas reject writes
+ * from clients with READONLY. There is no initial sync, replicas have to be attached before the master is written.
+ */
+class Replication {
+
+    // commands that are neither reads nor writes of the keyspace.
+    private static final Set<String> NOT_REPLICATED = new HashSet<>(Arrays.asList(
+            "PING", "ECHO", "INFO", "HELLO", "AUTH", "SELECT", "CLIENT", "COMMAND", "CLUSTER", "ASKING", "READONLY",
+            "READWRITE", "DBSIZE", "KEYS", "STRALGO"));
+
+    private final LocalRedisServer server;
+
+    private final EventExecutor executor;
+
+    private final List<Replication> replicas = new CopyOnWriteArrayList<>();
+
+    private volatile Replication master;
+
+    private volatile boolean linkUp;
+
+    private volatile long offset;
+
+    private volatile long delayNanos;
+
+    // replica side, only used on the replica's command thread.
+    private final ArrayDeque<Held> held = new ArrayDeque<>();
+
+    private boolean paused;
+
+    Replication(LocalRedisServer server, EventExecutor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static boolean isWrite(String name) {
+        return !TrackingTable.isReadOnly(name) && !NOT_REPLICATED.contains(name);
+    }
+
+    boolean isReplica() {
+        return master != null;
+    }
+
+    /**
+     * Master side, on its command thread, after {@code args} ran without an error.
+     */
+    void propagate(String name, byte[][] args) {
+        if (master != null || !isWrite(name)) {
+            return;
+        }
+        long at = offset + size(args);
+        offset = at;
+        for (Replication replica : replicas) {
+            replica.receive(args, at);
+        }
+    }
+
+    void attach(Replication replica) {
+        if (offset > 0) {
+            throw new IllegalStateException("Replicas have to be attached before the master is written to");
+        }
+        replica.master = this;
+        replica.linkUp = true;
+        replicas.add(replica);
+    }
+
+    void pause(boolean pause) {
+        executor.submit(() -> {
+            paused = pause;
+            while (!paused && !held.isEmpty()) {
+                Held write = held.poll();
+                apply(write.args, write.offset);
+            }
+        }).syncUninterruptibly();
+    }
+
+    void delay(long nanos) {
+        this.delayNanos = nanos;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    void close() {
+        Replication upstream = master;
+        if (upstream != null) {
+            upstream.replicas.remove(this);
+        }
+        for (Replication replica : replicas) {
+            replica.linkUp = false;
+        }
+    }
+
+    /**
+     * The body of the Replication section of INFO.
+     */
+    String info() {
+        StringBuilder info = new StringBuilder();
+        Replication upstream = master;
+        if (upstream == null) {
+            info.append("role:master\r\nconnected_slaves:").append(replicas.size()).append("\r\n");
+            int index = 0;
+            for (Replication replica : replicas) {
+                info.append("slave").append(index++).append(":ip=").append(replica.server.getHost())
+                        .append(",port=").append(replica.server.getPort()).append(",state=online,offset=")
+                        .append(replica.offset).append(",lag=0\r\n");
+            }
+        } else {
+            info.append("role:slave\r\nmaster_host:").append(upstream.server.getHost())
+                    .append("\r\nmaster_port:").append(upstream.server.getPort())
+                    .append("\r\nmaster_link_status:").append(linkUp ? "up" : "down")
+                    .append("\r\nmaster_last_io_seconds_ago:0\r\nmaster_sync_in_progress:0\r\nslave_repl_offset:")
+                    .append(offset).append("\r\nslave_priority:100\r\nslave_read_only:1\r\nconnected_slaves:0\r\n");
+        }
+        return info.append("master_repl_offset:").append(offset).append("\r\n").toString();
+    }
+
+    private void receive(byte[][] args, long at) {
+        long delay = delayNanos;
+        if (delay > 0) {
+            executor.schedule(() -> apply(args, at), delay, TimeUnit.NANOSECONDS);
+        } else {
+            executor.execute(() -> apply(args, at));
+        }
+    }
+
+    private void apply(byte[][] args, long at) {
+        if (paused) {
+            held.add(new Held(args, at));
+            return;
+        }
+        server.replicate(args);
+        offset = Math.max(offset, at);
+    }
+
+    /**
+     * Length of the command as a RESP array, which is what redis counts in its offsets.
+     */
+    private static long size(byte[][] args) {
+        long size = 3 + Integer.toString(args.length).length();
+        for (byte[] arg : args) {
+            size += 5 + Integer.toString(arg.length).length() + arg.length;
+        }
+        return size;
+    }
+
+    private static final class Held {
+
+        final byte[][] args;
+
+        final long offset;
+
+        Held(byte[][] args, long offset) {
+            this.args = args;
+            this.offset = offset;
+        }
+    }
+}
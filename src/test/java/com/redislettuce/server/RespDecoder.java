@@ -0,0 +1,100 @@
+package com.redislettuce.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ByteProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Decodes RESP multi-bulk requests (and inline commands such as {@code PING\r\n}) into {@code byte[][]}.
+ *
+ * The decoder keeps its position between reads, so a large bulk string that arrives in many TCP segments
+ * is not re-parsed from the start every time.
+ */
+class RespDecoder extends ByteToMessageDecoder {
+
+    private byte[][] args;
+
+    private int argIndex;
+
+    private int bulkLength = -1;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (true) {
+            if (args == null) {
+                if (!in.isReadable()) {
+                    return;
+                }
+                int lf = in.forEachByte(ByteProcessor.FIND_LF);
+                if (lf < 0) {
+                    return;
+                }
+                if (in.getByte(in.readerIndex()) != '*') {
+                    out.add(inline(in, lf));
+                    continue;
+                }
+                int count = (int) parseLong(in, in.readerIndex() + 1, lf - 1);
+                in.readerIndex(lf + 1);
+                if (count <= 0) {
+                    continue;
+                }
+                args = new byte[count][];
+                argIndex = 0;
+            }
+            while (argIndex < args.length) {
+                if (bulkLength < 0) {
+                    int lf = in.forEachByte(ByteProcessor.FIND_LF);
+                    if (lf < 0) {
+                        return;
+                    }
+                    if (in.getByte(in.readerIndex()) != '$') {
+                        throw new DecoderException("Protocol error: expected '$', got '"
+                                + (char) in.getByte(in.readerIndex()) + "'");
+                    }
+                    bulkLength = (int) parseLong(in, in.readerIndex() + 1, lf - 1);
+                    in.readerIndex(lf + 1);
+                }
+                if (in.readableBytes() < bulkLength + 2) {
+                    return;
+                }
+                byte[] arg = new byte[bulkLength];
+                in.readBytes(arg);
+                in.skipBytes(2);
+                args[argIndex++] = arg;
+                bulkLength = -1;
+            }
+            out.add(args);
+            args = null;
+        }
+    }
+
+    private static byte[][] inline(ByteBuf in, int lf) {
+        int end = lf > in.readerIndex() && in.getByte(lf - 1) == '\r' ? lf - 1 : lf;
+        String line = in.toString(in.readerIndex(), end - in.readerIndex(), StandardCharsets.ISO_8859_1).trim();
+        in.readerIndex(lf + 1);
+        String[] parts = line.isEmpty() ? new String[0] : line.split("\\s+");
+        byte[][] inline = new byte[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            inline[i] = parts[i].getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return inline;
+    }
+
+    private static long parseLong(ByteBuf in, int from, int to) {
+        boolean negative = in.getByte(from) == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            byte b = in.getByte(i);
+            if (b < '0' || b > '9') {
+                throw new DecoderException("Protocol error: invalid length");
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+}
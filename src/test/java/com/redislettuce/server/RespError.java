@@ -0,0 +1,25 @@
+package com.redislettuce.server;
+
+/**
+ * Thrown by a command to reply with a RESP error. The message is sent as is, so it starts with the error code.
+ */
+class RespError extends RuntimeException {
+
+    static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    RespError(String message) {
+        super(message, null, false, false);
+    }
+
+    static RespError syntax() {
+        return new RespError("ERR syntax error");
+    }
+
+    static RespError notInteger() {
+        return new RespError("ERR value is not an integer or out of range");
+    }
+
+    static RespError notFloat() {
+        return new RespError("ERR value is not a valid float");
+    }
+}
@@ -0,0 +1,182 @@
+package com.redislettuce.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes RESP replies into a {@link ByteBuf}, using RESP3 types (null, double, map, set, push) once the
+ * connection switched protocols with HELLO 3 and their RESP2 equivalents otherwise.
+ */
+class RespWriter {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL_ARRAY = "*-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL_RESP3 = "_\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] EMPTY_ARRAY = "*0\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Session session;
+
+    private ByteBuf buf;
+
+    RespWriter(Session session) {
+        this.session = session;
+    }
+
+    void target(ByteBuf buf) {
+        this.buf = buf;
+    }
+
+    ByteBuf target() {
+        return buf;
+    }
+
+    boolean resp3() {
+        return session.protocol >= 3;
+    }
+
+    void ok() {
+        buf.writeBytes(OK);
+    }
+
+    void simple(String value) {
+        buf.writeByte('+');
+        buf.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+        buf.writeBytes(CRLF);
+    }
+
+    void error(String message) {
+        buf.writeByte('-');
+        buf.writeCharSequence(message, StandardCharsets.ISO_8859_1);
+        buf.writeBytes(CRLF);
+    }
+
+    void integer(long value) {
+        buf.writeByte(':');
+        writeLong(value);
+        buf.writeBytes(CRLF);
+    }
+
+    void bulk(byte[] value) {
+        if (value == null) {
+            nullBulk();
+            return;
+        }
+        buf.writeByte('$');
+        writeLong(value.length);
+        buf.writeBytes(CRLF);
+        buf.writeBytes(value);
+        buf.writeBytes(CRLF);
+    }
+
+    void bulk(String value) {
+        if (value == null) {
+            nullBulk();
+            return;
+        }
+        buf.writeByte('$');
+        writeLong(value.length());
+        buf.writeBytes(CRLF);
+        buf.writeCharSequence(value, StandardCharsets.ISO_8859_1);
+        buf.writeBytes(CRLF);
+    }
+
+    void nullBulk() {
+        buf.writeBytes(resp3() ? NULL_RESP3 : NULL_BULK);
+    }
+
+    void nullArray() {
+        buf.writeBytes(resp3() ? NULL_RESP3 : NULL_ARRAY);
+    }
+
+    void doubleValue(double value) {
+        if (!resp3()) {
+            bulk(formatDouble(value));
+            return;
+        }
+        buf.writeByte(',');
+        buf.writeCharSequence(formatDouble(value), StandardCharsets.US_ASCII);
+        buf.writeBytes(CRLF);
+    }
+
+    void arrayHeader(int size) {
+        if (size == 0) {
+            buf.writeBytes(EMPTY_ARRAY);
+            return;
+        }
+        header('*', size);
+    }
+
+    /**
+     * Map of {@code size} entries: a RESP3 map or a flat RESP2 array of 2 * size elements.
+     */
+    void mapHeader(int size) {
+        if (resp3()) {
+            header('%', size);
+        } else {
+            arrayHeader(size * 2);
+        }
+    }
+
+    void setHeader(int size) {
+        if (resp3()) {
+            header('~', size);
+        } else {
+            arrayHeader(size);
+        }
+    }
+
+    /**
+     * Out-of-band RESP3 push message header, e.g. for invalidation messages.
+     */
+    void pushHeader(int size) {
+        header('>', size);
+    }
+
+    void bulkArray(Collection<String> values) {
+        arrayHeader(values.size());
+        for (String value : values) {
+            bulk(value);
+        }
+    }
+
+    void bulkSet(Collection<String> values) {
+        setHeader(values.size());
+        for (String value : values) {
+            bulk(value);
+        }
+    }
+
+    static String formatDouble(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e17) {
+            return Long.toString((long) value);
+        }
+        return new BigDecimal(Double.toString(value)).toPlainString();
+    }
+
+    private void header(char type, int size) {
+        buf.writeByte(type);
+        writeLong(size);
+        buf.writeBytes(CRLF);
+    }
+
+    private void writeLong(long value) {
+        if (value >= 0 && value < 10) {
+            buf.writeByte('0' + (int) value);
+            return;
+        }
+        buf.writeCharSequence(Long.toString(value), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,167 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * SCAN, HSCAN, SSCAN and ZSCAN.
+ *
+ * Elements are visited in the order of their (unsigned) hash code and the cursor is the hash to continue from,
+ * which gives the redis guarantee without a stable iteration order of the underlying maps: an element present
+ * for the whole iteration is returned at least once, elements added or removed meanwhile may or may not be.
+ * Like in redis, COUNT is the number of elements examined per call, MATCH and TYPE are applied afterwards,
+ * so a page may come back empty while the cursor is not 0 yet.
+ */
+class ScanCommands {
+
+    private static final Comparator<String> HASH_ORDER = Comparator.<String>comparingLong(ScanCommands::hash)
+            .thenComparing(Comparator.naturalOrder());
+
+    @SuppressWarnings("unchecked")
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("scan", -2, (session, args, out) -> {
+            Options options = Options.parse(args, 2, true);
+            Page page = page(keyspace.keys(), parseCursor(args[1]), options);
+            out.arrayHeader(2);
+            out.bulk(Long.toString(page.cursor));
+            List<String> keys = new ArrayList<>();
+            for (String key : page.elements) {
+                if (options.type == null || options.type.equals(KeyCommands.type(keyspace.get(key)))) {
+                    keys.add(key);
+                }
+            }
+            out.bulkArray(keys);
+        });
+        table.register("hscan", -3, (session, args, out) -> {
+            Map<String, byte[]> hash = keyspace.get(str(args[1]), HashMap.class);
+            Map<String, byte[]> fields = hash == null ? Collections.<String, byte[]>emptyMap() : hash;
+            Page page = page(fields.keySet(), parseCursor(args[2]), Options.parse(args, 3, false));
+            out.arrayHeader(2);
+            out.bulk(Long.toString(page.cursor));
+            out.arrayHeader(page.elements.size() * 2);
+            for (String field : page.elements) {
+                out.bulk(field);
+                out.bulk(fields.get(field));
+            }
+        });
+        table.register("sscan", -3, (session, args, out) -> {
+            Page page = page(SetCommands.members(keyspace, str(args[1])), parseCursor(args[2]),
+                    Options.parse(args, 3, false));
+            out.arrayHeader(2);
+            out.bulk(Long.toString(page.cursor));
+            out.bulkArray(page.elements);
+        });
+        table.register("zscan", -3, (session, args, out) -> {
+            ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+            Map<String, Double> scores = new HashMap<>();
+            if (zset != null) {
+                for (ZSet.Entry entry : zset.ascending()) {
+                    scores.put(entry.member, entry.score);
+                }
+            }
+            Page page = page(scores.keySet(), parseCursor(args[2]), Options.parse(args, 3, false));
+            out.arrayHeader(2);
+            out.bulk(Long.toString(page.cursor));
+            out.arrayHeader(page.elements.size() * 2);
+            for (String member : page.elements) {
+                out.bulk(member);
+                out.bulk(RespWriter.formatDouble(scores.get(member)));
+            }
+        });
+    }
+
+    private static long parseCursor(byte[] arg) {
+        try {
+            long cursor = Long.parseLong(str(arg));
+            if (cursor < 0) {
+                throw new RespError("ERR invalid cursor");
+            }
+            return cursor;
+        } catch (NumberFormatException e) {
+            throw new RespError("ERR invalid cursor");
+        }
+    }
+
+    private static long hash(String element) {
+        return element.hashCode() & 0xffffffffL;
+    }
+
+    private static Page page(Collection<String> elements, long cursor, Options options) {
+        List<String> remaining = new ArrayList<>();
+        for (String element : elements) {
+            if (hash(element) >= cursor) {
+                remaining.add(element);
+            }
+        }
+        remaining.sort(HASH_ORDER);
+
+        // never split elements with the same hash over two pages, the cursor could not tell them apart.
+        int end = Math.min(options.count, remaining.size());
+        while (end < remaining.size() && hash(remaining.get(end)) == hash(remaining.get(end - 1))) {
+            end++;
+        }
+        Predicate<String> match = options.match == null ? element -> true : element -> Glob.matches(options.match, element);
+        List<String> page = new ArrayList<>(end);
+        for (String element : remaining.subList(0, end)) {
+            if (match.test(element)) {
+                page.add(element);
+            }
+        }
+        return new Page(end < remaining.size() ? hash(remaining.get(end)) : 0, page);
+    }
+
+    private static final class Page {
+
+        final long cursor;
+
+        final List<String> elements;
+
+        Page(long cursor, List<String> elements) {
+            this.cursor = cursor;
+            this.elements = elements;
+        }
+    }
+
+    private static final class Options {
+
+        String match;
+
+        int count = 10;
+
+        String type;
+
+        static Options parse(byte[][] args, int from, boolean allowType) {
+            Options options = new Options();
+            for (int i = from; i < args.length; i++) {
+                String option = upper(args[i]);
+                if (i + 1 >= args.length) {
+                    throw RespError.syntax();
+                }
+                if (option.equals("MATCH")) {
+                    options.match = str(args[++i]);
+                } else if (option.equals("COUNT")) {
+                    long count = parseLong(args[++i]);
+                    if (count < 1) {
+                        throw RespError.syntax();
+                    }
+                    options.count = (int) Math.min(count, Integer.MAX_VALUE);
+                } else if (option.equals("TYPE") && allowType) {
+                    options.type = str(args[++i]).toLowerCase();
+                } else {
+                    throw RespError.syntax();
+                }
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.redislettuce.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaError;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.OneArgFunction;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * EVAL, EVALSHA and SCRIPT LOAD/EXISTS/FLUSH, running scripts with luaj.
+ *
+ * Scripts see KEYS, ARGV and redis.call/pcall/status_reply/error_reply, with the reply conversions redis
+ * documents (nil bulk to false, status to {ok=...}, numbers truncated to integers on the way back). Commands run
+ * on the single server thread, so a script is atomic like in redis.
+ */
+class ScriptCommands {
+
+    private final CommandTable table;
+
+    private final Globals globals = JsePlatform.standardGlobals();
+
+    private final Map<String, LuaValue> scripts = new HashMap<>();
+
+    private ScriptCommands(CommandTable table) {
+        this.table = table;
+        LuaTable redis = new LuaTable();
+        redis.set("call", new CallFunction(true));
+        redis.set("pcall", new CallFunction(false));
+        redis.set("status_reply", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue status) {
+                return LuaValue.tableOf(new LuaValue[] { LuaValue.valueOf("ok"), status });
+            }
+        });
+        redis.set("error_reply", new OneArgFunction() {
+            @Override
+            public LuaValue call(LuaValue message) {
+                return LuaValue.tableOf(new LuaValue[] { LuaValue.valueOf("err"), message });
+            }
+        });
+        globals.set("redis", redis);
+    }
+
+    static void register(CommandTable table) {
+        ScriptCommands commands = new ScriptCommands(table);
+        table.register("eval", -3, (session, args, out) -> commands.run(commands.load(args[1]), args, out));
+        table.register("evalsha", -3, (session, args, out) -> {
+            LuaValue script = commands.scripts.get(str(args[1]).toLowerCase(Locale.ROOT));
+            if (script == null) {
+                throw new RespError("NOSCRIPT No matching script. Please use EVAL.");
+            }
+            commands.run(script, args, out);
+        });
+        table.register("script", -2, (session, args, out) -> {
+            String sub = upper(args[1]);
+            if (sub.equals("LOAD") && args.length == 3) {
+                commands.load(args[2]);
+                out.bulk(sha1(args[2]));
+            } else if (sub.equals("EXISTS") && args.length >= 3) {
+                out.arrayHeader(args.length - 2);
+                for (int i = 2; i < args.length; i++) {
+                    out.integer(commands.scripts.containsKey(str(args[i]).toLowerCase(Locale.ROOT)) ? 1 : 0);
+                }
+            } else if (sub.equals("FLUSH")) {
+                commands.scripts.clear();
+                out.ok();
+            } else {
+                throw new RespError("ERR unknown subcommand '" + str(args[1]) + "'");
+            }
+        });
+    }
+
+    private LuaValue load(byte[] source) {
+        String sha = sha1(source);
+        LuaValue script = scripts.get(sha);
+        if (script == null) {
+            try {
+                script = globals.load(new ByteArrayInputStream(source), "@user_script", "t", globals);
+            } catch (LuaError e) {
+                throw new RespError("ERR Error compiling script: " + e.getMessage());
+            }
+            scripts.put(sha, script);
+        }
+        return script;
+    }
+
+    private void run(LuaValue script, byte[][] args, RespWriter out) {
+        long numKeys = parseLong(args[2]);
+        if (numKeys < 0 || numKeys > args.length - 3) {
+            throw new RespError(numKeys < 0 ? "ERR Number of keys can't be negative"
+                    : "ERR Number of keys can't be greater than number of args");
+        }
+        LuaTable keys = new LuaTable();
+        LuaTable argv = new LuaTable();
+        for (int i = 3; i < args.length; i++) {
+            if (i < 3 + numKeys) {
+                keys.set(i - 2, LuaValue.valueOf(args[i]));
+            } else {
+                argv.set(i - 2 - (int) numKeys, LuaValue.valueOf(args[i]));
+            }
+        }
+        globals.set("KEYS", keys);
+        globals.set("ARGV", argv);
+        LuaValue result;
+        try {
+            result = script.call();
+        } catch (CallError e) {
+            throw new RespError(e.reply);
+        } catch (LuaError e) {
+            CallError call = callError(e);
+            throw new RespError(call != null ? call.reply : "ERR Error running script: " + e.getMessage());
+        }
+        write(result, out);
+    }
+
+    private static CallError callError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CallError) {
+                return (CallError) cause;
+            }
+        }
+        return null;
+    }
+
+    private static void write(LuaValue value, RespWriter out) {
+        if (value.type() == LuaValue.TNUMBER) {
+            out.integer(value.tolong());
+        } else if (value.isstring()) {
+            out.bulk(bytes(value.checkstring()));
+        } else if (value.istable()) {
+            LuaValue ok = value.get("ok");
+            LuaValue err = value.get("err");
+            if (err.isstring()) {
+                out.error(err.tojstring());
+            } else if (ok.isstring()) {
+                out.simple(ok.tojstring());
+            } else {
+                int length = 0;
+                while (!value.get(length + 1).isnil()) {
+                    length++;
+                }
+                out.arrayHeader(length);
+                for (int i = 1; i <= length; i++) {
+                    write(value.get(i), out);
+                }
+            }
+        } else if (value.isboolean() && value.toboolean()) {
+            out.integer(1);
+        } else {
+            out.nullBulk();
+        }
+    }
+
+    private static byte[] bytes(LuaString value) {
+        byte[] bytes = new byte[value.m_length];
+        value.copyInto(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    static String sha1(byte[] source) {
+        try {
+            StringBuilder hex = new StringBuilder(40);
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(source)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * redis.call failing with an error reply; aborts the script with exactly that error.
+     */
+    private static final class CallError extends LuaError {
+
+        final String reply;
+
+        CallError(String reply) {
+            super(reply);
+            this.reply = reply;
+        }
+    }
+
+    private final class CallFunction extends VarArgFunction {
+
+        private final boolean raise;
+
+        CallFunction(boolean raise) {
+            this.raise = raise;
+        }
+
+        @Override
+        public Varargs invoke(Varargs varargs) {
+            byte[][] args = new byte[varargs.narg()][];
+            for (int i = 0; i < args.length; i++) {
+                LuaValue arg = varargs.arg(i + 1);
+                if (!arg.isstring()) {
+                    throw new LuaError("Lua redis() command arguments must be strings or integers");
+                }
+                args[i] = bytes(arg.checkstring());
+            }
+            LuaValue reply = parse(execute(args));
+            if (raise && reply.istable() && reply.get("err").isstring()) {
+                throw new CallError(reply.get("err").tojstring());
+            }
+            return reply;
+        }
+
+        private ByteBuf execute(byte[][] args) {
+            ByteBuf buf = Unpooled.buffer();
+            RespWriter writer = new RespWriter(new Session());
+            writer.target(buf);
+            CommandTable.Spec spec = args.length == 0 ? null : table.lookup(args[0]);
+            if (spec == null) {
+                writer.error("ERR Unknown Redis command called from script");
+            } else if (!spec.accepts(args.length)) {
+                writer.error("ERR Wrong number of args calling Redis command from script");
+            } else {
+                try {
+                    spec.command.execute(new Session(), args, writer);
+                } catch (RespError e) {
+                    buf.clear();
+                    writer.error(e.getMessage());
+                }
+            }
+            return buf;
+        }
+
+        private LuaValue parse(ByteBuf buf) {
+            byte type = buf.readByte();
+            String line = line(buf);
+            switch (type) {
+                case '+':
+                    return LuaValue.tableOf(new LuaValue[] { LuaValue.valueOf("ok"), LuaValue.valueOf(line) });
+                case '-':
+                    return LuaValue.tableOf(new LuaValue[] { LuaValue.valueOf("err"), LuaValue.valueOf(line) });
+                case ':':
+                    return LuaValue.valueOf(Long.parseLong(line));
+                case '$': {
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return LuaValue.FALSE;
+                    }
+                    byte[] bytes = new byte[length];
+                    buf.readBytes(bytes);
+                    buf.skipBytes(2);
+                    return LuaValue.valueOf(bytes);
+                }
+                case '*': {
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return LuaValue.FALSE;
+                    }
+                    LuaTable array = new LuaTable(length, 0);
+                    for (int i = 1; i <= length; i++) {
+                        array.set(i, parse(buf));
+                    }
+                    return array;
+                }
+                default:
+                    throw new LuaError("Unexpected reply type " + (char) type);
+            }
+        }
+
+        private String line(ByteBuf buf) {
+            int end = buf.indexOf(buf.readerIndex(), buf.writerIndex(), (byte) '\r');
+            String line = buf.toString(buf.readerIndex(), end - buf.readerIndex(), StandardCharsets.ISO_8859_1);
+            buf.readerIndex(end + 2);
+            return line;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.redislettuce.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.DecoderException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * Executes decoded commands and writes the replies of one read burst with a single flush, so pipelined
+ * requests get pipelined replies.
+ *
+ * When the {@link NetworkProfile} is active, replies are moved to a per connection queue and released
+ * once their delay has passed, still in request order.
+ *
+ * A command that blocks (see {@link BlockingTable}) parks the connection: commands read meanwhile are kept in a
+ * backlog and run once the blocked command has been answered. Replies written after unblocking are not delayed.
+ *
+ * Writes that succeeded are handed to the {@link Replication} of the server, on a replica they are refused.
+ */
+class ServerHandler extends ChannelInboundHandlerAdapter {
+
+    private final CommandTable table;
+
+    private final NetworkProfile profile;
+
+    private final TrackingTable tracking;
+
+    private final ClusterNode cluster;
+
+    private final BlockingTable blocking;
+
+    private final Replication replication;
+
+    private final BlockingTable.Waiter waiter = this::retry;
+
+    private final Session session = new Session();
+
+    private final RespWriter writer = new RespWriter(session);
+
+    private final ArrayDeque<DelayedReply> delayed = new ArrayDeque<>();
+
+    private ChannelHandlerContext ctx;
+
+    private ByteBuf pending;
+
+    private long lastReleaseAt;
+
+    private boolean drainScheduled;
+
+    private boolean quit;
+
+    private final ArrayDeque<byte[][]> backlog = new ArrayDeque<>();
+
+    private byte[][] blockedArgs;
+
+    private List<String> blockedKeys;
+
+    private ScheduledFuture<?> blockTimeout;
+
+    private boolean retrying;
+
+    private boolean stillBlocked;
+
+    ServerHandler(CommandTable table, NetworkProfile profile, TrackingTable tracking, ClusterNode cluster,
+            BlockingTable blocking, Replication replication) {
+        this.table = table;
+        this.profile = profile;
+        this.tracking = tracking;
+        this.cluster = cluster;
+        this.blocking = blocking;
+        this.replication = replication;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        session.channel = ctx.channel();
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        byte[][] args = (byte[][]) msg;
+        if (args.length == 0 || quit) {
+            return;
+        }
+        if (blockedArgs != null) {
+            backlog.add(args);
+            return;
+        }
+        if (pending == null) {
+            pending = ctx.alloc().ioBuffer();
+        }
+        writer.target(pending);
+        int mark = pending.writerIndex();
+        String name = execute(args);
+        if (profile.isActive() || !delayed.isEmpty()) {
+            delay(name, mark);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (pending != null) {
+            ByteBuf replies = pending;
+            pending = null;
+            if (!replies.isReadable()) {
+                replies.release();
+            } else if (quit && delayed.isEmpty()) {
+                ctx.writeAndFlush(replies).addListener(ChannelFutureListener.CLOSE);
+            } else {
+                ctx.writeAndFlush(replies);
+            }
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (pending != null) {
+            pending.release();
+            pending = null;
+        }
+        for (DelayedReply reply : delayed) {
+            reply.buf.release();
+        }
+        delayed.clear();
+        if (session.tracking) {
+            tracking.disable(session);
+        }
+        if (blockedArgs != null) {
+            blocking.unblock(waiter, blockedKeys);
+            cancelBlockTimeout();
+            blockedArgs = null;
+        }
+        backlog.clear();
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (cause instanceof DecoderException) {
+            byte[] error = ("-ERR " + cause.getMessage() + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            ctx.writeAndFlush(ctx.alloc().buffer().writeBytes(error)).addListener(ChannelFutureListener.CLOSE);
+        } else {
+            ctx.close();
+        }
+    }
+
+    private String execute(byte[][] args) {
+        String name = CommandTable.upper(args[0]);
+        if (name.equals("QUIT")) {
+            writer.ok();
+            quit = true;
+            return name;
+        }
+        CommandTable.Spec spec = table.lookup(args[0]);
+        if (spec == null) {
+            writer.error("ERR unknown command '" + str(args[0]) + "'");
+            return name;
+        }
+        if (!spec.accepts(args.length)) {
+            writer.error("ERR wrong number of arguments for '" + spec.name + "' command");
+            return name;
+        }
+        if (cluster != null) {
+            String redirect = cluster.redirect(session, name, args);
+            session.asking = name.equals("ASKING");
+            if (redirect != null) {
+                writer.error(redirect);
+                return name;
+            }
+        }
+        if (replication.isReplica() && Replication.isWrite(name)) {
+            writer.error("READONLY You can't write against a read only replica.");
+            return name;
+        }
+        int mark = pending.writerIndex();
+        try {
+            spec.command.execute(session, args, writer);
+            replication.propagate(name, args);
+        } catch (BlockingTable.Blocked e) {
+            pending.writerIndex(mark);
+            if (!retrying) {
+                block(args, e);
+            }
+            stillBlocked = true;
+            return name;
+        } catch (RespError e) {
+            pending.writerIndex(mark);
+            writer.error(e.getMessage());
+        } catch (RuntimeException e) {
+            pending.writerIndex(mark);
+            writer.error("ERR " + e);
+        }
+        tracking.afterCommand(session, name, writer);
+        blocking.afterCommand();
+        return name;
+    }
+
+    private void block(byte[][] args, BlockingTable.Blocked blocked) {
+        blockedArgs = args;
+        blockedKeys = blocked.keys;
+        blocking.block(waiter, blocked.keys);
+        if (blocked.timeoutMillis > 0) {
+            blockTimeout = ctx.executor().schedule(() -> timeout(blocked.arrayReply), blocked.timeoutMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs the blocked command again after one of its keys was written, see {@link BlockingTable#afterCommand()}.
+     */
+    private boolean retry() {
+        ByteBuf reply = ctx.alloc().ioBuffer();
+        pending = reply;
+        writer.target(reply);
+        retrying = true;
+        stillBlocked = false;
+        try {
+            execute(blockedArgs);
+        } finally {
+            retrying = false;
+            pending = null;
+        }
+        if (stillBlocked) {
+            reply.release();
+            return false;
+        }
+        unblock(reply);
+        return true;
+    }
+
+    private void timeout(boolean arrayReply) {
+        blockTimeout = null;
+        if (blockedArgs == null) {
+            return;
+        }
+        ByteBuf reply = ctx.alloc().ioBuffer();
+        writer.target(reply);
+        if (arrayReply) {
+            writer.nullArray();
+        } else {
+            writer.nullBulk();
+        }
+        unblock(reply);
+    }
+
+    /**
+     * Sends the reply of the blocked command, then runs the commands that arrived meanwhile until one blocks.
+     */
+    private void unblock(ByteBuf reply) {
+        blocking.unblock(waiter, blockedKeys);
+        cancelBlockTimeout();
+        blockedArgs = null;
+        blockedKeys = null;
+        ctx.write(reply);
+        if (!backlog.isEmpty()) {
+            pending = ctx.alloc().ioBuffer();
+            writer.target(pending);
+            while (blockedArgs == null && !quit && !backlog.isEmpty()) {
+                execute(backlog.poll());
+            }
+            ByteBuf replies = pending;
+            pending = null;
+            if (replies.isReadable()) {
+                ctx.write(replies);
+            } else {
+                replies.release();
+            }
+        }
+        if (quit) {
+            ctx.writeAndFlush(ctx.alloc().buffer(0)).addListener(ChannelFutureListener.CLOSE);
+        } else {
+            ctx.flush();
+        }
+    }
+
+    private void cancelBlockTimeout() {
+        if (blockTimeout != null) {
+            blockTimeout.cancel(false);
+            blockTimeout = null;
+        }
+    }
+
+    /**
+     * Moves the reply written since {@code mark} from the pending buffer to the delay queue.
+     */
+    private void delay(String name, int mark) {
+        int length = pending.writerIndex() - mark;
+        ByteBuf reply = ctx.alloc().ioBuffer(length);
+        reply.writeBytes(pending, mark, length);
+        pending.writerIndex(mark);
+
+        long now = System.nanoTime();
+        long releaseAt = Math.max(now + profile.delayNanos(name), lastReleaseAt);
+        releaseAt = profile.transmit(releaseAt, length);
+        lastReleaseAt = releaseAt;
+        delayed.add(new DelayedReply(releaseAt, reply));
+        scheduleDrain(now);
+    }
+
+    private void scheduleDrain(long now) {
+        if (drainScheduled || delayed.isEmpty()) {
+            return;
+        }
+        drainScheduled = true;
+        ctx.executor().schedule(this::drain, Math.max(0, delayed.peek().releaseAt - now), TimeUnit.NANOSECONDS);
+    }
+
+    private void drain() {
+        drainScheduled = false;
+        long now = System.nanoTime();
+        boolean written = false;
+        while (!delayed.isEmpty() && delayed.peek().releaseAt <= now) {
+            ctx.write(delayed.poll().buf);
+            written = true;
+        }
+        if (written) {
+            if (quit && delayed.isEmpty()) {
+                ctx.flush();
+                ctx.close();
+                return;
+            }
+            ctx.flush();
+        }
+        scheduleDrain(now);
+    }
+
+    private static final class DelayedReply {
+
+        final long releaseAt;
+
+        final ByteBuf buf;
+
+        DelayedReply(long releaseAt, ByteBuf buf) {
+            this.releaseAt = releaseAt;
+            this.buf = buf;
+        }
+    }
+}
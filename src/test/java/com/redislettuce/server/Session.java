@@ -0,0 +1,33 @@
+package com.redislettuce.server;
+
+import io.netty.channel.Channel;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per connection state.
+ */
+class Session {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    final long id = IDS.incrementAndGet();
+
+    int protocol = 2;
+
+    String clientName;
+
+    Channel channel;
+
+    boolean tracking;
+
+    boolean trackingBcast;
+
+    boolean trackingNoLoop;
+
+    List<String> trackingPrefixes;
+
+    // cluster mode: the previous command was ASKING, so the next one may access an importing slot.
+    boolean asking;
+}
@@ -0,0 +1,139 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.str;
+
+/**
+ * Set commands.
+ */
+class SetCommands {
+
+    @SuppressWarnings("unchecked")
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("sadd", -3, (session, args, out) -> {
+            Set<String> set = keyspace.getOrCreate(str(args[1]), HashSet.class, HashSet::new);
+            long added = 0;
+            for (int i = 2; i < args.length; i++) {
+                if (set.add(str(args[i]))) {
+                    added++;
+                }
+            }
+            out.integer(added);
+        });
+        table.register("srem", -3, (session, args, out) -> {
+            String key = str(args[1]);
+            Set<String> set = keyspace.get(key, HashSet.class);
+            long removed = 0;
+            if (set != null) {
+                for (int i = 2; i < args.length; i++) {
+                    if (set.remove(str(args[i]))) {
+                        removed++;
+                    }
+                }
+                keyspace.removeIfEmpty(key, set);
+            }
+            out.integer(removed);
+        });
+        table.register("smembers", 2, (session, args, out) -> out.bulkSet(members(keyspace, str(args[1]))));
+        table.register("scard", 2, (session, args, out) -> out.integer(members(keyspace, str(args[1])).size()));
+        table.register("sismember", 3, (session, args, out) ->
+                out.integer(members(keyspace, str(args[1])).contains(str(args[2])) ? 1 : 0));
+        table.register("smismember", -3, (session, args, out) -> {
+            Set<String> set = members(keyspace, str(args[1]));
+            out.arrayHeader(args.length - 2);
+            for (int i = 2; i < args.length; i++) {
+                out.integer(set.contains(str(args[i])) ? 1 : 0);
+            }
+        });
+        table.register("spop", -2, (session, args, out) -> {
+            String key = str(args[1]);
+            Set<String> set = keyspace.get(key, HashSet.class);
+            long count = args.length > 2 ? parseLong(args[2]) : 1;
+            List<String> popped = new ArrayList<>();
+            if (set != null) {
+                for (Iterator<String> it = set.iterator(); it.hasNext() && popped.size() < count; ) {
+                    popped.add(it.next());
+                    it.remove();
+                }
+                keyspace.removeIfEmpty(key, set);
+            }
+            if (args.length > 2) {
+                out.bulkSet(popped);
+            } else {
+                out.bulk(popped.isEmpty() ? null : popped.get(0));
+            }
+        });
+        table.register("smove", 4, (session, args, out) -> {
+            String source = str(args[1]);
+            Set<String> from = keyspace.get(source, HashSet.class);
+            Set<String> to = keyspace.get(str(args[2]), HashSet.class);
+            String member = str(args[3]);
+            if (from == null || !from.remove(member)) {
+                out.integer(0);
+                return;
+            }
+            if (to == null) {
+                to = keyspace.getOrCreate(str(args[2]), HashSet.class, HashSet::new);
+            }
+            to.add(member);
+            keyspace.removeIfEmpty(source, from);
+            out.integer(1);
+        });
+        table.register("sinter", -2, (session, args, out) -> out.bulkSet(inter(keyspace, args, 1)));
+        table.register("sunion", -2, (session, args, out) -> out.bulkSet(union(keyspace, args, 1)));
+        table.register("sdiff", -2, (session, args, out) -> out.bulkSet(diff(keyspace, args, 1)));
+        table.register("sinterstore", -3, (session, args, out) ->
+                out.integer(store(keyspace, args, inter(keyspace, args, 2))));
+        table.register("sunionstore", -3, (session, args, out) ->
+                out.integer(store(keyspace, args, union(keyspace, args, 2))));
+        table.register("sdiffstore", -3, (session, args, out) ->
+                out.integer(store(keyspace, args, diff(keyspace, args, 2))));
+    }
+
+    private static long store(Keyspace keyspace, byte[][] args, Set<String> result) {
+        String destination = str(args[1]);
+        if (result.isEmpty()) {
+            keyspace.remove(destination);
+        } else {
+            keyspace.put(destination, result);
+        }
+        return result.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> members(Keyspace keyspace, String key) {
+        Set<String> set = keyspace.get(key, HashSet.class);
+        return set == null ? Collections.<String>emptySet() : set;
+    }
+
+    static Set<String> inter(Keyspace keyspace, byte[][] args, int from) {
+        Set<String> result = new HashSet<>(members(keyspace, str(args[from])));
+        for (int i = from + 1; i < args.length && !result.isEmpty(); i++) {
+            result.retainAll(members(keyspace, str(args[i])));
+        }
+        return result;
+    }
+
+    static Set<String> union(Keyspace keyspace, byte[][] args, int from) {
+        Set<String> result = new HashSet<>();
+        for (int i = from; i < args.length; i++) {
+            result.addAll(members(keyspace, str(args[i])));
+        }
+        return result;
+    }
+
+    static Set<String> diff(Keyspace keyspace, byte[][] args, int from) {
+        Set<String> result = new HashSet<>(members(keyspace, str(args[from])));
+        for (int i = from + 1; i < args.length && !result.isEmpty(); i++) {
+            result.removeAll(members(keyspace, str(args[i])));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,228 @@
+package com.redislettuce.server;
+
+import java.util.Arrays;
+
+import static com.redislettuce.server.CommandTable.bytes;
+import static com.redislettuce.server.CommandTable.parseDouble;
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.range;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * String commands.
+ */
+class StringCommands {
+
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("get", 2, (session, args, out) -> out.bulk(keyspace.get(str(args[1]), byte[].class)));
+        table.register("set", -3, (session, args, out) -> set(keyspace, args, out));
+        table.register("mget", -2, (session, args, out) -> {
+            out.arrayHeader(args.length - 1);
+            for (int i = 1; i < args.length; i++) {
+                Object value = keyspace.get(str(args[i]));
+                out.bulk(value instanceof byte[] ? (byte[]) value : null);
+            }
+        });
+        table.register("mset", -3, (session, args, out) -> {
+            if (args.length % 2 != 1) {
+                throw new RespError("ERR wrong number of arguments for 'mset' command");
+            }
+            for (int i = 1; i < args.length; i += 2) {
+                keyspace.put(str(args[i]), args[i + 1]);
+            }
+            out.ok();
+        });
+        table.register("setnx", 3, (session, args, out) -> {
+            String key = str(args[1]);
+            if (keyspace.exists(key)) {
+                out.integer(0);
+            } else {
+                keyspace.put(key, args[2]);
+                out.integer(1);
+            }
+        });
+        table.register("setex", 4, (session, args, out) -> setWithTtl(keyspace, args, parseLong(args[2]) * 1000, out));
+        table.register("psetex", 4, (session, args, out) -> setWithTtl(keyspace, args, parseLong(args[2]), out));
+        table.register("getset", 3, (session, args, out) -> {
+            String key = str(args[1]);
+            byte[] previous = keyspace.get(key, byte[].class);
+            keyspace.put(key, args[2]);
+            out.bulk(previous);
+        });
+        table.register("getdel", 2, (session, args, out) -> {
+            String key = str(args[1]);
+            byte[] previous = keyspace.get(key, byte[].class);
+            keyspace.remove(key);
+            out.bulk(previous);
+        });
+        table.register("msetnx", -3, (session, args, out) -> {
+            if (args.length % 2 != 1) {
+                throw new RespError("ERR wrong number of arguments for 'msetnx' command");
+            }
+            for (int i = 1; i < args.length; i += 2) {
+                if (keyspace.exists(str(args[i]))) {
+                    out.integer(0);
+                    return;
+                }
+            }
+            for (int i = 1; i < args.length; i += 2) {
+                keyspace.put(str(args[i]), args[i + 1]);
+            }
+            out.integer(1);
+        });
+        table.register("append", 3, (session, args, out) -> {
+            String key = str(args[1]);
+            byte[] current = keyspace.get(key, byte[].class);
+            if (current == null) {
+                keyspace.put(key, args[2]);
+                out.integer(args[2].length);
+                return;
+            }
+            byte[] appended = Arrays.copyOf(current, current.length + args[2].length);
+            System.arraycopy(args[2], 0, appended, current.length, args[2].length);
+            keyspace.replace(key, appended);
+            out.integer(appended.length);
+        });
+        table.register("strlen", 2, (session, args, out) -> {
+            byte[] current = keyspace.get(str(args[1]), byte[].class);
+            out.integer(current == null ? 0 : current.length);
+        });
+        CommandTable.Command getrange = (session, args, out) -> {
+            byte[] current = keyspace.get(str(args[1]), byte[].class);
+            if (current == null) {
+                out.bulk(new byte[0]);
+                return;
+            }
+            int[] bounds = range(parseLong(args[2]), parseLong(args[3]), current.length);
+            out.bulk(Arrays.copyOfRange(current, bounds[0], bounds[1] + 1));
+        };
+        table.register("getrange", 4, getrange);
+        table.register("substr", 4, getrange);
+        table.register("setrange", 4, (session, args, out) -> {
+            String key = str(args[1]);
+            long offset = parseLong(args[2]);
+            if (offset < 0 || offset + args[3].length > 512L * 1024 * 1024) {
+                throw new RespError("ERR offset is out of range");
+            }
+            byte[] current = keyspace.get(key, byte[].class);
+            if (current == null) {
+                current = new byte[0];
+            }
+            if (args[3].length == 0) {
+                out.integer(current.length);
+                return;
+            }
+            byte[] updated = current.length >= offset + args[3].length
+                    ? current : Arrays.copyOf(current, (int) offset + args[3].length);
+            System.arraycopy(args[3], 0, updated, (int) offset, args[3].length);
+            if (keyspace.exists(key)) {
+                keyspace.replace(key, updated);
+            } else {
+                keyspace.put(key, updated);
+            }
+            out.integer(updated.length);
+        });
+        table.register("incr", 2, (session, args, out) -> out.integer(incrBy(keyspace, str(args[1]), 1)));
+        table.register("decr", 2, (session, args, out) -> out.integer(incrBy(keyspace, str(args[1]), -1)));
+        table.register("incrby", 3, (session, args, out) ->
+                out.integer(incrBy(keyspace, str(args[1]), parseLong(args[2]))));
+        table.register("decrby", 3, (session, args, out) ->
+                out.integer(incrBy(keyspace, str(args[1]), -parseLong(args[2]))));
+        table.register("incrbyfloat", 3, (session, args, out) -> {
+            String key = str(args[1]);
+            byte[] current = keyspace.get(key, byte[].class);
+            double value = (current == null ? 0 : parseDouble(current)) + parseDouble(args[2]);
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                throw new RespError("ERR increment would produce NaN or Infinity");
+            }
+            byte[] formatted = bytes(RespWriter.formatDouble(value));
+            keyspace.replace(key, formatted);
+            out.bulk(formatted);
+        });
+    }
+
+    private static void setWithTtl(Keyspace keyspace, byte[][] args, long ttlMillis, RespWriter out) {
+        if (ttlMillis <= 0) {
+            throw new RespError("ERR invalid expire time in '" + str(args[0]).toLowerCase() + "' command");
+        }
+        String key = str(args[1]);
+        keyspace.put(key, args[3]);
+        keyspace.expireAt(key, System.currentTimeMillis() + ttlMillis);
+        out.ok();
+    }
+
+    static long incrBy(Keyspace keyspace, String key, long delta) {
+        byte[] current = keyspace.get(key, byte[].class);
+        long value = current == null ? 0 : parseLong(current);
+        if ((delta > 0 && value > Long.MAX_VALUE - delta) || (delta < 0 && value < Long.MIN_VALUE - delta)) {
+            throw new RespError("ERR increment or decrement would overflow");
+        }
+        value += delta;
+        keyspace.replace(key, bytes(Long.toString(value)));
+        return value;
+    }
+
+    private static void set(Keyspace keyspace, byte[][] args, RespWriter out) {
+        String key = str(args[1]);
+        boolean nx = false;
+        boolean xx = false;
+        boolean keepTtl = false;
+        boolean get = false;
+        long ttlMillis = -1;
+        for (int i = 3; i < args.length; i++) {
+            String option = upper(args[i]);
+            switch (option) {
+                case "NX":
+                    nx = true;
+                    break;
+                case "XX":
+                    xx = true;
+                    break;
+                case "KEEPTTL":
+                    keepTtl = true;
+                    break;
+                case "GET":
+                    get = true;
+                    break;
+                case "EX":
+                case "PX":
+                    if (i + 1 >= args.length) {
+                        throw RespError.syntax();
+                    }
+                    long amount = parseLong(args[++i]);
+                    if (amount <= 0) {
+                        throw new RespError("ERR invalid expire time in 'set' command");
+                    }
+                    ttlMillis = option.equals("EX") ? amount * 1000 : amount;
+                    break;
+                default:
+                    throw RespError.syntax();
+            }
+        }
+        if (nx && xx) {
+            throw RespError.syntax();
+        }
+        Object previous = keyspace.get(key);
+        if (get && previous != null && !(previous instanceof byte[])) {
+            throw new RespError(RespError.WRONGTYPE);
+        }
+        boolean apply = !(nx && previous != null) && !(xx && previous == null);
+        if (apply) {
+            long pttl = keyspace.pttl(key);
+            keyspace.put(key, args[2]);
+            if (ttlMillis > 0) {
+                keyspace.expireAt(key, System.currentTimeMillis() + ttlMillis);
+            } else if (keepTtl && pttl > 0) {
+                keyspace.expireAt(key, System.currentTimeMillis() + pttl);
+            }
+        }
+        if (get) {
+            out.bulk((byte[]) previous);
+        } else if (apply) {
+            out.ok();
+        } else {
+            out.nullBulk();
+        }
+    }
+}
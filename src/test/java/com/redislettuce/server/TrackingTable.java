@@ -0,0 +1,161 @@
+package com.redislettuce.server;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Server side of {@code CLIENT TRACKING}: remembers which connection read which key and sends RESP3
+ * {@code invalidate} push messages when a key changes.
+ *
+ * Default mode tracks the keys a connection read, broadcast mode (BCAST) notifies about every changed key
+ * matching one of the connection's prefixes. Keys are derived from what a command touched in the
+ * {@link Keyspace}: commands in {@link #READ_ONLY} count as reads, all others as writes. That may invalidate
+ * a little more than redis does (e.g. the source keys of SINTERSTORE), which clients have to tolerate anyway.
+ */
+class TrackingTable {
+
+    private static final Set<String> READ_ONLY = new HashSet<>(Arrays.asList(
+            "GET", "MGET", "STRLEN", "GETRANGE", "SUBSTR", "EXISTS", "TYPE", "TTL", "PTTL", "DUMP",
+            "HGET", "HMGET", "HGETALL", "HLEN", "HEXISTS", "HKEYS", "HVALS",
+            "LLEN", "LRANGE", "LINDEX",
+            "SMEMBERS", "SCARD", "SISMEMBER", "SMISMEMBER", "SINTER", "SUNION", "SDIFF",
+            "ZSCORE", "ZMSCORE", "ZRANGE", "ZREVRANGE", "ZRANGEBYSCORE", "ZREVRANGEBYSCORE", "ZCARD", "ZCOUNT",
+            "ZRANK", "ZREVRANK", "SCAN", "HSCAN", "SSCAN", "ZSCAN", "LCS"));
+
+    private static final byte[] INVALIDATE = CommandTable.bytes("invalidate");
+
+    private final Keyspace keyspace;
+
+    private final Set<Session> sessions = new LinkedHashSet<>();
+
+    private final Map<String, Set<Session>> readers = new HashMap<>();
+
+    TrackingTable(Keyspace keyspace) {
+        this.keyspace = keyspace;
+    }
+
+    static boolean isReadOnly(String name) {
+        return READ_ONLY.contains(name);
+    }
+
+    void enable(Session session, boolean bcast, boolean noLoop, List<String> prefixes) {
+        session.tracking = true;
+        session.trackingBcast = bcast;
+        session.trackingNoLoop = noLoop;
+        session.trackingPrefixes = prefixes;
+        sessions.add(session);
+        keyspace.recordTouches(true);
+    }
+
+    void disable(Session session) {
+        session.tracking = false;
+        sessions.remove(session);
+        // stale entries in readers are skipped when they come up.
+        keyspace.recordTouches(!sessions.isEmpty());
+    }
+
+    /**
+     * Processes the keys touched by the command that just ran. Invalidations for the calling connection
+     * itself are appended to {@code out}, after the reply.
+     */
+    void afterCommand(Session session, String name, RespWriter out) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        try {
+            if (keyspace.flushed()) {
+                invalidateAll(session, out);
+            } else if (!keyspace.touched().isEmpty()) {
+                if (READ_ONLY.contains(name)) {
+                    if (session.tracking && !session.trackingBcast) {
+                        for (String key : keyspace.touched()) {
+                            readers.computeIfAbsent(key, k -> new HashSet<>()).add(session);
+                        }
+                    }
+                } else {
+                    invalidate(session, new LinkedHashSet<>(keyspace.touched()), out);
+                }
+            }
+        } finally {
+            keyspace.resetTouches();
+        }
+    }
+
+    /**
+     * Sends a flush (null key list) invalidation to every tracking connection, e.g. after FLUSHALL.
+     */
+    void invalidateAll(Session writer, RespWriter out) {
+        readers.clear();
+        for (Session target : sessions) {
+            send(target, null, writer, out);
+        }
+    }
+
+    private void invalidate(Session writer, Set<String> keys, RespWriter out) {
+        Map<Session, Set<String>> targets = new LinkedHashMap<>();
+        for (String key : keys) {
+            Set<Session> keyReaders = readers.remove(key);
+            if (keyReaders != null) {
+                for (Session target : keyReaders) {
+                    targets.computeIfAbsent(target, t -> new LinkedHashSet<>()).add(key);
+                }
+            }
+            for (Session target : sessions) {
+                if (target.trackingBcast && matches(target.trackingPrefixes, key)) {
+                    targets.computeIfAbsent(target, t -> new LinkedHashSet<>()).add(key);
+                }
+            }
+        }
+        for (Map.Entry<Session, Set<String>> target : targets.entrySet()) {
+            Session session = target.getKey();
+            if (session.tracking && !(session == writer && session.trackingNoLoop)) {
+                send(session, target.getValue(), writer, out);
+            }
+        }
+    }
+
+    private static boolean matches(List<String> prefixes, String key) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void send(Session target, Set<String> keys, Session writer, RespWriter out) {
+        if (target.protocol < 3 || target.channel == null || !target.channel.isActive()) {
+            return;
+        }
+        if (target == writer) {
+            writePush(out, keys);
+            return;
+        }
+        ByteBuf buf = target.channel.alloc().ioBuffer();
+        RespWriter targetWriter = new RespWriter(target);
+        targetWriter.target(buf);
+        writePush(targetWriter, keys);
+        target.channel.writeAndFlush(buf);
+    }
+
+    private static void writePush(RespWriter out, Set<String> keys) {
+        out.pushHeader(2);
+        out.bulk(INVALIDATE);
+        if (keys == null) {
+            out.nullArray();
+        } else {
+            out.bulkArray(keys);
+        }
+    }
+}
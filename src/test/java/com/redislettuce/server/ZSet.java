@@ -0,0 +1,92 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Sorted set value: a member to score map plus the members ordered by (score, member).
+ */
+class ZSet {
+
+    static final class Entry {
+
+        final String member;
+
+        final double score;
+
+        Entry(String member, double score) {
+            this.member = member;
+            this.score = score;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byScore = Double.compare(a.score, b.score);
+        return byScore != 0 ? byScore : a.member.compareTo(b.member);
+    };
+
+    private final Map<String, Double> scores = new HashMap<>();
+
+    private final TreeSet<Entry> ordered = new TreeSet<>(ORDER);
+
+    /**
+     * @return {@code true} if the member was added, {@code false} if only its score was updated.
+     */
+    boolean add(String member, double score) {
+        Double previous = scores.put(member, score);
+        if (previous != null) {
+            ordered.remove(new Entry(member, previous));
+        }
+        ordered.add(new Entry(member, score));
+        return previous == null;
+    }
+
+    boolean remove(String member) {
+        Double previous = scores.remove(member);
+        if (previous == null) {
+            return false;
+        }
+        ordered.remove(new Entry(member, previous));
+        return true;
+    }
+
+    Double score(String member) {
+        return scores.get(member);
+    }
+
+    int size() {
+        return scores.size();
+    }
+
+    boolean isEmpty() {
+        return scores.isEmpty();
+    }
+
+    /**
+     * Entries with rank in [start, stop], both inclusive and already normalized to non-negative indexes.
+     */
+    List<Entry> range(int start, int stop, boolean reverse) {
+        List<Entry> result = new ArrayList<>(Math.max(0, stop - start + 1));
+        Iterator<Entry> it = reverse ? ordered.descendingIterator() : ordered.iterator();
+        for (int rank = 0; it.hasNext() && rank <= stop; rank++) {
+            Entry entry = it.next();
+            if (rank >= start) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    Iterable<Entry> ascending() {
+        return ordered;
+    }
+
+    Iterable<Entry> descending() {
+        return ordered.descendingSet();
+    }
+}
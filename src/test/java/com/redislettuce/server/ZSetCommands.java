@@ -0,0 +1,344 @@
+package com.redislettuce.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.redislettuce.server.CommandTable.parseDouble;
+import static com.redislettuce.server.CommandTable.parseLong;
+import static com.redislettuce.server.CommandTable.range;
+import static com.redislettuce.server.CommandTable.str;
+import static com.redislettuce.server.CommandTable.upper;
+
+/**
+ * Sorted set commands.
+ */
+class ZSetCommands {
+
+    static void register(CommandTable table, Keyspace keyspace) {
+        table.register("zadd", -4, (session, args, out) -> zadd(keyspace, args, out));
+        table.register("zincrby", 4, (session, args, out) -> {
+            double delta = parseDouble(args[2]);
+            ZSet zset = keyspace.getOrCreate(str(args[1]), ZSet.class, ZSet::new);
+            String member = str(args[3]);
+            Double current = zset.score(member);
+            double score = (current == null ? 0 : current) + delta;
+            if (Double.isNaN(score)) {
+                throw new RespError("ERR resulting score is not a number (NaN)");
+            }
+            zset.add(member, score);
+            out.doubleValue(score);
+        });
+        table.register("zrange", -4, (session, args, out) -> rangeByRank(keyspace, args, out, false));
+        table.register("zrevrange", -4, (session, args, out) -> rangeByRank(keyspace, args, out, true));
+        table.register("zscore", 3, (session, args, out) -> {
+            ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+            Double score = zset == null ? null : zset.score(str(args[2]));
+            if (score == null) {
+                out.nullBulk();
+            } else {
+                out.doubleValue(score);
+            }
+        });
+        table.register("zmscore", -3, (session, args, out) -> {
+            ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+            out.arrayHeader(args.length - 2);
+            for (int i = 2; i < args.length; i++) {
+                Double score = zset == null ? null : zset.score(str(args[i]));
+                if (score == null) {
+                    out.nullBulk();
+                } else {
+                    out.doubleValue(score);
+                }
+            }
+        });
+        table.register("zrank", 3, (session, args, out) -> rank(keyspace, args, out, false));
+        table.register("zrevrank", 3, (session, args, out) -> rank(keyspace, args, out, true));
+        table.register("zrangebyscore", -4, (session, args, out) -> rangeByScore(keyspace, args, out, false));
+        table.register("zrevrangebyscore", -4, (session, args, out) -> rangeByScore(keyspace, args, out, true));
+        table.register("zcount", 4, (session, args, out) -> {
+            ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+            ScoreBound min = ScoreBound.parse(args[2]);
+            ScoreBound max = ScoreBound.parse(args[3]);
+            long count = 0;
+            if (zset != null) {
+                for (ZSet.Entry entry : zset.ascending()) {
+                    if (max.below(entry.score)) {
+                        break;
+                    }
+                    if (min.atOrBelow(entry.score)) {
+                        count++;
+                    }
+                }
+            }
+            out.integer(count);
+        });
+        table.register("zremrangebyrank", 4, (session, args, out) -> {
+            String key = str(args[1]);
+            ZSet zset = keyspace.get(key, ZSet.class);
+            if (zset == null) {
+                out.integer(0);
+                return;
+            }
+            int[] bounds = range(parseLong(args[2]), parseLong(args[3]), zset.size());
+            List<ZSet.Entry> entries = zset.range(bounds[0], bounds[1], false);
+            for (ZSet.Entry entry : entries) {
+                zset.remove(entry.member);
+            }
+            if (zset.isEmpty()) {
+                keyspace.remove(key);
+            }
+            out.integer(entries.size());
+        });
+        table.register("zremrangebyscore", 4, (session, args, out) -> {
+            String key = str(args[1]);
+            ZSet zset = keyspace.get(key, ZSet.class);
+            ScoreBound min = ScoreBound.parse(args[2]);
+            ScoreBound max = ScoreBound.parse(args[3]);
+            if (zset == null) {
+                out.integer(0);
+                return;
+            }
+            List<String> matching = new ArrayList<>();
+            for (ZSet.Entry entry : zset.ascending()) {
+                if (max.below(entry.score)) {
+                    break;
+                }
+                if (min.atOrBelow(entry.score)) {
+                    matching.add(entry.member);
+                }
+            }
+            matching.forEach(zset::remove);
+            if (zset.isEmpty()) {
+                keyspace.remove(key);
+            }
+            out.integer(matching.size());
+        });
+        table.register("zcard", 2, (session, args, out) -> {
+            ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+            out.integer(zset == null ? 0 : zset.size());
+        });
+        table.register("zrem", -3, (session, args, out) -> {
+            String key = str(args[1]);
+            ZSet zset = keyspace.get(key, ZSet.class);
+            long removed = 0;
+            if (zset != null) {
+                for (int i = 2; i < args.length; i++) {
+                    if (zset.remove(str(args[i]))) {
+                        removed++;
+                    }
+                }
+                if (zset.isEmpty()) {
+                    keyspace.remove(key);
+                }
+            }
+            out.integer(removed);
+        });
+    }
+
+    private static void rangeByRank(Keyspace keyspace, byte[][] args, RespWriter out, boolean reverse) {
+        boolean withScores = false;
+        for (int i = 4; i < args.length; i++) {
+            if (!upper(args[i]).equals("WITHSCORES")) {
+                throw RespError.syntax();
+            }
+            withScores = true;
+        }
+        ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+        if (zset == null) {
+            out.arrayHeader(0);
+            return;
+        }
+        int[] bounds = range(parseLong(args[2]), parseLong(args[3]), zset.size());
+        writeEntries(zset.range(bounds[0], bounds[1], reverse), withScores, out);
+    }
+
+    /**
+     * Like Redis 6.2 and later: member, score, member, score... with RESP2, [member, score] pairs with RESP3.
+     */
+    private static void writeEntries(List<ZSet.Entry> entries, boolean withScores, RespWriter out) {
+        boolean pairs = withScores && out.resp3();
+        out.arrayHeader(withScores && !pairs ? entries.size() * 2 : entries.size());
+        for (ZSet.Entry entry : entries) {
+            if (pairs) {
+                out.arrayHeader(2);
+            }
+            out.bulk(entry.member);
+            if (withScores) {
+                out.doubleValue(entry.score);
+            }
+        }
+    }
+
+    private static void zadd(Keyspace keyspace, byte[][] args, RespWriter out) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean gt = false;
+        boolean lt = false;
+        boolean ch = false;
+        boolean incr = false;
+        int i = 2;
+        for (; i < args.length; i++) {
+            String option = upper(args[i]);
+            if (option.equals("NX")) {
+                nx = true;
+            } else if (option.equals("XX")) {
+                xx = true;
+            } else if (option.equals("GT")) {
+                gt = true;
+            } else if (option.equals("LT")) {
+                lt = true;
+            } else if (option.equals("CH")) {
+                ch = true;
+            } else if (option.equals("INCR")) {
+                incr = true;
+            } else {
+                break;
+            }
+        }
+        int pairs = args.length - i;
+        if (pairs == 0 || pairs % 2 != 0 || (nx && xx) || (nx && (gt || lt)) || (gt && lt) || (incr && pairs != 2)) {
+            throw RespError.syntax();
+        }
+        double[] scores = new double[pairs / 2];
+        for (int j = 0; j < scores.length; j++) {
+            scores[j] = parseDouble(args[i + 2 * j]);
+        }
+        ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+        if (zset == null) {
+            if (xx) {
+                if (incr) {
+                    out.nullBulk();
+                } else {
+                    out.integer(0);
+                }
+                return;
+            }
+            zset = keyspace.getOrCreate(str(args[1]), ZSet.class, ZSet::new);
+        }
+        long added = 0;
+        long changed = 0;
+        Double incremented = null;
+        for (int j = 0; j < scores.length; j++) {
+            String member = str(args[i + 2 * j + 1]);
+            Double current = zset.score(member);
+            double score = incr ? (current == null ? 0 : current) + scores[j] : scores[j];
+            if ((nx && current != null) || (xx && current == null)
+                    || (current != null && gt && score <= current) || (current != null && lt && score >= current)) {
+                continue;
+            }
+            if (current == null) {
+                added++;
+                changed++;
+            } else if (current != score) {
+                changed++;
+            }
+            zset.add(member, score);
+            incremented = score;
+        }
+        if (zset.isEmpty()) {
+            keyspace.remove(str(args[1]));
+        }
+        if (incr) {
+            if (incremented == null) {
+                out.nullBulk();
+            } else {
+                out.doubleValue(incremented);
+            }
+        } else {
+            out.integer(ch ? changed : added);
+        }
+    }
+
+    private static void rank(Keyspace keyspace, byte[][] args, RespWriter out, boolean reverse) {
+        ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+        String member = str(args[2]);
+        if (zset == null || zset.score(member) == null) {
+            out.nullBulk();
+            return;
+        }
+        long rank = 0;
+        for (ZSet.Entry entry : reverse ? zset.descending() : zset.ascending()) {
+            if (entry.member.equals(member)) {
+                break;
+            }
+            rank++;
+        }
+        out.integer(rank);
+    }
+
+    private static void rangeByScore(Keyspace keyspace, byte[][] args, RespWriter out, boolean reverse) {
+        // ZREVRANGEBYSCORE takes max before min.
+        ScoreBound min = ScoreBound.parse(args[reverse ? 3 : 2]);
+        ScoreBound max = ScoreBound.parse(args[reverse ? 2 : 3]);
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        for (int i = 4; i < args.length; i++) {
+            String option = upper(args[i]);
+            if (option.equals("WITHSCORES")) {
+                withScores = true;
+            } else if (option.equals("LIMIT") && i + 2 < args.length) {
+                offset = parseLong(args[++i]);
+                count = parseLong(args[++i]);
+            } else {
+                throw RespError.syntax();
+            }
+        }
+        ZSet zset = keyspace.get(str(args[1]), ZSet.class);
+        List<ZSet.Entry> result = new ArrayList<>();
+        if (zset != null && offset >= 0) {
+            long skipped = 0;
+            for (ZSet.Entry entry : reverse ? zset.descending() : zset.ascending()) {
+                boolean pastEnd = reverse ? !min.atOrBelow(entry.score) : max.below(entry.score);
+                if (pastEnd || (count >= 0 && result.size() >= count)) {
+                    break;
+                }
+                boolean inRange = min.atOrBelow(entry.score) && !max.below(entry.score);
+                if (inRange && skipped++ >= offset) {
+                    result.add(entry);
+                }
+            }
+        }
+        writeEntries(result, withScores, out);
+    }
+
+    /**
+     * A ZRANGEBYSCORE style bound: {@code 1.5}, {@code (1.5} (exclusive), {@code -inf} or {@code +inf}.
+     */
+    private static final class ScoreBound {
+
+        final double value;
+
+        final boolean exclusive;
+
+        private ScoreBound(double value, boolean exclusive) {
+            this.value = value;
+            this.exclusive = exclusive;
+        }
+
+        static ScoreBound parse(byte[] arg) {
+            boolean exclusive = arg.length > 0 && arg[0] == '(';
+            byte[] number = exclusive ? Arrays.copyOfRange(arg, 1, arg.length) : arg;
+            try {
+                return new ScoreBound(parseDouble(number), exclusive);
+            } catch (RespError e) {
+                throw new RespError("ERR min or max is not a float");
+            }
+        }
+
+        /**
+         * Whether {@code score} satisfies this bound used as a minimum.
+         */
+        boolean atOrBelow(double score) {
+            return exclusive ? value < score : value <= score;
+        }
+
+        /**
+         * Whether this bound used as a maximum excludes {@code score}.
+         */
+        boolean below(double score) {
+            return exclusive ? value <= score : value < score;
+        }
+    }
+}
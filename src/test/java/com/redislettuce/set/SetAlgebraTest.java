@@ -0,0 +1,123 @@
+package com.redislettuce.set;
+
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SetAlgebraTest {
+
+    @Test
+    public void matchesServerSideAlgebra() {
+        try (LocalRedisServer server = LocalRedisServer.start()) {
+            RedisClient client = RedisClient.create(server.getUri());
+            try (SetAlgebra algebra = SetAlgebra.builder(client).batchSize(7).build();
+                 StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                commands.sadd("multiples:2", multiples(2, 300));
+                commands.sadd("multiples:3", multiples(3, 300));
+                commands.sadd("multiples:5", multiples(5, 300));
+
+                assertEquals(commands.sinter("multiples:2", "multiples:3", "multiples:5"),
+                        collect(algebra.intersect("multiples:2", "multiples:3", "multiples:5")));
+                assertEquals(commands.sunion("multiples:2", "multiples:3", "multiples:5"),
+                        collect(algebra.union("multiples:2", "multiples:3", "multiples:5")));
+                assertEquals(commands.sdiff("multiples:2", "multiples:3", "multiples:5"),
+                        collect(algebra.difference("multiples:2", "multiples:3", "multiples:5")));
+                assertEquals(0, algebra.intersect("multiples:2", "missing").count());
+                assertEquals(150, algebra.union("multiples:2", "missing").count());
+
+                assertEquals(100, algebra.differenceStore("multiples:2", "multiples:2", "multiples:3"));
+                assertEquals(100, (long) commands.scard("multiples:2"));
+                assertEquals(0, algebra.intersectStore("multiples:2", "multiples:2", "multiples:3"));
+                assertEquals(0, (long) commands.exists("multiples:2"));
+                assertEquals(2, (long) commands.dbsize());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void worksAcrossClusterSlots() {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            try (SetAlgebra algebra = SetAlgebra.builder(client).batchSize(50).build();
+                 StatefulRedisClusterConnection<String, String> connection = client.connect()) {
+                RedisAdvancedClusterCommands<String, String> commands = connection.sync();
+                assertNotEquals(SlotHash.getSlot("a"), SlotHash.getSlot("b"));
+                commands.sadd("a", multiples(2, 1000));
+                commands.sadd("b", multiples(3, 1000));
+                commands.sadd("c", multiples(7, 1000));
+
+                Set<String> expected = new HashSet<>();
+                for (int i = 0; i < 1000; i += 42) {
+                    expected.add(String.valueOf(i));
+                }
+                assertEquals(expected, collect(algebra.intersect("a", "b", "c")));
+                assertEquals(expected.size(), algebra.intersectStore("result", "c", "a", "b"));
+                assertEquals(expected, commands.smembers("result"));
+
+                Set<String> union = collect(algebra.union("a", "b", "c"));
+                assertEquals(union.size(), algebra.unionStore("b", "a", "b", "c"));
+                assertEquals(union, commands.smembers("b"));
+                assertTrue(commands.keys("*tmp*").isEmpty());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void storesIntoAnOperandWithAnEmptyHashTag() {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start()) {
+            RedisClusterClient client = RedisClusterClient.create(cluster.getUris());
+            try (SetAlgebra algebra = SetAlgebra.builder(client).batchSize(50).build();
+                 StatefulRedisClusterConnection<String, String> connection = client.connect()) {
+                RedisAdvancedClusterCommands<String, String> commands = connection.sync();
+                // "a{}b" hashes as a whole, appending to it or wrapping it in braces changes its slot.
+                assertNotEquals(SlotHash.getSlot("a{}b"), SlotHash.getSlot("a{}b:tmp"));
+                assertNotEquals(SlotHash.getSlot("a{}b"), SlotHash.getSlot("{a{}b}:tmp"));
+                commands.sadd("a{}b", multiples(2, 1000));
+                commands.sadd("c", multiples(3, 1000));
+
+                Set<String> difference = collect(algebra.difference("a{}b", "c"));
+                assertEquals(difference.size(), algebra.differenceStore("a{}b", "a{}b", "c"));
+                assertEquals(difference, commands.smembers("a{}b"));
+                Set<String> union = collect(algebra.union("a{}b", "c"));
+                assertEquals(union.size(), algebra.unionStore("a{}b", "c", "a{}b"));
+                assertEquals(union, commands.smembers("a{}b"));
+                assertTrue(commands.keys("*tmp*").isEmpty());
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static Set<String> collect(Stream<String> members) {
+        List<String> list = members.collect(Collectors.toList());
+        Set<String> set = new HashSet<>(list);
+        assertEquals("no duplicates", list.size(), set.size());
+        return set;
+    }
+
+    private static String[] multiples(int n, int below) {
+        return Stream.iterate(0, i -> i + n).limit((below + n - 1) / n).map(String::valueOf).toArray(String[]::new);
+    }
+}
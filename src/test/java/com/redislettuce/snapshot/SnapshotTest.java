@@ -0,0 +1,211 @@
+package com.redislettuce.snapshot;
+
+import com.redislettuce.SnapshotTool;
+import com.redislettuce.server.LocalRedisCluster;
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.sync.RedisAdvancedClusterCommands;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SnapshotTest {
+
+    private LocalRedisServer source;
+
+    private LocalRedisServer target;
+
+    private RedisClient sourceClient;
+
+    private RedisClient targetClient;
+
+    private StatefulRedisConnection<String, String> sourceConnection;
+
+    private StatefulRedisConnection<String, String> targetConnection;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        source = LocalRedisServer.start();
+        target = LocalRedisServer.start();
+        sourceClient = RedisClient.create(source.getUri());
+        targetClient = RedisClient.create(target.getUri());
+        sourceConnection = sourceClient.connect();
+        targetConnection = targetClient.connect();
+        directory = Files.createTempDirectory("snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sourceConnection.close();
+        targetConnection.close();
+        sourceClient.shutdown();
+        targetClient.shutdown();
+        source.close();
+        target.close();
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void copiesEveryTypeBetweenServers() throws Exception {
+        RedisCommands<String, String> commands = sourceConnection.sync();
+        commands.set("phone", "18902835052");
+        commands.psetex("session", 60_000, "state");
+        Map<String, String> hash = new HashMap<>();
+        hash.put("a", "1");
+        hash.put("b", "2");
+        commands.hset("myhash", hash);
+        commands.rpush("mylist", "a", "b", "a");
+        commands.sadd("users", "alice", "bob");
+        commands.zadd("myScoredValue", 1.5, "a", -2.0, "b");
+        for (int i = 0; i < 500; i++) {
+            commands.set("key" + i, "value" + i);
+        }
+        Path file = directory.resolve("keys.snapshot");
+
+        Snapshot.Result exported = Snapshot.builder(sourceClient).batchSize(64).blockSize(1024).build().export(file);
+        assertTrue(exported.toString(), exported.isComplete());
+        assertEquals(506, exported.getKeys());
+        assertTrue(exported.getBlocks() > 1);
+        assertEquals(Files.size(file), exported.getFileBytes());
+
+        Snapshot.Result restored = Snapshot.builder(targetClient).threads(3).batchSize(16).pipelineDepth(2).build()
+                .restore(file);
+        assertTrue(restored.toString(), restored.isComplete());
+        assertEquals(506, restored.getKeys());
+        assertEquals(exported.getPayloadBytes(), restored.getPayloadBytes());
+        RedisCommands<String, String> copy = targetConnection.sync();
+        assertEquals("18902835052", copy.get("phone"));
+        assertEquals("value499", copy.get("key499"));
+        assertEquals(hash, copy.hgetall("myhash"));
+        assertEquals(Arrays.asList("a", "b", "a"), copy.lrange("mylist", 0, -1));
+        assertEquals(new HashSet<>(Arrays.asList("alice", "bob")), copy.smembers("users"));
+        assertEquals(Arrays.asList(ScoredValue.just(-2, "b"), ScoredValue.just(1.5, "a")),
+                copy.zrangeWithScores("myScoredValue", 0, -1));
+        long pttl = copy.pttl("session");
+        assertTrue(String.valueOf(pttl), pttl > 50_000 && pttl <= 60_000);
+        assertEquals(Long.valueOf(-1), copy.pttl("phone"));
+
+        copy.set("phone", "changed");
+        Snapshot.Result again = Snapshot.builder(targetClient).build().restore(file);
+        assertTrue(again.isComplete());
+        assertEquals(0, again.getKeys());
+        assertEquals(506, again.getSkipped());
+        assertEquals("changed", copy.get("phone"));
+        Snapshot.Result replaced = Snapshot.builder(targetClient).replace(true).build().restore(file);
+        assertEquals(506, replaced.getKeys());
+        assertEquals("18902835052", copy.get("phone"));
+    }
+
+    @Test
+    public void exportsMatchingKeysOfAllClusterMasters() throws Exception {
+        try (LocalRedisCluster cluster = LocalRedisCluster.start();
+             LocalRedisCluster other = LocalRedisCluster.start()) {
+            RedisClusterClient clusterClient = RedisClusterClient.create(cluster.getUris());
+            RedisClusterClient otherClient = RedisClusterClient.create(other.getUris());
+            try (StatefulRedisClusterConnection<String, String> connection = clusterClient.connect();
+                 StatefulRedisClusterConnection<String, String> otherConnection = otherClient.connect()) {
+                RedisAdvancedClusterCommands<String, String> commands = connection.sync();
+                for (int i = 0; i < 1000; i++) {
+                    commands.set("user:" + i, "name" + i);
+                    commands.set("other:" + i, "x");
+                }
+                Path file = directory.resolve("cluster.snapshot");
+
+                Snapshot.Result exported = Snapshot.builder(clusterClient).match("user:*").batchSize(100)
+                        .blockSize(4096).build().export(file);
+                assertTrue(exported.toString(), exported.isComplete());
+                assertEquals(1000, exported.getKeys());
+
+                Snapshot.Result restored = Snapshot.builder(otherClient).threads(4).build().restore(file);
+                assertTrue(restored.toString(), restored.isComplete());
+                assertEquals(1000, restored.getKeys());
+                RedisAdvancedClusterCommands<String, String> copy = otherConnection.sync();
+                assertEquals("name999", copy.get("user:999"));
+                assertEquals(Long.valueOf(0), copy.exists("other:1"));
+                assertEquals(Long.valueOf(1000), copy.dbsize());
+
+                // and into a standalone server.
+                Snapshot.Result single = Snapshot.builder(targetClient).build().restore(file);
+                assertEquals(1000, single.getKeys());
+                assertEquals(Long.valueOf(1000), targetConnection.sync().dbsize());
+            } finally {
+                clusterClient.shutdown();
+                otherClient.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCorruptFiles() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            sourceConnection.sync().set("key" + i, "value" + i);
+        }
+        Path file = directory.resolve("keys.snapshot");
+        Snapshot.builder(sourceClient).build().export(file);
+        byte[] data = Files.readAllBytes(file);
+
+        Path truncated = directory.resolve("truncated.snapshot");
+        Files.write(truncated, Arrays.copyOf(data, data.length - 1));
+        try {
+            Snapshot.builder(targetClient).build().restore(truncated);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no valid index"));
+        }
+
+        Path flipped = directory.resolve("flipped.snapshot");
+        data[20] ^= 1;
+        Files.write(flipped, data);
+        try {
+            Snapshot.builder(targetClient).build().restore(flipped);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("corrupt"));
+        }
+        assertNull(targetConnection.sync().get("key1"));
+    }
+
+    @Test
+    public void commandLineExportsAndRestores() throws Exception {
+        sourceConnection.sync().set("phone", "18902835052");
+        String file = directory.resolve("cli.snapshot").toString();
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(text, true, "UTF-8");
+
+        assertEquals(0, SnapshotTool.run(new String[] { "export", "--uri", source.getUri().toURI().toString(),
+                file }, out));
+        assertEquals(0, SnapshotTool.run(new String[] { "restore", "--uri", target.getUri().toURI().toString(),
+                "--threads", "2", "--replace", file }, out));
+        String output = new String(text.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(output, output.contains("exported: 1 keys"));
+        assertTrue(output, output.contains("restored: 1 keys"));
+        assertEquals("18902835052", targetConnection.sync().get("phone"));
+        assertEquals(2, SnapshotTool.run(new String[] { "copy", file }, new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,165 @@
+package com.redislettuce.zset;
+
+import com.redislettuce.server.LocalRedisServer;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScoredValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.protocol.ProtocolVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SortedSetReaderTest {
+
+    private LocalRedisServer server;
+
+    private RedisClient client;
+
+    @Before
+    public void setUp() {
+        server = LocalRedisServer.start();
+        client = RedisClient.create(server.getUri());
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void readsRangesLikeZrangeWithScoresWithBothProtocols() {
+        for (ProtocolVersion protocol : ProtocolVersion.values()) {
+            client.setOptions(ClientOptions.builder().protocolVersion(protocol).build());
+            try (StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                commands.del("scores");
+                for (int i = 0; i < 300; i++) {
+                    commands.zadd("scores", i % 7 == 0 ? i / 8.0 : -i * 1.25, "player" + i);
+                }
+                commands.zadd("scores", Double.POSITIVE_INFINITY, "top");
+                SortedSetReader reader = SortedSetReader.of(connection);
+
+                assertRange(protocol, commands.zrangeWithScores("scores", 0, -1), reader.range("scores", 0, -1));
+                assertRange(protocol, commands.zrevrangeWithScores("scores", 5, 20),
+                        reader.reverseRange("scores", 5, 20));
+                assertRange(protocol, commands.zrangebyscoreWithScores("scores", Range.create(-10, 10)),
+                        reader.rangeByScore("scores", -10, 10, new ScoredRange()));
+                assertRange(protocol, commands.zrangebyscoreWithScores("scores",
+                        Range.create(-100, Double.POSITIVE_INFINITY), Limit.create(3, 4)),
+                        reader.rangeByScore("scores", -100, Double.POSITIVE_INFINITY, 3, 4, new ScoredRange()));
+
+                ScoredRange reused = new ScoredRange(16);
+                String[] members = reused.members();
+                assertSame(reused, reader.reverseRange("scores", 0, 9, reused));
+                assertEquals(10, reused.size());
+                assertEquals("top", reused.member(0));
+                assertEquals(Double.POSITIVE_INFINITY, reused.score(0), 0);
+                assertSame(members, reused.members());
+                reader.range("missing", 0, -1, reused);
+                assertEquals(0, reused.size());
+                reader.range("scores", 0, -1, reused);
+                assertEquals(301, reused.size());
+                assertTrue(reused.capacity() >= 301);
+            }
+        }
+    }
+
+    @Test
+    public void visitsEntriesInOrder() {
+        for (ProtocolVersion protocol : ProtocolVersion.values()) {
+            client.setOptions(ClientOptions.builder().protocolVersion(protocol).build());
+            try (StatefulRedisConnection<String, String> connection = client.connect()) {
+                RedisCommands<String, String> commands = connection.sync();
+                commands.del("scores");
+                StringBuilder longName = new StringBuilder();
+                for (int i = 0; i < 100; i++) {
+                    longName.append("long-member-");
+                }
+                commands.zadd("scores", 2.5, longName.toString());
+                for (int i = 0; i < 1000; i++) {
+                    commands.zadd("scores", i, "m" + i);
+                }
+                SortedSetReader reader = SortedSetReader.of(connection);
+
+                List<ScoredValue<String>> visited = new ArrayList<>();
+                ScoreVisitor collect = (member, score) -> visited.add(
+                        ScoredValue.just(score, StandardCharsets.UTF_8.decode(member).toString()));
+                assertEquals(1001, reader.visitRange("scores", 0, -1, collect));
+                assertEquals(protocol.name(), commands.zrangeWithScores("scores", 0, -1), visited);
+
+                visited.clear();
+                assertEquals(3, reader.visitReverseRange("scores", 0, 2, collect));
+                assertEquals(commands.zrevrangeWithScores("scores", 0, 2), visited);
+
+                double[] sum = new double[1];
+                assertEquals(11, reader.visitRangeByScore("scores", 0, 9.5, (member, score) -> sum[0] += score));
+                assertEquals(47.5, sum[0], 0);
+                assertEquals(0, reader.visitRange("missing", 0, -1, collect));
+            }
+        }
+    }
+
+    @Test
+    public void readsScoresWithNaNForMissingMembers() {
+        for (ProtocolVersion protocol : ProtocolVersion.values()) {
+            client.setOptions(ClientOptions.builder().protocolVersion(protocol).build());
+            try (StatefulRedisConnection<String, String> connection = client.connect()) {
+                connection.sync().del("scores");
+                connection.sync().zadd("scores", 1.5, "a", -2.0, "b", 1e20, "c");
+                SortedSetReader reader = SortedSetReader.of(connection);
+
+                assertEquals(1.5, reader.score("scores", "a"), 0);
+                assertTrue(Double.isNaN(reader.score("scores", "x")));
+                assertTrue(Double.isNaN(reader.score("missing", "a")));
+                assertArrayEquals(new double[] { 1e20, Double.NaN, -2 }, reader.scores("scores", "c", "x", "b"), 0);
+                assertEquals(0, reader.scores("scores").length);
+            }
+        }
+    }
+
+    @Test
+    public void parsesScoresLikeDoubleParseDouble() {
+        String[] scores = { "0", "-0", "42", "-42", "1.5", "-1.25", "0.1", "0.30000000000000004",
+                "0.10000000000000001", "123456789012345", "1234567890123456789", "2.5e-05", "1E+20", "1e22",
+                "1e23", "4.9e-324", "1.7976931348623157e308", "1e400", "000.00125", ".5", "5.", "9007199254740993",
+                "3.14159265358979" };
+        for (String score : scores) {
+            double expected = Double.parseDouble(score);
+            assertEquals(score, Double.doubleToLongBits(expected), Double.doubleToLongBits(parse(score)));
+        }
+        assertEquals(Double.POSITIVE_INFINITY, parse("inf"), 0);
+        assertEquals(Double.POSITIVE_INFINITY, parse("+inf"), 0);
+        assertEquals(Double.NEGATIVE_INFINITY, parse("-inf"), 0);
+        ByteBuffer slice = ByteBuffer.wrap("xx-7.75yy".getBytes(StandardCharsets.US_ASCII), 2, 5);
+        assertEquals(-7.75, ScoreParser.parse(slice), 0);
+        assertEquals(2, slice.position());
+    }
+
+    private static double parse(String score) {
+        return ScoreParser.parse(ByteBuffer.wrap(score.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static void assertRange(ProtocolVersion protocol, List<ScoredValue<String>> expected,
+            ScoredRange actual) {
+        assertEquals(protocol.name(), expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getValue(), actual.member(i));
+            assertEquals(expected.get(i).getScore(), actual.score(i), 0);
+        }
+    }
+}